@@ -1,7 +1,6 @@
 package analysis;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * 
@@ -81,45 +80,8 @@ public class CSVChargeParser extends CSVParser {
 	 * @param fileName
 	 * @return
 	 */
-	public static Prediction[][] readFile(String fileName) throws IOException {
-		ArrayList<String> fileLines;
-		
-		fileLines = getData(fileName);
-		
-		int residues = fileLines.size()-1;
-		
-		Prediction[][] retVal = new Prediction[residues][];
-		
-		for(int index = 0; index < residues; ++index) {
-			if(!fileLines.get(index+1).equals("")) {
-				retVal[index] = parseLine(fileLines.get(index+1));
-			}
-		}
-		
-		return retVal;
-	}
-	
-	/**
-	 * Turns a line of text from a logistic regression results file into an array of 'Prediction' objects
-	 * @param line: the String to parse
-	 * @return: array of 'Prediction' objects representing the data in the String
-	 */
-	private static Prediction[] parseLine(String line) {
-		Prediction[] predictions = new Prediction[DESCRIPTOR_LIST.length];
-		String[] lineValues = line.split(",");
-		
-		String protein = lineValues[1].substring(0, 4);
-		char chain = lineValues[1].charAt(4);
-		
-		int resNum = Integer.parseInt(lineValues[0]);
-		boolean isSwitch = Boolean.parseBoolean(lineValues[DESCRIPTOR_LIST.length+3]);
-		
-		for(int index = 0; index < DESCRIPTOR_LIST.length; ++index) {
-			double propensity = Double.parseDouble(lineValues[index+3]);
-			predictions[index] = new Prediction(protein, chain, resNum, propensity, isSwitch);
-		}
-		
-		return predictions;
+	public static PredictionTable readFile(String fileName) throws IOException {
+		return readFile(fileName, DESCRIPTOR_LIST);
 	}
 	
 	public static int descriptors() { return DESCRIPTOR_LIST.length; }
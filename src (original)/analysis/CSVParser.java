@@ -1,14 +1,12 @@
 package analysis;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 
 import util.BaseTools;
 
 /**
- * Parses combined test-set/logisitc regression files into 'Prediction' objects
+ * Parses combined test-set/logisitc regression files into a PredictionTable
  * 
  * @author Benjy Strauss
  *
@@ -16,6 +14,9 @@ import util.BaseTools;
  */
 
 public class CSVParser extends BaseTools {
+	//the number of malformed rows to print when reading a file
+	private static final int MAX_REPORTED_ROWS = 10;
+	
 	public static final Descriptor[][] DESCRIPTOR_LIST = {
 			//1-level models
 			{ Descriptor.RESIDUE_TYPE },
@@ -52,75 +53,31 @@ public class CSVParser extends BaseTools {
 	/**
 	 * 
 	 * @param fileName: the name of the file to parse
-	 * @return: An array of predictions representing the file data
-	 */
-	public static Prediction[][] readFile(String fileName) throws IOException {
-		ArrayList<String> fileLines;
-		
-		fileLines = getData(fileName);
-		
-		int residues = fileLines.size()-1;
-		
-		Prediction[][] retVal = new Prediction[residues][];
-		
-		for(int index = 0; index < residues; ++index) {
-			if(!fileLines.get(index+1).equals("")) {
-				retVal[index] = parseLine(fileLines.get(index+1));
-			}
-		}
-		
-		return retVal;
-	}
-	
-	/**
-	 * Reads a text file into an arraylist of Strings
-	 * @param fileName: the file to read from
-	 * @return: An ArrayList<String> containing the contents of the file
-	 * @throws IOException: If the file cannot be found, or an error in the reading occurs
+	 * @return: A PredictionTable holding the file data
 	 */
-	protected static final ArrayList<String> getData(String fileName) throws IOException {
-		ArrayList<String> fileLines = new ArrayList<String>();
-		BufferedReader reader = new BufferedReader(new FileReader(fileName));
-		String line = "";
-		
-		for(line = reader.readLine(); reader.ready(); line = reader.readLine()) {
-			//qp(line);
-			fileLines.add(line);
-		}
-		reader.close();
-		
-		return fileLines;
+	public static PredictionTable readFile(String fileName) throws IOException {
+		return readFile(fileName, DESCRIPTOR_LIST);
 	}
 	
 	/**
-	 * Turns a line of text from a logistic regression results file into an array of 'Prediction' objects
-	 * @param line: the String to parse
-	 * @return: array of 'Prediction' objects representing the data in the String
+	 * 
+	 * @param fileName: the name of the file to parse
+	 * @param descriptorList: the descriptor combinations, in the order of the file's columns
+	 * @return: A PredictionTable holding the file data
 	 */
-	private static Prediction[] parseLine(String line) {
-		Prediction[] predictions = new Prediction[DESCRIPTOR_LIST.length];
-		String[] lineValues = line.split(",");
-		
-		String protein = lineValues[1].substring(0, 4);
-		char chain = lineValues[1].charAt(4);
-		
-		int resNum = Integer.parseInt(lineValues[0]);
-		boolean isSwitch = Boolean.parseBoolean(lineValues[DESCRIPTOR_LIST.length+3]);
+	protected static PredictionTable readFile(String fileName, Descriptor[][] descriptorList) throws IOException {
+		FusedCSVReader reader = new FusedCSVReader(descriptorList);
+		PredictionTable retVal = reader.read(fileName);
 		
-		for(int index = 0; index < DESCRIPTOR_LIST.length; ++index) {
-			double propensity = Double.NaN;
-			
-			try {
-				propensity = Double.parseDouble(lineValues[index+3]);
-			} catch (NumberFormatException NFE) {
-				qerr("NumberFormatException on line: " + line);
-				System.exit(0);
+		ArrayList<String> malformed = reader.malformedRows();
+		if(malformed.size() > 0) {
+			qerr("Skipped " + malformed.size() + " malformed row(s) in " + fileName + ":");
+			for(int index = 0; index < malformed.size() && index < MAX_REPORTED_ROWS; ++index) {
+				qerr(malformed.get(index));
 			}
-			predictions[index] = new Prediction(protein, chain, resNum, propensity, isSwitch);
-			predictions[index].addDescriptor(DESCRIPTOR_LIST[index]);
 		}
 		
-		return predictions;
+		return retVal;
 	}
 	
 	/**
@@ -0,0 +1,420 @@
+package analysis;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import analysis.stats.AUCAnalysis;
+import analysis.stats.LogisticRegression;
+import analysis.stats.ROCAccumulator;
+import analysis.stats.ROCEngine;
+import analysis.stats.ROCRecord;
+import bio.exceptions.MissingDataException;
+import util.BaseTools;
+
+/**
+ * Estimates how well every descriptor combination's logistic regression model does on residues
+ * it was not fitted on, by repeated k-fold cross-validation or by the bootstrap.
+ *
+ * The learning set is split by group, never by residue: a group is a chain, or a cluster of
+ * (homologous) chains if clusters are given, so that no chain is fitted on with residues of
+ * a similar chain held out.  In each fold, every combination is fitted on the other folds'
+ * rows and predicts the fold's rows; a bootstrap replicate fits on groups drawn with replacement
+ * and predicts the groups that were not drawn.
+ *
+ * Every fold (or replicate) is one task on a work-stealing pool.  The models are fitted from
+ * the learning set's shared columns (no rows are copied), and each task's ROC statistics are
+ * collected in its own ROCAccumulator and merged into the result.
+ *
+ * A model that can't be fitted on a fold (a singular Hessian, or no convergence) is left out of
+ * that fold's statistics and counted as a failure, rather than averaged in as an unfitted model.
+ * Residue types no fitted row has are left out of the model (see LogisticRegression).
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class CrossValidator extends BaseTools {
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+	public static final int DEFAULT_FOLDS = 10;
+	public static final int DEFAULT_REPEATS = 10;
+	public static final int DEFAULT_REPLICATES = 100;
+	public static final String DEFAULT_SUMMARY_FILE = OUTPUT + "cross-validation-summary.csv";
+	public static final String DEFAULT_ROC_FILE = OUTPUT + "cross-validation-roc-log.csv";
+	
+	private final FeatureMatrix data;
+	private final Descriptor[][] combinations;
+	//the L2 penalty
+	private final double penalty;
+	private final double[] thresholds;
+	
+	//the group of each row, and the number of groups
+	private int[] group;
+	private int groups;
+	
+	/**
+	 *
+	 * @param data: the learning set
+	 * @param combinations: the descriptor combinations: one model per combination
+	 * @param penalty: the L2 penalty (0 for plain maximum likelihood)
+	 * @param thresholdIncrement: the distance between the thresholds the ROC statistics are pooled at
+	 */
+	public CrossValidator(FeatureMatrix data, Descriptor[][] combinations, double penalty, double thresholdIncrement) {
+		this.data = data;
+		this.combinations = combinations;
+		this.penalty = penalty;
+		thresholds = ROCEngine.thresholds(thresholdIncrement);
+		setClusters(null);
+	}
+	
+	/**
+	 * Set the groups the learning set is split by
+	 * @param clusters: clusters of protein names or chain IDs (as ClusterReader reads them),
+	 * or null to make every chain its own group.  Chains in no cluster are their own group.
+	 */
+	public void setClusters(String[][] clusters) {
+		Hashtable<String, Integer> clusterOf = new Hashtable<String, Integer>();
+		if(clusters != null) {
+			for(int index = 0; index < clusters.length; ++index) {
+				for(String name: clusters[index]) { clusterOf.put(name, index); }
+			}
+		}
+		
+		Hashtable<String, Integer> groupOf = new Hashtable<String, Integer>();
+		group = new int[data.size()];
+		String lastChain = null;
+		int lastGroup = -1;
+		
+		for(int row = 0; row < data.size(); ++row) {
+			String chain = data.chain(row);
+			if(!chain.equals(lastChain)) {
+				//a chain's cluster is listed by its chain ID or by its protein's name
+				Integer cluster = clusterOf.get(chain);
+				if(cluster == null && chain.length() > 4) { cluster = clusterOf.get(chain.substring(0, 4)); }
+				String key = (cluster == null) ? "chain:" + chain : "cluster:" + cluster;
+				
+				Integer index = groupOf.get(key);
+				if(index == null) {
+					index = groupOf.size();
+					groupOf.put(key, index);
+				}
+				
+				lastChain = chain;
+				lastGroup = index;
+			}
+			group[row] = lastGroup;
+		}
+		
+		groups = groupOf.size();
+	}
+	
+	/**
+	 * Repeated k-fold cross-validation
+	 * @param folds: the number of folds (k)
+	 * @param repeats: the number of times to split the learning set
+	 * @param seed: the seed of the random splits
+	 * @param threads: the maximum number of folds to work on at once
+	 * @return: the ROC statistics of every fold
+	 */
+	public ROCAccumulator crossValidate(int folds, int repeats, long seed, int threads) {
+		if(folds < 2 || folds > groups) {
+			throw new IllegalArgumentException("Cannot split " + groups + " groups into " + folds + " folds");
+		}
+		
+		ArrayList<Callable<ROCAccumulator>> tasks = new ArrayList<Callable<ROCAccumulator>>();
+		SplittableRandom random = new SplittableRandom(seed);
+		
+		for(int repeat = 0; repeat < repeats; ++repeat) {
+			final int[] fold = assignFolds(folds, random.split());
+			for(int index = 0; index < folds; ++index) {
+				final int held = index;
+				//the rows are only listed when the task runs, so only the running tasks' lists are in memory
+				tasks.add(new Callable<ROCAccumulator>() {
+					public ROCAccumulator call() { return evaluate(split(fold, held), false); }
+				});
+			}
+		}
+		
+		return run(tasks, false, threads);
+	}
+	
+	/**
+	 * Out-of-bag bootstrap: fit on groups drawn with replacement, and evaluate on the groups not drawn
+	 * @param replicates: the number of replicates
+	 * @param seed: the seed of the draws
+	 * @param threads: the maximum number of replicates to work on at once
+	 * @return: the ROC statistics of every replicate
+	 */
+	public ROCAccumulator bootstrap(int replicates, long seed, int threads) {
+		final int[][] members = members();
+		ArrayList<Callable<ROCAccumulator>> tasks = new ArrayList<Callable<ROCAccumulator>>();
+		SplittableRandom random = new SplittableRandom(seed);
+		
+		for(int replicate = 0; replicate < replicates; ++replicate) {
+			final int[] draws = new int[groups];
+			for(int index = 0; index < groups; ++index) { ++draws[random.nextInt(groups)]; }
+			
+			tasks.add(new Callable<ROCAccumulator>() {
+				public ROCAccumulator call() { return evaluate(resample(draws, members), true); }
+			});
+		}
+		
+		return run(tasks, true, threads);
+	}
+	
+	/**
+	 * @param draws: the number of times each group was drawn
+	 * @param members: the rows of each group
+	 * @return: { rows to fit on (each group's rows once per draw), rows of the groups that were not drawn }
+	 */
+	private int[][] resample(int[] draws, int[][] members) {
+		int fitSize = 0, testSize = 0;
+		for(int index = 0; index < groups; ++index) {
+			if(draws[index] == 0) { testSize += members[index].length; } else { fitSize += draws[index] * members[index].length; }
+		}
+		
+		int[] fit = new int[fitSize];
+		int[] test = new int[testSize];
+		fitSize = testSize = 0;
+		for(int index = 0; index < groups; ++index) {
+			if(draws[index] == 0) {
+				System.arraycopy(members[index], 0, test, testSize, members[index].length);
+				testSize += members[index].length;
+			}
+			for(int draw = 0; draw < draws[index]; ++draw) {
+				System.arraycopy(members[index], 0, fit, fitSize, members[index].length);
+				fitSize += members[index].length;
+			}
+		}
+		
+		return new int[][] { fit, test };
+	}
+	
+	/**
+	 * Assign every group to a fold: the groups are shuffled, then each goes to the fold
+	 * with the fewest rows so far, so the folds have about the same number of residues
+	 * @param folds: the number of folds
+	 * @param random: the random number generator
+	 * @return: the fold of each group
+	 */
+	private int[] assignFolds(int folds, SplittableRandom random) {
+		int[][] members = members();
+		int[] order = new int[groups];
+		for(int index = 0; index < groups; ++index) { order[index] = index; }
+		for(int index = groups-1; index > 0; --index) {
+			int other = random.nextInt(index+1);
+			int swap = order[index];
+			order[index] = order[other];
+			order[other] = swap;
+		}
+		
+		int[] fold = new int[groups];
+		long[] rows = new long[folds];
+		for(int next: order) {
+			int smallest = 0;
+			for(int index = 1; index < folds; ++index) {
+				if(rows[index] < rows[smallest]) { smallest = index; }
+			}
+			fold[next] = smallest;
+			rows[smallest] += members[next].length;
+		}
+		return fold;
+	}
+	
+	/**
+	 * @param fold: the fold of each group
+	 * @param held: the fold to hold out
+	 * @return: { rows to fit on, rows to evaluate on }
+	 */
+	private int[][] split(int[] fold, int held) {
+		int testSize = 0;
+		for(int row = 0; row < group.length; ++row) {
+			if(fold[group[row]] == held) { ++testSize; }
+		}
+		
+		int[] fit = new int[group.length - testSize];
+		int[] test = new int[testSize];
+		int fitSize = 0;
+		testSize = 0;
+		for(int row = 0; row < group.length; ++row) {
+			if(fold[group[row]] == held) { test[testSize++] = row; } else { fit[fitSize++] = row; }
+		}
+		return new int[][] { fit, test };
+	}
+	
+	/**
+	 * @return: the rows of each group
+	 */
+	private int[][] members() {
+		int[] sizes = new int[groups];
+		for(int row = 0; row < group.length; ++row) { ++sizes[group[row]]; }
+		
+		int[][] members = new int[groups][];
+		for(int index = 0; index < groups; ++index) { members[index] = new int[sizes[index]]; }
+		
+		Arrays.fill(sizes, 0);
+		for(int row = 0; row < group.length; ++row) { members[group[row]][sizes[group[row]]++] = row; }
+		return members;
+	}
+	
+	/**
+	 * Run the evaluations and merge their statistics
+	 * @param tasks: one task per fold or replicate
+	 * @param replicates: true if the tasks are bootstrap replicates
+	 * @param threads: the maximum number of tasks to run at once
+	 * @return: the merged statistics
+	 */
+	private ROCAccumulator run(ArrayList<Callable<ROCAccumulator>> tasks, boolean replicates, int threads) {
+		ROCAccumulator result = new ROCAccumulator(labels(), thresholds, replicates);
+		if(threads < 1) { threads = 1; }
+		
+		ForkJoinPool pool = new ForkJoinPool(min(threads, max(tasks.size(), 1)));
+		ArrayList<Future<ROCAccumulator>> futures = new ArrayList<Future<ROCAccumulator>>(tasks.size());
+		for(Callable<ROCAccumulator> task: tasks) { futures.add(pool.submit(task)); }
+		
+		try {
+			for(int index = 0; index < futures.size(); ++index) {
+				try {
+					result.merge(futures.get(index).get());
+				} catch (ExecutionException EE) {
+					pool.shutdownNow();
+					throw new RuntimeException("Could not evaluate split " + index, EE.getCause());
+				}
+			}
+		} catch (InterruptedException IE) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			return result;
+		}
+		
+		pool.shutdown();
+		return result;
+	}
+	
+	/**
+	 * Fit every combination on some rows, and collect the ROC statistics of its predictions of others
+	 * Combinations whose models can't be fitted are left out of the statistics
+	 * @param split: { rows to fit on, rows to evaluate on }
+	 * @param replicates: true if the split is a bootstrap replicate
+	 * @return: the statistics of the split
+	 */
+	private ROCAccumulator evaluate(int[][] split, boolean replicates) {
+		int[] fit = split[0], test = split[1];
+		double[][] propensity = new double[combinations.length][];
+		boolean[] isSwitch = new boolean[test.length];
+		int switches = 0;
+		for(int index = 0; index < test.length; ++index) {
+			isSwitch[index] = data.isSwitch(test[index]);
+			if(isSwitch[index]) { ++switches; }
+		}
+		
+		boolean[] failed = new boolean[combinations.length];
+		for(int col = 0; col < combinations.length; ++col) {
+			boolean residueType = false;
+			ArrayList<double[]> numeric = new ArrayList<double[]>();
+			for(Descriptor descriptor: combinations[col]) {
+				if(descriptor == Descriptor.RESIDUE_TYPE) { residueType = true; } else { numeric.add(data.column(descriptor)); }
+			}
+			
+			double[][] columns = numeric.toArray(new double[numeric.size()][]);
+			int[] levels = residueType ? data.levels() : null;
+			LogisticRegression model = new LogisticRegression(columns, levels, data.levelNames().length, data.response(), penalty);
+			try {
+				failed[col] = !model.fit(fit).converged();
+			} catch (ArithmeticException AE) {
+				failed[col] = true;
+			}
+			
+			if(failed[col]) {
+				propensity[col] = new double[test.length];
+				Arrays.fill(propensity[col], Double.NaN);
+			} else {
+				propensity[col] = model.predict(columns, levels, test);
+			}
+		}
+		
+		ROCEngine engine = new ROCEngine(labels(), propensity, isSwitch);
+		AUCAnalysis analysis = (switches == 0 || switches == test.length) ? null : new AUCAnalysis(labels(), propensity, isSwitch);
+		ROCAccumulator accumulator = new ROCAccumulator(labels(), thresholds, replicates);
+		accumulator.add(engine, analysis, failed);
+		return accumulator;
+	}
+	
+	/**
+	 * @return: the label of each combination
+	 */
+	private String[] labels() {
+		String[] labels = new String[combinations.length];
+		for(int col = 0; col < labels.length; ++col) { labels[col] = Descriptor.label(combinations[col]); }
+		return labels;
+	}
+	
+	/** @return: the number of groups the learning set is split by */
+	public int groups() { return groups; }
+	
+	/**
+	 * Write the mean and confidence interval of each combination's AUC and accuracy
+	 * @param result: the statistics
+	 * @param fileName: the file to write
+	 * @throws FileNotFoundException: if the file can't be written
+	 */
+	public static void writeSummary(ROCAccumulator result, String fileName) throws FileNotFoundException {
+		PrintWriter writer = new PrintWriter(fileName);
+		writer.write(ROCAccumulator.header() + "\n");
+		for(int col = 0; col < result.columns(); ++col) {
+			writer.write(result.toCSVRow(col, AUCAnalysis.Z_95) + "\n");
+		}
+		writer.close();
+	}
+	
+	/**
+	 * Write the pooled ROC records of every combination at every threshold, in roc-fit's log format
+	 * @param result: the statistics
+	 * @param fileName: the file to write
+	 * @throws FileNotFoundException: if the file can't be written
+	 * @throws ArithmeticException: if a pooled count is too large for a ROCRecord
+	 */
+	public static void writeROCLog(ROCAccumulator result, String fileName) throws FileNotFoundException {
+		double[] thresholds = result.thresholds();
+		DecimalFormat formatter = ROCBatchModule.makeThresholdFormatter(ROCBatchModule.DEFAULT_INCREMENT);
+		PrintWriter writer = new PrintWriter(fileName);
+		try {
+			writer.write(ROCRecord.fullROCLogHeader() + "\n");
+			for(int index = 0; index < thresholds.length; ++index) {
+				ROCBatchModule.writeROCRecords(result.recordsAt(index), formatter.format(thresholds[index]), writer, false);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+	
+	/**
+	 * Print the mean and confidence interval of each combination's AUC and accuracy
+	 * @param result: the statistics
+	 */
+	public static void print(ROCAccumulator result) {
+		if(result.evaluations() == 0) { throw new MissingDataException("Nothing was evaluated!"); }
+		
+		for(int col = 0; col < result.columns(); ++col) {
+			double[] auc = result.aucInterval(col, AUCAnalysis.Z_95);
+			double[] accuracy = result.accuracyInterval(col, AUCAnalysis.Z_95);
+			qp(result.label(col) + ": AUC " + result.meanAUC(col) + " 95% CI [" + auc[0] + ", " + auc[1] + "]"
+					+ " Accuracy " + result.meanAccuracy(col) + " 95% CI [" + accuracy[0] + ", " + accuracy[1] + "]");
+			if(result.failures(col) > 0) {
+				qerr(result.label(col) + ": left out of " + result.failures(col) + " of " + result.evaluations() + " evaluations (the model could not be fitted: an L2 penalty helps if a residue type is always or never a switch)");
+			}
+		}
+	}
+	
+	public String toString() {
+		return "CrossValidator (" + combinations.length + " combinations, " + data.size() + " rows, " + groups + " groups)";
+	}
+}
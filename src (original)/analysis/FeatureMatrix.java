@@ -0,0 +1,270 @@
+package analysis;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+
+import bio.exceptions.InvalidDataFormatException;
+import util.BaseTools;
+
+/**
+ * The descriptors of a learning (or test) set, read once into one column per descriptor,
+ * so that every logistic regression model can be fitted from the same arrays.
+ *
+ * The file is one written by CSVWriter:
+ * 		No.,Chain,Residue,Letter,Secondary,E6,E20,isUnstruct,Vkabat,VkabatCompletion,amber95,...,AvgCharge,isSwitch
+ * Columns are found by their name in the header, so their order does not matter.
+ * Empty and unreadable values are read as NaN.
+ *
+ * The residue type is categorical: each residue code is a level, and level 0 is the reference level.
+ * A test set has to use the levels of its learning set; residues of a type the learning set
+ * does not have get level -1.
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class FeatureMatrix extends BaseTools {
+	private static final String GZ = ".gz";
+	private static final String NUMBER = "No.";
+	private static final String CHAIN = "Chain";
+	private static final String LETTER = "Letter";
+	private static final String RESPONSE = "isSwitch";
+	private static final int DEFAULT_CAPACITY = 1024;
+	
+	//values[descriptor.ordinal()][row] (null for RESIDUE_TYPE)
+	private final double[][] values;
+	//the level of each row's residue type, and the name of each level
+	private int[] level;
+	private String[] levelNames;
+	//the isSwitch column (1 is a switch, 0 is not, in between is weighted)
+	private double[] response;
+	//residue number, chain ID and letter of each row
+	private int[] number;
+	private String[] chain;
+	private char[] letter;
+	private int size;
+	
+	private FeatureMatrix(String[] levelNames, int capacity) {
+		this.levelNames = levelNames;
+		values = new double[Descriptor.values().length][];
+		for(Descriptor descriptor: Descriptor.values()) {
+			if(descriptor != Descriptor.RESIDUE_TYPE) { values[descriptor.ordinal()] = new double[capacity]; }
+		}
+		level = new int[capacity];
+		response = new double[capacity];
+		number = new int[capacity];
+		chain = new String[capacity];
+		letter = new char[capacity];
+	}
+	
+	/**
+	 * Read a learning set: its residue types become the levels
+	 * @param fileName: the file (.csv or .csv.gz)
+	 * @return: the file's descriptors
+	 * @throws IOException: if the file can't be read
+	 */
+	public static FeatureMatrix read(String fileName) throws IOException {
+		return read(fileName, null);
+	}
+	
+	/**
+	 * Read a data set
+	 * @param fileName: the file (.csv or .csv.gz)
+	 * @param levelNames: the levels of the residue type (from the learning set), or null to use the file's own
+	 * @return: the file's descriptors
+	 * @throws IOException: if the file can't be read
+	 */
+	public static FeatureMatrix read(String fileName, String[] levelNames) throws IOException {
+		InputStream stream = new FileInputStream(fileName);
+		if(fileName.endsWith(GZ)) { stream = new GZIPInputStream(stream); }
+		BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+		
+		try {
+			String header = reader.readLine();
+			if(header == null) { throw new InvalidDataFormatException("Empty data set: " + fileName); }
+			String[] names = header.split(",", -1);
+			
+			//the position of each descriptor's column (-1 if the file doesn't have it)
+			int[] columns = new int[Descriptor.values().length];
+			for(Descriptor descriptor: Descriptor.values()) {
+				columns[descriptor.ordinal()] = indexOf(names, columnName(descriptor));
+				if(columns[descriptor.ordinal()] == -1) {
+					qerr(fileName + " has no " + columnName(descriptor) + " column: it will be read as missing");
+				}
+			}
+			int numberColumn = require(names, NUMBER, fileName);
+			int chainColumn = require(names, CHAIN, fileName);
+			int letterColumn = require(names, LETTER, fileName);
+			int responseColumn = require(names, RESPONSE, fileName);
+			int residueColumn = columns[Descriptor.RESIDUE_TYPE.ordinal()];
+			
+			FeatureMatrix matrix = new FeatureMatrix(levelNames, DEFAULT_CAPACITY);
+			//residue codes, until the levels are known
+			String[] codes = new String[DEFAULT_CAPACITY];
+			
+			for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if(line.length() == 0) { continue; }
+				String[] fields = line.split(",", -1);
+				
+				int row = matrix.size;
+				if(row == matrix.response.length) {
+					matrix.resize(row * 2);
+					codes = Arrays.copyOf(codes, row * 2);
+				}
+				
+				for(Descriptor descriptor: Descriptor.values()) {
+					if(descriptor == Descriptor.RESIDUE_TYPE) { continue; }
+					matrix.values[descriptor.ordinal()][row] = parse(fields, columns[descriptor.ordinal()]);
+				}
+				
+				codes[row] = (residueColumn >= 0 && residueColumn < fields.length) ? fields[residueColumn] : null;
+				matrix.response[row] = parse(fields, responseColumn);
+				matrix.number[row] = (int) parse(fields, numberColumn);
+				matrix.chain[row] = (chainColumn < fields.length) ? fields[chainColumn] : "";
+				matrix.letter[row] = (letterColumn < fields.length && fields[letterColumn].length() > 0) ? fields[letterColumn].charAt(0) : '?';
+				++matrix.size;
+			}
+			
+			matrix.resize(matrix.size);
+			return matrix.encode(Arrays.copyOf(codes, matrix.size));
+		} finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Set the level of every row (and the levels, if the matrix doesn't have any yet)
+	 * @param codes: the residue code of every row
+	 * @return: the matrix
+	 */
+	private FeatureMatrix encode(String[] codes) {
+		if(levelNames == null) {
+			TreeSet<String> sorted = new TreeSet<String>();
+			for(String code: codes) {
+				if(code != null && code.length() > 0) { sorted.add(code); }
+			}
+			levelNames = sorted.toArray(new String[sorted.size()]);
+		}
+		
+		Hashtable<String, Integer> lookup = new Hashtable<String, Integer>();
+		for(int index = 0; index < levelNames.length; ++index) { lookup.put(levelNames[index], index); }
+		
+		for(int row = 0; row < size; ++row) {
+			Integer index = (codes[row] == null) ? null : lookup.get(codes[row]);
+			level[row] = (index == null) ? -1 : index;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Change the capacity of every column
+	 * @param capacity: the new capacity
+	 */
+	private void resize(int capacity) {
+		for(int index = 0; index < values.length; ++index) {
+			if(values[index] != null) { values[index] = Arrays.copyOf(values[index], capacity); }
+		}
+		level = Arrays.copyOf(level, capacity);
+		response = Arrays.copyOf(response, capacity);
+		number = Arrays.copyOf(number, capacity);
+		chain = Arrays.copyOf(chain, capacity);
+		letter = Arrays.copyOf(letter, capacity);
+	}
+	
+	/**
+	 * @param fields: the fields of a line
+	 * @param column: the column to read (-1 if there isn't one)
+	 * @return: the value of the column, or NaN
+	 */
+	private static double parse(String[] fields, int column) {
+		if(column < 0 || column >= fields.length || fields[column].length() == 0) { return Double.NaN; }
+		try {
+			return Double.parseDouble(fields[column]);
+		} catch (NumberFormatException NFE) {
+			return Double.NaN;
+		}
+	}
+	
+	/**
+	 * @param names: the column names
+	 * @param name: the name to look for
+	 * @return: the position of the column, or -1
+	 */
+	private static int indexOf(String[] names, String name) {
+		for(int index = 0; index < names.length; ++index) {
+			if(names[index].trim().equals(name)) { return index; }
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param names: the column names
+	 * @param name: the name to look for
+	 * @param fileName: the file, for the error message
+	 * @return: the position of the column
+	 */
+	private static int require(String[] names, String name, String fileName) {
+		int index = indexOf(names, name);
+		if(index == -1) { throw new InvalidDataFormatException(fileName + " has no " + name + " column!"); }
+		return index;
+	}
+	
+	/**
+	 * @param descriptor: a descriptor
+	 * @return: the name of its column in a learning set (and its name in a model's formula)
+	 */
+	public static String columnName(Descriptor descriptor) {
+		switch(descriptor) {
+		case AMBER95:		return "amber95";
+		case CHARGE:			return "AvgCharge";
+		case E20:			return "E20";
+		case E6:				return "E6";
+		case ISUNSTRUCT:		return "isUnstruct";
+		case RESIDUE_TYPE:	return "Residue";
+		case VKABAT:			return "Vkabat";
+		default:
+			return descriptor.name();
+		}
+	}
+	
+	/**
+	 * @param descriptor: a numeric descriptor (not RESIDUE_TYPE)
+	 * @return: the descriptor's value for every row
+	 */
+	public double[] column(Descriptor descriptor) {
+		if(descriptor == Descriptor.RESIDUE_TYPE) {
+			throw new IllegalArgumentException("The residue type is categorical: use levels()");
+		}
+		return values[descriptor.ordinal()];
+	}
+	
+	/** @return: the level of each row's residue type (-1 if it is not a known level) */
+	public int[] levels() { return level; }
+	/** @return: the names of the levels: the first one is the reference level */
+	public String[] levelNames() { return levelNames; }
+	/** @return: the isSwitch value of each row */
+	public double[] response() { return response; }
+	
+	/** @return: the number of rows */
+	public int size() { return size; }
+	
+	/**
+	 * @param row: a row
+	 * @return: whether the residue is a switch: its isSwitch value is 1 (weighted residues are not)
+	 */
+	public boolean isSwitch(int row) { return response[row] == 1; }
+	public int number(int row) { return number[row]; }
+	public String chain(int row) { return chain[row]; }
+	public char letter(int row) { return letter[row]; }
+	
+	public String toString() { return "FeatureMatrix (" + size + " rows, " + levelNames.length + " residue types)"; }
+}
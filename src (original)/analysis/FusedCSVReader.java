@@ -0,0 +1,324 @@
+package analysis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import util.BaseTools;
+
+/**
+ * Streams a fused test-set/logistic regression file straight into a PredictionTable.
+ *
+ * The file is read in chunks into a byte buffer and every field is parsed in place:
+ * no line Strings, split() arrays or substrings are made per row.
+ * Each row has the form:
+ * 		residue number, chain ID (PDB ID + chain), residue letter, one propensity per combination, isSwitch
+ * The first line is the header and is skipped.
+ *
+ * Malformed rows are skipped and recorded (see malformedRows()) instead of stopping the program.
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class FusedCSVReader extends BaseTools {
+	private static final int BUFFER_SIZE = 1 << 16;
+	//rough size of a row, used to guess the number of rows in a file
+	private static final int BYTES_PER_PROPENSITY = 10;
+	
+	//largest mantissa that can be converted to a double exactly (2^53)
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	//powers of ten that can be represented exactly as doubles
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	
+	//the descriptor combinations, in the order of the file's columns
+	private Descriptor[][] descriptorList;
+	//descriptions of the rows that could not be parsed
+	private ArrayList<String> malformed;
+	
+	//the line being parsed
+	private byte[] buffer;
+	private int lineNumber;
+	//start of the next field, and the end of the line
+	private int position, lineEnd;
+	//start of the field last returned by nextField()
+	private int fieldStart;
+	
+	//the last chain ID seen, so that the dictionary is only consulted when the chain changes
+	private byte[] lastChain = new byte[5];
+	private int lastChainIndex = -1;
+	
+	//reused for every row
+	private double[] propensities;
+	
+	/**
+	 *
+	 * @param descriptorList: the descriptor combinations, in the order of the file's columns
+	 */
+	public FusedCSVReader(Descriptor[][] descriptorList) {
+		this.descriptorList = descriptorList;
+		malformed = new ArrayList<String>();
+		propensities = new double[descriptorList.length];
+	}
+	
+	/**
+	 * Read a fused file
+	 * @param fileName: the name of the file to read
+	 * @return: a PredictionTable with one row per valid line of the file
+	 * @throws IOException: if the file cannot be read
+	 */
+	public PredictionTable read(String fileName) throws IOException {
+		malformed.clear();
+		lastChainIndex = -1;
+		lineNumber = 0;
+		
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		
+		try {
+			long estimate = channel.size() / (BYTES_PER_PROPENSITY * (descriptorList.length+2));
+			PredictionTable table = new PredictionTable(descriptorList, (int) Math.min(estimate+1, Integer.MAX_VALUE-8));
+			
+			buffer = new byte[BUFFER_SIZE];
+			ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+			int start = 0, end = 0, scan = 0;
+			boolean eof = false;
+			
+			while(true) {
+				int newLine = -1;
+				for(int index = scan; index < end; ++index) {
+					if(buffer[index] == '\n') { newLine = index; break; }
+				}
+				
+				if(newLine >= 0) {
+					parseLine(start, newLine, table);
+					start = newLine + 1;
+					scan = start;
+				} else if(eof) {
+					//the last line does not need to end in a new line
+					if(start < end) { parseLine(start, end, table); }
+					break;
+				} else {
+					//move the partial line to the front of the buffer and read some more
+					if(start > 0) {
+						System.arraycopy(buffer, start, buffer, 0, end - start);
+						end -= start;
+						start = 0;
+					} else if(end == buffer.length) {
+						byte[] bigger = new byte[buffer.length * 2];
+						System.arraycopy(buffer, 0, bigger, 0, end);
+						buffer = bigger;
+						wrapper = ByteBuffer.wrap(buffer);
+					}
+					scan = end;
+					
+					wrapper.limit(buffer.length);
+					wrapper.position(end);
+					int read = channel.read(wrapper);
+					if(read < 0) { eof = true; } else { end += read; }
+				}
+			}
+			
+			table.trim();
+			return table;
+		} finally {
+			channel.close();
+			buffer = null;
+		}
+	}
+	
+	/**
+	 * @return: descriptions of the rows that were skipped during the last read
+	 */
+	public ArrayList<String> malformedRows() { return malformed; }
+	
+	/**
+	 * Parse one line of the buffer into a row of the table
+	 * @param from: the first byte of the line
+	 * @param to: the position of the new line (or the end of the file)
+	 * @param table: the table to add the row to
+	 */
+	private void parseLine(int from, int to, PredictionTable table) {
+		++lineNumber;
+		if(to > from && buffer[to-1] == '\r') { --to; }
+		
+		//the first line is the header, and blank lines are ignored
+		if(lineNumber == 1 || to == from) { return; }
+		
+		position = from;
+		lineEnd = to;
+		
+		try {
+			int resNum = parseInt(nextField());
+			int chainIndex = parseChain(nextField(), table);
+			nextField();
+			
+			for(int index = 0; index < propensities.length; ++index) {
+				propensities[index] = parseDouble(nextField());
+			}
+			
+			boolean isSwitch = parseBoolean(nextField());
+			table.addRow(chainIndex, resNum, isSwitch, propensities);
+		} catch (NumberFormatException NFE) {
+			malformed.add("line " + lineNumber + ": " + NFE.getMessage() + ": " + new String(buffer, from, to-from, StandardCharsets.ISO_8859_1));
+		}
+	}
+	
+	/**
+	 * Move to the next field of the line
+	 * @return: the end of the field: the field starts at fieldStart
+	 */
+	private int nextField() {
+		if(position > lineEnd) { throw new NumberFormatException("too few columns"); }
+		
+		int end = position;
+		while(end < lineEnd && buffer[end] != ',') { ++end; }
+		fieldStart = position;
+		position = end + 1;
+		return end;
+	}
+	
+	/**
+	 * Look up the chain ID in the first 5 bytes of a field
+	 * @param end: the end of the field
+	 * @param table: the table whose dictionary to use
+	 * @return: the index of the chain ID
+	 */
+	private int parseChain(int end, PredictionTable table) {
+		int start = fieldStart;
+		if(end - start < lastChain.length) { throw new NumberFormatException("invalid chain ID"); }
+		
+		boolean same = (lastChainIndex >= 0);
+		for(int index = 0; same && index < lastChain.length; ++index) {
+			same = (buffer[start+index] == lastChain[index]);
+		}
+		
+		if(!same) {
+			System.arraycopy(buffer, start, lastChain, 0, lastChain.length);
+			lastChainIndex = table.chainIndex(new String(lastChain, StandardCharsets.ISO_8859_1));
+		}
+		
+		return lastChainIndex;
+	}
+	
+	/**
+	 * Parse a boolean like Boolean.parseBoolean(): only "true" (any case, ignoring spaces) is true
+	 * @param end: the end of the field
+	 * @return: the value of the field
+	 */
+	private boolean parseBoolean(int end) {
+		int start = fieldStart;
+		while(start < end && buffer[start] == ' ') { ++start; }
+		while(end > start && buffer[end-1] == ' ') { --end; }
+		
+		if(end - start != 4) { return false; }
+		return (buffer[start] | 0x20) == 't' && (buffer[start+1] | 0x20) == 'r'
+				&& (buffer[start+2] | 0x20) == 'u' && (buffer[start+3] | 0x20) == 'e';
+	}
+	
+	/**
+	 * Parse an integer in place
+	 * @param end: the end of the field
+	 * @return: the value of the field
+	 */
+	private int parseInt(int end) {
+		int start = fieldStart;
+		while(start < end && buffer[start] == ' ') { ++start; }
+		while(end > start && buffer[end-1] == ' ') { --end; }
+		
+		boolean negative = false;
+		if(start < end && (buffer[start] == '-' || buffer[start] == '+')) {
+			negative = (buffer[start] == '-');
+			++start;
+		}
+		
+		if(start == end || end - start > 9) { throw new NumberFormatException("invalid residue number"); }
+		
+		int value = 0;
+		for(int index = start; index < end; ++index) {
+			int digit = buffer[index] - '0';
+			if(digit < 0 || digit > 9) { throw new NumberFormatException("invalid residue number"); }
+			value = value * 10 + digit;
+		}
+		
+		return negative ? -value : value;
+	}
+	
+	/**
+	 * Parse a double in place.  Plain decimal numbers with at most 15-16 significant digits
+	 * and a small exponent are converted exactly without making a String;
+	 * anything else (NaN, Infinity, very long numbers) is handed to Double.parseDouble().
+	 * @param end: the end of the field
+	 * @return: the value of the field
+	 */
+	private double parseDouble(int end) {
+		int start = fieldStart;
+		while(start < end && buffer[start] == ' ') { ++start; }
+		while(end > start && buffer[end-1] == ' ') { --end; }
+		
+		int index = start;
+		boolean negative = false;
+		if(index < end && (buffer[index] == '-' || buffer[index] == '+')) {
+			negative = (buffer[index] == '-');
+			++index;
+		}
+		
+		long mantissa = 0;
+		int exponent = 0, digits = 0;
+		boolean exact = true;
+		
+		for(; index < end && buffer[index] >= '0' && buffer[index] <= '9'; ++index, ++digits) {
+			mantissa = mantissa * 10 + (buffer[index] - '0');
+			if(mantissa >= MAX_EXACT_MANTISSA) { exact = false; break; }
+		}
+		
+		if(exact && index < end && buffer[index] == '.') {
+			for(++index; index < end && buffer[index] >= '0' && buffer[index] <= '9'; ++index, ++digits) {
+				mantissa = mantissa * 10 + (buffer[index] - '0');
+				--exponent;
+				if(mantissa >= MAX_EXACT_MANTISSA) { exact = false; break; }
+			}
+		}
+		
+		if(exact && index < end && (buffer[index] == 'e' || buffer[index] == 'E')) {
+			++index;
+			boolean negativeExp = false;
+			if(index < end && (buffer[index] == '-' || buffer[index] == '+')) {
+				negativeExp = (buffer[index] == '-');
+				++index;
+			}
+			
+			int explicit = 0, expDigits = 0;
+			for(; index < end && buffer[index] >= '0' && buffer[index] <= '9' && expDigits < 4; ++index, ++expDigits) {
+				explicit = explicit * 10 + (buffer[index] - '0');
+			}
+			
+			if(expDigits == 0) { exact = false; }
+			exponent += negativeExp ? -explicit : explicit;
+		}
+		
+		if(!exact || digits == 0 || index != end || exponent < -22 || exponent > 22) {
+			String field = new String(buffer, start, end-start, StandardCharsets.ISO_8859_1);
+			try {
+				return Double.parseDouble(field);
+			} catch (NumberFormatException NFE) {
+				throw new NumberFormatException("invalid propensity \"" + field + "\"");
+			}
+		}
+		
+		double value = (double) mantissa;
+		if(exponent < 0) {
+			value /= POWERS_OF_TEN[-exponent];
+		} else {
+			value *= POWERS_OF_TEN[exponent];
+		}
+		
+		return negative ? -value : value;
+	}
+}
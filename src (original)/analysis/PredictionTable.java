@@ -0,0 +1,277 @@
+package analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+
+import bio.BioObject;
+
+/**
+ * Stores the predictions for a whole (fused) test set as parallel primitive arrays
+ * instead of one Prediction object per residue per descriptor combination.
+ *
+ * Row r describes one residue: its chain (an index into a dictionary of chain IDs),
+ * its residue number, whether it is a switch, and one propensity per combination.
+ * Propensities are stored by column, so every statistic over one combination
+ * runs over one contiguous double[].
+ *
+ * Prediction objects can still be made on demand with prediction(row, col).
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class PredictionTable extends BioObject {
+	private static final long serialVersionUID = 1L;
+	private static final int DEFAULT_CAPACITY = 1024;
+	
+	//the descriptor combinations, one per column
+	private Descriptor[][] combinations;
+	//propensity[column][row]
+	private double[][] propensity;
+	//isSwitch[row]
+	private boolean[] isSwitch;
+	//residue number of each row
+	private int[] residue;
+	//index into chainIDs of each row
+	private int[] chain;
+	//the number of rows in use
+	private int size;
+	
+	//dictionary of chain IDs (PDB ID + chain), and the reverse lookup
+	private ArrayList<String> chainIDs;
+	private Hashtable<String, Integer> chainLookup;
+	
+	/**
+	 * Make an empty PredictionTable
+	 * @param combinations: the descriptor combinations, one per column
+	 */
+	public PredictionTable(Descriptor[][] combinations) {
+		this(combinations, DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Make an empty PredictionTable
+	 * @param combinations: the descriptor combinations, one per column
+	 * @param capacity: the expected number of rows
+	 */
+	public PredictionTable(Descriptor[][] combinations, int capacity) {
+		if(capacity < 1) { capacity = 1; }
+		this.combinations = combinations;
+		propensity = new double[combinations.length][capacity];
+		isSwitch = new boolean[capacity];
+		residue = new int[capacity];
+		chain = new int[capacity];
+		chainIDs = new ArrayList<String>();
+		chainLookup = new Hashtable<String, Integer>();
+	}
+	
+	/**
+	 * Get the index of a chain ID in the dictionary, adding it if needed
+	 * @param chainID: the PDB ID followed by the chain (ex: "1ABCA")
+	 * @return: the index of the chain ID
+	 */
+	public int chainIndex(String chainID) {
+		Integer index = chainLookup.get(chainID);
+		if(index == null) {
+			index = chainIDs.size();
+			chainIDs.add(chainID);
+			chainLookup.put(chainID, index);
+		}
+		return index;
+	}
+	
+	/**
+	 * Add a row to the table
+	 * @param chainID: the PDB ID followed by the chain (ex: "1ABCA")
+	 * @param residueNumber: the index of the residue in the protein chain
+	 * @param isSwitch: whether or not the residue is a switch
+	 * @param propensities: one propensity per combination
+	 * @return: the index of the new row
+	 */
+	public int addRow(String chainID, int residueNumber, boolean isSwitch, double... propensities) {
+		return addRow(chainIndex(chainID), residueNumber, isSwitch, propensities);
+	}
+	
+	/**
+	 * Add a row to the table
+	 * @param chainIndex: the index of the chain ID, from chainIndex()
+	 * @param residueNumber: the index of the residue in the protein chain
+	 * @param isSwitch: whether or not the residue is a switch
+	 * @param propensities: one propensity per combination
+	 * @return: the index of the new row
+	 */
+	public int addRow(int chainIndex, int residueNumber, boolean isSwitch, double... propensities) {
+		if(propensities.length != combinations.length) {
+			throw new ArrayIndexOutOfBoundsException("Expected " + combinations.length + " propensities, got " + propensities.length);
+		}
+		
+		if(size == this.isSwitch.length) { resize(max(1, size * 2)); }
+		
+		for(int col = 0; col < combinations.length; ++col) {
+			propensity[col][size] = propensities[col];
+		}
+		this.isSwitch[size] = isSwitch;
+		residue[size] = residueNumber;
+		chain[size] = chainIndex;
+		return size++;
+	}
+	
+	/**
+	 * Set a single propensity
+	 * @param row: the row
+	 * @param col: the combination
+	 * @param value: the propensity
+	 */
+	public void setPropensity(int row, int col, double value) {
+		checkRow(row);
+		propensity[col][row] = value;
+	}
+	
+	/**
+	 * Release any unused capacity
+	 */
+	public void trim() {
+		if(size != isSwitch.length) { resize(size); }
+	}
+	
+	/**
+	 * Change the capacity of the table
+	 * @param capacity: the new capacity
+	 */
+	private void resize(int capacity) {
+		for(int col = 0; col < combinations.length; ++col) {
+			propensity[col] = Arrays.copyOf(propensity[col], capacity);
+		}
+		isSwitch = Arrays.copyOf(isSwitch, capacity);
+		residue = Arrays.copyOf(residue, capacity);
+		chain = Arrays.copyOf(chain, capacity);
+	}
+	
+	/**
+	 * @param row: the row to check
+	 */
+	private void checkRow(int row) {
+		if(row < 0 || row >= size) { throw new ArrayIndexOutOfBoundsException(row); }
+	}
+	
+	/**
+	 * @return: the number of rows (residues) in the table
+	 */
+	public int size() { return size; }
+	
+	/**
+	 * @return: the number of descriptor combinations (columns)
+	 */
+	public int columns() { return combinations.length; }
+	
+	/**
+	 * @param col: the column
+	 * @return: the descriptors used by the column
+	 */
+	public Descriptor[] combination(int col) { return combinations[col]; }
+	
+	/**
+	 * @param col: the column
+	 * @return: the label of the column, such as "E6  + Res"
+	 */
+	public String label(int col) { return Descriptor.label(combinations[col]); }
+	
+	/**
+	 * @return: the labels of every column
+	 */
+	public String[] labels() {
+		String[] labels = new String[combinations.length];
+		for(int col = 0; col < labels.length; ++col) { labels[col] = label(col); }
+		return labels;
+	}
+	
+	/**
+	 * Get the backing array for a column.  The array is exactly size() long.
+	 * Do not modify it.
+	 * @param col: the column
+	 * @return: the propensities for the column, by row
+	 */
+	public double[] column(int col) {
+		trim();
+		return propensity[col];
+	}
+	
+	/**
+	 * Get the backing array of switch values.  The array is exactly size() long.
+	 * Do not modify it.
+	 * @return: whether each row is a switch
+	 */
+	public boolean[] switches() {
+		trim();
+		return isSwitch;
+	}
+	
+	/**
+	 * @param row: the row
+	 * @param col: the column
+	 * @return: the propensity of the row for the combination
+	 */
+	public double propensity(int row, int col) { checkRow(row); return propensity[col][row]; }
+	
+	/**
+	 * @param row: the row
+	 * @return: true if the residue is a switch
+	 */
+	public boolean isSwitch(int row) { checkRow(row); return isSwitch[row]; }
+	
+	/**
+	 * @param row: the row
+	 * @return: the index of the residue in the protein chain
+	 */
+	public int residue(int row) { checkRow(row); return residue[row]; }
+	
+	/**
+	 * @param row: the row
+	 * @return: the chain ID (PDB ID + chain) of the row
+	 */
+	public String chainID(int row) { checkRow(row); return chainIDs.get(chain[row]); }
+	
+	/**
+	 * @param row: the row
+	 * @return: the RCSB-PDB ID of the protein the row is from
+	 */
+	public String protein(int row) { return chainID(row).substring(0, 4); }
+	
+	/**
+	 * @param row: the row
+	 * @return: the RCSB-PDB chain ID of the row
+	 */
+	public char chain(int row) { return chainID(row).charAt(4); }
+	
+	/**
+	 * Same as Prediction.error(): 1 - propensity for switches, propensity for non-switches
+	 * @param row: the row
+	 * @param col: the column
+	 * @return: the error of the prediction
+	 */
+	public double error(int row, int col) {
+		checkRow(row);
+		return (isSwitch[row]) ? 1 - propensity[col][row] : propensity[col][row];
+	}
+	
+	/**
+	 * Make a Prediction object for one cell of the table
+	 * @param row: the row
+	 * @param col: the column
+	 * @return: a new Prediction object with the cell's data
+	 */
+	public Prediction prediction(int row, int col) {
+		String chainID = chainID(row);
+		Prediction pred = new Prediction(chainID.substring(0, 4), chainID.charAt(4), residue[row], propensity[col][row], isSwitch[row]);
+		pred.addDescriptor(combinations[col]);
+		return pred;
+	}
+	
+	@Override
+	public String impliedFileName() { return toString(); }
+	
+	public String toString() {
+		return "PredictionTable (" + size + " residues, " + combinations.length + " combinations, " + chainIDs.size() + " chains)";
+	}
+}
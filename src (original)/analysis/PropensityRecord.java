@@ -1,6 +1,9 @@
 package analysis;
 
 import java.text.NumberFormat;
+import java.util.Arrays;
+
+import analysis.stats.PropensityHistogram;
 
 import bio.BioObject;
 import bio.exceptions.DataValueOutOfRangeException;
@@ -8,6 +11,7 @@ import bio.exceptions.DataValueOutOfRangeException;
 /**
  * This class represents how many residues are predicted to be switches vs how many are not
  * for various propensity thresholds
+ * Interval k holds the propensities in [k/intervals, (k+1)/intervals) (the last one also holds 1)
  * 
  * @author BenjyStrauss
  * This is only used by the bioUI.stats class
@@ -50,6 +54,19 @@ public class PropensityRecord extends BioObject {
 		increments = 1 / temp;
 	}
 	
+	/**
+	 * Make a record from counts that have already been made
+	 * @param name: what to name the record
+	 * @param falseTally: the number of non-switches in each interval
+	 * @param trueTally: the number of switches in each interval
+	 */
+	public PropensityRecord(String name, int[] falseTally, int[] trueTally) {
+		this(name, falseTally.length);
+		if(trueTally.length != intervals) { throw new IllegalArgumentException("Both tallies need the same number of intervals"); }
+		tally[FALSE] = Arrays.copyOf(falseTally, intervals);
+		tally[TRUE] = Arrays.copyOf(trueTally, intervals);
+	}
+	
 	/**
 	 * Getter method for the number of intervals contained by the PropensityRecord
 	 * @return: number of intervals contained by the PropensityRecord
@@ -64,20 +81,40 @@ public class PropensityRecord extends BioObject {
 	 * @param pred: the Prediction object to load data from
 	 */
 	public void processPrediction(Prediction pred) {
-		if(pred.propensity() < 0) { throw new DataValueOutOfRangeException(); }
-		if(pred.propensity() > 1) { throw new DataValueOutOfRangeException(); }
+		processPrediction(pred.propensity(), pred.isSwitch());
+	}
+	
+	/**
+	 * Load the PropensityRecord with a single prediction
+	 * @param propensity: the predicted propensity
+	 * @param isSwitch: whether the residue was actually a switch
+	 */
+	public void processPrediction(double propensity, boolean isSwitch) {
+		int bin = PropensityHistogram.bin(propensity, intervals);
+		if(bin < 0) { throw new DataValueOutOfRangeException(); }
 		
-		for(int mult = 0; mult < intervals; ++mult) {
-			if(mult * increments >= pred.propensity()) {
-				int isSwitch = (pred.isSwitch()) ? 1 : 0;
-				++tally[isSwitch][mult];
-				return;
-			}
+		++tally[isSwitch ? TRUE : FALSE][bin];
+	}
+	
+	/**
+	 * Add the tallies of another record to this one
+	 * @param other: a record with the same number of intervals
+	 */
+	public void merge(PropensityRecord other) {
+		if(other.intervals != intervals) { throw new IllegalArgumentException("Cannot merge records with different intervals"); }
+		for(int index = 0; index < intervals; ++index) {
+			tally[FALSE][index] += other.tally[FALSE][index];
+			tally[TRUE][index] += other.tally[TRUE][index];
 		}
-		
-		throw new DataValueOutOfRangeException();
 	}
 	
+	/**
+	 * @param isSwitch: count switches (true) or non-switches (false)
+	 * @param interval: the propensity interval
+	 * @return: the number of predictions in the interval
+	 */
+	public int tally(boolean isSwitch, int interval) { return tally[isSwitch ? TRUE : FALSE][interval]; }
+	
 	public String toString() {
 		StringBuilder retValBuilder = new StringBuilder();
 		retValBuilder.append(name+ "\n");
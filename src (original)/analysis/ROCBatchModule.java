@@ -0,0 +1,290 @@
+package analysis;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import analysis.stats.AUCAnalysis;
+import analysis.stats.ROCEngine;
+import analysis.stats.ROCRecord;
+import analysis.stats.ROCSummary;
+import analysis.visualization.ROCVisualizer;
+import bio.exceptions.InvalidResolutionException;
+import bio.exceptions.MissingDataException;
+import util.BaseTools;
+
+/**
+ * Fits ROC curves to fused prediction files, writing the -roc-log.csv and the ROCPlot folder
+ * for each file.  Nothing here uses static mutable state, so many files can be fit at once:
+ * runBatch() processes a list of files on a bounded thread pool and writes one summary table
+ * (AUC, best Youden threshold and accuracy for every descriptor combination in every file).
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class ROCBatchModule extends BaseTools {
+	public static final double DEFAULT_INCREMENT = 0.01;
+	public static final String ROC_LOG_SUFFIX = "-roc-log.csv";
+	public static final String DEFAULT_SUMMARY_FILE = OUTPUT + "roc-batch-summary.csv";
+	
+	//files in a batch directory that are outputs, not predictions
+	private static final String[] OUTPUT_SUFFIXES = { ROC_LOG_SUFFIX, "-delong.csv", "-summary.csv" };
+	
+	/**
+	 * Determine the name of a log file for a data file
+	 * @param dataFile: the data file
+	 * @param suffix: the end of the log file name, such as "-roc-log.csv"
+	 * @return name of the log file
+	 */
+	public static String logFileName(String dataFile, String suffix) {
+		if(dataFile == null) {
+			throw new MissingDataException("No prediction data has been loaded!");
+		}
+		
+		String logFileName;
+		if(dataFile.endsWith(CSV)) {
+			logFileName = dataFile.substring(0, dataFile.indexOf(CSV));
+		} else {
+			logFileName = dataFile;
+		}
+		
+		return logFileName + suffix;
+	}
+	
+	/**
+	 * Make a formatter that shows as many decimal places as the threshold increment needs
+	 * DecimalFormat is not thread safe, so each fit makes its own
+	 * @param decimal: the threshold increment
+	 * @return: the formatter
+	 */
+	public static DecimalFormat makeThresholdFormatter(double decimal) {
+		double thresholdLog = Math.log10(decimal);
+		int thresholdFormat = (int) thresholdLog;
+		
+		if(thresholdFormat > thresholdLog) {
+			thresholdLog -= 1;
+		}
+		
+		thresholdFormat *= -1;
+		
+		StringBuilder thresholdFormatBuilder = new StringBuilder();
+		thresholdFormatBuilder.append(".");
+		for(int i = 0; i < thresholdFormat; ++i) {
+			thresholdFormatBuilder.append("#");
+		}
+		
+		return new DecimalFormat(thresholdFormatBuilder.toString());
+	}
+	
+	/**
+	 * Fit ROC curves to a table of predictions: writes the ROC log and the ROC plots
+	 * @param table: the predictions
+	 * @param dataFile: the file the predictions were read from (used to name the outputs)
+	 * @param thresholdIncrement: the distance between thresholds
+	 * @param exact: write one point per distinct propensity instead of using fixed thresholds
+	 * @param print: print every record to the console
+	 * @return: a summary for each descriptor combination, the last being the total
+	 * @throws FileNotFoundException: if the ROC log cannot be written
+	 */
+	public static ROCSummary[] rocFit(PredictionTable table, String dataFile, double thresholdIncrement,
+			boolean exact, boolean print) throws FileNotFoundException {
+		if(thresholdIncrement <= 0 || thresholdIncrement >= 1) {
+			throw new InvalidResolutionException("Threshold must be between 0 and 1");
+		}
+		
+		String logName = logFileName(dataFile, ROC_LOG_SUFFIX);
+		ROCVisualizer visualizer = new ROCVisualizer(logName);
+		ROCEngine engine = ROCEngine.fromTable(table);
+		DecimalFormat thresholdFormatter = makeThresholdFormatter(thresholdIncrement);
+		int combinations = engine.columns()-1;
+		
+		File rocLog = new File(logName);
+		if(rocLog.exists()) { rocLog.delete(); }
+		
+		PrintWriter rocWriter = new PrintWriter(new FileOutputStream(rocLog, true));
+		rocWriter.write(ROCRecord.fullROCLogHeader() + "\n");
+		
+		//best[column] is the record with the highest Youden's J so far
+		ROCRecord[] best = new ROCRecord[engine.columns()];
+		double[] bestThreshold = new double[engine.columns()];
+		
+		if(exact) {
+			for(int col = 0; col < engine.columns(); ++col) {
+				double[] thresholds = engine.exactThresholds(col);
+				ROCRecord[] curve = engine.exactCurve(col);
+				
+				for(int index = 0; index < curve.length; ++index) {
+					//the total column's thresholds are sums of propensities
+					double threshold = thresholds[index];
+					if(col == combinations) { threshold /= combinations; }
+					writeROCRecords(new ROCRecord[] { curve[index] }, ""+threshold, rocWriter, print);
+				}
+				
+				int bestIndex = ROCSummary.bestYouden(curve);
+				best[col] = curve[bestIndex];
+				bestThreshold[col] = thresholds[bestIndex] / ((col == combinations) ? combinations : 1);
+				visualizer.addRecords(curve);
+			}
+		} else {
+			for(double threshold: ROCEngine.thresholds(thresholdIncrement)) {
+				ROCRecord[] records = engine.recordsAt(threshold);
+				writeROCRecords(records, thresholdFormatter.format(threshold), rocWriter, print);
+				visualizer.addRecords(records);
+				
+				for(int col = 0; col < records.length; ++col) {
+					if(best[col] == null || ROCSummary.youden(records[col]) > ROCSummary.youden(best[col])) {
+						best[col] = records[col];
+						bestThreshold[col] = threshold;
+					}
+				}
+			}
+		}
+		
+		rocWriter.close();
+		visualizer.makePlot(thresholdIncrement);
+		
+		double[] aucs = new double[engine.columns()];
+		try {
+			AUCAnalysis analysis = AUCAnalysis.fromTable(table);
+			for(int col = 0; col < aucs.length; ++col) { aucs[col] = analysis.auc(col); }
+		} catch (MissingDataException MDE) {
+			//AUC is undefined without both switches and non-switches
+			Arrays.fill(aucs, Double.NaN);
+		}
+		
+		ROCSummary[] summaries = new ROCSummary[engine.columns()];
+		for(int col = 0; col < summaries.length; ++col) {
+			summaries[col] = new ROCSummary(dataFile, engine.label(col), aucs[col], bestThreshold[col], best[col]);
+		}
+		
+		return summaries;
+	}
+	
+	/**
+	 * Write a set of ROCRecords to a ROC log
+	 * @param records: the records to write
+	 * @param threshold: the (formatted) threshold the records were computed at
+	 * @param rocWriter: the ROC log, or null to not log the records
+	 * @param print: whether to print the records to the console
+	 */
+	public static void writeROCRecords(ROCRecord[] records, String threshold, PrintWriter rocWriter, boolean print) {
+		for(ROCRecord record: records) {
+			if(print) {
+				qp(record);
+				qp("True  Positive: " + record.truePos);
+				qp("False Positive: " + record.falsePos);
+				qp("True  Negative: " + record.trueNeg);
+				qp("False Negative: " + record.falseNeg);
+			}
+			
+			if(rocWriter != null) {
+				String logRow = threshold + "," + record.toCSVRow();
+				if(print) { qp(logRow); }
+				rocWriter.write(logRow + "\n");
+			}
+		}
+	}
+	
+	/**
+	 * Get the list of prediction files for a batch
+	 * @param source: either a directory (every .csv in it that is not an output of this class)
+	 * 		or a manifest file listing one prediction file per line ('#' starts a comment)
+	 * @return: the files, in order
+	 */
+	public static String[] listFiles(String source) {
+		File sourceFile = new File(source);
+		ArrayList<String> files = new ArrayList<String>();
+		
+		if(sourceFile.isDirectory()) {
+			String[] names = sourceFile.list();
+			Arrays.sort(names);
+			
+			for(String name: names) {
+				if(!name.endsWith(CSV)) { continue; }
+				
+				boolean isOutput = false;
+				for(String suffix: OUTPUT_SUFFIXES) { if(name.endsWith(suffix)) { isOutput = true; } }
+				if(!isOutput) { files.add(new File(sourceFile, name).getPath()); }
+			}
+		} else if(sourceFile.exists()) {
+			for(String line: getFileLines(source)) {
+				if(line == null) { continue; }
+				line = line.trim();
+				if(line.length() == 0 || line.startsWith("#")) { continue; }
+				files.add(determineTrueFileName(line));
+			}
+		} else {
+			throw new MissingDataException("No such directory or manifest: " + source);
+		}
+		
+		String[] retVal = new String[files.size()];
+		files.toArray(retVal);
+		return retVal;
+	}
+	
+	/**
+	 * Fit ROC curves to many prediction files at once and write a summary table
+	 * A file that fails is reported and left out of the summary; the others still run.
+	 * @param files: the fused prediction files
+	 * @param threads: the maximum number of files to process at once
+	 * @param thresholdIncrement: the distance between thresholds
+	 * @param exact: write one point per distinct propensity instead of using fixed thresholds
+	 * @param summaryFile: the summary table to write
+	 * @return: the summaries of every file that succeeded
+	 */
+	public static ArrayList<ROCSummary> runBatch(String[] files, int threads, final double thresholdIncrement,
+			final boolean exact, String summaryFile) {
+		if(threads < 1) { threads = 1; }
+		ExecutorService pool = Executors.newFixedThreadPool(min(threads, max(files.length, 1)));
+		ArrayList<Future<ROCSummary[]>> futures = new ArrayList<Future<ROCSummary[]>>();
+		
+		for(final String file: files) {
+			futures.add(pool.submit(new Callable<ROCSummary[]>() {
+				public ROCSummary[] call() throws IOException {
+					PredictionTable table = CSVParser.readFile(file);
+					return rocFit(table, file, thresholdIncrement, exact, false);
+				}
+			}));
+		}
+		
+		ArrayList<ROCSummary> summaries = new ArrayList<ROCSummary>();
+		
+		try {
+			for(int index = 0; index < files.length; ++index) {
+				try {
+					ROCSummary[] result = futures.get(index).get();
+					for(ROCSummary summary: result) { summaries.add(summary); }
+					qp("ROC fit complete: " + files[index]);
+				} catch (ExecutionException EE) {
+					qerr("ROC fit failed for " + files[index] + ": " + EE.getCause());
+				}
+			}
+		} catch (InterruptedException IE) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			return summaries;
+		}
+		
+		pool.shutdown();
+		
+		String lines[] = new String[summaries.size()+1];
+		lines[0] = ROCSummary.header();
+		for(int index = 0; index < summaries.size(); ++index) {
+			lines[index+1] = summaries.get(index).toCSVRow();
+		}
+		writeFileLines(summaryFile, lines);
+		
+		return summaries;
+	}
+}
@@ -0,0 +1,294 @@
+package analysis;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import analysis.stats.AUCAnalysis;
+import analysis.stats.LogisticRegression;
+import analysis.stats.RegressionResult;
+import analysis.stats.RegressionTableValue;
+import util.BaseTools;
+
+/**
+ * Fits one logistic regression model (isSwitch ~ descriptors) per descriptor combination
+ * on a learning set and predicts a test set with each of them.
+ *
+ * Both sets are read once into FeatureMatrices, and every model is fitted from the same columns,
+ * one task per model on a work-stealing pool.  The results are RegressionResults and one
+ * column of probabilities per model, which can be used directly (predictions()) or written
+ * as the fused files CSVParser reads (writeFused()).
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class RegressionEngine extends BaseTools {
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+	public static final String DEPENDANT_VARIABLE = "isSwitch";
+	//how the residue type appears in a formula
+	public static final String RESIDUE_TERM = "Residue, levels=SideChainIDs";
+	private static final String INTERCEPT = "Intercept";
+	private static final double THRESHOLD = 0.5;
+	
+	private final FeatureMatrix learning;
+	private final FeatureMatrix test;
+	private final Descriptor[][] combinations;
+	//the L2 penalty
+	private final double penalty;
+	
+	private RegressionResult[] results;
+	//probability[combination][test row]
+	private double[][] probability;
+	
+	/**
+	 *
+	 * @param learning: the learning set
+	 * @param test: the test set (read with the learning set's levels)
+	 * @param combinations: the descriptor combinations: one model per combination
+	 * @param penalty: the L2 penalty (0 for plain maximum likelihood)
+	 */
+	public RegressionEngine(FeatureMatrix learning, FeatureMatrix test, Descriptor[][] combinations, double penalty) {
+		this.learning = learning;
+		this.test = test;
+		this.combinations = combinations;
+		this.penalty = penalty;
+	}
+	
+	/**
+	 * Fit every model and predict the test set
+	 * @param threads: the maximum number of models to fit at once
+	 * @return: this
+	 */
+	public RegressionEngine fit(int threads) {
+		results = new RegressionResult[combinations.length];
+		probability = new double[combinations.length][];
+		if(threads < 1) { threads = 1; }
+		
+		final Date date = new Date();
+		ForkJoinPool pool = new ForkJoinPool(min(threads, max(combinations.length, 1)));
+		ArrayList<Future<RegressionResult>> futures = new ArrayList<Future<RegressionResult>>(combinations.length);
+		
+		for(int index = 0; index < combinations.length; ++index) {
+			final int combination = index;
+			futures.add(pool.submit(new Callable<RegressionResult>() {
+				public RegressionResult call() {
+					return fit(combination, date);
+				}
+			}));
+		}
+		
+		try {
+			for(int index = 0; index < combinations.length; ++index) {
+				try {
+					results[index] = futures.get(index).get();
+				} catch (ExecutionException EE) {
+					pool.shutdownNow();
+					throw new RuntimeException("Could not fit model: " + formula(combinations[index]), EE.getCause());
+				}
+			}
+		} catch (InterruptedException IE) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			return this;
+		}
+		
+		pool.shutdown();
+		return this;
+	}
+	
+	/**
+	 * Fit one model and predict the test set with it
+	 * @param combination: the index of the model's descriptor combination
+	 * @param date: when the models were fitted
+	 * @return: the model's result
+	 */
+	private RegressionResult fit(int combination, Date date) {
+		Descriptor[] descriptors = combinations[combination];
+		boolean residueType = false;
+		ArrayList<Descriptor> numeric = new ArrayList<Descriptor>();
+		
+		for(Descriptor descriptor: descriptors) {
+			if(descriptor == Descriptor.RESIDUE_TYPE) {
+				residueType = true;
+			} else {
+				numeric.add(descriptor);
+			}
+		}
+		
+		double[][] learningColumns = new double[numeric.size()][];
+		double[][] testColumns = new double[numeric.size()][];
+		for(int index = 0; index < numeric.size(); ++index) {
+			learningColumns[index] = learning.column(numeric.get(index));
+			testColumns[index] = test.column(numeric.get(index));
+		}
+		
+		LogisticRegression model = new LogisticRegression(learningColumns, residueType ? learning.levels() : null,
+				learning.levelNames().length, learning.response(), penalty).fit();
+		double[] predicted = model.predict(testColumns, residueType ? test.levels() : null);
+		probability[combination] = predicted;
+		
+		//the coefficients: the intercept, the numeric descriptors, then the residue types
+		String[] names = new String[model.parameters()];
+		names[0] = INTERCEPT;
+		for(int index = 0; index < numeric.size(); ++index) { names[index+1] = FeatureMatrix.columnName(numeric.get(index)); }
+		for(int index = numeric.size()+1; index < names.length; ++index) {
+			names[index] = RESIDUE_TERM + "[T." + learning.levelNames()[index - numeric.size()] + "]";
+		}
+		
+		RegressionTableValue[] table = new RegressionTableValue[names.length];
+		for(int param = 0; param < names.length; ++param) {
+			double coef = model.coefficient(param);
+			double stdErr = model.standardError(param);
+			double z = coef / stdErr;
+			table[param] = new RegressionTableValue(names[param], coef, stdErr, z, LogisticRegression.normalPValue(z),
+					coef - AUCAnalysis.Z_95 * stdErr, coef + AUCAnalysis.Z_95 * stdErr);
+		}
+		
+		double llrPValue = model.llrPValue();
+		return new RegressionResult(formula(descriptors), accuracy(predicted), DEPENDANT_VARIABLE, "Logit",
+				(penalty > 0) ? "MLE (L2)" : "MLE", date, model.converged(), model.observations(),
+				model.observations() - model.parameters(), model.parameters() - 1, model.pseudoRSquared(),
+				model.logLikelihood(), model.nullLogLikelihood(),
+				Double.isNaN(llrPValue) ? null : BigDecimal.valueOf(llrPValue), table);
+	}
+	
+	/**
+	 * @param predicted: the probability of each test row
+	 * @return: the fraction of the test rows with a prediction that are classified correctly
+	 */
+	private double accuracy(double[] predicted) {
+		int correct = 0, total = 0;
+		for(int row = 0; row < predicted.length; ++row) {
+			if(Double.isNaN(predicted[row])) { continue; }
+			++total;
+			if((predicted[row] >= THRESHOLD) == test.isSwitch(row)) { ++correct; }
+		}
+		return (total == 0) ? Double.NaN : (double) correct / total;
+	}
+	
+	/**
+	 * @param descriptors: a descriptor combination
+	 * @return: the formula of its model (ex: "isSwitch ~ E20 + Residue, levels=SideChainIDs")
+	 */
+	public static String formula(Descriptor[] descriptors) {
+		StringBuilder builder = new StringBuilder(DEPENDANT_VARIABLE + " ~ ");
+		for(int index = 0; index < descriptors.length; ++index) {
+			if(index > 0) { builder.append(" + "); }
+			builder.append((descriptors[index] == Descriptor.RESIDUE_TYPE) ? RESIDUE_TERM : FeatureMatrix.columnName(descriptors[index]));
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * @param descriptors: a descriptor combination
+	 * @return: the shortened name of its column in a fused file (ex: "E20 + SEQ")
+	 */
+	public static String columnLabel(Descriptor[] descriptors) {
+		String label = formula(descriptors).substring(DEPENDANT_VARIABLE.length() + 3);
+		label = label.replaceAll(RESIDUE_TERM, "SEQ");
+		label = label.replaceAll("Vkabat", "VK");
+		label = label.replaceAll("isUnstruct", "IsU");
+		label = label.replaceAll("amber95", "A95");
+		return label;
+	}
+	
+	/** @return: the result of each model, in the order of the combinations */
+	public RegressionResult[] results() { return results; }
+	
+	/**
+	 * @param combination: the index of a descriptor combination
+	 * @return: the probability the model gives each row of the test set (NaN if a descriptor is missing)
+	 */
+	public double[] probability(int combination) { return probability[combination]; }
+	
+	/**
+	 * @return: the test set's predictions as a PredictionTable, as CSVParser would read them from the fused file
+	 */
+	public PredictionTable predictions() {
+		PredictionTable table = new PredictionTable(combinations, test.size());
+		double[] propensities = new double[combinations.length];
+		
+		for(int row = 0; row < test.size(); ++row) {
+			for(int col = 0; col < combinations.length; ++col) { propensities[col] = probability[col][row]; }
+			table.addRow(test.chain(row), test.number(row), test.isSwitch(row), propensities);
+		}
+		
+		table.trim();
+		return table;
+	}
+	
+	/**
+	 * Write the test set's predictions as fused files:
+	 * 		residue number, chain ID, residue letter, one column per model, isSwitch
+	 * @param exactFileName: the file for the probabilities
+	 * @param predictedFileName: the file for the predicted classes (1 if the probability is at least 0.5, 0 if not)
+	 * @throws IOException: if a file can't be written
+	 */
+	public void writeFused(String exactFileName, String predictedFileName) throws IOException {
+		PrintWriter exact = new PrintWriter(new BufferedWriter(new FileWriter(exactFileName)));
+		PrintWriter predicted = new PrintWriter(new BufferedWriter(new FileWriter(predictedFileName)));
+		StringBuilder exactLine = new StringBuilder();
+		StringBuilder predictedLine = new StringBuilder();
+		
+		try {
+			exactLine.append("No.,Chain,Letter");
+			for(Descriptor[] descriptors: combinations) { exactLine.append(',').append(columnLabel(descriptors)); }
+			exactLine.append(',').append(DEPENDANT_VARIABLE).append('\n');
+			exact.write(exactLine.toString());
+			predicted.write(exactLine.toString());
+			
+			for(int row = 0; row < test.size(); ++row) {
+				exactLine.setLength(0);
+				exactLine.append(test.number(row)).append(',').append(test.chain(row)).append(',').append(test.letter(row));
+				predictedLine.setLength(0);
+				predictedLine.append(exactLine);
+				
+				for(int col = 0; col < combinations.length; ++col) {
+					double value = probability[col][row];
+					exactLine.append(',').append(value);
+					predictedLine.append(',');
+					if(Double.isNaN(value)) {
+						predictedLine.append(value);
+					} else {
+						predictedLine.append((value >= THRESHOLD) ? 1 : 0);
+					}
+				}
+				
+				exactLine.append(',').append(test.isSwitch(row)).append('\n');
+				predictedLine.append(',').append(test.isSwitch(row)).append('\n');
+				exact.write(exactLine.toString());
+				predicted.write(predictedLine.toString());
+			}
+		} finally {
+			exact.close();
+			predicted.close();
+		}
+	}
+	
+	/**
+	 * Write the summary of every model, separated by blank lines
+	 * (the format LaTeXTableConverter.convertModelResultsToTable() reads)
+	 * @param fileName: the file to write
+	 */
+	public void writeSummaries(String fileName) {
+		ArrayList<String> lines = new ArrayList<String>();
+		for(RegressionResult result: results) {
+			for(String line: result.summary()) { lines.add(line); }
+			lines.add("");
+		}
+		writeFileLines(fileName, lines);
+	}
+	
+	public String toString() {
+		return "RegressionEngine (" + combinations.length + " models, " + learning.size() + " learning rows, " + test.size() + " test rows)";
+	}
+}
@@ -1,11 +1,13 @@
 package analysis;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Scanner;
 
+import analysis.stats.ROCAccumulator;
 import bio.exceptions.FileNotFoundRuntimeException;
+import bio.tools.ClusterReader;
 import util.BaseTools;
-import util.PythonScript;
 
 /**
  * 
@@ -92,44 +94,116 @@ public class RegressionManager extends BaseTools {
 	 * @param test_set
 	 */
 	public static void logistic_regression(String learning_set, String test_set) {
-		if(learning_set == null) { throw new NullPointerException("Learning Set cannot be NULL!"); }
-		if(test_set == null) { throw new NullPointerException("Test Set cannot be NULL!"); }
-		
-		PythonScript.runPythonScript("regression/logistic-switch2.py", learning_set, test_set);
-		autoFuse(test_set, false);
+		logistic_regression(learning_set, test_set, CSVParser.DESCRIPTOR_LIST, 0);
 	}
 	
 	/**
-	 * Perform a logistic regression on a pair of data sets
+	 * Perform a logistic regression on a pair of data sets, including the amber95 models
 	 * @param learning_set
 	 * @param test_set
 	 */
 	public static void logistic_regression_charge(String learning_set, String test_set) {
+		logistic_regression(learning_set, test_set, CSVChargeParser.DESCRIPTOR_LIST, 0);
+	}
+	
+	/**
+	 * Fit one model per descriptor combination on the learning set, and write the test set's predictions
+	 * as fused files (output/exact_<test set> and output/pred_<test set>) and the models' summaries
+	 * (output/summary_<test set>.txt)
+	 * @param learning_set
+	 * @param test_set
+	 * @param combinations: the descriptor combinations
+	 * @param penalty: the L2 penalty (0 for plain maximum likelihood)
+	 * @return: the models
+	 */
+	public static RegressionEngine logistic_regression(String learning_set, String test_set, Descriptor[][] combinations, double penalty) {
 		if(learning_set == null) { throw new NullPointerException("Learning Set cannot be NULL!"); }
 		if(test_set == null) { throw new NullPointerException("Test Set cannot be NULL!"); }
 		
-		PythonScript.runPythonScript("regression/logistic-switch3.py", learning_set, test_set);
-		autoFuse(test_set, true);
+		String testName = test_set.substring(test_set.lastIndexOf("/")+1);
+		
+		try {
+			FeatureMatrix learning = FeatureMatrix.read(determineTrueFileName(learning_set));
+			FeatureMatrix test = FeatureMatrix.read(determineTrueFileName(test_set), learning.levelNames());
+			RegressionEngine engine = new RegressionEngine(learning, test, combinations, penalty).fit(RegressionEngine.DEFAULT_THREADS);
+			
+			engine.writeFused(OUTPUT+"exact_"+testName, OUTPUT+"pred_"+testName);
+			engine.writeSummaries(OUTPUT+"summary_"+testName.replaceAll(CSV, "")+".txt");
+			return engine;
+		} catch (IOException e) {
+			qp("Logistic Regression Failed");
+			e.printStackTrace();
+			return null;
+		} catch (RuntimeException RE) {
+			//a model could not be fitted: write nothing rather than an unfitted model
+			qerr("Logistic Regression Failed: " + RE.getMessage() + ((RE.getCause() != null) ? ": " + RE.getCause().getMessage() : ""));
+			return null;
+		}
 	}
 	
 	/**
-	 * 
-	 * @param test_set
+	 * Cross-validate (or bootstrap) every descriptor combination's model on a learning set, and write
+	 * the mean and 95% confidence interval of each one's AUC and accuracy, and the pooled ROC records
+	 * @param args:
+	 * 		args[1] = the learning set
+	 * 		the first two numbers set the number of folds and repeats (10 and 10 by default)
+	 * 		"boot" bootstraps instead, with the first number as the number of replicates
+	 * 		"clusters" followed by a cluster file splits by cluster instead of by chain
+	 * 		"charge" includes the amber95 models
+	 * 		"l2" followed by a number sets the L2 penalty
+	 * 		"seed" followed by a number sets the seed of the random splits (printed, so a run can be repeated)
 	 */
-	private static void autoFuse(String test_set, boolean amber95Enabled) {
-		String modelFile = "regression/models/"+test_set.substring(test_set.lastIndexOf("/")+1);
-		modelFile = modelFile.replaceAll(CSV, "");
-		modelFile += "_exact_pred" + CSV;
+	public static void cross_validation(String args[]) {
+		if(args.length < 2 || determineTrueFileName(args[1]) == null) {
+			qp("Usage: cv <learning set> [folds] [repeats] [boot] [clusters <file>] [charge] [l2 <penalty>] [seed <n>]");
+			return;
+		}
 		
-		String modelFile2 = "regression/models/"+test_set.substring(test_set.lastIndexOf("/")+1);
-		modelFile2 = modelFile2.replaceAll(CSV, "");
-		modelFile2 += "_pred" + CSV;
+		boolean boot = false;
+		String clusterFile = null;
+		Descriptor[][] combinations = CSVParser.DESCRIPTOR_LIST;
+		double penalty = 0;
+		long seed = System.nanoTime();
+		ArrayList<Integer> numbers = new ArrayList<Integer>();
+		
+		for(int index = 2; index < args.length; ++index) {
+			switch(args[index]) {
+			case "boot":			boot = true;														break;
+			case "charge":		combinations = CSVChargeParser.DESCRIPTOR_LIST;					break;
+			case "clusters":		if(index+1 < args.length) { clusterFile = args[++index]; }			break;
+			case "l2":			if(index+1 < args.length) { penalty = Double.parseDouble(args[++index]); }	break;
+			case "seed":			if(index+1 < args.length) { seed = Long.parseLong(args[++index]); }			break;
+			default:
+				try { numbers.add(Integer.parseInt(args[index])); } catch (NumberFormatException NFE) { }
+			}
+		}
 		
 		try {
-			ResultsFusionModule.CSV_Fusion(test_set, modelFile, OUTPUT+"exact_"+test_set);
-			ResultsFusionModule.CSV_Fusion(test_set, modelFile2, OUTPUT+"pred_"+test_set);
+			FeatureMatrix learning = FeatureMatrix.read(determineTrueFileName(args[1]));
+			CrossValidator validator = new CrossValidator(learning, combinations, penalty, ROCBatchModule.DEFAULT_INCREMENT);
+			if(clusterFile != null) { validator.setClusters(ClusterReader.readClustersPDF(clusterFile)); }
+			
+			ROCAccumulator result;
+			qpl("Seed: " + seed);
+			if(boot) {
+				int replicates = (numbers.size() > 0) ? numbers.get(0) : CrossValidator.DEFAULT_REPLICATES;
+				qpl("Bootstrapping " + combinations.length + " models with " + replicates + " replicates of " + validator.groups() + " groups");
+				result = validator.bootstrap(replicates, seed, CrossValidator.DEFAULT_THREADS);
+			} else {
+				int folds = (numbers.size() > 0) ? numbers.get(0) : CrossValidator.DEFAULT_FOLDS;
+				int repeats = (numbers.size() > 1) ? numbers.get(1) : CrossValidator.DEFAULT_REPEATS;
+				qpl("Cross-validating " + combinations.length + " models: " + repeats + " x " + folds + " folds of " + validator.groups() + " groups");
+				result = validator.crossValidate(folds, repeats, seed, CrossValidator.DEFAULT_THREADS);
+			}
+			
+			CrossValidator.print(result);
+			CrossValidator.writeSummary(result, CrossValidator.DEFAULT_SUMMARY_FILE);
+			qpl("Wrote summary to: " + CrossValidator.DEFAULT_SUMMARY_FILE);
+			CrossValidator.writeROCLog(result, CrossValidator.DEFAULT_ROC_FILE);
+		} catch (ArithmeticException AE) {
+			qerr("Could not write the pooled ROC log: its counts are too large (" + AE.getMessage() + ")");
 		} catch (IOException e) {
-			qp("CSV Fusion Failed");
+			qp("Cross-validation Failed");
 			e.printStackTrace();
 		}
 	}
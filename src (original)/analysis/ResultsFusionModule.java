@@ -1,22 +1,48 @@
 package analysis;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 
 import util.BaseTools;
 
 /**
  * Used to combine a prediction from the logistic regression with the test set data
  * 		This is done so as to label the residues in the prediction
- * 
+ *
+ * The test set and the prediction files are read in lockstep, one line at a time, and every
+ * fused line is written as soon as it is made, so fusing takes the same memory for any size of file.
+ * Any number of prediction files can be fused at once: their columns are written side by side.
+ *
+ * A prediction file is either the output of the python script (an index column, then one column
+ * per model) or a fused file (No.,Chain,Letter, one column per model, isSwitch).  Each of its rows
+ * is checked against the test set's row: by index for the former, by residue number and chain for
+ * the latter.  A row that doesn't line up gets NaN for that file's columns and is reported;
+ * the fusion carries on.  A prediction line that belongs to none of the next test set rows
+ * (or whose index can't be read) is dropped, so a missing or extra line only costs one row.
+ *
  * @author Benjy Strauss
- * 
+ *
  */
 
 public class ResultsFusionModule extends BaseTools {
+	//the number of misaligned rows to print
+	private static final int MAX_REPORTED_ROWS = 10;
+	private static final String TEMP = ".tmp";
+	private static final String NAN = "NaN";
+	//how the python script names each model's column
+	static final String MODEL_PREFIX = "Predicted Values Model:isSwitch ~ ";
+	//how a fused file starts
+	private static final String KEY_HEADER = "No.,Chain,Letter,";
+	private static final String SWITCH_HEADER = "isSwitch";
+	//how many test set rows ahead a misaligned prediction line is looked for
+	private static final int RESYNC_WINDOW = 64;
 	
 	/*public static void main(String[] args) {
 		try {
@@ -26,66 +52,327 @@ public class ResultsFusionModule extends BaseTools {
 		}
 	}*/
 	
-	public static void CSV_Fusion(String testSet, String dataCSV, String fusionFileName) throws IOException {
-		//qp(">> " + dataCSV);
-		if(!dataCSV.endsWith(CSV)) { dataCSV += CSV; }
+	/**
+	 * Fuse the test set with one prediction file
+	 * @param testSet: the test set
+	 * @param dataCSV: the predictions
+	 * @param fusionFileName: the file to write (can be one of the input files)
+	 * @return: the number of test set rows that didn't line up with the predictions
+	 * @throws IOException: if a file can't be read or written
+	 */
+	public static int CSV_Fusion(String testSet, String dataCSV, String fusionFileName) throws IOException {
+		return CSV_Fusion(testSet, new String[] { dataCSV }, fusionFileName);
+	}
+	
+	/**
+	 * Fuse the test set with any number of prediction files, in one pass
+	 * 		residue number, chain ID, residue letter, the columns of every prediction file, isSwitch
+	 * @param testSet: the test set
+	 * @param dataCSVs: the prediction files, in the order their columns are to be written
+	 * @param fusionFileName: the file to write (can be one of the input files)
+	 * @return: the number of test set rows that didn't line up with at least one prediction file
+	 * @throws IOException: if a file can't be read or written
+	 */
+	public static int CSV_Fusion(String testSet, String[] dataCSVs, String fusionFileName) throws IOException {
 		if(!testSet.endsWith(CSV)) { testSet += CSV; }
+		testSet = determineTrueFileName(testSet);
 		
-		ArrayList<String> testSetData = new ArrayList<String>();
-		ArrayList<String> predictedData = new ArrayList<String>();
-		ArrayList<String> fusionData = new ArrayList<String>();
+		//written next to the destination first, so that an input file can be overwritten
+		Path destination = Paths.get(fusionFileName);
+		Path temp = Paths.get(fusionFileName + TEMP);
 		
-		testSet = determineTrueFileName(testSet);
-		dataCSV = determineTrueFileName(dataCSV);
+		BufferedReader testReader = Files.newBufferedReader(Paths.get(testSet), StandardCharsets.UTF_8);
+		PredictionSource[] sources = new PredictionSource[dataCSVs.length];
+		BufferedWriter writer = null;
+		int mismatched = 0;
 		
-		BufferedReader testReader = new BufferedReader(new FileReader(testSet));
-		BufferedReader predReader = new BufferedReader(new FileReader(dataCSV));
+		try {
+			for(int index = 0; index < dataCSVs.length; ++index) {
+				String dataCSV = dataCSVs[index];
+				if(!dataCSV.endsWith(CSV)) { dataCSV += CSV; }
+				sources[index] = new PredictionSource(determineTrueFileName(dataCSV));
+			}
+			writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8);
+			
+			StringBuilder builder = new StringBuilder();
+			String header = testReader.readLine();
+			if(header == null || keyColumns(header) == null) { throw new IOException("Not a test set: " + testSet); }
+			
+			builder.append(keyColumns(header));
+			for(PredictionSource source: sources) { builder.append(',').append(shorten(source.header)); }
+			builder.append(',').append(lastField(header)).append('\n');
+			writer.write(builder.toString());
+			
+			//the next test set rows, so misaligned prediction lines can be looked for ahead
+			ArrayDeque<String> upcoming = new ArrayDeque<String>(RESYNC_WINDOW+1);
+			int row = 0;
+			while(true) {
+				while(upcoming.size() <= RESYNC_WINDOW) {
+					String next = testReader.readLine();
+					if(next == null) { break; }
+					if(next.length() > 0) { upcoming.add(next); }
+				}
+				String line = upcoming.poll();
+				if(line == null) { break; }
+				
+				String key = keyColumns(line);
+				if(key == null) {
+					if(mismatched++ < MAX_REPORTED_ROWS) { qerr(testSet + ": malformed row " + (row+1) + ": " + line); }
+					++row;
+					continue;
+				}
+				int chainEnd = line.indexOf(',', line.indexOf(',')+1);
+				
+				builder.setLength(0);
+				builder.append(key);
+				boolean aligned = true;
+				
+				for(PredictionSource source: sources) {
+					String values = source.valuesFor(row, line, chainEnd, upcoming);
+					builder.append(',');
+					if(values != null) {
+						builder.append(values);
+					} else {
+						aligned = false;
+						source.appendMissing(builder);
+					}
+				}
+				
+				builder.append(',').append(switchValue(lastField(line))).append('\n');
+				writer.write(builder.toString());
+				
+				if(!aligned && mismatched++ < MAX_REPORTED_ROWS) {
+					qerr(testSet + ": no prediction for row " + (row+1) + ": " + line.substring(0, chainEnd));
+				}
+				++row;
+			}
+			
+			for(PredictionSource source: sources) {
+				int extra = source.remaining();
+				if(extra > 0) { qerr(source.fileName + " has " + extra + " row(s) more than " + testSet); }
+			}
+		} finally {
+			testReader.close();
+			for(PredictionSource source: sources) {
+				if(source != null) { source.close(); }
+			}
+			if(writer != null) { writer.close(); }
+		}
 		
-		while(testReader.ready()) { testSetData.add(testReader.readLine()); }
-		while(predReader.ready()) { predictedData.add(predReader.readLine()); }
+		Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING);
+		if(mismatched > 0) { qerr(mismatched + " row(s) of " + testSet + " could not be fused completely"); }
+		return mismatched;
+	}
+	
+	/**
+	 * @param line: a line of the test set
+	 * @return: its residue number, chain ID and residue letter (the 1st, 2nd and 4th fields), or null if it has fewer fields
+	 */
+	private static String keyColumns(String line) {
+		int first = line.indexOf(',');
+		int second = (first < 0) ? -1 : line.indexOf(',', first+1);
+		int third = (second < 0) ? -1 : line.indexOf(',', second+1);
+		if(third < 0) { return null; }
+		int fourth = line.indexOf(',', third+1);
+		if(fourth < 0) { fourth = line.length(); }
+		return line.substring(0, second) + "," + line.substring(third+1, fourth);
+	}
+	
+	/**
+	 * @param line: a line
+	 * @return: the line's last field
+	 */
+	private static String lastField(String line) {
+		return line.substring(line.lastIndexOf(',')+1);
+	}
+	
+	/**
+	 * @param isSwitch: the isSwitch field of the test set
+	 * @return: "true" or "false" (or the field itself if it is neither)
+	 */
+	private static String switchValue(String isSwitch) {
+		if(isSwitch.contains("0")) { return "false"; }
+		if(isSwitch.contains("1")) { return "true"; }
+		return isSwitch;
+	}
+	
+	/**
+	 * Shorten the column names of a prediction file
+	 * @param header: the model columns of the header
+	 * @return: the shortened names
+	 */
+	private static String shorten(String header) {
+		header = header.replace(MODEL_PREFIX, "");
+		header = header.replace(RegressionEngine.RESIDUE_TERM, "SEQ");
+		header = header.replace("Vkabat", "VK");
+		header = header.replace("isUnstruct", "IsU");
+		header = header.replace("amber95", "A95");
+		return header;
+	}
+	
+	/**
+	 * One prediction file, read a line at a time alongside the test set
+	 *
+	 * @author Benjy Strauss
+	 *
+	 */
+	private static class PredictionSource {
+		private final String fileName;
+		private final BufferedReader reader;
+		//true if the rows start with No.,Chain,Letter (false if with an index)
+		private final boolean keyed;
+		//true if the last column is isSwitch (not written: the test set's is used)
+		private final boolean trailingSwitch;
+		//the model columns of the header
+		private final String header;
+		private final int columns;
 		
-		testReader.close();
-		predReader.close();
+		//the next line, not yet matched to a row of the test set
+		private String pending;
 		
-		for(int index = 0; index < testSetData.size(); ++index) {
-			String line = testSetData.get(index);
+		private PredictionSource(String fileName) throws IOException {
+			this.fileName = fileName;
+			reader = Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8);
 			
-			String num = line.substring(0,line.indexOf(","));
-			line = line.substring(line.indexOf(",")+1);
-			String chain = line.substring(0,line.indexOf(","));
-			line = line.substring(line.indexOf(",")+1);
-			line = line.substring(line.indexOf(",")+1);
-			String letter = line.substring(0,line.indexOf(","));
+			String line = reader.readLine();
+			if(line == null) {
+				reader.close();
+				throw new IOException("Empty prediction file: " + fileName);
+			}
 			
-			String isSwitch = line.substring(line.lastIndexOf(",")+1);
-			if(isSwitch.contains("0")) { isSwitch = "false"; }
-			else if(isSwitch.contains("1")) { isSwitch = "true"; }
-			String line2 = null;
+			keyed = line.startsWith(KEY_HEADER);
+			trailingSwitch = keyed && lastField(line).trim().equals(SWITCH_HEADER);
+			header = values(line);
+			pending = nextLine();
 			
-			try {
-				line2 = predictedData.get(index);
-			} catch(java.lang.IndexOutOfBoundsException IOOBE) {
-				qp("line: " + line);
-				qp("index: " + index);
-				qp("size: " + predictedData.size());
+			//counted from a row: a model's name can have a comma in it ("Residue, levels=SideChainIDs")
+			String sample = (pending != null) ? values(pending) : header;
+			int count = 1;
+			for(int index = sample.indexOf(','); index >= 0; index = sample.indexOf(',', index+1)) { ++count; }
+			columns = count;
+		}
+		
+		/**
+		 * @return: the next non-empty line, or null at the end of the file
+		 */
+		private String nextLine() throws IOException {
+			String line = reader.readLine();
+			while(line != null && line.length() == 0) { line = reader.readLine(); }
+			return line;
+		}
+		
+		/**
+		 * @param line: a line of the file
+		 * @return: the model columns of the line
+		 */
+		private String values(String line) {
+			int start = line.indexOf(',') + 1;
+			if(keyed) {
+				start = line.indexOf(',', start) + 1;
+				start = line.indexOf(',', start) + 1;
+			}
+			int end = trailingSwitch ? line.lastIndexOf(',') : line.length();
+			return (start <= 0 || end < start) ? "" : line.substring(start, end);
+		}
+		
+		/**
+		 * Get this file's columns for a row of the test set
+		 * A line that doesn't match the row is kept if it belongs to a later row (the file is missing
+		 * this row) and dropped if it doesn't (the file has an extra row).
+		 * @param row: the row of the test set (from 0)
+		 * @param line: the test set's line
+		 * @param chainEnd: the end of the line's chain ID
+		 * @param upcoming: the test set's next lines
+		 * @return: the model columns for the row, or null if the file has no line for it
+		 * @throws IOException: if the file can't be read
+		 */
+		private String valuesFor(int row, String line, int chainEnd, Iterable<String> upcoming) throws IOException {
+			while(pending != null) {
+				boolean matches, later;
+				if(keyed) {
+					matches = sameKey(line, chainEnd);
+					later = !matches && laterKey(upcoming);
+				} else {
+					long index = index();
+					if(index == Long.MIN_VALUE) {
+						qerr(fileName + ": dropped row with an unreadable index: " + pending);
+						pending = nextLine();
+						continue;
+					}
+					matches = (index == row);
+					later = (index > row);
+				}
 				
-				System.exit(0);
+				if(matches) {
+					String values = values(pending);
+					pending = nextLine();
+					return values;
+				} else if(later) {
+					return null;
+				} else {
+					qerr(fileName + ": dropped extra row: " + pending);
+					pending = nextLine();
+				}
+			}
+			return null;
+		}
+		
+		/**
+		 * @param line: a line of the test set
+		 * @param chainEnd: the end of the line's chain ID
+		 * @return: whether the pending line has the same residue number and chain as the test set's line
+		 */
+		private boolean sameKey(String line, int chainEnd) {
+			return pending.regionMatches(0, line, 0, chainEnd+1);
+		}
+		
+		/**
+		 * @param upcoming: the test set's next lines
+		 * @return: whether the pending line has the residue number and chain of one of them
+		 */
+		private boolean laterKey(Iterable<String> upcoming) {
+			for(String line: upcoming) {
+				int first = line.indexOf(',');
+				int chainEnd = (first < 0) ? -1 : line.indexOf(',', first+1);
+				if(chainEnd >= 0 && sameKey(line, chainEnd)) { return true; }
+			}
+			return false;
+		}
+		
+		/**
+		 * @return: the pending line's python index (the test set row it belongs to), or Long.MIN_VALUE if it can't be read
+		 */
+		private long index() {
+			int end = pending.indexOf(',');
+			try {
+				return Long.parseLong(pending.substring(0, (end < 0) ? pending.length() : end).trim());
+			} catch (NumberFormatException NFE) {
+				return Long.MIN_VALUE;
+			}
+		}
+		
+		/**
+		 * Append NaN for each of this file's columns
+		 * @param builder: the fused line
+		 */
+		private void appendMissing(StringBuilder builder) {
+			for(int col = 0; col < columns; ++col) {
+				if(col > 0) { builder.append(','); }
+				builder.append(NAN);
 			}
-			
-			fusionData.add(num + "," + chain + "," + letter + "," + line2.substring(line2.indexOf(",")+1) + "," + isSwitch);
 		}
-		//shorten column names
-		fusionData.set(0, fusionData.get(0).replaceAll("Predicted Values Model:isSwitch ~ ", ""));
-		fusionData.set(0, fusionData.get(0).replaceAll("Residue, levels=SideChainIDs", "SEQ"));
-		fusionData.set(0, fusionData.get(0).replaceAll("Vkabat", "VK"));
-		fusionData.set(0, fusionData.get(0).replaceAll("isUnstruct", "IsU"));
-		fusionData.set(0, fusionData.get(0).replaceAll("amber95", "A95"));
 		
-		PrintWriter writer = new PrintWriter(fusionFileName);
-		for(int index = 0; index < fusionData.size(); ++index) {
-			writer.write(fusionData.get(index) + "\n");
+		/**
+		 * Count the lines no row of the test set used
+		 * @return: the number of lines left in the file
+		 * @throws IOException: if the file can't be read
+		 */
+		private int remaining() throws IOException {
+			int count = 0;
+			for(; pending != null; pending = nextLine()) { ++count; }
+			return count;
 		}
 		
-		writer.close();
+		private void close() throws IOException { reader.close(); }
 	}
 }
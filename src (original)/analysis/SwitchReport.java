@@ -0,0 +1,373 @@
+package analysis;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import bio.exceptions.InvalidDataFormatException;
+import bioUI.Stats;
+import util.BaseTools;
+
+/**
+ * Lists the residues of a fused file that are predicted to be switches at a threshold.
+ *
+ * The file is read once.  Each column's propensities are then sorted together with their rows,
+ * so the residues at or above any threshold are the end of the sorted column, found with one
+ * binary search.  Any number of thresholds can be listed without reading the file again.
+ *
+ * Each entry has the form:
+ * 		chain [number] (letter) column: propensity
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class SwitchReport extends BaseTools {
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+	private static final String TXT = ".txt";
+	//the columns before the propensities: No.,Chain,Letter
+	private static final int KEY_COLUMNS = 3;
+	
+	//descriptions of the columns
+	private String[] labels;
+	//residue number, chain ID and letter of each row
+	private String[] number;
+	private String[] chain;
+	private String[] letter;
+	//propensity[column][row] (NaN if there is none)
+	private double[][] propensity;
+	//each column's propensities in ascending order (NaN left out), and the row of each
+	private double[][] sorted;
+	private int[][] sortedRows;
+	private int size;
+	
+	private SwitchReport(String[] labels, int capacity) {
+		this.labels = labels;
+		number = new String[capacity];
+		chain = new String[capacity];
+		letter = new String[capacity];
+		propensity = new double[labels.length][capacity];
+	}
+	
+	/**
+	 * Read and index a fused file
+	 * @param fileName: the file to read
+	 * @return: the index of the file
+	 * @throws IOException: if the file can't be read
+	 */
+	public static SwitchReport read(String fileName) throws IOException {
+		if(!fileName.endsWith(CSV)) { fileName += CSV; }
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		SwitchReport report;
+		
+		try {
+			String header = reader.readLine();
+			if(header == null) { throw new InvalidDataFormatException("Empty data file: " + fileName); }
+			
+			//the last column is isSwitch
+			String[] columns = columnNames(header).split(",");
+			if(columns.length < KEY_COLUMNS+1) { throw new InvalidDataFormatException("Not a fused file: " + fileName); }
+			report = new SwitchReport(Arrays.copyOfRange(columns, KEY_COLUMNS, columns.length-1), 1024);
+			
+			for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if(line.length() > 0) { report.addRow(line.split(",")); }
+			}
+		} finally {
+			reader.close();
+		}
+		
+		report.index();
+		return report;
+	}
+	
+	/**
+	 * Strip a fused file's header down to its column names
+	 * Files fused before the model names were shortened still have the full names
+	 * @param header: the first line of the file
+	 * @return: the header, with one comma-separated name per column
+	 */
+	static String columnNames(String header) {
+		header = header.replace(ResultsFusionModule.MODEL_PREFIX, "");
+		header = header.replace("(", "").replace(")", "").replace("\"", "");
+		//the residue term has a comma in it, so it has to be renamed before the header is split
+		header = header.replace("C" + RegressionEngine.RESIDUE_TERM, "Residue Type");
+		return header;
+	}
+	
+	/**
+	 * Add a row of the file
+	 * @param fields: the fields of the row
+	 */
+	private void addRow(String[] fields) {
+		if(size == number.length) {
+			int capacity = size * 2;
+			number = Arrays.copyOf(number, capacity);
+			chain = Arrays.copyOf(chain, capacity);
+			letter = Arrays.copyOf(letter, capacity);
+			for(int col = 0; col < labels.length; ++col) { propensity[col] = Arrays.copyOf(propensity[col], capacity); }
+		}
+		
+		number[size] = (fields.length > 0) ? fields[0] : "";
+		chain[size] = (fields.length > 1) ? fields[1] : "";
+		letter[size] = (fields.length > 2) ? fields[2] : "";
+		for(int col = 0; col < labels.length; ++col) {
+			propensity[col][size] = parse(fields, col + KEY_COLUMNS);
+		}
+		++size;
+	}
+	
+	/**
+	 * @param fields: the fields of a row
+	 * @param column: the field to read
+	 * @return: the value of the field, or NaN if it is missing or not a number
+	 */
+	private static double parse(String[] fields, int column) {
+		if(column >= fields.length) { return Double.NaN; }
+		try {
+			return Double.parseDouble(fields[column]);
+		} catch (NumberFormatException NFE) {
+			return Double.NaN;
+		}
+	}
+	
+	/**
+	 * Sort every column with its rows
+	 */
+	private void index() {
+		sorted = new double[labels.length][];
+		sortedRows = new int[labels.length][];
+		
+		for(int col = 0; col < labels.length; ++col) {
+			double[] values = new double[size];
+			int[] rows = new int[size];
+			int count = 0;
+			for(int row = 0; row < size; ++row) {
+				if(Double.isNaN(propensity[col][row])) { continue; }
+				values[count] = propensity[col][row];
+				rows[count] = row;
+				++count;
+			}
+			
+			sorted[col] = Arrays.copyOf(values, count);
+			sortedRows[col] = Arrays.copyOf(rows, count);
+			sort(sorted[col], sortedRows[col]);
+		}
+	}
+	
+	/**
+	 * Sort values in ascending order, keeping each value's row with it
+	 * (a merge sort, so equal values stay in the order of their rows)
+	 * @param values: the values
+	 * @param rows: the row of each value
+	 */
+	private static void sort(double[] values, int[] rows) {
+		double[] valueBuffer = new double[values.length];
+		int[] rowBuffer = new int[rows.length];
+		double[] fromValues = values, toValues = valueBuffer;
+		int[] fromRows = rows, toRows = rowBuffer;
+		
+		for(int width = 1; width < values.length; width *= 2) {
+			for(int low = 0; low < values.length; low += 2 * width) {
+				int mid = min(low + width, values.length);
+				int high = min(low + 2 * width, values.length);
+				int left = low, right = mid;
+				
+				for(int index = low; index < high; ++index) {
+					if(left < mid && (right >= high || fromValues[left] <= fromValues[right])) {
+						toValues[index] = fromValues[left];
+						toRows[index] = fromRows[left++];
+					} else {
+						toValues[index] = fromValues[right];
+						toRows[index] = fromRows[right++];
+					}
+				}
+			}
+			
+			double[] swapValues = fromValues; fromValues = toValues; toValues = swapValues;
+			int[] swapRows = fromRows; fromRows = toRows; toRows = swapRows;
+		}
+		
+		if(fromValues != values) {
+			System.arraycopy(fromValues, 0, values, 0, values.length);
+			System.arraycopy(fromRows, 0, rows, 0, rows.length);
+		}
+	}
+	
+	/**
+	 * @param col: a column
+	 * @param threshold: the propensity threshold
+	 * @return: the position in the sorted column of the first propensity that is at least the threshold
+	 */
+	private int firstAbove(int col, double threshold) {
+		double[] values = sorted[col];
+		int low = 0, high = values.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(values[mid] < threshold) { low = mid + 1; } else { high = mid; }
+		}
+		return low;
+	}
+	
+	/** @return: the number of propensity columns */
+	public int columns() { return labels.length; }
+	/** @return: the number of rows */
+	public int size() { return size; }
+	
+	/**
+	 * @param col: a column
+	 * @return: the description of the column
+	 */
+	public String label(int col) { return labels[col]; }
+	
+	/**
+	 * @param col: a column
+	 * @param threshold: the propensity threshold
+	 * @return: the number of residues whose propensity in the column is at least the threshold
+	 */
+	public int countAbove(int col, double threshold) {
+		return sorted[col].length - firstAbove(col, threshold);
+	}
+	
+	/**
+	 * @param col: a column
+	 * @param threshold: the propensity threshold
+	 * @return: the rows whose propensity in the column is at least the threshold, highest propensity first
+	 */
+	public int[] rowsAbove(int col, double threshold) {
+		int first = firstAbove(col, threshold);
+		int[] rows = new int[sorted[col].length - first];
+		for(int index = 0; index < rows.length; ++index) { rows[index] = sortedRows[col][sorted[col].length - 1 - index]; }
+		return rows;
+	}
+	
+	/**
+	 * @param row: a row
+	 * @param col: a column
+	 * @return: the entry for the row's propensity in the column
+	 */
+	public String entry(int row, int col) {
+		StringBuilder entryBuilder = new StringBuilder();
+		entryBuilder.append(chain[row]);
+		entryBuilder.append(" [");
+		entryBuilder.append(Stats.formatInt3(number[row]));
+		entryBuilder.append("] (");
+		entryBuilder.append(letter[row]);
+		entryBuilder.append(") ");
+		entryBuilder.append(labels[col]);
+		entryBuilder.append(": ");
+		entryBuilder.append(propensity[col][row]);
+		return entryBuilder.toString();
+	}
+	
+	/**
+	 * List every propensity at or above the threshold, in the order of the file
+	 * (row by row, and by column within a row)
+	 * @param threshold: the propensity threshold
+	 * @return: one entry per propensity
+	 */
+	public ArrayList<String> entries(double threshold) {
+		//row * columns + column of every propensity above the threshold
+		int total = 0;
+		for(int col = 0; col < labels.length; ++col) { total += countAbove(col, threshold); }
+		long[] cells = new long[total];
+		
+		int count = 0;
+		for(int col = 0; col < labels.length; ++col) {
+			int[] rows = sortedRows[col];
+			for(int index = firstAbove(col, threshold); index < rows.length; ++index) {
+				cells[count++] = (long) rows[index] * labels.length + col;
+			}
+		}
+		Arrays.sort(cells);
+		
+		ArrayList<String> entries = new ArrayList<String>(total);
+		for(long cell: cells) { entries.add(entry((int) (cell / labels.length), (int) (cell % labels.length))); }
+		return entries;
+	}
+	
+	/**
+	 * Write one list per column and threshold, highest propensity first:
+	 * 		prefix-column-threshold.txt
+	 * Each column is written by its own task.
+	 * @param prefix: the start of every file name
+	 * @param thresholds: the propensity thresholds
+	 * @param threads: the maximum number of columns to write at once
+	 * @return: the names of the files, [column][threshold]
+	 * @throws IOException: if a file can't be written
+	 */
+	public String[][] writeReports(final String prefix, final double[] thresholds, int threads) throws IOException {
+		if(threads < 1) { threads = 1; }
+		ForkJoinPool pool = new ForkJoinPool(min(threads, max(labels.length, 1)));
+		ArrayList<Future<String[]>> futures = new ArrayList<Future<String[]>>(labels.length);
+		
+		for(int index = 0; index < labels.length; ++index) {
+			final int col = index;
+			futures.add(pool.submit(new Callable<String[]>() {
+				public String[] call() throws IOException {
+					return writeColumn(prefix, col, thresholds);
+				}
+			}));
+		}
+		
+		String[][] fileNames = new String[labels.length][];
+		try {
+			for(int col = 0; col < labels.length; ++col) {
+				try {
+					fileNames[col] = futures.get(col).get();
+				} catch (ExecutionException EE) {
+					pool.shutdownNow();
+					if(EE.getCause() instanceof IOException) { throw (IOException) EE.getCause(); }
+					throw new RuntimeException("Could not write the report for " + labels[col], EE.getCause());
+				}
+			}
+		} catch (InterruptedException IE) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			return fileNames;
+		}
+		
+		pool.shutdown();
+		return fileNames;
+	}
+	
+	/**
+	 * Write one column's lists
+	 * @param prefix: the start of every file name
+	 * @param col: the column
+	 * @param thresholds: the propensity thresholds
+	 * @return: the names of the files, one per threshold
+	 * @throws IOException: if a file can't be written
+	 */
+	private String[] writeColumn(String prefix, int col, double[] thresholds) throws IOException {
+		String[] fileNames = new String[thresholds.length];
+		String label = labels[col].replaceAll("\\s", "").replaceAll("[^A-Za-z0-9.+-]+", "_");
+		
+		for(int index = 0; index < thresholds.length; ++index) {
+			fileNames[index] = prefix + "-" + label + "-" + thresholds[index] + TXT;
+			BufferedWriter writer = new BufferedWriter(new FileWriter(fileNames[index]));
+			
+			try {
+				int[] rows = sortedRows[col];
+				int first = firstAbove(col, thresholds[index]);
+				for(int pos = rows.length-1; pos >= first; --pos) {
+					writer.write(entry(rows[pos], col));
+					writer.write('\n');
+				}
+			} finally {
+				writer.close();
+			}
+		}
+		
+		return fileNames;
+	}
+	
+	public String toString() { return "SwitchReport (" + size + " rows, " + labels.length + " columns)"; }
+}
@@ -0,0 +1,467 @@
+package analysis.stats;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import analysis.PredictionTable;
+import bio.exceptions.MissingDataException;
+
+/**
+ * Computes the exact area under the ROC curve (AUC) for every descriptor combination.
+ *
+ * The AUC is the Mann-Whitney statistic: the probability that a random switch has a higher
+ * propensity than a random non-switch (ties count half).  The variance and the covariance
+ * between combinations are computed with DeLong's method, which allows two combinations
+ * evaluated on the same residues to be compared with a z-test.
+ *
+ * Bootstrap confidence intervals resample switches and non-switches separately and run
+ * on a ForkJoinPool.
+ *
+ * As in ROCEngine, the last column is the total (sum of all propensities).
+ * Residues with no propensity (NaN) are ranked below every other residue.
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class AUCAnalysis extends StatsObject {
+	private static final long serialVersionUID = 1L;
+	
+	//z-value for a two-sided 95% confidence interval
+	public static final double Z_95 = 1.959963984540054;
+	//replicates at or below this many are run on the calling thread
+	private static final int BOOTSTRAP_GRAIN = 8;
+	
+	//descriptions of the columns (the last one is the total)
+	private String[] labels;
+	//propensity[column][residue]
+	private double[][] propensity;
+	//residue indexes of the switches, and the non-switches
+	private int[] switchRows;
+	private int[] nonSwitchRows;
+	
+	//exact AUC for each column
+	private double[] auc;
+	//DeLong structural components: v10[column][switch], v01[column][non-switch]
+	private double[][] v10;
+	private double[][] v01;
+	
+	//residue indexes sorted by propensity, per column: only built for the bootstrap
+	private int[][] order;
+	//marks which rows are switches: only built for the bootstrap
+	private boolean[] switchMask;
+	
+	/**
+	 * Build an AUCAnalysis from column-major data
+	 * @param labels: the description of each descriptor combination
+	 * @param propensity: propensity[combination][residue]
+	 * @param isSwitch: isSwitch[residue]
+	 */
+	public AUCAnalysis(String[] labels, double[][] propensity, boolean[] isSwitch) {
+		int combinations = labels.length;
+		int residues = isSwitch.length;
+		
+		this.labels = Arrays.copyOf(labels, combinations+1);
+		this.labels[combinations] = ROCEngine.TOTAL;
+		
+		this.propensity = new double[combinations+1][];
+		double[] totals = new double[residues];
+		for(int col = 0; col < combinations; ++col) {
+			this.propensity[col] = propensity[col];
+			for(int row = 0; row < residues; ++row) { totals[row] += propensity[col][row]; }
+		}
+		this.propensity[combinations] = totals;
+		
+		int switches = 0;
+		for(boolean b: isSwitch) { if(b) { ++switches; } }
+		
+		if(switches == 0 || switches == residues) {
+			throw new MissingDataException("AUC requires both switches and non-switches");
+		}
+		
+		switchRows = new int[switches];
+		nonSwitchRows = new int[residues-switches];
+		for(int row = 0, pos = 0, neg = 0; row < residues; ++row) {
+			if(isSwitch[row]) { switchRows[pos++] = row; } else { nonSwitchRows[neg++] = row; }
+		}
+		
+		auc = new double[this.labels.length];
+		v10 = new double[this.labels.length][];
+		v01 = new double[this.labels.length][];
+		
+		for(int col = 0; col < this.labels.length; ++col) { computeComponents(col); }
+	}
+	
+	/**
+	 * Build an AUCAnalysis from a PredictionTable
+	 * @param table: the predictions
+	 * @return: an AUCAnalysis over the table
+	 */
+	public static AUCAnalysis fromTable(PredictionTable table) {
+		if(table == null) { throw new MissingDataException("No prediction data has been loaded!"); }
+		
+		double[][] propensity = new double[table.columns()][];
+		for(int col = 0; col < propensity.length; ++col) { propensity[col] = table.column(col); }
+		
+		return new AUCAnalysis(table.labels(), propensity, table.switches());
+	}
+	
+	/**
+	 * Compute the AUC and the DeLong components for one column with a single sort
+	 * of the switches and of the non-switches
+	 * @param col: the column
+	 */
+	private void computeComponents(int col) {
+		double[] values = propensity[col];
+		int m = switchRows.length, n = nonSwitchRows.length;
+		
+		double[] pos = new double[m];
+		double[] neg = new double[n];
+		for(int i = 0; i < m; ++i) { pos[i] = rank(values[switchRows[i]]); }
+		for(int j = 0; j < n; ++j) { neg[j] = rank(values[nonSwitchRows[j]]); }
+		
+		double[] sortedPos = pos.clone();
+		double[] sortedNeg = neg.clone();
+		Arrays.sort(sortedPos);
+		Arrays.sort(sortedNeg);
+		
+		v10[col] = new double[m];
+		v01[col] = new double[n];
+		
+		double sum = 0;
+		for(int i = 0; i < m; ++i) {
+			int below = lowerBound(sortedNeg, pos[i]);
+			int ties = upperBound(sortedNeg, pos[i]) - below;
+			v10[col][i] = (below + 0.5 * ties) / n;
+			sum += v10[col][i];
+		}
+		
+		for(int j = 0; j < n; ++j) {
+			int notAbove = upperBound(sortedPos, neg[j]);
+			int ties = notAbove - lowerBound(sortedPos, neg[j]);
+			v01[col][j] = (m - notAbove + 0.5 * ties) / m;
+		}
+		
+		auc[col] = sum / m;
+	}
+	
+	/**
+	 * @return: the number of columns, including the total
+	 */
+	public int columns() { return labels.length; }
+	
+	/**
+	 * @param col: the column
+	 * @return: the description of the column
+	 */
+	public String label(int col) { return labels[col]; }
+	
+	/**
+	 * @param col: the column
+	 * @return: the exact (Mann-Whitney) AUC of the column
+	 */
+	public double auc(int col) { return auc[col]; }
+	
+	/**
+	 * @param col: the column
+	 * @return: DeLong's estimate of the variance of the column's AUC
+	 */
+	public double variance(int col) { return covariance(col, col); }
+	
+	/**
+	 * DeLong's estimate of the covariance of two AUCs computed on the same residues
+	 * @param a: the first column
+	 * @param b: the second column
+	 * @return: the covariance
+	 */
+	public double covariance(int a, int b) {
+		return sampleCovariance(v10[a], v10[b], auc[a], auc[b]) / switchRows.length
+				+ sampleCovariance(v01[a], v01[b], auc[a], auc[b]) / nonSwitchRows.length;
+	}
+	
+	/**
+	 * Normal (DeLong) confidence interval
+	 * @param col: the column
+	 * @param z: the z-value for the level, such as Z_95
+	 * @return: { lower, upper }, clipped to [0,1]
+	 */
+	public double[] confidenceInterval(int col, double z) {
+		double halfWidth = z * Math.sqrt(variance(col));
+		return new double[] { max(0, auc[col] - halfWidth), min(1, auc[col] + halfWidth) };
+	}
+	
+	/**
+	 * DeLong's z-statistic for the difference between two correlated AUCs
+	 * @param a: the first column
+	 * @param b: the second column
+	 * @return: (auc(a) - auc(b)) / standard error of the difference
+	 */
+	public double deLongZ(int a, int b) {
+		double var = variance(a) + variance(b) - 2 * covariance(a, b);
+		if(var <= 0) { return 0; }
+		return (auc[a] - auc[b]) / Math.sqrt(var);
+	}
+	
+	/**
+	 * Two-sided p-value of DeLong's test that two columns have the same AUC
+	 * @param a: the first column
+	 * @param b: the second column
+	 * @return: the p-value
+	 */
+	public double deLongTest(int a, int b) {
+		return erfc(Math.abs(deLongZ(a, b)) / Math.sqrt(2));
+	}
+	
+	/**
+	 * Run DeLong's test on every pair of columns
+	 * @return: p[a][b], with 1 on the diagonal
+	 */
+	public double[][] deLongMatrix() {
+		double[][] retVal = new double[labels.length][labels.length];
+		for(int a = 0; a < labels.length; ++a) {
+			retVal[a][a] = 1;
+			for(int b = a+1; b < labels.length; ++b) {
+				retVal[a][b] = deLongTest(a, b);
+				retVal[b][a] = retVal[a][b];
+			}
+		}
+		return retVal;
+	}
+	
+	/**
+	 * Bootstrap the AUC of every column.  Switches and non-switches are resampled separately,
+	 * so every replicate has the same class balance as the data.
+	 * @param replicates: the number of bootstrap replicates
+	 * @param seed: the random seed: the same seed always gives the same replicates
+	 * @param pool: the pool to run the replicates on
+	 * @return: aucs[column][replicate]
+	 */
+	public double[][] bootstrap(int replicates, long seed, ForkJoinPool pool) {
+		buildOrder();
+		double[][] aucs = new double[labels.length][replicates];
+		
+		//each replicate gets its own seed, so the result does not depend on the scheduling
+		long[] seeds = new long[replicates];
+		SplittableRandom random = new SplittableRandom(seed);
+		for(int replicate = 0; replicate < replicates; ++replicate) { seeds[replicate] = random.nextLong(); }
+		
+		pool.invoke(new BootstrapTask(aucs, seeds, 0, replicates));
+		return aucs;
+	}
+	
+	/**
+	 * Bootstrap the AUC of every column on the common pool
+	 * @param replicates: the number of bootstrap replicates
+	 * @param seed: the random seed
+	 * @return: aucs[column][replicate]
+	 */
+	public double[][] bootstrap(int replicates, long seed) {
+		return bootstrap(replicates, seed, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Percentile confidence interval from bootstrapped AUCs
+	 * @param replicates: the bootstrapped AUCs of one column
+	 * @param level: the confidence level, such as 0.95
+	 * @return: { lower, upper }
+	 */
+	public static double[] percentileInterval(double[] replicates, double level) {
+		double[] sorted = replicates.clone();
+		Arrays.sort(sorted);
+		double tail = (1 - level) / 2;
+		int low = (int) Math.floor(tail * (sorted.length-1));
+		int high = (int) Math.ceil((1-tail) * (sorted.length-1));
+		return new double[] { sorted[low], sorted[high] };
+	}
+	
+	/**
+	 * Sort the residues of each column by propensity
+	 */
+	private synchronized void buildOrder() {
+		if(order != null) { return; }
+		
+		int[][] newOrder = new int[labels.length][];
+		for(int col = 0; col < labels.length; ++col) {
+			double[] keys = new double[propensity[col].length];
+			for(int row = 0; row < keys.length; ++row) { keys[row] = rank(propensity[col][row]); }
+			newOrder[col] = sortedOrder(keys);
+		}
+		
+		switchMask = new boolean[switchRows.length + nonSwitchRows.length];
+		for(int row: switchRows) { switchMask[row] = true; }
+		order = newOrder;
+	}
+	
+	/**
+	 * Compute the AUC of every column for one bootstrap replicate
+	 * @param weight: how many times each residue was drawn
+	 * @param aucs: aucs[column][replicate], to fill in
+	 * @param replicate: the replicate being computed
+	 */
+	private void bootstrapReplicate(int[] weight, double[][] aucs, int replicate) {
+		double pairs = (double) switchRows.length * (double) nonSwitchRows.length;
+		
+		for(int col = 0; col < labels.length; ++col) {
+			int[] sorted = order[col];
+			double[] values = propensity[col];
+			double area = 0;
+			long negBelow = 0;
+			
+			for(int start = 0; start < sorted.length; ) {
+				double key = rank(values[sorted[start]]);
+				long posWeight = 0, negWeight = 0;
+				int end = start;
+				
+				for(; end < sorted.length && rank(values[sorted[end]]) == key; ++end) {
+					int row = sorted[end];
+					if(weight[row] > 0) {
+						if(switchMask[row]) { posWeight += weight[row]; } else { negWeight += weight[row]; }
+					}
+				}
+				
+				area += posWeight * (negBelow + 0.5 * negWeight);
+				negBelow += negWeight;
+				start = end;
+			}
+			
+			aucs[col][replicate] = area / pairs;
+		}
+	}
+	
+	/**
+	 * Runs a range of bootstrap replicates, splitting the range in half until it is small
+	 */
+	private class BootstrapTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final double[][] aucs;
+		private final long[] seeds;
+		private final int from, to;
+		
+		BootstrapTask(double[][] aucs, long[] seeds, int from, int to) {
+			this.aucs = aucs;
+			this.seeds = seeds;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from <= BOOTSTRAP_GRAIN) {
+				int[] weight = new int[switchRows.length + nonSwitchRows.length];
+				
+				for(int replicate = from; replicate < to; ++replicate) {
+					SplittableRandom random = new SplittableRandom(seeds[replicate]);
+					Arrays.fill(weight, 0);
+					for(int i = 0; i < switchRows.length; ++i) { ++weight[switchRows[random.nextInt(switchRows.length)]]; }
+					for(int j = 0; j < nonSwitchRows.length; ++j) { ++weight[nonSwitchRows[random.nextInt(nonSwitchRows.length)]]; }
+					bootstrapReplicate(weight, aucs, replicate);
+				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new BootstrapTask(aucs, seeds, from, mid), new BootstrapTask(aucs, seeds, mid, to));
+			}
+		}
+	}
+	
+	/**
+	 * Map a propensity to the value used for ranking: NaN ranks below everything
+	 * @param value: the propensity
+	 * @return: the ranking value
+	 */
+	private static double rank(double value) {
+		return Double.isNaN(value) ? Double.NEGATIVE_INFINITY : value;
+	}
+	
+	/**
+	 * @param x: the first sample
+	 * @param y: the second sample
+	 * @param meanX: the mean of x
+	 * @param meanY: the mean of y
+	 * @return: the unbiased sample covariance of x and y
+	 */
+	private static double sampleCovariance(double[] x, double[] y, double meanX, double meanY) {
+		if(x.length < 2) { return 0; }
+		double sum = 0;
+		for(int i = 0; i < x.length; ++i) { sum += (x[i] - meanX) * (y[i] - meanY); }
+		return sum / (x.length - 1);
+	}
+	
+	/**
+	 * @param sorted: a sorted array
+	 * @param key: the value to look for
+	 * @return: the index of the first element that is not less than key
+	 */
+	private static int lowerBound(double[] sorted, double key) {
+		int low = 0, high = sorted.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(sorted[mid] < key) { low = mid + 1; } else { high = mid; }
+		}
+		return low;
+	}
+	
+	/**
+	 * @param sorted: a sorted array
+	 * @param key: the value to look for
+	 * @return: the index of the first element that is greater than key
+	 */
+	private static int upperBound(double[] sorted, double key) {
+		int low = 0, high = sorted.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(sorted[mid] <= key) { low = mid + 1; } else { high = mid; }
+		}
+		return low;
+	}
+	
+	/**
+	 * Stable merge sort of indexes by key
+	 * @param keys: the values to sort by
+	 * @return: the indexes of keys, in ascending order of key
+	 */
+	static int[] sortedOrder(double[] keys) {
+		int[] idx = new int[keys.length];
+		int[] buffer = new int[keys.length];
+		for(int i = 0; i < idx.length; ++i) { idx[i] = i; }
+		
+		for(int width = 1; width < idx.length; width *= 2) {
+			for(int low = 0; low < idx.length; low += 2*width) {
+				int mid = min(low + width, idx.length);
+				int high = min(low + 2*width, idx.length);
+				int left = low, right = mid, out = low;
+				while(left < mid && right < high) {
+					buffer[out++] = (keys[idx[right]] < keys[idx[left]]) ? idx[right++] : idx[left++];
+				}
+				while(left < mid) { buffer[out++] = idx[left++]; }
+				while(right < high) { buffer[out++] = idx[right++]; }
+			}
+			int[] temp = idx;
+			idx = buffer;
+			buffer = temp;
+		}
+		
+		return idx;
+	}
+	
+	/**
+	 * Complementary error function (Numerical Recipes' Chebyshev fit, error < 1.2e-7)
+	 * @param x: the argument
+	 * @return: erfc(x)
+	 */
+	static double erfc(double x) {
+		double z = Math.abs(x);
+		double t = 1 / (1 + 0.5 * z);
+		double ans = t * Math.exp(-z*z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+				+ t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+				+ t * (-0.82215223 + t * 0.17087277)))))))));
+		return (x >= 0) ? ans : 2 - ans;
+	}
+	
+	public String toString() {
+		return "AUCAnalysis (" + (labels.length-1) + " combinations, "
+				+ switchRows.length + " switches, " + nonSwitchRows.length + " non-switches)";
+	}
+}
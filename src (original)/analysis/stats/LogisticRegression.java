@@ -0,0 +1,539 @@
+package analysis.stats;
+
+import java.util.Arrays;
+
+import util.BaseTools;
+
+/**
+ * A binary logistic regression, fitted by iteratively reweighted least squares (Newton's method),
+ * with an optional L2 (ridge) penalty on every coefficient except the intercept.
+ *
+ * The predictors are an intercept, any number of numeric columns and at most one categorical
+ * column with treatment coding: level 0 is the reference level and each other level gets its own
+ * coefficient.  The columns are never copied, so many models can be fitted at once from the same
+ * arrays; every row has at most one non-zero categorical indicator, so the Hessian is built in
+ * O(numeric columns^2) per row no matter how many levels there are.
+ *
+ * The parameters are ordered: the intercept, the numeric columns, then levels 1 to levels-1.
+ * Rows with a missing (NaN) response or numeric value, or a negative level, are left out of the fit.
+ * A level no fitted row has (common when fitting on part of a data set) can't be estimated: its
+ * coefficient is held at 0 and rows of that level are not predicted.  If the reference level is
+ * missing, the lowest level that is there takes its place.
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class LogisticRegression extends BaseTools {
+	//statsmodels' default limit
+	public static final int MAX_ITERATIONS = 35;
+	public static final double TOLERANCE = 1e-8;
+	private static final int MAX_STEP_HALVINGS = 30;
+	
+	//numeric[column][row]
+	private final double[][] numeric;
+	//the level of each row, or null if there is no categorical predictor
+	private final int[] levels;
+	private final int levelCount;
+	//the response (0 to 1) of each row
+	private final double[] response;
+	//the L2 penalty
+	private final double penalty;
+	
+	//the rows the model is fitted on
+	private int[] rows;
+	//the parameters held at 0 because no fitted row has their level
+	private boolean[] dropped;
+	//the levels the fitted rows have
+	private boolean[] present;
+	private double[] beta;
+	//the inverse of the (penalized) Hessian at beta
+	private double[][] covariance;
+	private boolean converged;
+	private int iterations;
+	private double logLikelihood;
+	private double nullLogLikelihood;
+	
+	/**
+	 *
+	 * @param numeric: the numeric predictors: numeric[column][row]
+	 * @param levels: the level (0 to levelCount-1) of each row's categorical predictor, or null if there is none
+	 * @param levelCount: the number of levels, including the reference level
+	 * @param response: the response of each row: 0 (false) to 1 (true)
+	 * @param penalty: the L2 penalty (0 for plain maximum likelihood)
+	 */
+	public LogisticRegression(double[][] numeric, int[] levels, int levelCount, double[] response, double penalty) {
+		if(penalty < 0) { throw new IllegalArgumentException("The penalty cannot be negative!"); }
+		this.numeric = numeric;
+		this.levels = levels;
+		this.levelCount = (levels == null) ? 1 : max(levelCount, 1);
+		this.response = response;
+		this.penalty = penalty;
+	}
+	
+	/**
+	 * Fit the model on every row
+	 * @return: this
+	 */
+	public LogisticRegression fit() { return fit(null); }
+	
+	/**
+	 * Fit the model on some of the rows
+	 * @param subset: the rows to fit on (a row listed twice counts twice), or null for every row
+	 * @return: this
+	 * @throws ArithmeticException: if the Hessian is singular (the predictors are collinear on the rows)
+	 */
+	public LogisticRegression fit(int[] subset) {
+		rows = usableRows(subset);
+		int params = parameters();
+		beta = new double[params];
+		converged = false;
+		iterations = 0;
+		dropLevels();
+		
+		double mean = 0;
+		for(int row: rows) { mean += response[row]; }
+		mean = (rows.length > 0) ? mean / rows.length : Double.NaN;
+		nullLogLikelihood = 0;
+		for(int row: rows) { nullLogLikelihood += xlogy(response[row], mean) + xlogy(1 - response[row], 1 - mean); }
+		
+		//start from the intercept-only model
+		if(mean > 0 && mean < 1) { beta[0] = Math.log(mean / (1 - mean)); }
+		
+		double[] gradient = new double[params];
+		double[][] hessian = new double[params][params];
+		double[] trial = new double[params];
+		double objective = objective(beta);
+		
+		while(rows.length > 0 && iterations < MAX_ITERATIONS) {
+			accumulate(beta, gradient, hessian);
+			double[] step = solve(hessian, gradient);
+			if(step == null) { throw new ArithmeticException("Singular Hessian after " + iterations + " iteration(s): the predictors are collinear"); }
+			++iterations;
+			
+			//halve the step until the (penalized) likelihood does not go down
+			double scale = 1, trialObjective = objective;
+			for(int halving = 0; halving <= MAX_STEP_HALVINGS; ++halving, scale /= 2) {
+				for(int param = 0; param < params; ++param) { trial[param] = beta[param] + scale * step[param]; }
+				trialObjective = objective(trial);
+				if(trialObjective >= objective - TOLERANCE * Math.abs(objective)) { break; }
+			}
+			
+			boolean small = true;
+			for(int param = 0; param < params; ++param) {
+				small &= Math.abs(trial[param] - beta[param]) <= TOLERANCE * (1 + Math.abs(trial[param]));
+			}
+			
+			System.arraycopy(trial, 0, beta, 0, params);
+			objective = trialObjective;
+			if(small) { converged = true; break; }
+		}
+		
+		accumulate(beta, gradient, hessian);
+		covariance = invert(hessian);
+		if(covariance == null && rows.length > 0) { throw new ArithmeticException("Singular Hessian at the fitted coefficients: the predictors are collinear"); }
+		logLikelihood = logLikelihood(beta);
+		return this;
+	}
+	
+	/**
+	 * Find the levels the fitted rows have, and hold the coefficients of the others at 0
+	 */
+	private void dropLevels() {
+		present = new boolean[levelCount];
+		dropped = new boolean[parameters()];
+		if(levels == null) {
+			present[0] = true;
+			return;
+		}
+		
+		for(int row: rows) { present[levels[row]] = true; }
+		boolean reference = present[0];
+		for(int level = 1; level < levelCount; ++level) {
+			if(!present[level]) {
+				dropped[numeric.length + level] = true;
+			} else if(!reference) {
+				//the first level there is the new reference level
+				dropped[numeric.length + level] = true;
+				reference = true;
+			}
+		}
+	}
+	
+	/**
+	 * @param subset: the rows to choose from, or null for every row
+	 * @return: the rows with a response and every predictor
+	 */
+	private int[] usableRows(int[] subset) {
+		int candidates = (subset == null) ? response.length : subset.length;
+		int[] usable = new int[candidates];
+		int count = 0;
+		
+		for(int index = 0; index < candidates; ++index) {
+			int row = (subset == null) ? index : subset[index];
+			boolean ok = !Double.isNaN(response[row]) && (levels == null || (levels[row] >= 0 && levels[row] < levelCount));
+			for(int column = 0; ok && column < numeric.length; ++column) { ok = !Double.isNaN(numeric[column][row]); }
+			if(ok) { usable[count++] = row; }
+		}
+		
+		return Arrays.copyOf(usable, count);
+	}
+	
+	/**
+	 * @param coefficients: the parameters
+	 * @param numeric: the numeric predictors
+	 * @param levels: the level of each row, or null
+	 * @param row: a row of the predictors
+	 * @return: the linear predictor of the row
+	 */
+	private double eta(double[] coefficients, double[][] numeric, int[] levels, int row) {
+		double eta = coefficients[0];
+		for(int column = 0; column < numeric.length; ++column) { eta += coefficients[column+1] * numeric[column][row]; }
+		if(levels != null && levels[row] > 0) { eta += coefficients[numeric.length + levels[row]]; }
+		return eta;
+	}
+	
+	/**
+	 * @param coefficients: the parameters
+	 * @return: the log-likelihood of the fitted rows
+	 */
+	private double logLikelihood(double[] coefficients) {
+		double sum = 0;
+		for(int row: rows) {
+			double eta = eta(coefficients, numeric, levels, row);
+			sum += response[row] * eta - softplus(eta);
+		}
+		return sum;
+	}
+	
+	/**
+	 * @param coefficients: the parameters
+	 * @return: the penalized log-likelihood, which the fit maximizes
+	 */
+	private double objective(double[] coefficients) {
+		double sum = 0;
+		for(int param = 1; param < coefficients.length; ++param) { sum += coefficients[param] * coefficients[param]; }
+		return logLikelihood(coefficients) - penalty * sum / 2;
+	}
+	
+	/**
+	 * Compute the gradient and the Hessian (of the negative penalized log-likelihood) at a point
+	 * @param coefficients: the parameters
+	 * @param gradient: where to write the gradient
+	 * @param hessian: where to write the Hessian
+	 */
+	private void accumulate(double[] coefficients, double[] gradient, double[][] hessian) {
+		int dense = numeric.length + 1;
+		double[] x = new double[dense];
+		x[0] = 1;
+		
+		Arrays.fill(gradient, 0);
+		for(double[] line: hessian) { Arrays.fill(line, 0); }
+		
+		for(int row: rows) {
+			for(int column = 1; column < dense; ++column) { x[column] = numeric[column-1][row]; }
+			double eta = eta(coefficients, numeric, levels, row);
+			double mu = sigmoid(eta);
+			double weight = mu * (1 - mu);
+			double residual = response[row] - mu;
+			
+			//lower triangle only
+			for(int a = 0; a < dense; ++a) {
+				gradient[a] += x[a] * residual;
+				double wx = weight * x[a];
+				for(int b = 0; b <= a; ++b) { hessian[a][b] += wx * x[b]; }
+			}
+			
+			if(levels != null && levels[row] > 0) {
+				int level = numeric.length + levels[row];
+				gradient[level] += residual;
+				hessian[level][level] += weight;
+				for(int a = 0; a < dense; ++a) { hessian[level][a] += weight * x[a]; }
+			}
+		}
+		
+		for(int a = 0; a < hessian.length; ++a) {
+			for(int b = 0; b < a; ++b) { hessian[b][a] = hessian[a][b]; }
+		}
+		
+		for(int param = 1; param < coefficients.length; ++param) {
+			gradient[param] -= penalty * coefficients[param];
+			hessian[param][param] += penalty;
+		}
+		
+		//a parameter held at 0 doesn't move: its row and column are those of the identity
+		for(int param = 0; param < dropped.length; ++param) {
+			if(!dropped[param]) { continue; }
+			gradient[param] = 0;
+			for(int other = 0; other < hessian.length; ++other) { hessian[param][other] = hessian[other][param] = 0; }
+			hessian[param][param] = 1;
+		}
+	}
+	
+	/**
+	 * Cholesky-factor a symmetric positive definite matrix
+	 * @param matrix: the matrix
+	 * @return: the lower triangular factor, or null if the matrix is not positive definite
+	 */
+	private static double[][] cholesky(double[][] matrix) {
+		int size = matrix.length;
+		double[][] lower = new double[size][size];
+		
+		for(int i = 0; i < size; ++i) {
+			for(int j = 0; j <= i; ++j) {
+				double sum = matrix[i][j];
+				for(int k = 0; k < j; ++k) { sum -= lower[i][k] * lower[j][k]; }
+				
+				if(i == j) {
+					if(!(sum > 0)) { return null; }
+					lower[i][i] = Math.sqrt(sum);
+				} else {
+					lower[i][j] = sum / lower[j][j];
+				}
+			}
+		}
+		
+		return lower;
+	}
+	
+	/**
+	 * Solve L L^T x = b
+	 * @param lower: the Cholesky factor
+	 * @param b: the right hand side
+	 * @return: x
+	 */
+	private static double[] solve(double[][] lower, double[] b, double[] x) {
+		int size = lower.length;
+		for(int i = 0; i < size; ++i) {
+			double sum = b[i];
+			for(int k = 0; k < i; ++k) { sum -= lower[i][k] * x[k]; }
+			x[i] = sum / lower[i][i];
+		}
+		for(int i = size-1; i >= 0; --i) {
+			double sum = x[i];
+			for(int k = i+1; k < size; ++k) { sum -= lower[k][i] * x[k]; }
+			x[i] = sum / lower[i][i];
+		}
+		return x;
+	}
+	
+	/**
+	 * @param hessian: a symmetric positive definite matrix
+	 * @param gradient: the right hand side
+	 * @return: the Newton step, or null if the matrix is singular
+	 */
+	private static double[] solve(double[][] hessian, double[] gradient) {
+		double[][] lower = cholesky(hessian);
+		if(lower == null) { return null; }
+		return solve(lower, gradient, new double[gradient.length]);
+	}
+	
+	/**
+	 * @param matrix: a symmetric positive definite matrix
+	 * @return: its inverse, or null if it is singular
+	 */
+	private static double[][] invert(double[][] matrix) {
+		double[][] lower = cholesky(matrix);
+		if(lower == null) { return null; }
+		
+		int size = matrix.length;
+		double[][] inverse = new double[size][];
+		double[] unit = new double[size];
+		for(int column = 0; column < size; ++column) {
+			unit[column] = 1;
+			inverse[column] = solve(lower, unit, new double[size]);
+			unit[column] = 0;
+		}
+		return inverse;
+	}
+	
+	/**
+	 * Predict the probability of every row of a set of predictors, which must have the same columns
+	 * (and levels) as the ones the model was fitted on
+	 * @param numeric: the numeric predictors: numeric[column][row]
+	 * @param levels: the level of each row, or null if the model has no categorical predictor
+	 * @return: the probability of each row (NaN if a predictor is missing or its level is unknown or wasn't fitted)
+	 */
+	public double[] predict(double[][] numeric, int[] levels) {
+		int size = (numeric.length > 0) ? numeric[0].length : (levels != null) ? levels.length : 0;
+		return predict(numeric, levels, null, size);
+	}
+	
+	/**
+	 * Predict the probability of some of the rows of a set of predictors
+	 * @param numeric: the numeric predictors: numeric[column][row]
+	 * @param levels: the level of each row, or null if the model has no categorical predictor
+	 * @param subset: the rows to predict
+	 * @return: the probability of each row of the subset, in the same order
+	 */
+	public double[] predict(double[][] numeric, int[] levels, int[] subset) {
+		return predict(numeric, levels, subset, subset.length);
+	}
+	
+	/**
+	 * @param numeric: the numeric predictors: numeric[column][row]
+	 * @param levels: the level of each row, or null
+	 * @param subset: the rows to predict, or null for rows 0 to size-1
+	 * @param size: the number of rows to predict
+	 * @return: the probability of each row
+	 */
+	private double[] predict(double[][] numeric, int[] levels, int[] subset, int size) {
+		if(numeric.length != this.numeric.length || (levels == null) != (this.levels == null)) {
+			throw new IllegalArgumentException("The predictors do not match the model's!");
+		}
+		
+		double[] probability = new double[size];
+		
+		for(int index = 0; index < size; ++index) {
+			int row = (subset == null) ? index : subset[index];
+			boolean ok = (levels == null || (levels[row] >= 0 && levels[row] < levelCount && present[levels[row]]));
+			for(int column = 0; ok && column < numeric.length; ++column) { ok = !Double.isNaN(numeric[column][row]); }
+			probability[index] = ok ? sigmoid(eta(beta, numeric, levels, row)) : Double.NaN;
+		}
+		
+		return probability;
+	}
+	
+	/** @return: the number of parameters, including the intercept */
+	public int parameters() { return 1 + numeric.length + (levelCount - 1); }
+	/** @return: the number of parameters held at 0 because no fitted row has their level */
+	public int droppedLevels() {
+		int count = 0;
+		for(boolean drop: dropped) { if(drop) { ++count; } }
+		return count;
+	}
+	/** @return: the number of rows the model was fitted on */
+	public int observations() { return rows.length; }
+	public boolean converged() { return converged; }
+	public int iterations() { return iterations; }
+	public double logLikelihood() { return logLikelihood; }
+	/** @return: the log-likelihood of the intercept-only model */
+	public double nullLogLikelihood() { return nullLogLikelihood; }
+	/** @return: McFadden's pseudo R-squared */
+	public double pseudoRSquared() { return 1 - logLikelihood / nullLogLikelihood; }
+	
+	/** @return: the p-value of the likelihood ratio test against the intercept-only model */
+	public double llrPValue() {
+		return chiSquarePValue(2 * (logLikelihood - nullLogLikelihood), parameters() - 1 - droppedLevels());
+	}
+	
+	/**
+	 * @param param: the index of a parameter
+	 * @return: its coefficient
+	 */
+	public double coefficient(int param) { return beta[param]; }
+	
+	/**
+	 * @param param: the index of a parameter
+	 * @return: its standard error (NaN if the model was fitted on no rows or the parameter was held at 0)
+	 */
+	public double standardError(int param) {
+		return (covariance == null || dropped[param]) ? Double.NaN : Math.sqrt(covariance[param][param]);
+	}
+	
+	/**
+	 * @param x: a number
+	 * @return: 1 / (1 + e^-x)
+	 */
+	private static double sigmoid(double x) {
+		if(x >= 0) { return 1 / (1 + Math.exp(-x)); }
+		double e = Math.exp(x);
+		return e / (1 + e);
+	}
+	
+	/**
+	 * @param x: a number
+	 * @return: log(1 + e^x), without overflowing
+	 */
+	private static double softplus(double x) {
+		return (x > 0) ? x + Math.log1p(Math.exp(-x)) : Math.log1p(Math.exp(x));
+	}
+	
+	/**
+	 * @param x: a number
+	 * @param y: a positive number
+	 * @return: x * log(y), or 0 if x is 0
+	 */
+	private static double xlogy(double x, double y) { return (x == 0) ? 0 : x * Math.log(y); }
+	
+	/**
+	 * @param z: a z-score
+	 * @return: the two-sided p-value of the z-score: erfc(|z| / sqrt(2))
+	 */
+	public static double normalPValue(double z) {
+		if(Double.isNaN(z)) { return Double.NaN; }
+		return gammaQ(0.5, z * z / 2);
+	}
+	
+	/**
+	 * @param x: a chi-squared statistic
+	 * @param df: its degrees of freedom
+	 * @return: the probability of a statistic at least this large
+	 */
+	public static double chiSquarePValue(double x, int df) {
+		if(df < 1 || Double.isNaN(x)) { return Double.NaN; }
+		return gammaQ(df / 2.0, max(x, 0) / 2);
+	}
+	
+	/**
+	 * The regularized upper incomplete gamma function (Numerical Recipes' gammq)
+	 * @param a: the shape
+	 * @param x: the argument
+	 * @return: Q(a, x)
+	 */
+	static double gammaQ(double a, double x) {
+		if(x <= 0) { return 1; }
+		double logPrefix = -x + a * Math.log(x) - lnGamma(a);
+		
+		if(x < a + 1) {
+			//series for P(a, x)
+			double term = 1 / a, sum = term;
+			for(double n = a + 1; Math.abs(term) > Math.abs(sum) * 1e-16; ++n) {
+				term *= x / n;
+				sum += term;
+			}
+			return 1 - sum * Math.exp(logPrefix);
+		}
+		
+		//continued fraction for Q(a, x), by Lentz's method
+		final double tiny = 1e-300;
+		double b = x + 1 - a, c = 1 / tiny, d = 1 / b, h = d;
+		for(int i = 1; i < 1000; ++i) {
+			double an = -i * (i - a);
+			b += 2;
+			d = an * d + b;
+			if(Math.abs(d) < tiny) { d = tiny; }
+			c = b + an / c;
+			if(Math.abs(c) < tiny) { c = tiny; }
+			d = 1 / d;
+			double delta = d * c;
+			h *= delta;
+			if(Math.abs(delta - 1) < 1e-16) { break; }
+		}
+		return Math.exp(logPrefix) * h;
+	}
+	
+	/**
+	 * The log of the gamma function (Lanczos' approximation, g=7)
+	 * @param x: a positive number
+	 * @return: ln(Gamma(x))
+	 */
+	static double lnGamma(double x) {
+		final double[] coefficients = {
+				0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+				-176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6,
+				1.5056327351493116e-7 };
+		
+		if(x < 0.5) { return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - lnGamma(1 - x); }
+		
+		x -= 1;
+		double sum = coefficients[0];
+		for(int i = 1; i < coefficients.length; ++i) { sum += coefficients[i] / (x + i); }
+		double t = x + 7.5;
+		return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+	}
+	
+	public String toString() {
+		return "LogisticRegression (" + parameters() + " parameters, " + ((rows == null) ? "not fitted" : rows.length + " rows") + ")";
+	}
+}
@@ -0,0 +1,264 @@
+package analysis.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import analysis.PredictionTable;
+import analysis.PropensityRecord;
+
+/**
+ * Counts how many switches and non-switches fall in each propensity interval, for every
+ * descriptor combination.
+ *
+ * The interval [0,1] is split into equal bins: bin k holds the propensities in [k/bins, (k+1)/bins),
+ * and the last bin also holds 1.  A propensity's bin is computed directly, not searched for,
+ * so the number of bins doesn't change the cost of counting.
+ *
+ * Histograms of the same combinations and bins can be merged, so a table can be counted in
+ * parallel, one block of rows per task.  A histogram can also be re-binned to any number of bins
+ * that divides its own without looking at the propensities again: count once at a high resolution
+ * and derive the coarser ones.
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class PropensityHistogram extends StatsObject {
+	private static final long serialVersionUID = 1L;
+	
+	//rows per task when counting a table in parallel
+	private static final int MIN_ROWS_PER_TASK = 1 << 14;
+	
+	//descriptions of the columns
+	private String[] labels;
+	private int bins;
+	//counts[column][PropensityRecord.FALSE or TRUE][bin]
+	private int[][][] counts;
+	//propensities that are NaN or outside [0,1], by column
+	private int[] skipped;
+	
+	/**
+	 * Make an empty histogram
+	 * @param labels: the description of each descriptor combination
+	 * @param bins: the number of propensity intervals
+	 */
+	public PropensityHistogram(String[] labels, int bins) {
+		if(bins < 1) { throw new IllegalArgumentException("A histogram needs at least 1 bin, not " + bins); }
+		this.labels = labels;
+		this.bins = bins;
+		counts = new int[labels.length][2][bins];
+		skipped = new int[labels.length];
+	}
+	
+	/**
+	 * Count every propensity in a table, in parallel
+	 * @param table: the predictions
+	 * @param bins: the number of propensity intervals
+	 * @param threads: the maximum number of blocks of rows to count at once
+	 * @return: the histogram of the table
+	 */
+	public static PropensityHistogram fromTable(PredictionTable table, final int bins, int threads) {
+		final String[] labels = table.labels();
+		final double[][] columns = new double[table.columns()][];
+		for(int col = 0; col < columns.length; ++col) { columns[col] = table.column(col); }
+		final boolean[] switches = table.switches();
+		
+		int rows = switches.length;
+		if(threads < 1) { threads = 1; }
+		int tasks = max(1, min(threads, rows / MIN_ROWS_PER_TASK));
+		if(tasks == 1) {
+			return new PropensityHistogram(labels, bins).addRows(columns, switches, 0, rows);
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(tasks);
+		ArrayList<Future<PropensityHistogram>> futures = new ArrayList<Future<PropensityHistogram>>(tasks);
+		
+		for(int task = 0; task < tasks; ++task) {
+			final int from = (int) ((long) rows * task / tasks);
+			final int to = (int) ((long) rows * (task+1) / tasks);
+			futures.add(pool.submit(new Callable<PropensityHistogram>() {
+				public PropensityHistogram call() {
+					return new PropensityHistogram(labels, bins).addRows(columns, switches, from, to);
+				}
+			}));
+		}
+		
+		PropensityHistogram histogram = new PropensityHistogram(labels, bins);
+		try {
+			for(Future<PropensityHistogram> future: futures) {
+				try {
+					histogram.merge(future.get());
+				} catch (ExecutionException EE) {
+					pool.shutdownNow();
+					throw new RuntimeException("Could not count propensities", EE.getCause());
+				}
+			}
+		} catch (InterruptedException IE) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			return histogram;
+		}
+		
+		pool.shutdown();
+		return histogram;
+	}
+	
+	/**
+	 * Count a block of rows of every column
+	 * @param columns: propensity[column][row]
+	 * @param switches: whether each row is a switch
+	 * @param from: the first row
+	 * @param to: the row after the last
+	 * @return: this
+	 */
+	public PropensityHistogram addRows(double[][] columns, boolean[] switches, int from, int to) {
+		for(int col = 0; col < labels.length; ++col) {
+			double[] column = columns[col];
+			int[] falseCounts = counts[col][PropensityRecord.FALSE];
+			int[] trueCounts = counts[col][PropensityRecord.TRUE];
+			
+			for(int row = from; row < to; ++row) {
+				int bin = bin(column[row], bins);
+				if(bin < 0) {
+					++skipped[col];
+				} else if(switches[row]) {
+					++trueCounts[bin];
+				} else {
+					++falseCounts[bin];
+				}
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Count one propensity
+	 * @param col: the column
+	 * @param propensity: the propensity
+	 * @param isSwitch: whether the residue is a switch
+	 */
+	public void add(int col, double propensity, boolean isSwitch) {
+		int bin = bin(propensity, bins);
+		if(bin < 0) {
+			++skipped[col];
+		} else {
+			++counts[col][isSwitch ? PropensityRecord.TRUE : PropensityRecord.FALSE][bin];
+		}
+	}
+	
+	/**
+	 * @param propensity: a propensity
+	 * @param bins: the number of propensity intervals
+	 * @return: the interval the propensity falls in, or -1 if it is NaN or outside [0,1]
+	 */
+	public static int bin(double propensity, int bins) {
+		if(!(propensity >= 0 && propensity <= 1)) { return -1; }
+		int bin = (int) (propensity * bins);
+		//propensity * bins can be rounded across a boundary: check against the boundaries themselves
+		if(bin >= bins) { bin = bins-1; }
+		if(bin > 0 && (double) bin / bins > propensity) { --bin; }
+		else if(bin < bins-1 && (double) (bin+1) / bins <= propensity) { ++bin; }
+		return bin;
+	}
+	
+	/**
+	 * Add the counts of another histogram to this one
+	 * @param other: a histogram of the same columns and number of bins
+	 */
+	public void merge(PropensityHistogram other) {
+		if(other.labels.length != labels.length || other.bins != bins) {
+			throw new IllegalArgumentException("Cannot merge histograms of different columns or bins");
+		}
+		
+		for(int col = 0; col < labels.length; ++col) {
+			for(int value = 0; value < 2; ++value) {
+				int[] mine = counts[col][value];
+				int[] theirs = other.counts[col][value];
+				for(int bin = 0; bin < bins; ++bin) { mine[bin] += theirs[bin]; }
+			}
+			skipped[col] += other.skipped[col];
+		}
+	}
+	
+	/**
+	 * Make a coarser histogram from this one
+	 * @param coarserBins: the new number of bins: it must divide this histogram's
+	 * @return: the histogram with coarserBins bins
+	 */
+	public PropensityHistogram rebin(int coarserBins) {
+		if(coarserBins < 1 || bins % coarserBins != 0) {
+			throw new IllegalArgumentException("Cannot re-bin " + bins + " bins into " + coarserBins);
+		}
+		
+		int factor = bins / coarserBins;
+		PropensityHistogram coarser = new PropensityHistogram(labels, coarserBins);
+		for(int col = 0; col < labels.length; ++col) {
+			for(int value = 0; value < 2; ++value) {
+				int[] fine = counts[col][value];
+				int[] coarse = coarser.counts[col][value];
+				for(int bin = 0; bin < bins; ++bin) { coarse[bin / factor] += fine[bin]; }
+			}
+		}
+		coarser.skipped = Arrays.copyOf(skipped, skipped.length);
+		return coarser;
+	}
+	
+	/** @return: the number of columns */
+	public int columns() { return labels.length; }
+	/** @return: the number of propensity intervals */
+	public int bins() { return bins; }
+	
+	/**
+	 * @param col: a column
+	 * @return: the description of the column
+	 */
+	public String label(int col) { return labels[col]; }
+	
+	/**
+	 * @param col: a column
+	 * @param isSwitch: count switches (true) or non-switches (false)
+	 * @param bin: a propensity interval
+	 * @return: the number of residues of the column in the interval
+	 */
+	public int count(int col, boolean isSwitch, int bin) {
+		return counts[col][isSwitch ? PropensityRecord.TRUE : PropensityRecord.FALSE][bin];
+	}
+	
+	/**
+	 * @param col: a column
+	 * @return: the number of propensities of the column that were NaN or outside [0,1]
+	 */
+	public int skipped(int col) { return skipped[col]; }
+	
+	/**
+	 * @param col: a column
+	 * @return: the column's counts as a PropensityRecord
+	 */
+	public PropensityRecord record(int col) {
+		return new PropensityRecord(labels[col], counts[col][PropensityRecord.FALSE], counts[col][PropensityRecord.TRUE]);
+	}
+	
+	/**
+	 * @param name: what to name the record
+	 * @return: the counts of every column added together, as a PropensityRecord
+	 */
+	public PropensityRecord totalRecord(String name) {
+		int[] falseCounts = new int[bins];
+		int[] trueCounts = new int[bins];
+		for(int col = 0; col < labels.length; ++col) {
+			for(int bin = 0; bin < bins; ++bin) {
+				falseCounts[bin] += counts[col][PropensityRecord.FALSE][bin];
+				trueCounts[bin] += counts[col][PropensityRecord.TRUE][bin];
+			}
+		}
+		return new PropensityRecord(name, falseCounts, trueCounts);
+	}
+	
+	public String toString() {
+		return "PropensityHistogram (" + labels.length + " combinations, " + bins + " bins)";
+	}
+}
@@ -0,0 +1,321 @@
+package analysis.stats;
+
+import java.util.Arrays;
+
+/**
+ * Collects the ROC statistics of many evaluations (the folds of a cross-validation or the
+ * replicates of a bootstrap) of the same descriptor combinations.
+ *
+ * For every column it keeps the pooled confusion matrix at each threshold, and running
+ * statistics (count, mean and sum of squared deviations) of each evaluation's AUC and accuracy.
+ * All of these can be added together, so each evaluation can be collected on its own thread
+ * and the accumulators merged afterwards, in any order.
+ *
+ * As in ROCEngine, the last column is the total.
+ * A column whose model could not be fitted in an evaluation is left out of that evaluation
+ * (and so is the total) and counted as a failure instead.
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class ROCAccumulator extends StatsObject {
+	private static final long serialVersionUID = 1L;
+	
+	//the threshold accuracy is measured at (the logistic regression's own classification)
+	public static final double CLASSIFICATION_THRESHOLD = 0.5;
+	
+	//descriptions of the columns (the last one is the total)
+	private String[] labels;
+	private double[] thresholds;
+	//whether the evaluations are bootstrap replicates (and not folds)
+	private boolean replicates;
+	private int evaluations;
+	//the number of evaluations each column was left out of because its model could not be fitted
+	private int[] failures;
+	
+	//pooled confusion matrices: [column][threshold]
+	private long[][] truePos;
+	private long[][] falsePos;
+	private long[][] trueNeg;
+	private long[][] falseNeg;
+	
+	//running statistics of the AUC (evaluations with no switches or no non-switches have none)
+	private int[] aucCount;
+	private double[] aucMean;
+	private double[] aucSquares;
+	//running statistics of the accuracy at CLASSIFICATION_THRESHOLD
+	private int[] accuracyCount;
+	private double[] accuracyMean;
+	private double[] accuracySquares;
+	
+	/**
+	 * Make an empty accumulator
+	 * @param labels: the description of each descriptor combination (the total is added)
+	 * @param thresholds: the thresholds to pool the confusion matrices at
+	 * @param replicates: true if the evaluations are bootstrap replicates, false if they are folds
+	 */
+	public ROCAccumulator(String[] labels, double[] thresholds, boolean replicates) {
+		int columns = labels.length+1;
+		this.labels = Arrays.copyOf(labels, columns);
+		this.labels[labels.length] = ROCEngine.TOTAL;
+		this.thresholds = thresholds;
+		this.replicates = replicates;
+		
+		truePos = new long[columns][thresholds.length];
+		falsePos = new long[columns][thresholds.length];
+		trueNeg = new long[columns][thresholds.length];
+		falseNeg = new long[columns][thresholds.length];
+		
+		failures = new int[columns];
+		aucCount = new int[columns];
+		aucMean = new double[columns];
+		aucSquares = new double[columns];
+		accuracyCount = new int[columns];
+		accuracyMean = new double[columns];
+		accuracySquares = new double[columns];
+	}
+	
+	/**
+	 * Add one evaluation
+	 * @param engine: the evaluation's ROC statistics
+	 * @param analysis: the evaluation's AUCs, or null if it has no switches or no non-switches
+	 */
+	public void add(ROCEngine engine, AUCAnalysis analysis) { add(engine, analysis, null); }
+	
+	/**
+	 * Add one evaluation, leaving out the columns whose models could not be fitted
+	 * @param engine: the evaluation's ROC statistics
+	 * @param analysis: the evaluation's AUCs, or null if it has no switches or no non-switches
+	 * @param failed: which combinations' models could not be fitted (without the total), or null if none
+	 */
+	public void add(ROCEngine engine, AUCAnalysis analysis, boolean[] failed) {
+		if(engine.columns() != labels.length) {
+			throw new IllegalArgumentException("Expected " + labels.length + " columns, got " + engine.columns());
+		}
+		
+		//the total is made of every combination, so it fails if any of them does
+		boolean[] skip = new boolean[labels.length];
+		if(failed != null) {
+			for(int col = 0; col < failed.length; ++col) {
+				skip[col] = failed[col];
+				skip[labels.length-1] |= failed[col];
+			}
+		}
+		for(int col = 0; col < labels.length; ++col) {
+			if(skip[col]) { ++failures[col]; }
+		}
+		
+		++evaluations;
+		for(int index = 0; index < thresholds.length; ++index) {
+			ROCRecord[] records = engine.recordsAt(thresholds[index]);
+			for(int col = 0; col < records.length; ++col) {
+				if(skip[col]) { continue; }
+				truePos[col][index] += records[col].truePos;
+				falsePos[col][index] += records[col].falsePos;
+				trueNeg[col][index] += records[col].trueNeg;
+				falseNeg[col][index] += records[col].falseNeg;
+			}
+		}
+		
+		ROCRecord[] classified = engine.recordsAt(CLASSIFICATION_THRESHOLD);
+		for(int col = 0; col < labels.length; ++col) {
+			if(skip[col]) { continue; }
+			double accuracy = classified[col].accuracy();
+			if(!Double.isNaN(accuracy)) { accuracyCount[col] = push(accuracyCount[col], accuracyMean, accuracySquares, col, accuracy); }
+			if(analysis != null) { aucCount[col] = push(aucCount[col], aucMean, aucSquares, col, analysis.auc(col)); }
+		}
+	}
+	
+	/**
+	 * Add everything another accumulator collected to this one
+	 * @param other: an accumulator of the same columns and thresholds
+	 */
+	public void merge(ROCAccumulator other) {
+		if(other.labels.length != labels.length || !Arrays.equals(other.thresholds, thresholds)) {
+			throw new IllegalArgumentException("Cannot merge accumulators of different columns or thresholds");
+		}
+		
+		evaluations += other.evaluations;
+		for(int col = 0; col < labels.length; ++col) {
+			failures[col] += other.failures[col];
+			for(int index = 0; index < thresholds.length; ++index) {
+				truePos[col][index] += other.truePos[col][index];
+				falsePos[col][index] += other.falsePos[col][index];
+				trueNeg[col][index] += other.trueNeg[col][index];
+				falseNeg[col][index] += other.falseNeg[col][index];
+			}
+			
+			aucCount[col] = combine(aucCount[col], aucMean, aucSquares, col, other.aucCount[col], other.aucMean[col], other.aucSquares[col]);
+			accuracyCount[col] = combine(accuracyCount[col], accuracyMean, accuracySquares, col,
+					other.accuracyCount[col], other.accuracyMean[col], other.accuracySquares[col]);
+		}
+	}
+	
+	/**
+	 * Add a value to running statistics (Welford's method)
+	 * @param count: the number of values so far
+	 * @param mean: the means
+	 * @param squares: the sums of squared deviations
+	 * @param col: the column
+	 * @param value: the new value
+	 * @return: the new count
+	 */
+	private static int push(int count, double[] mean, double[] squares, int col, double value) {
+		return combine(count, mean, squares, col, 1, value, 0);
+	}
+	
+	/**
+	 * Combine two sets of running statistics (Chan et al.'s pairwise method)
+	 * @param count: the number of values in the first set
+	 * @param mean: the means of the first set (updated)
+	 * @param squares: the sums of squared deviations of the first set (updated)
+	 * @param col: the column
+	 * @param otherCount: the number of values in the second set
+	 * @param otherMean: the mean of the second set
+	 * @param otherSquares: the sum of squared deviations of the second set
+	 * @return: the combined count
+	 */
+	private static int combine(int count, double[] mean, double[] squares, int col, int otherCount, double otherMean, double otherSquares) {
+		if(otherCount == 0) { return count; }
+		int total = count + otherCount;
+		double delta = otherMean - mean[col];
+		mean[col] += delta * otherCount / total;
+		squares[col] += otherSquares + delta * delta * ((double) count * otherCount / total);
+		return total;
+	}
+	
+	/** @return: the number of columns, including the total */
+	public int columns() { return labels.length; }
+	/** @return: the number of evaluations added */
+	public int evaluations() { return evaluations; }
+	
+	/**
+	 * @param col: the column
+	 * @return: the number of evaluations the column was left out of because its model could not be fitted
+	 */
+	public int failures(int col) { return failures[col]; }
+	public double[] thresholds() { return thresholds; }
+	
+	/**
+	 * @param col: the column
+	 * @return: the description of the column
+	 */
+	public String label(int col) { return labels[col]; }
+	
+	/**
+	 * @param col: the column
+	 * @return: the number of evaluations with an AUC
+	 */
+	public int aucCount(int col) { return aucCount[col]; }
+	
+	/**
+	 * @param col: the column
+	 * @return: the mean AUC of the evaluations
+	 */
+	public double meanAUC(int col) { return (aucCount[col] == 0) ? Double.NaN : aucMean[col]; }
+	
+	/**
+	 * @param col: the column
+	 * @return: the standard deviation of the evaluations' AUCs
+	 */
+	public double aucDeviation(int col) { return deviation(aucCount[col], aucSquares[col]); }
+	
+	/**
+	 * @param col: the column
+	 * @return: the mean accuracy of the evaluations at CLASSIFICATION_THRESHOLD
+	 */
+	public double meanAccuracy(int col) { return (accuracyCount[col] == 0) ? Double.NaN : accuracyMean[col]; }
+	
+	/**
+	 * @param col: the column
+	 * @return: the standard deviation of the evaluations' accuracies
+	 */
+	public double accuracyDeviation(int col) { return deviation(accuracyCount[col], accuracySquares[col]); }
+	
+	/**
+	 * Normal confidence interval of the AUC
+	 * @param col: the column
+	 * @param z: the z-value for the level, such as AUCAnalysis.Z_95
+	 * @return: { lower, upper }, clipped to [0,1]
+	 */
+	public double[] aucInterval(int col, double z) {
+		return interval(meanAUC(col), aucDeviation(col), aucCount[col], z);
+	}
+	
+	/**
+	 * Normal confidence interval of the accuracy
+	 * @param col: the column
+	 * @param z: the z-value for the level, such as AUCAnalysis.Z_95
+	 * @return: { lower, upper }, clipped to [0,1]
+	 */
+	public double[] accuracyInterval(int col, double z) {
+		return interval(meanAccuracy(col), accuracyDeviation(col), accuracyCount[col], z);
+	}
+	
+	/**
+	 * The standard error of a bootstrap estimate is the deviation of the replicates;
+	 * the standard error of a cross-validated mean is the deviation of the folds / sqrt(folds)
+	 * @param mean: the mean
+	 * @param deviation: the standard deviation
+	 * @param count: the number of values
+	 * @param z: the z-value for the level
+	 * @return: { lower, upper }, clipped to [0,1]
+	 */
+	private double[] interval(double mean, double deviation, int count, double z) {
+		double error = replicates ? deviation : deviation / Math.sqrt(count);
+		return new double[] { max(0, mean - z * error), min(1, mean + z * error) };
+	}
+	
+	/**
+	 * @param count: the number of values
+	 * @param squares: their sum of squared deviations
+	 * @return: the sample standard deviation
+	 */
+	private static double deviation(int count, double squares) {
+		return (count < 2) ? Double.NaN : Math.sqrt(squares / (count - 1));
+	}
+	
+	/**
+	 * Get the pooled ROCRecords of every column at one threshold
+	 * @param index: the index of the threshold
+	 * @return: one ROCRecord per column, the last being the total
+	 * @throws ArithmeticException: if a pooled count is too large for a ROCRecord
+	 */
+	public ROCRecord[] recordsAt(int index) {
+		ROCRecord[] records = new ROCRecord[labels.length];
+		for(int col = 0; col < labels.length; ++col) {
+			records[col] = new ROCRecord(labels[col]);
+			records[col].truePos = Math.toIntExact(truePos[col][index]);
+			records[col].falsePos = Math.toIntExact(falsePos[col][index]);
+			records[col].trueNeg = Math.toIntExact(trueNeg[col][index]);
+			records[col].falseNeg = Math.toIntExact(falseNeg[col][index]);
+		}
+		return records;
+	}
+	
+	/**
+	 * Get the header for a summary file
+	 * @return
+	 */
+	public static String header() {
+		return "Description,Evaluations,Failures,AUCCount,MeanAUC,AUCDeviation,AUCLower,AUCUpper,MeanAccuracy,AccuracyDeviation,AccuracyLower,AccuracyUpper";
+	}
+	
+	/**
+	 * Returns the summary of a column as a string ready to be written to a .csv file
+	 * @param col: the column
+	 * @param z: the z-value for the confidence intervals
+	 * @return a csv-ready string containing the summary
+	 */
+	public String toCSVRow(int col, double z) {
+		double[] auc = aucInterval(col, z);
+		double[] accuracy = accuracyInterval(col, z);
+		return labels[col] + "," + evaluations + "," + failures[col] + "," + aucCount[col] + "," + meanAUC(col) + "," + aucDeviation(col) + "," + auc[0] + "," + auc[1]
+				+ "," + meanAccuracy(col) + "," + accuracyDeviation(col) + "," + accuracy[0] + "," + accuracy[1];
+	}
+	
+	public String toString() {
+		return "ROCAccumulator (" + (labels.length-1) + " combinations, " + evaluations + (replicates ? " replicates)" : " folds)");
+	}
+}
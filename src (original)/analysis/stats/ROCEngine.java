@@ -0,0 +1,266 @@
+package analysis.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import analysis.PredictionTable;
+import bio.exceptions.MissingDataException;
+
+/**
+ * Computes ROCRecords for every descriptor combination at any number of thresholds.
+ * Each column's propensities are split into switches and non-switches and sorted once,
+ * after which the confusion matrix at a threshold is two binary searches per column
+ * instead of a full rescan of the predictions.
+ *
+ * The last column is always the total, where a residue is predicted to be a switch if
+ * the sum of its propensities is at least (threshold * number of combinations).
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class ROCEngine extends StatsObject {
+	private static final long serialVersionUID = 1L;
+	
+	public static final String TOTAL = "TOTAL";
+	
+	//descriptions of the columns (the last one is the total)
+	private String[] labels;
+	//sorted propensities of the residues that are switches, by column
+	private double[][] switches;
+	//sorted propensities of the residues that are not switches, by column
+	private double[][] nonSwitches;
+	//residues with no propensity (NaN): never predicted to be switches
+	private int[] nanSwitches;
+	private int[] nanNonSwitches;
+	//the number of descriptor combinations that make up the total column
+	private int combinations;
+	
+	/**
+	 * Build a ROCEngine from column-major data
+	 * @param labels: the description of each descriptor combination
+	 * @param propensity: propensity[combination][residue]
+	 * @param isSwitch: isSwitch[residue]
+	 */
+	public ROCEngine(String[] labels, double[][] propensity, boolean[] isSwitch) {
+		combinations = labels.length;
+		int columns = combinations+1;
+		int residues = isSwitch.length;
+		
+		this.labels = Arrays.copyOf(labels, columns);
+		this.labels[combinations] = TOTAL;
+		
+		switches = new double[columns][];
+		nonSwitches = new double[columns][];
+		nanSwitches = new int[columns];
+		nanNonSwitches = new int[columns];
+		
+		double[] totals = new double[residues];
+		for(int col = 0; col < combinations; ++col) {
+			for(int row = 0; row < residues; ++row) { totals[row] += propensity[col][row]; }
+			split(col, propensity[col], isSwitch);
+		}
+		split(combinations, totals, isSwitch);
+	}
+	
+	/**
+	 * Build a ROCEngine from a PredictionTable
+	 * @param table: the predictions
+	 * @return: a ROCEngine over the table
+	 */
+	public static ROCEngine fromTable(PredictionTable table) {
+		if(table == null) { throw new MissingDataException("No prediction data has been loaded!"); }
+		
+		double[][] propensity = new double[table.columns()][];
+		for(int col = 0; col < propensity.length; ++col) { propensity[col] = table.column(col); }
+		
+		return new ROCEngine(table.labels(), propensity, table.switches());
+	}
+	
+	/**
+	 * Sort one column of propensities into the switch and non-switch arrays
+	 * @param col: the column to fill
+	 * @param values: the propensities for the column
+	 * @param isSwitch: which residues are switches
+	 */
+	private void split(int col, double[] values, boolean[] isSwitch) {
+		int pos = 0, neg = 0;
+		for(int row = 0; row < values.length; ++row) {
+			if(isSwitch[row]) { ++pos; } else { ++neg; }
+		}
+		
+		double[] posVals = new double[pos];
+		double[] negVals = new double[neg];
+		pos = 0;
+		neg = 0;
+		
+		for(int row = 0; row < values.length; ++row) {
+			if(Double.isNaN(values[row])) {
+				if(isSwitch[row]) { ++nanSwitches[col]; } else { ++nanNonSwitches[col]; }
+			} else if(isSwitch[row]) {
+				posVals[pos++] = values[row];
+			} else {
+				negVals[neg++] = values[row];
+			}
+		}
+		
+		switches[col] = Arrays.copyOf(posVals, pos);
+		nonSwitches[col] = Arrays.copyOf(negVals, neg);
+		Arrays.sort(switches[col]);
+		Arrays.sort(nonSwitches[col]);
+	}
+	
+	/**
+	 * @return: the number of columns, including the total
+	 */
+	public int columns() { return labels.length; }
+	
+	/**
+	 * @param col: the column
+	 * @return: the description of the column
+	 */
+	public String label(int col) { return labels[col]; }
+	
+	/**
+	 * Get the ROCRecords for every column at the given threshold
+	 * A residue is predicted to be a switch if its propensity is >= threshold
+	 * @param threshold: the propensity threshold
+	 * @return: one ROCRecord per column, the last being the total
+	 */
+	public ROCRecord[] recordsAt(double threshold) {
+		ROCRecord[] records = new ROCRecord[labels.length];
+		
+		for(int col = 0; col < combinations; ++col) {
+			records[col] = recordAt(col, threshold);
+		}
+		records[combinations] = recordAt(combinations, threshold*combinations);
+		
+		return records;
+	}
+	
+	/**
+	 * Get the ROCRecords for every column at every threshold in the list
+	 * @param thresholds: the propensity thresholds
+	 * @return: records[threshold][column]
+	 */
+	public ROCRecord[][] sweep(double[] thresholds) {
+		ROCRecord[][] records = new ROCRecord[thresholds.length][];
+		for(int index = 0; index < thresholds.length; ++index) {
+			records[index] = recordsAt(thresholds[index]);
+		}
+		return records;
+	}
+	
+	/**
+	 * Get the thresholds used by roc-fit: 0, increment, 2*increment, ... while < 1
+	 * The thresholds are accumulated exactly as the original loop did
+	 * @param increment: the distance between thresholds
+	 * @return: the list of thresholds
+	 */
+	public static double[] thresholds(double increment) {
+		ArrayList<Double> list = new ArrayList<Double>();
+		for(double threshold = 0.0; threshold < 1.0; threshold += increment) { list.add(threshold); }
+		
+		double[] retVal = new double[list.size()];
+		for(int index = 0; index < retVal.length; ++index) { retVal[index] = list.get(index); }
+		return retVal;
+	}
+	
+	/**
+	 * Get the exact ROC curve for a column: one record per distinct propensity,
+	 * ordered from the highest threshold to the lowest.
+	 * The first record is at a threshold above every propensity (nothing predicted)
+	 * @param col: the column to get the curve for
+	 * @return: the records making up the curve
+	 */
+	public ROCRecord[] exactCurve(int col) {
+		double[] thresholds = exactThresholds(col);
+		ROCRecord[] curve = new ROCRecord[thresholds.length];
+		
+		double[] pos = switches[col];
+		double[] neg = nonSwitches[col];
+		int posIndex = pos.length, negIndex = neg.length;
+		
+		for(int index = 0; index < thresholds.length; ++index) {
+			double threshold = thresholds[index];
+			while(posIndex > 0 && pos[posIndex-1] >= threshold) { --posIndex; }
+			while(negIndex > 0 && neg[negIndex-1] >= threshold) { --negIndex; }
+			curve[index] = makeRecord(col, pos.length - posIndex, neg.length - negIndex);
+		}
+		
+		return curve;
+	}
+	
+	/**
+	 * Get the thresholds of the exact ROC curve for a column, from highest to lowest
+	 * For the total column these are sums of propensities, not averages
+	 * @param col: the column
+	 * @return: every distinct propensity, preceded by positive infinity
+	 */
+	public double[] exactThresholds(int col) {
+		double[] pos = switches[col];
+		double[] neg = nonSwitches[col];
+		double[] retVal = new double[pos.length + neg.length + 1];
+		retVal[0] = Double.POSITIVE_INFINITY;
+		
+		int posIndex = pos.length-1, negIndex = neg.length-1, size = 1;
+		while(posIndex >= 0 || negIndex >= 0) {
+			double next;
+			if(negIndex < 0 || (posIndex >= 0 && pos[posIndex] >= neg[negIndex])) {
+				next = pos[posIndex--];
+			} else {
+				next = neg[negIndex--];
+			}
+			
+			if(next != retVal[size-1]) { retVal[size++] = next; }
+		}
+		
+		return Arrays.copyOf(retVal, size);
+	}
+	
+	/**
+	 * Get the ROCRecord for one column at a (raw) threshold
+	 * @param col: the column
+	 * @param threshold: the threshold to compare the column's values against
+	 * @return: the ROCRecord
+	 */
+	private ROCRecord recordAt(int col, double threshold) {
+		int truePos = switches[col].length - lowerBound(switches[col], threshold);
+		int falsePos = nonSwitches[col].length - lowerBound(nonSwitches[col], threshold);
+		return makeRecord(col, truePos, falsePos);
+	}
+	
+	/**
+	 * Fill in a ROCRecord given the number of positive predictions
+	 * @param col: the column
+	 * @param truePos: number of switches predicted to be switches
+	 * @param falsePos: number of non-switches predicted to be switches
+	 * @return: the ROCRecord
+	 */
+	private ROCRecord makeRecord(int col, int truePos, int falsePos) {
+		ROCRecord record = new ROCRecord(labels[col]);
+		record.truePos = truePos;
+		record.falseNeg = switches[col].length - truePos + nanSwitches[col];
+		record.falsePos = falsePos;
+		record.trueNeg = nonSwitches[col].length - falsePos + nanNonSwitches[col];
+		return record;
+	}
+	
+	/**
+	 * @param sorted: a sorted array
+	 * @param key: the value to look for
+	 * @return: the index of the first element that is not less than key
+	 */
+	private static int lowerBound(double[] sorted, double key) {
+		int low = 0, high = sorted.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(sorted[mid] < key) { low = mid + 1; } else { high = mid; }
+		}
+		return low;
+	}
+	
+	public String toString() {
+		return "ROCEngine (" + (labels.length-1) + " combinations)";
+	}
+}
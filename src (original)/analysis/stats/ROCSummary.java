@@ -0,0 +1,88 @@
+package analysis.stats;
+
+/**
+ * One line of a ROC batch summary: the AUC of a descriptor combination in a data file,
+ * and the threshold that maximizes Youden's J statistic (TPR - FPR).
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class ROCSummary extends StatsObject {
+	private static final long serialVersionUID = 1L;
+	
+	//the data file the summary is about
+	private String source;
+	//the descriptor combination
+	private String description;
+	//exact area under the curve
+	private double auc;
+	//the threshold with the highest Youden's J, and the record at that threshold
+	private double bestThreshold;
+	private ROCRecord best;
+	
+	/**
+	 *
+	 * @param source: the data file the summary is about
+	 * @param description: the descriptor combination
+	 * @param auc: exact area under the curve
+	 * @param bestThreshold: the threshold with the highest Youden's J
+	 * @param best: the ROCRecord at that threshold
+	 */
+	public ROCSummary(String source, String description, double auc, double bestThreshold, ROCRecord best) {
+		this.source = source;
+		this.description = description;
+		this.auc = auc;
+		this.bestThreshold = bestThreshold;
+		this.best = best;
+	}
+	
+	/**
+	 * Find the record with the highest Youden's J (TPR - FPR) in a list of records
+	 * Ties go to the first record in the list
+	 * @param records: the records, one per threshold
+	 * @return: the index of the best record
+	 */
+	public static int bestYouden(ROCRecord[] records) {
+		int bestIndex = 0;
+		for(int index = 1; index < records.length; ++index) {
+			if(youden(records[index]) > youden(records[bestIndex])) { bestIndex = index; }
+		}
+		return bestIndex;
+	}
+	
+	/**
+	 * @param record: the record
+	 * @return: Youden's J statistic for the record
+	 */
+	public static double youden(ROCRecord record) {
+		return record.truePositiveRate() - record.falsePositiveRate();
+	}
+	
+	/**
+	 * Get the header for a summary file
+	 * @return
+	 */
+	public static String header() {
+		return "File,Description,AUC,BestThreshold,Youden,TruePositiveRate,FalsePositiveRate,Accuracy";
+	}
+	
+	/**
+	 * Returns the summary as a string ready to be written to a .csv file
+	 * @return a csv-ready string containing the summary
+	 */
+	public String toCSVRow() {
+		return source + "," + description + "," + auc + "," + bestThreshold + "," + youden(best) + ","
+				+ best.truePositiveRate() + "," + best.falsePositiveRate() + "," + best.accuracy();
+	}
+	
+	public String source() { return source; }
+	public String description() { return description; }
+	public double auc() { return auc; }
+	public double bestThreshold() { return bestThreshold; }
+	public ROCRecord bestRecord() { return best; }
+	
+	public String toString() {
+		return source + ": " + description;
+	}
+}
@@ -1,8 +1,10 @@
 package analysis.stats;
 
 import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Locale;
 
 import bio.exceptions.InvalidDataFormatException;
 import bioUI.SwitchWriteMode;
@@ -18,6 +20,7 @@ public class RegressionResult extends StatsObject {
 	private static final String NEW_LINE = "\n";
 	private static final String LINE_SPACING = "   ";
 	static final String LATEX_TABLE_LINE_END = " \\\\ \\hline";
+	private static final String SUMMARY_RULE = "==============================================================================";
 	
 	private static final String FORMULA = "Formula: ";
 	private static final String ACCURACY = "Accuracy: ";
@@ -34,6 +37,8 @@ public class RegressionResult extends StatsObject {
 	private static final String CONVERGED = "converged:";
 	private static final String LL_NULL = "LL-Null:";
 	private static final String LLR = "LLR p-value:";
+	//how a p-value that couldn't be computed is written
+	private static final String NAN = "NaN";
 	
 	private static SwitchWriteMode readMode;
 	private static boolean tripletMode = false;
@@ -52,6 +57,7 @@ public class RegressionResult extends StatsObject {
 	private double pseudo_r_squared;
 	private double log_likelihood;
 	private double ll_null;
+	//null if it couldn't be computed
 	private BigDecimal llr_p_value;
 	
 	private RegressionTableValue table[];
@@ -133,7 +139,7 @@ public class RegressionResult extends StatsObject {
 		
 		if(lines[start+10].trim().startsWith(LLR)) { 
 			String line10 = lines[start+10].trim().substring(LLR.length()).trim();
-			llr_p_value = new BigDecimal(line10);
+			llr_p_value = line10.equals(NAN) ? null : new BigDecimal(line10);
 		} else { throw new InvalidDataFormatException(); }
 		
 		ArrayList<RegressionTableValue> values = new ArrayList<RegressionTableValue>();
@@ -146,6 +152,44 @@ public class RegressionResult extends StatsObject {
 		values.toArray(table);
 	}
 	
+	/**
+	 * 
+	 * @param formula: the model's formula (ex: "isSwitch ~ E20 + Vkabat")
+	 * @param accuracy: the fraction of the test set predicted correctly
+	 * @param dependantVariable: the name of the response
+	 * @param model: the kind of model (ex: "Logit")
+	 * @param method: how it was fitted (ex: "MLE")
+	 * @param date: when it was fitted
+	 * @param converged: whether the fit converged
+	 * @param observations: the number of rows the model was fitted on
+	 * @param df_residuals: the residual degrees of freedom
+	 * @param df_model: the model's degrees of freedom (not counting the intercept)
+	 * @param pseudo_r_squared: McFadden's pseudo R-squared
+	 * @param log_likelihood: the log-likelihood of the fitted model
+	 * @param ll_null: the log-likelihood of the intercept-only model
+	 * @param llr_p_value: the p-value of the likelihood ratio test against the intercept-only model, or null if it couldn't be computed
+	 * @param table: the coefficients
+	 */
+	public RegressionResult(String formula, double accuracy, String dependantVariable, String model, String method, Date date,
+			boolean converged, int observations, int df_residuals, int df_model, double pseudo_r_squared, double log_likelihood,
+			double ll_null, BigDecimal llr_p_value, RegressionTableValue[] table) {
+		this.formula = formula;
+		this.accuracy = accuracy;
+		this.dependantVariable = dependantVariable;
+		this.model = model;
+		this.method = method;
+		this.date = date;
+		this.converged = converged;
+		this.observations = observations;
+		this.df_residuals = df_residuals;
+		this.df_model = df_model;
+		this.pseudo_r_squared = pseudo_r_squared;
+		this.log_likelihood = log_likelihood;
+		this.ll_null = ll_null;
+		this.llr_p_value = llr_p_value;
+		this.table = table;
+	}
+	
 	public String formula() { return formula; }
 	public double accuracy() { return accuracy; }
 	public String dependantVariable() { return dependantVariable; }
@@ -160,6 +204,9 @@ public class RegressionResult extends StatsObject {
 	public double log_likelihood() { return log_likelihood; }
 	public double ll_null() { return ll_null; }
 	public BigDecimal llr_p_value() { return llr_p_value; }
+	/** @return: the LLR p-value as it is written out (NaN if it couldn't be computed) */
+	private String llrText() { return (llr_p_value == null) ? NAN : llr_p_value.toString(); }
+	public RegressionTableValue[] table() { return table; }
 	
 	/**
 	 * 
@@ -269,7 +316,7 @@ public class RegressionResult extends StatsObject {
 		textBuilder.add(LOG_LIKELIHOOD + " & " + log_likelihood + LATEX_TABLE_LINE_END);
 		textBuilder.add(CONVERGED + " & " + converged + LATEX_TABLE_LINE_END);
 		textBuilder.add(LL_NULL + " & " + ll_null + LATEX_TABLE_LINE_END);
-		textBuilder.add(LLR + " & " + llr_p_value + LATEX_TABLE_LINE_END);
+		textBuilder.add(LLR + " & " + llrText() + LATEX_TABLE_LINE_END);
 		textBuilder.add("\\end{tabular}");
 		textBuilder.add("\\end{center}");
 		textBuilder.add("\\end{table}");
@@ -297,6 +344,55 @@ public class RegressionResult extends StatsObject {
 		return text;
 	}
 	
+	/**
+	 * Write the result as a statsmodels-style summary, in the layout RegressionResult(String[]) reads
+	 * (so LaTeXTableConverter.convertModelResultsToTable() can read files of them)
+	 * @return: the lines of the summary
+	 */
+	public String[] summary() {
+		ArrayList<String> lines = new ArrayList<String>();
+		String dateStr = new SimpleDateFormat("EEE, dd MMM yyyy", Locale.US).format(date);
+		String timeStr = new SimpleDateFormat("HH:mm:ss", Locale.US).format(date);
+		
+		lines.add(FORMULA + formula);
+		lines.add(ACCURACY + accuracy);
+		lines.add(String.format("%46s", model + " Regression Results"));
+		lines.add(SUMMARY_RULE);
+		lines.add(summaryLine(DEP_VARIABLE, dependantVariable, OBSERVATIONS, String.valueOf(observations)));
+		lines.add(summaryLine(MODEL, model, DF_RESIDUALS, String.valueOf(df_residuals)));
+		lines.add(summaryLine(METHOD, method, DF_MODEL, String.valueOf(df_model)));
+		lines.add(summaryLine(DATE, dateStr, PSEUDO_R_SQUARED, String.format("%.4f", pseudo_r_squared)));
+		lines.add(summaryLine(TIME, timeStr, LOG_LIKELIHOOD, String.format("%.2f", log_likelihood)));
+		lines.add(summaryLine(CONVERGED, converged ? "True" : "False", LL_NULL, String.format("%.2f", ll_null)));
+		lines.add(String.format("%35s   %-17s%21s", "", LLR, llrText()));
+		lines.add(SUMMARY_RULE);
+		lines.add(String.format("%-24s %10s %10s %10s %10s %10s %10s", "", "coef", "std err", "z", "P>|z|", "[0.025", "0.975]"));
+		lines.add(SUMMARY_RULE.replace('=', '-'));
+		
+		for(RegressionTableValue row: table) {
+			lines.add(String.format("%-24s %10.4f %10.4f %10.3f %10.3f %10.3f %10.3f", row.name(), row.coef(), row.std_err(),
+					row.z_score(), row.p_value(), row._0_025(), row._0_975()));
+		}
+		lines.add(SUMMARY_RULE);
+		
+		String[] text = new String[lines.size()];
+		lines.toArray(text);
+		return text;
+	}
+	
+	/**
+	 * One line of the summary's header: the left value ends at column 35 and is followed by exactly
+	 * 3 spaces, and the right label is padded to 17 characters, which is how the constructor finds the fields
+	 * @param leftLabel: the label of the left field
+	 * @param leftValue: the value of the left field (must not contain 3 spaces in a row)
+	 * @param rightLabel: the label of the right field
+	 * @param rightValue: the value of the right field
+	 * @return: the line
+	 */
+	private static String summaryLine(String leftLabel, String leftValue, String rightLabel, String rightValue) {
+		return String.format("%-15s%20s" + LINE_SPACING + "%-17s%21s", leftLabel, leftValue, rightLabel, rightValue);
+	}
+	
 	public static SwitchWriteMode getReadMode() { return readMode; }
 
 	public static void setReadMode(SwitchWriteMode readMode) {
@@ -326,7 +422,7 @@ public class RegressionResult extends StatsObject {
 		qp(LOG_LIKELIHOOD + LINE_SPACING + log_likelihood);
 		qp(CONVERGED + LINE_SPACING + converged);
 		qp(LL_NULL + LINE_SPACING + ll_null);
-		qp(LLR + LINE_SPACING + llr_p_value);
+		qp(LLR + LINE_SPACING + llrText());
 	}
 	
 	public String toString() {
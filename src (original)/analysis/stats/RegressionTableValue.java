@@ -20,6 +20,26 @@ public class RegressionTableValue extends StatsObject {
 	private double _0_025;
 	private double _0_975;
 	
+	/**
+	 * 
+	 * @param name: the name of the parameter
+	 * @param coef: the fitted coefficient
+	 * @param std_err: the standard error of the coefficient
+	 * @param z_score: the Wald z-score (coef / std_err)
+	 * @param p_value: the two-sided p-value of the z-score
+	 * @param _0_025: the lower bound of the 95% confidence interval
+	 * @param _0_975: the upper bound of the 95% confidence interval
+	 */
+	public RegressionTableValue(String name, double coef, double std_err, double z_score, double p_value, double _0_025, double _0_975) {
+		this.name = name.replaceAll(", levels=SideChainIDs", " Type");
+		this.coef = coef;
+		this.std_err = std_err;
+		this.z_score = z_score;
+		this.p_value = p_value;
+		this._0_025 = _0_025;
+		this._0_975 = _0_975;
+	}
+	
 	/**
 	 * 
 	 * @param line: the line to parse data from
@@ -4,6 +4,7 @@ import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 
 import bio.exceptions.InvalidResolutionException;
 import bio.exceptions.PointValueOutOfRangeException;
@@ -28,6 +29,13 @@ public class ROCPlot extends VisualizationObject {
 	private static final String DIAGONAL =  "↗︎" ;
 	private static final String RULER_0_02 = "     0.0       0.1       0.2       0.3       0.4       0.5       0.6       0.7       0.8       0.9       1.0\n\n";
 	
+	private static final Comparator<Coordinate> X_THEN_Y = new Comparator<Coordinate>() {
+		public int compare(Coordinate a, Coordinate b) {
+			int retVal = Double.compare(a.x, b.x);
+			return (retVal != 0) ? retVal : Double.compare(a.y, b.y);
+		}
+	};
+	
 	private String name;
 	private ArrayList<Coordinate> points;
 	
@@ -65,10 +73,9 @@ public class ROCPlot extends VisualizationObject {
 		addPoint(new Coordinate(0,0));
 		addPoint(new Coordinate(1,1));
 		
-		Coordinate.setCompareY();
-		Collections.sort(points);
-		Coordinate.setCompareX();
-		Collections.sort(points);
+		//sort by x, then by y: this does not touch Coordinate's static compare axis,
+		//so plots can be written from several threads at once
+		Collections.sort(points, X_THEN_Y);
 		
 		for(int k = 1; k < points.size(); ++k) {
 			
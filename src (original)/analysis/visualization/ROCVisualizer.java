@@ -1,9 +1,12 @@
 package analysis.visualization;
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.Set;
 
+import analysis.ROCBatchModule;
 import analysis.stats.ROCRecord;
 import util.BaseTools;
 import util.Coordinate;
@@ -21,12 +24,37 @@ public class ROCVisualizer extends BaseTools {
 	private String folderName;
 	private ArrayList<ROCRecord> rocBuffer;
 	
+	/**
+	 * 
+	 * @param filename: the ROC log the plots go with
+	 */
 	public ROCVisualizer(String filename) {
 		rocBuffer = new ArrayList<ROCRecord>();
+		folderName = folderName(filename);
+	}
+	
+	/**
+	 * Name the folder the plots of a ROC log go in: output/<log name>-ROCPlot
+	 * A log that isn't in the output folder gets a suffix made from its directory, so logs
+	 * with the same name in different directories don't write into the same folder
+	 * @param filename: the ROC log
+	 * @return: the name of the folder
+	 */
+	public static String folderName(String filename) {
+		Path path = Paths.get(filename).toAbsolutePath().normalize();
+		String name = path.getFileName().toString();
+		if(name.endsWith(ROCBatchModule.ROC_LOG_SUFFIX)) {
+			name = name.substring(0, name.length() - ROCBatchModule.ROC_LOG_SUFFIX.length());
+		} else if(name.lastIndexOf(".") > 0) {
+			name = name.substring(0, name.lastIndexOf("."));
+		}
+		
+		Path directory = path.getParent();
+		if(directory != null && !directory.equals(Paths.get(OUTPUT).toAbsolutePath().normalize())) {
+			name += "-" + Integer.toHexString(directory.toString().hashCode());
+		}
 		
-		folderName = filename.substring(0, filename.indexOf(".")-8);
-		folderName = folderName.substring(folderName.indexOf("/")+1);
-		folderName = OUTPUT + folderName + "-ROCPlot";
+		return OUTPUT + name + "-ROCPlot";
 	}
 	
 	/**
@@ -56,7 +84,7 @@ public class ROCVisualizer extends BaseTools {
 	public void makePlot(double threshold) {
 		dqp("resolution: " + threshold);
 		File rocPlotFolder = new File(folderName);
-		if(!rocPlotFolder.exists()) { rocPlotFolder.mkdir(); }
+		if(!rocPlotFolder.exists()) { rocPlotFolder.mkdirs(); }
 		
 		Hashtable<String,ROCPlot> plots = new Hashtable<String,ROCPlot>();
 		
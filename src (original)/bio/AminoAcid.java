@@ -6,6 +6,7 @@ import bio.exceptions.DataValueOutOfRangeException;
 import bio.exceptions.UnknownCodeException;
 import bio.tools.BioLookup;
 import chem.Atom;
+import chem.AtomArena;
 
 /**
  * Represents an Amino Acid or an Amino Acid residue
@@ -44,8 +45,11 @@ public class AminoAcid extends Tablizable {
 	
 	protected double flex = Double.NaN;
 	
-	//contains data about the atoms in the residue
+	//contains data about the atoms in the residue (made when the atoms are first used)
 	private AtomTable atoms;
+	//where the residue's atoms are if they were read into an AtomArena and have not been used yet
+	private AtomArena arena;
+	private int arenaResidue;
 	//if the amino acid is part of a switch-like region of a protein chain
 	protected SwitchType isSwitch = SwitchType.NONE;
 	
@@ -74,7 +78,6 @@ public class AminoAcid extends Tablizable {
 		if(type == null) { throw new NullPointerException("Amino Acid Type Cannot Be Null"); }
 		
 		this.type = type;
-		atoms = new AtomTable();
 	}
 	
 	/**
@@ -131,7 +134,36 @@ public class AminoAcid extends Tablizable {
 	 * 
 	 * @param atom
 	 */
-	public void addAtom(Atom atom) { atoms.put(atom.name(), atom); }
+	public void addAtom(Atom atom) { atoms().put(atom.name(), atom); }
+	
+	/**
+	 * Use the atoms of a residue in an AtomArena as this amino acid's atoms
+	 * Atom objects are only made when the atoms are first used
+	 * @param arena: the arena
+	 * @param residue: the index of the residue in the arena
+	 */
+	public void setAtoms(AtomArena arena, int residue) {
+		atoms = null;
+		this.arena = arena;
+		arenaResidue = residue;
+	}
+	
+	/**
+	 * Get the atom table, making it if needed
+	 * @return: the atom table
+	 */
+	private AtomTable atoms() {
+		if(atoms == null) {
+			atoms = new AtomTable();
+			if(arena != null) {
+				for(int atom = arena.firstAtom(arenaResidue); atom < arena.endAtom(arenaResidue); ++atom) {
+					atoms.addAtom(arena.atom(atom));
+				}
+				arena = null;
+			}
+		}
+		return atoms;
+	}
 	
 	/**
 	 * Set the 6-term entropy value
@@ -184,14 +216,14 @@ public class AminoAcid extends Tablizable {
 	public SwitchType switchType() { return isSwitch; }
 	public boolean isSwitch() { return (isSwitch != SwitchType.NONE); }
 	
-	public Atom getAtom(String name) { return atoms.get(name); }
+	public Atom getAtom(String name) { return atoms().get(name); }
 	
 	/**
 	 * Removes (and returns) the atom with the specified name
 	 * @param name: the name of the atom to return
 	 * @return: the atom removed, or null if an atom with the specified name was not found
 	 */
-	public Atom removeAtom(String name) { return atoms.remove(name); }
+	public Atom removeAtom(String name) { return atoms().remove(name); }
 	
 	/**
 	 * Returns the average charge for all of the atoms with known charges: 
@@ -202,6 +234,7 @@ public class AminoAcid extends Tablizable {
 		double retVal = 0;
 		int numberOfCharges = 0;
 		
+		AtomTable atoms = atoms();
 		Set<String> keys = atoms.keySet();
 		for(String key: keys) {
 			Atom atom = atoms.get(key);
@@ -226,7 +259,9 @@ public class AminoAcid extends Tablizable {
 		retVal.E6  = E6;
 		retVal.E20 = E20;
 		retVal.E22 = E22;
-		retVal.atoms = atoms.clone();
+		if(atoms != null) { retVal.atoms = atoms.clone(); }
+		retVal.arena = arena;
+		retVal.arenaResidue = arenaResidue;
 		retVal.vKabat = vKabat;
 		retVal.isUnstruct = isUnstruct;
 		retVal.vKabatCompletion = vKabatCompletion;
@@ -278,7 +313,13 @@ public class AminoAcid extends Tablizable {
 	 * @param source
 	 */
 	public static void copyAtoms(AminoAcid target, AminoAcid source) {
-		Set<String> keys = source.atoms.keySet();
+		//if neither has used its atoms yet, the target can share the source's arena
+		if(source.atoms == null && (target.atoms == null || target.atoms.isEmpty()) && target.arena == null) {
+			target.setAtoms(source.arena, source.arenaResidue);
+			return;
+		}
+		
+		Set<String> keys = source.atoms().keySet();
 		for(String key: keys) {
 			Atom atom = source.getAtom(key);
 			target.addAtom(atom);
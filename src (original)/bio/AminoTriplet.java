@@ -12,7 +12,17 @@ import chem.Atom;
 public class AminoTriplet extends Tablizable {
 	private static final long serialVersionUID = 1L;
 	
+	/*
+	 * The triplet is the window triplet[offset-1], triplet[offset], triplet[offset+1]
+	 * Residues outside of the array are null.
+	 * A triplet made from 3 residues owns a 3-long array (offset 1);
+	 * a triplet made by TripletChain is a view of its ProteinChain's sequence, and copies
+	 * the window into its own array before it is changed.
+	 */
 	private AminoAcid triplet[];
+	private int offset;
+	//true if triplet[] belongs to a ProteinChain
+	private boolean view;
 	
 	/**
 	 * 
@@ -25,13 +35,25 @@ public class AminoTriplet extends Tablizable {
 		triplet[0] = a;
 		triplet[1] = b;
 		triplet[2] = c;
+		offset = 1;
 	}
 	
 	/**
 	 * 
 	 * @param region
 	 */
-	private AminoTriplet(AminoAcid[] region) { triplet = region; }
+	private AminoTriplet(AminoAcid[] region) { triplet = region; offset = 1; }
+	
+	/**
+	 * Make a triplet that is a view of a sequence: nothing is copied
+	 * @param sequence: the sequence
+	 * @param center: the index of the middle residue of the triplet
+	 */
+	AminoTriplet(AminoAcid[] sequence, int center) {
+		triplet = sequence;
+		offset = center;
+		view = true;
+	}
 	
 	/**
 	 * 
@@ -41,6 +63,14 @@ public class AminoTriplet extends Tablizable {
 	 */
 	public AminoAcid setResidue(AminoAcid aa, int i) {
 		if(i > 3 || i < 0) { throw new ResidueIndexOutOfBoundsException(i < 0 ? -1 : 1); }
+		
+		//don't change the sequence this is a view of
+		if(view) {
+			triplet = new AminoAcid[] { residue(0), residue(1), residue(2) };
+			offset = 1;
+			view = false;
+		}
+		
 		AminoAcid retVal = triplet[i];
 		triplet[i] = aa;
 		return retVal;
@@ -53,13 +83,22 @@ public class AminoTriplet extends Tablizable {
 	 */
 	public AminoAcid getResidue(int i) {
 		if(i > 3 || i < 0) { throw new ResidueIndexOutOfBoundsException(i < 0 ? -1 : 1); }
-		return triplet[i];
+		return residue(i);
+	}
+	
+	/**
+	 * @param i: 0, 1 or 2
+	 * @return: the residue at position i of the triplet, or null if it is past the end of the sequence
+	 */
+	private AminoAcid residue(int i) {
+		int index = offset - 1 + i;
+		return (index >= 0 && index < triplet.length) ? triplet[index] : null;
 	}
 
 	@Override
 	public String impliedFileName() {
-		if(triplet[1] != null) {
-			return triplet[1].impliedFileName(); 
+		if(residue(1) != null) {
+			return residue(1).impliedFileName(); 
 		} else {
 			return null;
 		}
@@ -67,8 +106,8 @@ public class AminoTriplet extends Tablizable {
 	
 	@Override
 	public ResidueType residueType() {
-		if(triplet[1] != null) {
-			return triplet[1].residueType(); 
+		if(residue(1) != null) {
+			return residue(1).residueType(); 
 		} else {
 			return null;
 		}
@@ -76,8 +115,8 @@ public class AminoTriplet extends Tablizable {
 	
 	@Override
 	public SecondaryStructure secondary() {
-		if(triplet[1] != null) {
-			return triplet[1].secondary(); 
+		if(residue(1) != null) {
+			return residue(1).secondary(); 
 		} else {
 			return null;
 		}
@@ -85,8 +124,8 @@ public class AminoTriplet extends Tablizable {
 
 	@Override
 	public double vKabat() {
-		if(triplet[1] != null) {
-			return triplet[1].vKabat();
+		if(residue(1) != null) {
+			return residue(1).vKabat();
 		} else {
 			return Double.NaN;
 		}
@@ -94,8 +133,8 @@ public class AminoTriplet extends Tablizable {
 
 	@Override
 	public int vKabatCompletion() { 
-		if(triplet[1] != null) {
-			return triplet[1].vKabatCompletion();
+		if(residue(1) != null) {
+			return residue(1).vKabatCompletion();
 		} else {
 			return -1;
 		}
@@ -106,9 +145,9 @@ public class AminoTriplet extends Tablizable {
 		double isUnstruct = 0;
 		double valid = 0;
 		
-		if(triplet[0] != null) { if(!Double.isNaN(triplet[0].isUnstruct())) { isUnstruct += triplet[0].isUnstruct(); ++valid; } }
-		if(triplet[1] != null) { if(!Double.isNaN(triplet[1].isUnstruct())) { isUnstruct += triplet[1].isUnstruct(); ++valid; } }
-		if(triplet[2] != null) { if(!Double.isNaN(triplet[2].isUnstruct())) { isUnstruct += triplet[2].isUnstruct(); ++valid; } }
+		if(residue(0) != null) { if(!Double.isNaN(residue(0).isUnstruct())) { isUnstruct += residue(0).isUnstruct(); ++valid; } }
+		if(residue(1) != null) { if(!Double.isNaN(residue(1).isUnstruct())) { isUnstruct += residue(1).isUnstruct(); ++valid; } }
+		if(residue(2) != null) { if(!Double.isNaN(residue(2).isUnstruct())) { isUnstruct += residue(2).isUnstruct(); ++valid; } }
 		
 		if(valid != 0) {
 			return (isUnstruct / valid);
@@ -122,9 +161,9 @@ public class AminoTriplet extends Tablizable {
 		double e6 = 0;
 		double valid = 0;
 		
-		if(triplet[0] != null) { if(!Double.isNaN(triplet[0].E6())) { e6 += triplet[0].E6(); ++valid; } }
-		if(triplet[1] != null) { if(!Double.isNaN(triplet[1].E6())) { e6 += triplet[1].E6(); ++valid; } }
-		if(triplet[2] != null) { if(!Double.isNaN(triplet[2].E6())) { e6 += triplet[2].E6(); ++valid; } }
+		if(residue(0) != null) { if(!Double.isNaN(residue(0).E6())) { e6 += residue(0).E6(); ++valid; } }
+		if(residue(1) != null) { if(!Double.isNaN(residue(1).E6())) { e6 += residue(1).E6(); ++valid; } }
+		if(residue(2) != null) { if(!Double.isNaN(residue(2).E6())) { e6 += residue(2).E6(); ++valid; } }
 		
 		if(valid != 0) {
 			return (e6 / valid);
@@ -138,9 +177,9 @@ public class AminoTriplet extends Tablizable {
 		double e20 = 0;
 		double valid = 0;
 		
-		if(triplet[0] != null) { if(!Double.isNaN(triplet[0].E20())) { e20 += triplet[0].E20(); ++valid; } }
-		if(triplet[1] != null) { if(!Double.isNaN(triplet[1].E20())) { e20 += triplet[1].E20(); ++valid; } }
-		if(triplet[2] != null) { if(!Double.isNaN(triplet[2].E20())) { e20 += triplet[2].E20(); ++valid; } }
+		if(residue(0) != null) { if(!Double.isNaN(residue(0).E20())) { e20 += residue(0).E20(); ++valid; } }
+		if(residue(1) != null) { if(!Double.isNaN(residue(1).E20())) { e20 += residue(1).E20(); ++valid; } }
+		if(residue(2) != null) { if(!Double.isNaN(residue(2).E20())) { e20 += residue(2).E20(); ++valid; } }
 		
 		if(valid != 0) {
 			return (e20 / valid);
@@ -154,9 +193,9 @@ public class AminoTriplet extends Tablizable {
 		double e22 = 0;
 		double valid = 0;
 		
-		if(triplet[0] != null) { if(!Double.isNaN(triplet[0].E22())) { e22 += triplet[0].E22(); ++valid; } }
-		if(triplet[1] != null) { if(!Double.isNaN(triplet[1].E22())) { e22 += triplet[1].E22(); ++valid; } }
-		if(triplet[2] != null) { if(!Double.isNaN(triplet[2].E22())) { e22 += triplet[2].E22(); ++valid; } }
+		if(residue(0) != null) { if(!Double.isNaN(residue(0).E22())) { e22 += residue(0).E22(); ++valid; } }
+		if(residue(1) != null) { if(!Double.isNaN(residue(1).E22())) { e22 += residue(1).E22(); ++valid; } }
+		if(residue(2) != null) { if(!Double.isNaN(residue(2).E22())) { e22 += residue(2).E22(); ++valid; } }
 		
 		if(valid != 0) {
 			return (e22 / valid);
@@ -171,9 +210,9 @@ public class AminoTriplet extends Tablizable {
 		double averageOver = 0;
 		boolean valid = false;
 		
-		if(triplet[0] != null) { amber += triplet[0].amber95(); ++averageOver; valid = true; }
-		if(triplet[1] != null) { amber += triplet[1].amber95(); ++averageOver; valid = true; }
-		if(triplet[2] != null) { amber += triplet[2].amber95(); ++averageOver; valid = true; }
+		if(residue(0) != null) { amber += residue(0).amber95(); ++averageOver; valid = true; }
+		if(residue(1) != null) { amber += residue(1).amber95(); ++averageOver; valid = true; }
+		if(residue(2) != null) { amber += residue(2).amber95(); ++averageOver; valid = true; }
 		
 		if(valid) {
 			return (amber / averageOver);
@@ -185,14 +224,14 @@ public class AminoTriplet extends Tablizable {
 	@Override
 	public boolean isSwitch() { 
 		boolean isSwitch = false;
-		if(triplet[1] != null) { isSwitch = triplet[1].isSwitch(); }
+		if(residue(1) != null) { isSwitch = residue(1).isSwitch(); }
 		return isSwitch;
 	}
 	
 	@Override
 	public SwitchType switchType() { 
 		SwitchType isSwitch = SwitchType.MISSING_RESIDUE;
-		if(triplet[1] != null) { isSwitch = triplet[1].switchType(); }
+		if(residue(1) != null) { isSwitch = residue(1).switchType(); }
 		return isSwitch;
 	}
 	
@@ -201,9 +240,9 @@ public class AminoTriplet extends Tablizable {
 		double avgCharge = 0;
 		boolean valid = false;
 		
-		if(triplet[0] != null) { avgCharge += triplet[0].averageCharge(); valid = true; }
-		if(triplet[1] != null) { avgCharge += triplet[1].averageCharge(); valid = true; }
-		if(triplet[2] != null) { avgCharge += triplet[2].averageCharge(); valid = true; }
+		if(residue(0) != null) { avgCharge += residue(0).averageCharge(); valid = true; }
+		if(residue(1) != null) { avgCharge += residue(1).averageCharge(); valid = true; }
+		if(residue(2) != null) { avgCharge += residue(2).averageCharge(); valid = true; }
 		
 		if(valid) {
 			return (avgCharge / 3);
@@ -219,11 +258,11 @@ public class AminoTriplet extends Tablizable {
 			double chargeSum = 0;
 			boolean valid = false;
 			
-			if(triplet[0] != null) { atom = triplet[0].getAtom(s); }
+			if(residue(0) != null) { atom = residue(0).getAtom(s); }
 			if(atom != null) { chargeSum = atom.charge(); valid = true; }
-			if(triplet[1] != null) { atom = triplet[1].getAtom(s); }
+			if(residue(1) != null) { atom = residue(1).getAtom(s); }
 			if(atom != null) { chargeSum = atom.charge(); valid = true; }
-			if(triplet[2] != null) { atom = triplet[2].getAtom(s); }
+			if(residue(2) != null) { atom = residue(2).getAtom(s); }
 			if(atom != null) { chargeSum = atom.charge(); valid = true; }
 			
 			if(valid) {
@@ -236,35 +275,35 @@ public class AminoTriplet extends Tablizable {
 	}
 	
 	public Atom getAtom(String name) { 
-		if(triplet[1] != null) {
-			return triplet[1].getAtom(name);
+		if(residue(1) != null) {
+			return residue(1).getAtom(name);
 		} else {
 			return null;
 		}
 	}
 	
 	public String toCode() {
-		if(triplet[1] != null) { return triplet[1].toCode(); }
-		if(triplet[0] != null) { return triplet[0].toCode(); }
-		if(triplet[2] != null) { return triplet[2].toCode(); }
+		if(residue(1) != null) { return residue(1).toCode(); }
+		if(residue(0) != null) { return residue(0).toCode(); }
+		if(residue(2) != null) { return residue(2).toCode(); }
 		return "null";
 	}
 	
 	public String toFullCode() {
 		StringBuilder builder = new StringBuilder();
-		if(triplet[0] != null) { builder.append(triplet[0].toCode()); }
-		if(triplet[1] != null || triplet[1] != null) { builder.append("-"); }
-		if(triplet[1] != null) { builder.append(triplet[1].toCode()); }
-		if(triplet[2] != null || triplet[2] != null) { builder.append("-"); }
-		if(triplet[2] != null) { builder.append(triplet[2].toCode()); }
+		if(residue(0) != null) { builder.append(residue(0).toCode()); }
+		if(residue(1) != null || residue(1) != null) { builder.append("-"); }
+		if(residue(1) != null) { builder.append(residue(1).toCode()); }
+		if(residue(2) != null || residue(2) != null) { builder.append("-"); }
+		if(residue(2) != null) { builder.append(residue(2).toCode()); }
 		return builder.toString();
 	}
 	
 	@Override
 	public char toChar() {
-		if(triplet[1] != null) { return triplet[1].toChar(); }
-		if(triplet[0] != null) { return triplet[0].toChar(); }
-		if(triplet[2] != null) { return triplet[2].toChar(); }
+		if(residue(1) != null) { return residue(1).toChar(); }
+		if(residue(0) != null) { return residue(0).toChar(); }
+		if(residue(2) != null) { return residue(2).toChar(); }
 		return '_';
 	}
 	
@@ -274,9 +313,9 @@ public class AminoTriplet extends Tablizable {
 	 */
 	public String toChars() {
 		StringBuilder builder = new StringBuilder();
-		if(triplet[0] != null) { builder.append(triplet[0].toChar()); }
-		if(triplet[1] != null) { builder.append(triplet[1].toChar()); }
-		if(triplet[2] != null) { builder.append(triplet[2].toChar()); }
+		if(residue(0) != null) { builder.append(residue(0).toChar()); }
+		if(residue(1) != null) { builder.append(residue(1).toChar()); }
+		if(residue(2) != null) { builder.append(residue(2).toChar()); }
 		return builder.toString();
 	}
 	
@@ -284,9 +323,9 @@ public class AminoTriplet extends Tablizable {
 	 * 
 	 */
 	public void autoAssignCharges() {
-		triplet[0].autoAssignCharges();
-		triplet[1].autoAssignCharges();
-		triplet[2].autoAssignCharges();
+		residue(0).autoAssignCharges();
+		residue(1).autoAssignCharges();
+		residue(2).autoAssignCharges();
 	}
 	
 	/**
@@ -295,17 +334,17 @@ public class AminoTriplet extends Tablizable {
 	public AminoTriplet clone() {
 		AminoAcid tripletClone[] = new AminoAcid[3];
 		
-		tripletClone[0] = triplet[0].clone();
-		tripletClone[1] = triplet[1].clone();
-		tripletClone[2] = triplet[2].clone();
+		for(int i = 0; i < 3; ++i) {
+			if(residue(i) != null) { tripletClone[i] = residue(i).clone(); }
+		}
 		
 		AminoTriplet myClone = new AminoTriplet(tripletClone);
 		return myClone;
 	}
 	
 	public boolean isUnwritable() { 
-		if(triplet[1] == null) { return true; }
-		else return triplet[1].isUnwritable();
+		if(residue(1) == null) { return true; }
+		else return residue(1).isUnwritable();
 	}
 	
 	/**
@@ -313,11 +352,11 @@ public class AminoTriplet extends Tablizable {
 	 */
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
-		if(triplet[0] != null) { builder.append(triplet[0].toString()); } else { builder.append("null"); }
+		if(residue(0) != null) { builder.append(residue(0).toString()); } else { builder.append("null"); }
 		builder.append(",");
-		if(triplet[1] != null) { builder.append(triplet[1].toString()); } else { builder.append("null"); }
+		if(residue(1) != null) { builder.append(residue(1).toString()); } else { builder.append("null"); }
 		builder.append(",");
-		if(triplet[1] != null) { builder.append(triplet[2].toString()); } else { builder.append("null"); }
+		if(residue(1) != null) { builder.append(residue(2).toString()); } else { builder.append("null"); }
 		return builder.toString();
 	}
 }
@@ -12,7 +12,7 @@ import bio.tools.SequenceAligner;
 public class ChainCluster extends BioObject {
 	private static final long serialVersionUID = 1L;
 	
-	private static int switchLength = 3;
+	private static volatile int switchLength = 3;
 	
 	private HashSet<ProteinChain> chainSet;
 	private ProteinChain dominant;
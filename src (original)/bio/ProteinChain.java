@@ -395,6 +395,85 @@ public class ProteinChain extends AminoChain {
 		sequence = newSequence;
 	}
 	
+	/**
+	 * Insert several runs of null residues into the chain at once: designed for use in aligning chains
+	 * The result is the same as calling insertBlanks(indexes[i], blanks[i]) for each i in order
+	 * (so each index already counts the blanks inserted before it), but the chain is only
+	 * copied once: runs in O(n + edits * log(n)) instead of O(n * edits)
+	 * 
+	 * @param indexes: where to insert each run of blanks
+	 * @param blanks: how many blanks are in each run (none may be negative)
+	 * @param edits: the number of runs to insert
+	 */
+	public void insertBlanks(int[] indexes, int[] blanks, int edits) {
+		if(edits == 0) { return; }
+		if(edits == 1) {
+			if(blanks[0] < 0) { throw new IllegalArgumentException("Negative number of blanks: " + blanks[0]); }
+			insertBlanks(indexes[0], blanks[0]);
+			return;
+		}
+		
+		/*
+		 * gaps[i] counts the blanks that go before residue i of the current sequence (gaps[n]: after the end)
+		 * It is kept as a Fenwick tree, so the current position of residue i (i + blanks before it)
+		 * can be found in O(log(n))
+		 */
+		int n = sequence.length;
+		int[] tree = new int[n + 2];
+		int[] gaps = new int[n + 1];
+		int inserted = 0;
+		
+		for(int edit = 0; edit < edits; ++edit) {
+			if(blanks[edit] < 0) { throw new IllegalArgumentException("Negative number of blanks: " + blanks[edit]); }
+			if(blanks[edit] == 0) { continue; }
+			
+			//if we're inserting blanks at the start of the chain, update the first PDB index
+			if(indexes[edit] == 0) { firstIndex -= blanks[edit]; }
+			
+			//the blanks go just before the first residue that is at (or after) the index
+			int residue = firstResidueAtOrAfter(tree, n, indexes[edit]);
+			gaps[residue] += blanks[edit];
+			inserted += blanks[edit];
+			for(int node = residue + 1; node <= n + 1; node += node & -node) { tree[node] += blanks[edit]; }
+		}
+		
+		if(inserted == 0) { return; }
+		
+		AminoAcid[] newSequence = new AminoAcid[n + inserted];
+		int newSequenceIndex = 0;
+		for(int sequenceIndex = 0; sequenceIndex < n; ++sequenceIndex) {
+			newSequenceIndex += gaps[sequenceIndex];
+			newSequence[newSequenceIndex++] = sequence[sequenceIndex];
+		}
+		
+		sequence = newSequence;
+	}
+	
+	/**
+	 * Helper for insertBlanks(int[], int[], int)
+	 * @param tree: Fenwick tree of the blanks before each residue
+	 * @param n: the number of residues
+	 * @param index: a position in the chain (with blanks)
+	 * @return: the first residue whose position is at least index, or n if there is none
+	 */
+	private static int firstResidueAtOrAfter(int[] tree, int n, int index) {
+		int low = 0, high = n;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			
+			//position of residue mid = mid + blanks before residues 0..mid
+			int position = mid;
+			for(int node = mid + 1; node > 0; node -= node & -node) { position += tree[node]; }
+			
+			if(position >= index) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+	
 	/**
 	 * Tells the number of trailing blanks
 	 * @return
@@ -484,36 +563,12 @@ public class ProteinChain extends AminoChain {
 	
 	/**
 	 * Generates a chain of AminoAcid Triplets with the same sequence as this chain
-	 * 	Note that the generated chain is a deep copy, not a shallow one!
+	 * 	Note that the generated chain is a view of this chain's residues, not a copy:
+	 * 	call clone() on it to get a deep copy
 	 * @return: a TripletChain with the same sequence as this chain
 	 */
 	public TripletChain generateTripletChain() {
-		TripletChain retVal = new TripletChain(getProteinName(), getID(), sequence.length, getSource());
-		
-		AminoAcid seq0 = null, seq1 = null;
-		if(sequence[0] != null) { seq0 = sequence[0].clone(); }
-		if(sequence[1] != null) { seq1 = sequence[1].clone(); }
-		
-		AminoTriplet startTriplet = new AminoTriplet(null, seq0, seq1);
-		retVal.setTriplet(startTriplet, 0);
-		
-		for(int index = 1; index < sequence.length-1; ++index) {
-			AminoAcid seq_l = null, seq_m = null, seq_g = null;
-			
-			if(sequence[index-1] != null) { seq_l = sequence[index-1].clone(); }
-			if(sequence[index]   != null) { seq_m = sequence[index].clone(); }
-			if(sequence[index+1] != null) { seq_g = sequence[index+1].clone(); }
-			
-			AminoTriplet at = new AminoTriplet(seq_l, seq_m, seq_g);
-			retVal.setTriplet(at, index);
-		}
-		
-		AminoAcid seq0x = null, seq1x = null;
-		if(sequence[sequence.length-2] != null) { seq0x = sequence[sequence.length-2].clone(); }
-		if(sequence[sequence.length-1] != null) { seq1x = sequence[sequence.length-1].clone(); }
-		
-		AminoTriplet endTriplet = new AminoTriplet(seq0x, seq1x, null);
-		retVal.setTriplet(endTriplet, sequence.length-1);
+		TripletChain retVal = new TripletChain(getProteinName(), getID(), sequence, getSource());
 		
 		retVal.vkabat_init = vkabat_init;
 		retVal.entropy_init = entropy_init;
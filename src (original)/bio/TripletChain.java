@@ -4,6 +4,8 @@ import bio.exceptions.ResidueIndexOutOfBoundsException;
 
 /**
  * Represents a chain of Amino Acid triplets
+ * A TripletChain made from a ProteinChain is a sliding window over the ProteinChain's sequence:
+ * the triplets are made on demand and refer to the ProteinChain's residues instead of copies.
  * @author Benjy Strauss
  *
  */
@@ -11,16 +13,36 @@ import bio.exceptions.ResidueIndexOutOfBoundsException;
 public class TripletChain extends AminoChain {
 	private static final long serialVersionUID = 1L;
 
+	//triplets that have been set explicitly (null until one is)
 	private AminoTriplet sequence[];
+	//the residues the triplets are windows over, if this is a view of a ProteinChain
+	private AminoAcid residues[];
+	private int length;
 	
 	public TripletChain(String protein, char id, int chainLength, DataSource source) {
 		super(protein.toUpperCase(), id, source);
 		sequence = new AminoTriplet[chainLength];
+		length = chainLength;
 	}
 	
 	public TripletChain(String protein, char id, AminoTriplet sequence[], DataSource source) {
 		super(protein.toUpperCase(), id, source);
 		this.sequence = sequence;
+		length = sequence.length;
+	}
+	
+	/**
+	 * Make a TripletChain that is a view of a sequence of residues: triplet i is
+	 * (residues[i-1], residues[i], residues[i+1]), and nothing is copied
+	 * @param protein: the protein's name
+	 * @param id: the chain's ID
+	 * @param residues: the sequence
+	 * @param source: where the sequence came from
+	 */
+	public TripletChain(String protein, char id, AminoAcid residues[], DataSource source) {
+		super(protein.toUpperCase(), id, source);
+		this.residues = residues;
+		length = residues.length;
 	}
 	
 	/**
@@ -41,7 +63,10 @@ public class TripletChain extends AminoChain {
 	 * @param aa: the new Amino Acid
 	 * @param index: the index of the Amino Acid to replace
 	 */
-	public void setTriplet(AminoTriplet at, int index) { sequence[index] = at; }
+	public void setTriplet(AminoTriplet at, int index) {
+		if(sequence == null) { sequence = new AminoTriplet[length]; }
+		sequence[index] = at;
+	}
 	
 	/**
 	 * Gets the amino acid at the specified index
@@ -49,9 +74,10 @@ public class TripletChain extends AminoChain {
 	 * @return: the amino acid at the specified index
 	 */
 	public AminoTriplet getTriplet(int index) {
-		if((index < sequence.length) && (index >= 0)) {
-			return sequence[index ];
-		} else if(index < sequence.length) {
+		if((index < length) && (index >= 0)) {
+			if(sequence != null && sequence[index] != null) { return sequence[index]; }
+			return (residues != null) ? new AminoTriplet(residues, index) : null;
+		} else if(index < length) {
 			throw new ResidueIndexOutOfBoundsException(ResidueIndexOutOfBoundsException.TOO_SMALL);
 		} else {
 			throw new ResidueIndexOutOfBoundsException(ResidueIndexOutOfBoundsException.TOO_LARGE);
@@ -62,10 +88,11 @@ public class TripletChain extends AminoChain {
 	 * Get a deep copy of the TripletChain
 	 */
 	public TripletChain clone() {
-		AminoTriplet sequenceClone[] = new AminoTriplet[sequence.length];
+		AminoTriplet sequenceClone[] = new AminoTriplet[length];
 		
-		for(int index = 0; index < sequence.length; ++index) {
-			sequenceClone[index] = sequence[index].clone();
+		for(int index = 0; index < length; ++index) {
+			AminoTriplet triplet = getTriplet(index);
+			if(triplet != null) { sequenceClone[index] = triplet.clone(); }
 		}
 		
 		TripletChain myClone = new TripletChain(getProteinName(), getID(), sequenceClone, getSource());
@@ -79,7 +106,7 @@ public class TripletChain extends AminoChain {
 	 * Get's the length of the protein in amino acids
 	 * @return
 	 */
-	public int length() { return sequence.length; }
+	public int length() { return length; }
 	
 	/**
 	 * 
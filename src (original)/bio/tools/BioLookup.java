@@ -10,20 +10,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.net.URL;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 import bioUI.Stats;
 import chem.Atom;
+import chem.AtomArena;
 import setup.FileManager;
 import util.BaseTools;
-import util.Coordinate;
-import util.Pair;
 import util.PythonScript;
 import bio.*;
 import bio.exceptions.DataSourceNotYetSetException;
@@ -48,51 +43,23 @@ public final class BioLookup extends BaseTools {
 	
 	public static final int PDB_FASTA_LINE_LENGTH = 80;
 	
-	private static final int N = 0;
-	private static final int HN = 1;
-	private static final int CA = 2;
-	private static final int CB = 3;
 	private static final int CP = 4;
-	private static final int O = 5;
-	
-	private static final int FREE = 4;
-	@SuppressWarnings("unused")
-	private static final int BURIED = 6;
-	private static final int HELIX = 8;
-	private static final int SHEET = 10;
-	
-	private static final int LETTER = 2;
-	private static final int E6 = 1;
-	private static final int E20 = 0;
 	
 	private static final int REGION_MATCH_DEFAULT = 10;
-	private static final int UNSTARTED = -99999;
 	
-	private static final String ATOM = "ATOM  ";
 	public static final String[] ATOM_CODES = {"N", "HN", "CA", "CB", "CP", "O" };
+	//the element of each atom in ATOM_CODES
+	private static final String[] ATOM_ELEMENTS = {"N", "HN", "C", "C", "C", "O" };
 	
-	private static final String myDriver = "org.sqlite.JDBC";
-	private static final String jbioDBURL = "jdbc:sqlite:JBioDataBase.db";
-	
-	private static final String CHARGE_QUERY_START = "SELECT * FROM \"partial-charges-protein-3d-structures\" WHERE ";
-	private static final String STATEMENT_END = "\";";
-	
-	private static final String AMBER95_QUERY_START = "SELECT amber95 FROM \"partial-charges-protein-3d-structures\" WHERE residue like \"";
-	
-	private static final String DSSP = ".dssp";
-	private static final String DSSP_FOLDER = "files/DSSP/";
-
 	private static final Scanner input = new Scanner(System.in);
 	
 	//private static final String GET_BLAST = "scripts/download_blast.py";
-	private static final String E6_PATH = "scripts/calculate_entropy.py";
 	private static final String BLAST_PATH = "scripts/blast/";
 	private static final String PDB_PATH = "files/PDB/";
 	public static final String IS_UNSTRUCT_PATH = "files/isUnstruct/";
 	
-	private enum ChainReaderStatus { UNSTARTED, SEARCHING, STARTED, FINISHED };
-	
-	private static DataSource fastaType = null;
+	//read by ClusterBuilder's worker threads
+	private static volatile DataSource fastaType = null;
 	
 	private static boolean queryX = false;
 	
@@ -125,149 +92,55 @@ public final class BioLookup extends BaseTools {
 	/**
 	 * Assigns the charge values to a single Amino Acid
 	 * To do this, the Secondary Structure of the Amino Acid must be known
+	 * The charges come from the in-memory ChargeTable, so no database connection is made per residue
 	 * 
 	 * @param residue: the Amino Acid for which charge values are being requested 
 	 * @return the Amino Acid with charges in charge fields
 	 */
 	public static AminoAcid assignChargeValues(AminoAcid residue) {
 		if(residue == null) { return null; }
-		//prevent out of memory error
-		System.gc();
 		
 		if(residue.secondary() == null) {
 			throw new NullPointerException("Secondary Structure cannot be NULL!");
 		}
 		
-		ResultSet[] results = new ResultSet[6];
-		
-		try {
-			Class.forName(myDriver);
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-		}
-		
-		Connection conn = null;
-		Statement st = null;
-		
-		//Where residue = "ALA" and atoms = "N";
-		for(int index = 0; index < ATOM_CODES.length; ++index) {
-			String query = CHARGE_QUERY_START + "residue like \"";
-			query += residue.toCode() + "\" AND ATOMS = \"";
-			query += ATOM_CODES[index] + STATEMENT_END;
-			
-			try {
-				conn = DriverManager.getConnection(jbioDBURL);
-				st = conn.createStatement();
-				results[index] = st.executeQuery(query);
-				
-			} catch (SQLException e) {
-				qpl("Error in obtaining charge values from database for " + residue);
-				e.printStackTrace();
-			}
-		}
-		
-		try {
-			switch(residue.secondary().simpleClassify()) {
-			case Helix:
-				AssignCharges(residue, results, HELIX);
-				break;
-			case Sheet:
-				AssignCharges(residue, results, SHEET);
-				break;
-			case Other:
-				AssignCharges(residue, results, FREE);
-				break;
-			default:
-				
-			}
-		} catch (SQLException e) { 
-			
-		}
-		
-		try {
-			conn.close();
-		} catch (SQLException SQLE) {
-			SQLE.printStackTrace();
-		} catch (NullPointerException NPE) {
-			NPE.printStackTrace();
+		int environment = ChargeTable.environment(residue.secondary().simpleClassify());
+		if(environment != -1) {
+			AssignCharges(residue, environment);
 		}
 		
 		return residue;
 	}
 	
 	/**
-	 * Note: untested
-	 * @param residue
-	 * @param results
-	 * @param secondary
-	 * @return
-	 * @throws SQLException
+	 * Sets the charge on each backbone atom of the residue, adding the atom if it isn't there
+	 * Atoms the charge table has no row for are left alone
+	 * @param residue: the Amino Acid to assign charges to
+	 * @param environment: ChargeTable.FREE, BURIED, HELIX or SHEET
+	 * @return the Amino Acid with charges in charge fields
 	 */
-	private static AminoAcid AssignCharges(AminoAcid residue, ResultSet[] results, int secondary) throws SQLException {
-		Atom atom = residue.getAtom("N");
-		//set charge on N
-		if(atom != null) {
-			atom.setCharge(results[N].getDouble(secondary));
-		} else {
-			atom = new Atom("N", "N");
-			atom.setCharge(results[N].getDouble(secondary));
-			residue.addAtom(atom);
-		}
-		
-		//in this case, "atom" represents 2 atoms
-		atom = residue.getAtom("HN");
-		//set charge on HN
-		if(atom != null) {
-			atom.setCharge(results[HN].getDouble(secondary));
-		} else {
-			atom = new Atom("HN", "HN");
-			atom.setCharge(results[HN].getDouble(secondary));
-			residue.addAtom(atom);
-		}
+	private static AminoAcid AssignCharges(AminoAcid residue, int environment) {
+		ResidueType type = residue.residueType();
 		
-		//alpha carbon
-		atom = residue.getAtom("CA");
-		//set charge on CA
-		if(atom != null) {
-			atom.setCharge(results[CA].getDouble(secondary));
-		} else {
-			atom = new Atom("C", "CA");
-			atom.setCharge(results[CA].getDouble(secondary));
-			residue.addAtom(atom);
-		}
-		
-		//beta carbon
-		atom = residue.getAtom("CB");
-		//set charge on CB
-		if(atom != null) {
-			atom.setCharge(results[CB].getDouble(secondary));
-		} else {
-			atom = new Atom("C", "CB");
-			atom.setCharge(results[CB].getDouble(secondary));
-			residue.addAtom(atom);
-		}
-		
-		//prime carbon, appears to be "CG" in PDB file
-		atom = residue.getAtom("CP");
-		if(atom == null) { atom = residue.getAtom("CG"); }
-		
-		if(atom != null) {
-			atom.setName("CP");
-			atom.setCharge(results[CP].getDouble(secondary));
-		} else {
-			atom = new Atom("C", "CP");
-			atom.setCharge(results[CP].getDouble(secondary));
-			residue.addAtom(atom);
-		}
-		
-		atom = residue.getAtom("O");
-		//set charge on O
-		if(atom != null) {
-			atom.setCharge(results[O].getDouble(secondary));
-		} else {
-			atom = new Atom("O", "O");
-			atom.setCharge(results[O].getDouble(secondary));
-			residue.addAtom(atom);
+		for(int index = 0; index < ATOM_CODES.length; ++index) {
+			if(!ChargeTable.hasCharge(type, index)) { continue; }
+			double charge = ChargeTable.charge(type, index, environment);
+			
+			//in the case of HN, "atom" represents 2 atoms
+			Atom atom = residue.getAtom(ATOM_CODES[index]);
+			
+			//prime carbon, appears to be "CG" in PDB file
+			if(atom == null && index == CP) {
+				atom = residue.getAtom("CG");
+				if(atom != null) { atom.setName("CP"); }
+			}
+			
+			if(atom == null) {
+				atom = new Atom(ATOM_ELEMENTS[index], ATOM_CODES[index]);
+				residue.addAtom(atom);
+			}
+			
+			atom.setCharge(charge);
 		}
 		
 		return residue;
@@ -280,227 +153,121 @@ public final class BioLookup extends BaseTools {
 	 */
 	public static AminoAcid assignNetAmber95(AminoAcid residue) {
 		if(residue == null) { throw new NullPointerException("null residue"); }
-		//qp(residue);
 		
 		if(!residue.residueType().isStandard()) { 
 			qpl("Cannot assign charge for non-standard: " + residue);
 			return residue;
 		}
 		
-		try {
-			Class.forName(myDriver);
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-		}
-		
-		Connection conn = null;
-		Statement st = null;
-		
-		ResultSet results;
-		String query = AMBER95_QUERY_START + residue.toCode() + "\";";
-		double amber95_sum = 0;
-		//qp("f0");
-		try {
-			conn = DriverManager.getConnection(jbioDBURL);
-			st = conn.createStatement();
-			results = st.executeQuery(query);
-			
-			int vals = (residue.residueType() == ResidueType.Proline || residue.residueType() == ResidueType.Glycine) ? 5 : 6;
-			
-			for(int i = 0; i < vals; ++i) {
-				results.next();
-				double monitor = results.getDouble(1);
-				//qp(".." + monitor);
-				amber95_sum += monitor;
-			}
-			
-			residue.setAmber95(amber95_sum);
-		} catch (SQLException e) {
+		double amber95_sum = ChargeTable.amber95(residue.residueType());
+		if(Double.isNaN(amber95_sum)) {
 			qpl("Error in obtaining queries for: " + residue);
-			e.printStackTrace();
+		} else {
+			residue.setAmber95(amber95_sum);
 		}
+		
 		return residue;
 	}
 	
 	/**
 	 * Loads a protein Asymmetric region from the DSSP file
+	 * Every chain in the file is read, in the order the chains appear
 	 * @param fileName: name of the file or protein
 	 * @return Protein containing DSSP data
 	 */
 	public static Protein readProteinDSSP(String fileName) {
-		ProteinChain[] chainList = null;
-		
-		if(!fileName.endsWith(DSSP)) { fileName += DSSP; }
-		if(!fileName.startsWith(DSSP_FOLDER)) {fileName = DSSP_FOLDER + fileName; }
+		DSSPFile dssp = null;
+		try {
+			dssp = DSSPFile.get(fileName);
+		} catch (FileNotFoundException e) {
+			qpl("No .dssp file found for \"" + DSSPFile.fileName(fileName) + "\"");
+			return null;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
 		
 		ArrayList<ProteinChain> chains = new ArrayList<ProteinChain>();
-		char lastChainChar = 'A';
-		
-		ProteinChain loadTest;
-		
-		for(loadTest = readProteinChainDSSP(fileName, lastChainChar); loadTest != null; lastChainChar++) {
-			
-			qpl("readProteinDSSP:fileName: " + fileName);
-			
-			loadTest = readProteinChainDSSP(fileName, lastChainChar);
-			
-			if(loadTest != null) {
-				chains.add(loadTest);
-			}
+		for(char chainID: dssp.chains()) {
+			ProteinChain chain = readProteinChainDSSP(dssp, chainID);
+			if(chain != null) { chains.add(chain); }
 		}
 		
 		if(chains.size() == 0) { return null; }
 		
-		chainList = new ProteinChain[chains.size()];
+		ProteinChain[] chainList = new ProteinChain[chains.size()];
 		chains.toArray(chainList);
-		return new Protein(fileName.substring(DSSP_FOLDER.length(), fileName.length()-DSSP.length()).toUpperCase(), DataSource.DSSP, chainList);
+		return new Protein(dssp.proteinID(), DataSource.DSSP, chainList);
 	}
 	
 	/**
 	 * Reads a Protein Chain from a DSSP file
+	 * The file is only parsed the first time one of its chains is read (see DSSPFile)
 	 * @param fileName: Protein name or path to DSSP file
 	 * @param chainID: which chain to read
 	 * @return ProteinChain object containing DSSP data
 	 */
 	public static ProteinChain readProteinChainDSSP(String fileName, char chainID) {
-		BufferedReader dsspReader = null;
-		
-		String proteinID = fileName.toUpperCase();
-		//remove the prefix from the protein name
-		if(proteinID.startsWith(DSSP_FOLDER.toUpperCase())) {
-			proteinID = proteinID.substring(DSSP_FOLDER.length());
-		}
-		
-		//remove the suffix from the protein name
-		if(proteinID.endsWith(DSSP.toUpperCase())) {
-			proteinID = proteinID.substring(0,proteinID.indexOf(DSSP.toUpperCase()));
+		try {
+			return readProteinChainDSSP(DSSPFile.get(fileName), chainID);
+		} catch (FileNotFoundException e) {
+			qpl("No .dssp file found for \"" + DSSPFile.fileName(fileName) + "\"");
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		
-		if(!fileName.startsWith(DSSP_FOLDER)) {fileName = DSSP_FOLDER + fileName; }
-		if(!fileName.endsWith(DSSP)) { fileName += DSSP; }
-		
-		ChainReaderStatus status = ChainReaderStatus.UNSTARTED;
+		return null;
+	}
+	
+	/**
+	 * Makes a Protein Chain from a parsed DSSP file
+	 * @param dssp: the parsed DSSP file
+	 * @param chainID: which chain to read
+	 * @return ProteinChain object containing DSSP data, or null if the chain is not in the file
+	 */
+	private static ProteinChain readProteinChainDSSP(DSSPFile dssp, char chainID) {
 		chainID = Character.toUpperCase(chainID);
-		String fileLine = "";
+		int[] range = dssp.range(chainID);
+		if(range == null) { return null; }
 		
+		String proteinID = dssp.proteinID();
 		StringBuilder userPromptBuilder = new StringBuilder();
+		ChainBuilder builder = new ChainBuilder(dssp.number(range[0]));
 		
-		boolean firstChainIndexInit = false;
-		ChainBuilder builder = null;
-		
-		try {
-			dsspReader = new BufferedReader(new FileReader(fileName));
+		for(int line = range[0]; line < range[1]; ++line) {
+			int chainIndex = dssp.number(line);
+			char resTypeChar = dssp.residue(line);
 			
-			//read the file in line by line
-			for (fileLine = dsspReader.readLine(); fileLine != null; fileLine = dsspReader.readLine()) {
-				fileLine = fileLine.trim();
-				
-				if(status == ChainReaderStatus.STARTED  || status == ChainReaderStatus.SEARCHING) {
-					if(fileLine.length() == 0) { break; }
-					//qp(fileLine);
-					
-					fileLine = fileLine.substring(fileLine.indexOf(" "));
-					fileLine = fileLine.trim();
-					
-					String strAsIndex = fileLine.substring(0, fileLine.indexOf(" "));
-					int chainIndex = 0;
-					
-					try {
-						chainIndex = Integer.parseInt(strAsIndex);
-					//When the chain ends or there is a missing residue
-					} catch (NumberFormatException NFE) { 
-						if(strAsIndex.charAt(0) == '!') {
-							continue;
-						}
-					}
-					
-					fileLine = fileLine.substring(fileLine.indexOf(" "));
-					fileLine = fileLine.trim();
-					char chainChar = fileLine.toUpperCase().charAt(0);
-					
-					//qp(status);
-					
-					//if we are searching
-					if(status == ChainReaderStatus.SEARCHING) {
-						//if the chain characters match
-						if(chainID == chainChar) {
-							//we've started
-							status = ChainReaderStatus.STARTED;
-						} else {
-							//continue searching
-							continue;
-						}
-					//if we have started
-					} else {
-						//end of the chain d
-						if(chainID != chainChar) {
-							//we're done
-							status = ChainReaderStatus.FINISHED;
-							break;
-						}
-					}
-					
-					//once we're sure the chain is right, initialize the chain builder.
-					if(!firstChainIndexInit) {
-						firstChainIndexInit = true;
-						builder = new ChainBuilder(chainIndex);
-					}
-					
-					fileLine = fileLine.substring(fileLine.indexOf(" "));
-					fileLine = fileLine.trim();
-					char resTypeChar = fileLine.charAt(0);
-					//qp(resTypeChar);
-					char secStructChar = fileLine.charAt(3);
-					
-					//DSSP files use 'b' to mean Cysteine with a Sulfur-Sulfur bond
-					if(resTypeChar == 'b') { resTypeChar = 'C'; }
-					
-					AminoAcid aa = null;
-					
-					//maintain a user prompt of the characters
-					userPromptBuilder.append(resTypeChar);
-					
-					if(userPromptBuilder.length() > 20) {
-						userPromptBuilder.deleteCharAt(0);
-					}
-					
-					if(resTypeChar == 'X' && queryX) {
-						aa = fixDSSPUser(proteinID, userPromptBuilder.toString(), resTypeChar, chainIndex, chainChar);
-					} else {
-						try {
-							aa = new AminoAcid(ResidueType.letterLookup(resTypeChar));
-						} catch (UnrecognizedParameterException UPE) {
-							aa = fixDSSPUser(proteinID,userPromptBuilder.toString(), resTypeChar, chainIndex, chainChar);
-						}
-					}
-					
-					aa.setSecondaryStructure(SecondaryStructure.parseFromDSSP(secStructChar));
-					
-					//qp(chainIndex);
-					builder.fillTo(chainIndex);
-					builder.append(aa);
-					
-				} else if(fileLine.charAt(0) == '#') {
-					status = ChainReaderStatus.SEARCHING;
+			//DSSP files use lower case letters to mean Cysteines with a Sulfur-Sulfur bond
+			if(Character.isLowerCase(resTypeChar)) { resTypeChar = 'C'; }
+			
+			AminoAcid aa = null;
+			
+			//maintain a user prompt of the characters
+			userPromptBuilder.append(resTypeChar);
+			
+			if(userPromptBuilder.length() > 20) {
+				userPromptBuilder.deleteCharAt(0);
+			}
+			
+			if(resTypeChar == 'X' && queryX) {
+				aa = fixDSSPUser(proteinID, userPromptBuilder.toString(), resTypeChar, chainIndex, dssp.chain(line));
+			} else {
+				try {
+					aa = new AminoAcid(ResidueType.letterLookup(resTypeChar));
+				} catch (UnrecognizedParameterException UPE) {
+					aa = fixDSSPUser(proteinID,userPromptBuilder.toString(), resTypeChar, chainIndex, dssp.chain(line));
 				}
 			}
-			dsspReader.close();
 			
-		} catch (FileNotFoundException e) {
-			qpl("No .dssp file found for \"" + fileName + "\"");
-		} catch (IOException e) {
-			e.printStackTrace();
+			aa.setSecondaryStructure(SecondaryStructure.parseFromDSSP(dssp.secondary(line)));
+			
+			builder.fillTo(chainIndex);
+			builder.append(aa);
 		}
 		
-		//needed to prevent out of memory error
-		System.gc();
-		if(builder == null) {
-			return null;
-		} else {
-			ProteinChain retVal = builder.toChain(proteinID, chainID, DataSource.DSSP);
-			retVal.description = proteinID;
-			return retVal;
-		}
+		ProteinChain retVal = builder.toChain(proteinID, chainID, DataSource.DSSP);
+		retVal.description = proteinID;
+		return retVal;
 	}
 	
 	/**
@@ -725,86 +492,26 @@ public final class BioLookup extends BaseTools {
 	 */
 	public static ProteinChain readChainPDB(String protein, char chain, String fileName) throws IOException {
 		verifyPDB(protein);
+		chain = Character.toUpperCase(chain);
 		
-		SmartChainBuilder smartBuilder = new SmartChainBuilder();
+		AtomArena arena = PDBReader.readChain(fileName, chain);
 		
-		BufferedReader reader = null;
-		chain = Character.toUpperCase(chain);
+		int min = 0;
+		int max = 0;
+		for(int residue = 0; residue < arena.residueCount(); ++residue) {
+			min = Math.min(min, arena.residueNumber(residue));
+			max = Math.max(max, arena.residueNumber(residue));
+		}
 		
-		reader = new BufferedReader(new FileReader(fileName));
-		String fileLine = "";
-			
-		//String lastResidueName = BAD_RESIDUE;
-		int lastResidueNum = UNSTARTED;
-		char chainID;
-			
-		AminoAcid currentResidue = null;
-			
-		//read the file in line by line
-		for (fileLine = reader.readLine(); fileLine != null; fileLine = reader.readLine()) {
-			if(fileLine.startsWith(ATOM)) {
-				//qp(fileLine);
-				chainID = fileLine.charAt(21);
-					
-				//if its the wrong chain
-				if(chain != chainID) {
-					//if we haven't started yet
-					if(lastResidueNum == UNSTARTED) {
-						//qp("chain " + chain);
-						//qp("chainID " + chainID);
-						continue;
-					} else {
-						//finished with the chain
-						break;
-					}
-				}
-					
-				int resNum = Integer.parseInt(fileLine.substring(23,26).trim());
-					
-				if(resNum != lastResidueNum) {
-					if(lastResidueNum != UNSTARTED) {
-						Pair<AminoAcid, Integer> entry = new Pair<AminoAcid, Integer>();
-						entry.x = currentResidue;
-						entry.y = new Integer(lastResidueNum);
-						
-						smartBuilder.append(entry);
-						//qp(entry.x + ":" + entry.y);
-					}
-						
-					lastResidueNum = resNum;
-					String residueName = fileLine.substring(17,20).trim();
-					currentResidue = new AminoAcid(ResidueType.parseCode(residueName));
-				}
-					
-				String atomSerial = fileLine.substring(6, 11).trim();
-				String atomName = fileLine.substring(12, 16).trim();
-				String atomX = fileLine.substring(30, 38).trim();
-				String atomY = fileLine.substring(38, 46).trim();
-				String atomZ = fileLine.substring(46, 54).trim();
-				String atomOccupancy = fileLine.substring(54, 60).trim();
-				String tempFactor = fileLine.substring(60, 66).trim();
-				String atomSymbol = fileLine.substring(77, 79).trim();
-					
-				Atom atom = new Atom(atomSymbol, atomName);
-				atom.setPos(new Coordinate(Double.parseDouble(atomX),Double.parseDouble(atomY),Double.parseDouble(atomZ)));
-				atom.setOccupancy(Double.parseDouble(atomOccupancy));
-				atom.setTempFactor(Double.parseDouble(tempFactor));
-				atom.setSerialNo(Integer.parseInt(atomSerial));
-					
-				currentResidue.addAtom(atom);
-				//atom.debugPrintAll();
-				//break;
-			}
+		//the atoms stay in the arena until they are used
+		AminoAcid[] list = new AminoAcid[max-min+1];
+		for(int residue = 0; residue < arena.residueCount(); ++residue) {
+			AminoAcid aa = new AminoAcid(ResidueType.parseCode(arena.residueName(residue)));
+			aa.setAtoms(arena, residue);
+			list[arena.residueNumber(residue) - min] = aa;
 		}
-		//make sure to handle the last residue
-		Pair<AminoAcid, Integer> entry = new Pair<AminoAcid, Integer>();
-		entry.x = currentResidue;
-		entry.y = new Integer(lastResidueNum);
-		smartBuilder.append(entry);
-			
-		reader.close();
 		
-		return smartBuilder.toChain(protein, chain);
+		return new ProteinChain(protein, chain, list, min, fastaType);
 	}
 	
 	/**
@@ -882,18 +589,27 @@ public final class BioLookup extends BaseTools {
 	protected static final AminoAcid fixDSSPUser(String protein, String prompt, char unknown, int chainIndex, char chainChar) {
 		AminoAcid retVal = null;
 		
-		while(retVal == null) {
-			qp("Unknown/unrecognized Amino acid type (" + unknown + ")");
-			qp("Protein (" + protein + ") at chain (" + chainChar + ") index [ " + chainIndex + "]");
-			qp("Please enter residue type, or \'X\' for unknown, then press return");
-			qp("Preceding 20 values were: " + prompt);
-			
-			String userInput = input.next();
-			
+		//only one thread may prompt the user at a time, and the prompt has to reach the console
+		//even if the thread's output is being held back
+		synchronized(input) {
+			List<String> held = releaseOutput();
 			try {
-				retVal = new AminoAcid(ResidueType.letterLookup(Character.toUpperCase(userInput.charAt(0))));
-			} catch (UnrecognizedParameterException UPE) {
-				qp("User input not recognized, please try again.\n");
+				while(retVal == null) {
+					qp("Unknown/unrecognized Amino acid type (" + unknown + ")");
+					qp("Protein (" + protein + ") at chain (" + chainChar + ") index [ " + chainIndex + "]");
+					qp("Please enter residue type, or \'X\' for unknown, then press return");
+					qp("Preceding 20 values were: " + prompt);
+					
+					String userInput = input.next();
+					
+					try {
+						retVal = new AminoAcid(ResidueType.letterLookup(Character.toUpperCase(userInput.charAt(0))));
+					} catch (UnrecognizedParameterException UPE) {
+						qp("User input not recognized, please try again.\n");
+					}
+				}
+			} finally {
+				if(held != null) { holdOutput(held); }
 			}
 		}
 		
@@ -909,44 +625,22 @@ public final class BioLookup extends BaseTools {
 	public static Protein assignSecondary(Protein protein) throws IOException {
 		if(protein == null) { throw new NullPointerException("Null parameter"); }
 		
-		String fileName = DSSP_FOLDER + protein.toString() + ".dssp";
-		BufferedReader dsspReader = new BufferedReader(new FileReader(fileName));
-		String fileLine = "";
+		DSSPFile dssp = DSSPFile.get(protein.toString());
 		
-		boolean started = false;
-		
-		//read the file in line by line
-		for (fileLine = dsspReader.readLine(); fileLine != null; fileLine = dsspReader.readLine()) {
-			fileLine = fileLine.trim();
+		for(int line = 0; line < dssp.size(); ++line) {
+			int chainIndex = dssp.number(line);
+			char chainChar = dssp.chain(line);
+			char resTypeChar = dssp.residue(line);
+			if(Character.isLowerCase(resTypeChar)) { resTypeChar = 'C'; }
 			
-			if(started) {
-				fileLine = fileLine.substring(fileLine.indexOf(" "));
-				fileLine = fileLine.trim();
-				String strAsIndex = fileLine.substring(0,fileLine.indexOf(" "));
-				int chainIndex = Integer.parseInt(strAsIndex);
-				
-				fileLine = fileLine.substring(fileLine.indexOf(" "));
-				fileLine = fileLine.trim();
-				char chainChar = fileLine.charAt(0);
-				
-				char resTypeChar = fileLine.charAt(2);
-				
-				char secStructChar = fileLine.charAt(5);
-				
-				AminoAcid res = protein.getChain(chainChar).getAminoAt(chainIndex);
-				//verify the amino acid residue type
-				if(res.toChar() == resTypeChar) {
-					res.setSecondaryStructure(SecondaryStructure.parseFromDSSP(secStructChar));
-				} else {
-					dsspReader.close();
-					throw new InconsistentFileDataException(protein, chainChar, chainIndex, resTypeChar);
-				}
-				
-			} else if(fileLine.charAt(0) == '#') {
-				started = true;
+			AminoAcid res = protein.getChain(chainChar).getAminoAt(chainIndex);
+			//verify the amino acid residue type
+			if(res.toChar() == resTypeChar) {
+				res.setSecondaryStructure(SecondaryStructure.parseFromDSSP(dssp.secondary(line)));
+			} else {
+				throw new InconsistentFileDataException(protein, chainChar, chainIndex, resTypeChar);
 			}
 		}
-		dsspReader.close();
 		
 		return protein;
 	}
@@ -1017,6 +711,8 @@ public final class BioLookup extends BaseTools {
 	
 	/**
 	 * Obtain a ProteinChain object with E6 and E20 values assigned
+	 * The entropies are calculated in-process from the chain's BLAST file (see EntropyProfile),
+	 * so chains can be processed on several threads at once
 	 * 
 	 * @param protein: Protein's name
 	 * @param chain: chain's char id
@@ -1024,61 +720,32 @@ public final class BioLookup extends BaseTools {
 	 */
 	public static ProteinChain getEntropy(String protein, char chain) {
 		FASTA.verify(protein, chain);
-		FASTA.loadFASTA(protein, chain);
 		
-        String meta = protein+chain;
-        meta = meta.toLowerCase();
-        
-        String fixedBlastPath = blastPath() + "/" + protein + chain + ".txt";
-        
-        File blastFile = new File(fixedBlastPath);
-        if(!blastFile.exists() || blastFile.isDirectory()) {
-        		downloadBlast(meta);
-        }
-        
-        PythonScript.runPythonScript(E6_PATH, meta, directBlast());
+		String meta = protein+chain;
+		File blastFile = new File(blastPath() + "/" + meta + ".txt");
+		if(!blastFile.exists()) { blastFile = new File(blastPath() + "/" + meta.toLowerCase() + ".txt"); }
 		
-		//Read the spreadsheet
-		String csvName = meta + "_output.csv";
-		BufferedReader csvReader = null;
-		ChainBuilder chainMaker = new ChainBuilder();
-		String[] data;
+		if(!blastFile.exists() || blastFile.isDirectory()) {
+			downloadBlast(meta.toLowerCase());
+			blastFile = new File(blastPath() + "/" + meta + ".txt");
+			if(!blastFile.exists()) { blastFile = new File(blastPath() + "/" + meta.toLowerCase() + ".txt"); }
+		}
 		
+		ProteinChain retVal;
 		try {
-			csvReader = new BufferedReader(new FileReader(csvName));
-			
-			csvReader.readLine();
-			
-			while(csvReader.ready()) {
-				data = csvReader.readLine().split(",");
-				//qp(data);
-				char resType = data[LETTER].charAt(0);
-				AminoAcid aa = new AminoAcid(ResidueType.letterLookup(resType));
-				aa.setE20(Double.parseDouble(data[E20]));
-				aa.setE6(Double.parseDouble(data[E6]));
-				
-				chainMaker.append(aa);
-			}
-			
-			csvReader.close();
-			
+			retVal = readChainFromFasta(protein, chain);
+			EntropyProfile profile = new EntropyProfile(retVal.toSequence());
+			profile.readBlast(blastFile);
+			profile.assign(retVal);
 		} catch (FileNotFoundException e) {
-			qpl("Error! " + csvName + " was not generated properly!");
+			qpl("Error! Could not calculate entropy for " + meta + ": missing " + e.getMessage());
 			return null;
 		} catch (IOException e) {
-			qpl("Error! " + csvName + " was unreadable!");
+			qpl("Error! " + blastFile + " was unreadable!");
 			return null;
 		}
 		
-		//delete the now useless .csv file
-		try {
-			File csv = new File(csvName);
-			csv.delete();  
-		} catch(Exception e){
-			e.printStackTrace();
-		}
-		
-		return chainMaker.toChain(protein, chain, fastaType);
+		return retVal;
 	}
 	
 	/**
@@ -1122,43 +789,19 @@ public final class BioLookup extends BaseTools {
 		FASTA.verify(protein, chain);
 		
 		qpl("Running IsUnstruct on " + protein + chain);
-		String fastaName = formFastaPath(protein, chain);
-		
-		IsUnstruct lobGal = new IsUnstruct();
-		String lobGalArgs[] = {"", fastaName};
-		
-		//run the translated IsUnstruct
-		lobGal.main(lobGalArgs);
+		String sequence = readFastaString(formFastaPath(protein, chain));
 		
-		BufferedReader iulReader = null;
+		//score the sequence in memory: no .iul file is written or read
+		double[] probabilities = IsUnstruct.predict(sequence);
 		ChainBuilder builder = new ChainBuilder();
 		
-		String isUnstructPath = formFastaPath(protein, chain);
-		isUnstructPath = isUnstructPath.substring(0, isUnstructPath.length()-3);
-		
-		try {
-			iulReader = new BufferedReader(new FileReader(isUnstructPath + "iul"));
-			String line;
-			
-			//Skip header lines
-			for(line = iulReader.readLine(); !line.equals(""); line = iulReader.readLine()) { }
-			
-			for(line = iulReader.readLine(); line != null; line = iulReader.readLine()) {
-				//trim off white space
-				line = line.trim();
-				//trim off residue number
-				line = line.substring(line.indexOf(" "));
-				line = line.trim();
-				
-				AminoAcid aa = new AminoAcid(ResidueType.letterLookup(line.charAt(0)));
-				aa.setIsUnstruct(Double.parseDouble(line.substring(line.length()-5)));
-				builder.append(aa);
-			}
+		for(int index = 0, residue = 0; index < sequence.length(); ++index) {
+			//IsUnstruct skips white space
+			if(sequence.charAt(index) <= ' ') { continue; }
 			
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+			AminoAcid aa = new AminoAcid(ResidueType.letterLookup(sequence.charAt(index)));
+			aa.setIsUnstruct(probabilities[residue++]);
+			builder.append(aa);
 		}
 		
 		return builder.toChain(protein, chain, fastaType);
@@ -1166,10 +809,10 @@ public final class BioLookup extends BaseTools {
 	
 	/**
 	 * Runs a Python script to get a blast file
-	 * WARNING: do NOT run this method in parallel
+	 * The script must not run in parallel, so only one download runs at a time
 	 * @param proteinChain: the chain to download the blast for
 	 */
-	public static void downloadBlast(String proteinChain) {
+	public static synchronized void downloadBlast(String proteinChain) {
 		qpl("Downloading Blast for: " + proteinChain.toUpperCase());
 		switch(fastaType) {
 		case RCSB_PDB:
@@ -1183,20 +826,6 @@ public final class BioLookup extends BaseTools {
 		}
 	}
 	
-	private static String directBlast() {
-		switch(fastaType) {
-		case GENBANK:
-		case RCSB_PDB:
-		case OTHER:
-			return "blast_genbank";
-		case UNIPROT:
-		case DSSP:
-			return "blast_uniprot";
-		default:
-			throw new DataSourceNotYetSetException();
-		}
-	}
-	
 	/**
 	 * Given a ProteinChain object, this method assigns E6 and E20 Values
 	 * E6 and E20 values are measures of Shannon Entropy
@@ -1353,12 +982,8 @@ public final class BioLookup extends BaseTools {
 		
 		ProteinChain retVal = null;
 		
-		VkabatReader vkReader;
 		try {
-			vkReader = new VkabatReader(protein, chain);
-			retVal = vkReader.getVkabat(protein, chain);
-			vkReader.close();
-			//vkReader.cleanUp();
+			retVal = VkabatEngine.getVkabat(protein, chain);
 		} catch (IOException e) {
 			System.err.println("I/O Problem::No Vkabat file generated for: " + protein + chain);
 			return null;
@@ -1400,6 +1025,29 @@ public final class BioLookup extends BaseTools {
 		ProteinChain newChain = getVkabat(chain.getProteinName(), chain.getID());
 		if(newChain == null) { return null; }
 		
+		return assignVkabat(chain, newChain);
+	}
+	
+	/**
+	 * Assigns Vkabat data read in advance (see VkabatEngine) to a ProteinChain object
+	 * 
+	 * @param chain: the chain to assign Vkabat values to
+	 * @param matrix: the chain's secondary structure predictions
+	 * @return: The passed in object, now with Vkabat values
+	 * @throws ResidueAlignmentException: If the ProteinChain's sequence does not match the predictions' sequence
+	 */
+	public static ProteinChain assignVkabat(ProteinChain chain, SecpredMatrix matrix) throws ResidueAlignmentException {
+		return assignVkabat(chain, matrix.toChain(chain.getProteinName(), chain.getID()));
+	}
+	
+	/**
+	 * Copies the Vkabat data of a chain read from a secpred file onto a ProteinChain object
+	 * @param chain: the chain to assign Vkabat values to
+	 * @param newChain: the chain with the Vkabat values
+	 * @return: The passed in object, now with Vkabat values
+	 * @throws ResidueAlignmentException: If the chains' sequences cannot be aligned
+	 */
+	private static ProteinChain assignVkabat(ProteinChain chain, ProteinChain newChain) throws ResidueAlignmentException {
 		//set the first index of the new chain so it lines up...
 		SequenceAligner.superAlign(chain, newChain);
 		
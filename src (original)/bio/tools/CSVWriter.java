@@ -1,9 +1,17 @@
 package bio.tools;
 
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
 
 import bio.AlignedCluster;
 import bio.AminoAcid;
@@ -37,6 +45,8 @@ public final class CSVWriter extends BaseTools {
 	
 	private static final String OUTPUT = "output/";
 	private static final String CSV = ".csv";
+	private static final String GZ = ".gz";
+	private static final int BUFFER_SIZE = 1 << 16;
 	private static final String LEARNING_SET_HEADER = "No.,Chain,Residue,Letter,Secondary,E6,E20,isUnstruct,Vkabat,VkabatCompletion,amber95,N,HN,CA,CB,CP,O,AvgCharge,isSwitch";
 	
 	//write mode parameters
@@ -55,6 +65,13 @@ public final class CSVWriter extends BaseTools {
 	
 	private static final String NORMALIZE				= "-n" ;
 	private static final String NO_SIMPLIFY				= "-ss" ;
+	private static final String GZIP					= "-gz" ;
+	
+	//the isSwitch column of each write mode, already encoded
+	private static final byte[] ZERO = "0".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] ONE = "1".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] WEIGHT = String.valueOf(Tablizable.DISORDERED_WEIGHT).getBytes(StandardCharsets.UTF_8);
+	private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
 	
 	/**
 	 * Writes the ProteinChains in the list to a file
@@ -92,6 +109,7 @@ public final class CSVWriter extends BaseTools {
 		boolean flip_e22 = stringArrayContainsPartial(args, FLIP_E22);
 		boolean flip_isu = stringArrayContainsPartial(args, FLIP_ISUNSTRUCT);
 		boolean norm = stringArrayContainsPartial(args, NORMALIZE);
+		boolean gzip = stringArrayContainsPartial(args, GZIP);
 		
 		String outFileName = "output/"+saveFileName;
 		
@@ -114,44 +132,69 @@ public final class CSVWriter extends BaseTools {
 			myChains.toArray(dataSetArray);
 		}
 		
-		if(writeBoth) {	writeDataSet(outFileName, dataSetArray, 'b', flip_e6, flip_e20, flip_e22, flip_isu, norm, simplifySecondary, false); }
-		if(writeUnassigned) { writeDataSet(outFileName, dataSetArray, 'u', flip_e6, flip_e20, flip_e22, flip_isu, norm, simplifySecondary, false); }
-		if(writeAssigned) { writeDataSet(outFileName, dataSetArray, 'a', flip_e6, flip_e20, flip_e22, flip_isu, norm, simplifySecondary, false); }
-		if(writeWeighted) { writeDataSet(outFileName, dataSetArray, 'w', flip_e6, flip_e20, flip_e22, flip_isu, norm, simplifySecondary, false); }
+		//every requested file is written in the same pass over the chains
+		StringBuilder writeModes = new StringBuilder();
+		if(writeBoth) { writeModes.append('b'); }
+		if(writeUnassigned) { writeModes.append('u'); }
+		if(writeAssigned) { writeModes.append('a'); }
+		if(writeWeighted) { writeModes.append('w'); }
+		
+		writeDataSets(outFileName, dataSetArray, writeModes.toString().toCharArray(), flip_e6, flip_e20, flip_e22,
+				flip_isu, norm, simplifySecondary, false, gzip);
 	}
 	
 	/**
-	 * TODO
-	 * @param filename
-	 * @param chains
-	 * @param writeMode
+	 * Writes one learning set file per write mode, in a single pass over the chains
+	 * The files only differ in the last (isSwitch) column, so the rest of each line is
+	 * formatted and encoded once, then written to every file
+	 * @param filename: the start of the file names (the write mode and options are appended)
+	 * @param chains: the chains to write
+	 * @param writeModes: 'b' (both), 'u' (unassigned), 'a' (assigned) and/or 'w' (weighted)
 	 * @param flip_e6
 	 * @param flip_e20
 	 * @param flip_e22
 	 * @param flip_isu
 	 * @param normalize
+	 * @param simplifySecondary: write the simple secondary structure classification
+	 * @param enableE22: write the E22 column
+	 * @param gzip: compress the files (.csv.gz)
 	 */
-	private static void writeDataSet(String filename, AminoChain[] chains, char writeMode, boolean flip_e6, boolean flip_e20,
-			boolean flip_e22, boolean flip_isu, boolean normalize, boolean simplifySecondary, boolean enableE22) {
-		filename += writeMode;
-		
-		if(flip_e6)  { qp("Flipping E6");			filename += "-fe6"; }
-		if(flip_e20) { qp("Flipping E20");			filename += "-fe20"; }
-		if(flip_e22) { qp("Flipping E22");			filename += "-fe22"; }
-		if(flip_isu) { qp("Flipping isUnstruct");	filename += "-fISU"; }
-		if(normalize)		 { qp("Normalizing");	filename += "-n"; }
-		
-		if(!filename.endsWith(CSV)) { filename += CSV; }
-		
-		PrintWriter csvWriter = null;
+	private static void writeDataSets(String filename, AminoChain[] chains, char[] writeModes, boolean flip_e6, boolean flip_e20,
+			boolean flip_e22, boolean flip_isu, boolean normalize, boolean simplifySecondary, boolean enableE22, boolean gzip) {
+		if(writeModes.length == 0) { return; }
+		String options = "";
+		
+		if(flip_e6)  { qp("Flipping E6");			options += "-fe6"; }
+		if(flip_e20) { qp("Flipping E20");			options += "-fe20"; }
+		if(flip_e22) { qp("Flipping E22");			options += "-fe22"; }
+		if(flip_isu) { qp("Flipping isUnstruct");	options += "-fISU"; }
+		if(normalize)		 { qp("Normalizing");	options += "-n"; }
+		
+		OutputStream outputs[] = new OutputStream[writeModes.length];
 		StringBuilder dataBuilder = new StringBuilder();
+		//the encoded line, without its isSwitch column
+		LineBuffer line = new LineBuffer();
 		
 		try {
-			csvWriter = new PrintWriter(filename, "UTF-8");
-			csvWriter.println(LEARNING_SET_HEADER);
+			byte[] header = LEARNING_SET_HEADER.getBytes(StandardCharsets.UTF_8);
+			for(int mode = 0; mode < writeModes.length; ++mode) {
+				String modeFileName = filename + writeModes[mode] + options;
+				if(!modeFileName.endsWith(CSV)) { modeFileName += CSV; }
+				
+				//Files.newOutputStream writes through a FileChannel, and the buffer hands it BUFFER_SIZE
+				//blocks, so writing to the channel directly would save nothing; GZIPOutputStream needs a stream
+				OutputStream fileStream = Files.newOutputStream(Paths.get(gzip ? modeFileName + GZ : modeFileName));
+				if(gzip) { fileStream = new GZIPOutputStream(fileStream, BUFFER_SIZE); }
+				outputs[mode] = new BufferedOutputStream(fileStream, BUFFER_SIZE);
+				
+				outputs[mode].write(header);
+				outputs[mode].write(NEWLINE);
+			}
 			
 			//"Protein,Chain,Residue,E20,E6,isUnstruct,Vkabat,VkabatCompletion,N,HN,CA,CB,CP,O,AVG,isSwitch";
 			for(AminoChain chain: chains) {
+				String chainName = chain.getProteinName() + chain.getID();
+				
 				for(int index = 0; index < chain.length(); ++index) {
 					Tablizable aa = chain.getAmino(index);
 					
@@ -161,15 +204,15 @@ public final class CSVWriter extends BaseTools {
 					//if(ignoreUnassignedVK && aa.vKabatCompletion() == -1) { continue; }
 					
 					dataBuilder.setLength(0);
-					dataBuilder.append((index+chain.firstIndex()+1) + "," + chain.getProteinName() + chain.getID() + ",");
+					dataBuilder.append(index+chain.firstIndex()+1).append(',').append(chainName).append(',');
 					
-					dataBuilder.append(aa.toCode() + ",");
-					dataBuilder.append(aa.toChar() + ",");
+					dataBuilder.append(aa.toCode()).append(',');
+					dataBuilder.append(aa.toChar()).append(',');
 					
 					if(simplifySecondary && aa.secondary() != null) {
-						dataBuilder.append(aa.secondary().simpleClassify() + ",");
+						dataBuilder.append(aa.secondary().simpleClassify()).append(',');
 					} else {
-						dataBuilder.append(aa.secondary() + ",");
+						dataBuilder.append(aa.secondary()).append(',');
 					}
 					
 					dataBuilder.append(Tablizable.processEntropy(aa.E6(), 6, flip_e6, normalize));
@@ -182,43 +225,90 @@ public final class CSVWriter extends BaseTools {
 					//Flip isUnstruct?
 					//isUnstruct is always normalized
 					if(flip_isu) {
-						dataBuilder.append((1 - aa.isUnstruct()) + ",");
+						dataBuilder.append(1 - aa.isUnstruct()).append(',');
 					} else {
-						dataBuilder.append(aa.isUnstruct() + ",");
+						dataBuilder.append(aa.isUnstruct()).append(',');
 					}
 					
-					dataBuilder.append(aa.vKabat() + ",");
-					dataBuilder.append(aa.vKabatCompletion() + ",");
-					dataBuilder.append(aa.amber95() + ",");
+					dataBuilder.append(aa.vKabat()).append(',');
+					dataBuilder.append(aa.vKabatCompletion()).append(',');
+					dataBuilder.append(aa.amber95()).append(',');
 					
 					dataBuilder.append(aa.getStandardCharges());
 					
-					dataBuilder.append(aa.averageCharge() + ",");
+					dataBuilder.append(aa.averageCharge()).append(',');
 					
-					switch(writeMode) {
-					case 'b':		dataBuilder.append(aa.isSwitch() ? 1 : 0);							break;
-					case 'a':		dataBuilder.append(aa.switchType() == SwitchType.ASSINGED ? 1 : 0);	break;
-					case 'u':		dataBuilder.append(aa.switchType() == SwitchType.UNASSIGNED ? 1 : 0);	break;
-					case 'w':
-						if(aa.switchType() == SwitchType.UNASSIGNED) {
-							dataBuilder.append(Tablizable.DISORDERED_WEIGHT);
-						} else if(aa.switchType() == SwitchType.ASSINGED) {
-							dataBuilder.append(1);
-						} else {
-							dataBuilder.append(0);
-						} break;
-					}
+					line.encode(dataBuilder);
 					
-					csvWriter.println(dataBuilder.toString());
+					for(int mode = 0; mode < writeModes.length; ++mode) {
+						outputs[mode].write(line.bytes, 0, line.length);
+						outputs[mode].write(switchColumn(aa, writeModes[mode]));
+						outputs[mode].write(NEWLINE);
+					}
 				}
 			}
-			
-			csvWriter.close();
-		} catch (FileNotFoundException e) {
+		} catch (IOException e) {
 			qp("File Could Not Be Written");
 			e.printStackTrace();
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
+		} finally {
+			for(OutputStream output: outputs) {
+				if(output == null) { continue; }
+				try {
+					output.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param aa: a residue
+	 * @param writeMode: 'b' (both), 'u' (unassigned), 'a' (assigned) or 'w' (weighted)
+	 * @return: the encoded isSwitch column of the residue for the write mode
+	 */
+	private static byte[] switchColumn(Tablizable aa, char writeMode) {
+		switch(writeMode) {
+		case 'b':		return aa.isSwitch() ? ONE : ZERO;
+		case 'a':		return aa.switchType() == SwitchType.ASSINGED ? ONE : ZERO;
+		case 'u':		return aa.switchType() == SwitchType.UNASSIGNED ? ONE : ZERO;
+		case 'w':
+			if(aa.switchType() == SwitchType.UNASSIGNED) {
+				return WEIGHT;
+			} else if(aa.switchType() == SwitchType.ASSINGED) {
+				return ONE;
+			} else {
+				return ZERO;
+			}
+		default:		return new byte[0];
+		}
+	}
+	
+	/**
+	 * A reusable buffer a line is encoded into, so the line is only encoded once for every file
+	 */
+	private static final class LineBuffer {
+		private byte[] bytes = new byte[256];
+		private int length;
+		
+		/**
+		 * Encode text as UTF-8 into the buffer, without making a String
+		 * @param text: the text
+		 */
+		private void encode(CharSequence text) {
+			length = 0;
+			for(int index = 0; index < text.length(); ++index) {
+				char ch = text.charAt(index);
+				if(ch >= 0x80) {
+					//not plain ASCII: let Java encode it
+					bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+					length = bytes.length;
+					return;
+				}
+				
+				if(length == bytes.length) { bytes = Arrays.copyOf(bytes, length * 2); }
+				bytes[length++] = (byte) ch;
+			}
 		}
 	}
 	
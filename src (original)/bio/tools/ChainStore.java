@@ -0,0 +1,352 @@
+package bio.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import bio.ProteinChain;
+import util.BaseTools;
+
+/**
+ * Saves a list of ProteinChains as one record per chain instead of one serialized ArrayList,
+ * so that updating a chain only writes that chain.
+ *
+ * The store is an append-only log in files/saved/<name>.chains:
+ * 		header:  MAGIC, VERSION
+ * 		records: slot (position in the list), chain ID, length, serialized chain, CRC32 of the chain
+ * saveAll() rewrites the log with one record per chain; save() appends a single record.
+ * When the log is read, the last complete record for each slot wins, so a run that was
+ * interrupted part way through a list resumes from the last chain that was written.
+ * A record that was only partly written (or is corrupt) ends the log, and the next save()
+ * cuts it off before appending, so the records after it can be read.
+ * A list that has changed length is always written with saveAll(), so every slot of the log
+ * has a record and the log never holds slots past the end of the list.
+ *
+ * Save files written by BioIOStream.saveObject() (a whole serialized ArrayList) are still read.
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class ChainStore extends BaseTools {
+	public static final String EXTENSION = ".chains";
+	
+	private static final int MAGIC = 0x4A424353; //"JBCS"
+	private static final int VERSION = 1;
+	private static final String TEMP = ".tmp";
+	
+	//the name the chains are saved under
+	private String name;
+	//the log file
+	private File file;
+	
+	//where the last complete record of the log ends, or -1 if the log hasn't been read
+	private long end = -1;
+	//the number of slots in the log
+	private int slots;
+	//when the log was last modified by (or read into) this store
+	private long modified;
+	
+	/**
+	 *
+	 * @param name: the name the chains are saved under (JBioMain's saveFileName)
+	 */
+	public ChainStore(String name) {
+		this.name = name;
+		file = new File(BioIOStream.SAVE_PATH + name + EXTENSION);
+	}
+	
+	/**
+	 * @return: the name the chains are saved under
+	 */
+	public String name() { return name; }
+	
+	/**
+	 * @return: the log file
+	 */
+	public File file() { return file; }
+	
+	/**
+	 * @return: true if there is a log or an old-style save file for the name
+	 */
+	public boolean exists() { return file.exists() || legacyFile().exists(); }
+	
+	/**
+	 * @return: the file load() would read (the log, else an old-style save file), or null if there is none
+	 */
+	public File current() {
+		if(file.exists()) { return file; }
+		return legacyFile().exists() ? legacyFile() : null;
+	}
+	
+	/**
+	 * @return: the old-style save file (a whole serialized ArrayList)
+	 */
+	private File legacyFile() { return new File(BioIOStream.SAVE_PATH + name); }
+	
+	/**
+	 * Read the saved chains
+	 * @return: the chains, in the order they were saved (null for a slot the log has no record of)
+	 * @throws FileNotFoundException: if nothing has been saved under the name
+	 */
+	@SuppressWarnings("unchecked")
+	public ArrayList<ProteinChain> load() throws FileNotFoundException {
+		if(!file.exists()) {
+			if(legacyFile().exists()) {
+				return (ArrayList<ProteinChain>) BioIOStream.readObject(legacyFile().getPath());
+			}
+			throw new FileNotFoundException(file.getPath());
+		}
+		
+		try {
+			ArrayList<long[]> latest = scan();
+			if(latest == null) { return new ArrayList<ProteinChain>(); }
+			
+			ArrayList<ProteinChain> chains = new ArrayList<ProteinChain>(latest.size());
+			int missing = 0;
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				for(long[] record: latest) {
+					//keep the other chains in their slots
+					if(record == null) {
+						chains.add(null);
+						++missing;
+						continue;
+					}
+					
+					byte[] data = new byte[(int) record[1]];
+					raf.seek(record[0]);
+					raf.readFully(data);
+					chains.add(deserialize(data));
+				}
+			} finally {
+				raf.close();
+			}
+			
+			if(missing > 0) { qerr(file + " has no record for " + missing + " of its " + latest.size() + " chains"); }
+			return chains;
+		} catch (FileNotFoundException FNFE) {
+			throw FNFE;
+		} catch (IOException | ClassNotFoundException e) {
+			e.printStackTrace();
+			return new ArrayList<ProteinChain>();
+		}
+	}
+	
+	/**
+	 * Find the newest complete record of each slot, and where the last complete record ends
+	 * @return: the offset and length of the data of each slot's newest record (null if a slot has none),
+	 * 		or null if the file is not a chain store
+	 * @throws IOException
+	 */
+	private ArrayList<long[]> scan() throws IOException {
+		ArrayList<long[]> latest = new ArrayList<long[]>();
+		end = -1;
+		modified = file.lastModified();
+		
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+				qerr("Not a chain store: " + file);
+				return null;
+			}
+			
+			long offset = 8;
+			CRC32 crc = new CRC32();
+			byte[] buffer = new byte[0];
+			
+			while(true) {
+				int slot, length;
+				String chainID;
+				try {
+					slot = in.readInt();
+				} catch (EOFException EOFE) {
+					break;
+				}
+				
+				try {
+					chainID = in.readUTF();
+					length = in.readInt();
+					if(slot < 0 || length < 0) { throw new IOException("bad record header"); }
+					
+					if(buffer.length < length) { buffer = new byte[length]; }
+					in.readFully(buffer, 0, length);
+					
+					crc.reset();
+					crc.update(buffer, 0, length);
+					if(in.readLong() != crc.getValue()) { throw new IOException("checksum mismatch"); }
+				} catch (IOException IOE) {
+					String reason = (IOE instanceof EOFException) ? "truncated" : IOE.getMessage();
+					qerr("Ignoring incomplete record at the end of " + file + ": " + reason);
+					break;
+				}
+				
+				//slot, chain ID (2-byte length + modified UTF-8), length, data, CRC
+				long dataStart = offset + 4 + 2 + utfLength(chainID) + 4;
+				while(latest.size() <= slot) { latest.add(null); }
+				latest.set(slot, new long[] { dataStart, length });
+				offset = dataStart + length + 8;
+			}
+			
+			end = offset;
+			slots = latest.size();
+			return latest;
+		} catch (EOFException EOFE) {
+			qerr("Not a chain store: " + file);
+			return null;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Write every chain, replacing anything saved under the name
+	 * The new log is written to a temporary file first, so a crash never leaves half a store
+	 * @param chains: the chains to save
+	 */
+	public void saveAll(List<ProteinChain> chains) {
+		File temp = new File(file.getPath() + TEMP);
+		
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				for(int slot = 0; slot < chains.size(); ++slot) {
+					out.write(record(slot, chains.get(slot)));
+				}
+			} finally {
+				out.close();
+			}
+			
+			if(file.exists() && !file.delete()) { throw new IOException("Could not replace " + file); }
+			if(!temp.renameTo(file)) { throw new IOException("Could not rename " + temp + " to " + file); }
+			
+			end = file.length();
+			slots = chains.size();
+			modified = file.lastModified();
+		} catch (IOException IOE) {
+			IOE.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Save a single chain that has changed
+	 * If there is no log yet, or the list has changed length, the whole list is written instead
+	 * The log is read the first time (and whenever something else has changed it since)
+	 * @param chains: the list the chain is in
+	 * @param index: the index of the chain in the list
+	 */
+	public void save(List<ProteinChain> chains, int index) {
+		if(!file.exists()) {
+			saveAll(chains);
+			return;
+		}
+		
+		try {
+			if(end < 0 || file.lastModified() != modified || file.length() < end) { scan(); }
+			if(end < 0 || chains.size() != slots) {
+				saveAll(chains);
+				return;
+			}
+			
+			byte[] record = record(index, chains.get(index));
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				//anything after the last complete record is the remains of an interrupted save
+				if(raf.length() > end) {
+					qerr("Dropping incomplete record at the end of " + file);
+					raf.setLength(end);
+				}
+				raf.seek(end);
+				raf.write(record);
+			} finally {
+				raf.close();
+			}
+			
+			end += record.length;
+			modified = file.lastModified();
+		} catch (IOException IOE) {
+			IOE.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Make one record of the log
+	 * @param slot: the position of the chain in the list
+	 * @param chain: the chain
+	 * @return: the record, as it is written to the log
+	 * @throws IOException
+	 */
+	private static byte[] record(int slot, ProteinChain chain) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+		objectOut.writeObject(chain);
+		objectOut.close();
+		
+		byte[] data = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		
+		ByteArrayOutputStream record = new ByteArrayOutputStream(data.length + 64);
+		DataOutputStream out = new DataOutputStream(record);
+		out.writeInt(slot);
+		out.writeUTF((chain == null) ? "" : chain.fullID());
+		out.writeInt(data.length);
+		out.write(data);
+		out.writeLong(crc.getValue());
+		out.close();
+		return record.toByteArray();
+	}
+	
+	/**
+	 * @param data: a serialized chain
+	 * @return: the chain
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private static ProteinChain deserialize(byte[] data) throws IOException, ClassNotFoundException {
+		ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(data));
+		try {
+			return (ProteinChain) objectIn.readObject();
+		} finally {
+			objectIn.close();
+		}
+	}
+	
+	/**
+	 * @param str: a String
+	 * @return: the number of bytes DataOutputStream.writeUTF() uses for the String, not counting the length
+	 */
+	private static int utfLength(String str) {
+		int length = 0;
+		for(int index = 0; index < str.length(); ++index) {
+			char c = str.charAt(index);
+			if(c >= 0x0001 && c <= 0x007F) {
+				length += 1;
+			} else if(c > 0x07FF) {
+				length += 3;
+			} else {
+				length += 2;
+			}
+		}
+		return length;
+	}
+	
+	public String toString() { return "ChainStore: " + file; }
+}
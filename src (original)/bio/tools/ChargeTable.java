@@ -0,0 +1,210 @@
+package bio.tools;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import bio.ResidueType;
+import bio.SecondarySimple;
+import util.BaseTools;
+
+/**
+ * In-memory copy of the "partial-charges-protein-3d-structures" table.
+ *
+ * The table is small (20 residues x 6 atoms x 4 environments), so the whole thing is
+ * read once through one connection and stored as charge[ResidueType][atom][environment].
+ * After that, looking up a residue's charges is a few array reads: no connections,
+ * no queries and no garbage.  A residue type that is not in the table (most non-standard
+ * residues) has no charges: the first lookup of each such type reports it.
+ *
+ * Table columns: atoms, residue, amber95, free, free-sd, buried, buried-sd, helix, helix-sd, sheet, sheet-sd
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public final class ChargeTable extends BaseTools {
+	private static final String myDriver = "org.sqlite.JDBC";
+	private static final String jbioDBURL = "jdbc:sqlite:JBioDataBase.db";
+	
+	private static final String TABLE = "\"partial-charges-protein-3d-structures\"";
+	private static final String LOAD_QUERY = "SELECT * FROM " + TABLE + ";";
+	
+	//environments, in the order of charge[][][environment]
+	public static final int FREE = 0;
+	public static final int BURIED = 1;
+	public static final int HELIX = 2;
+	public static final int SHEET = 3;
+	public static final int ENVIRONMENTS = 4;
+	
+	//database columns (1-based) of the atom, residue, amber95 and each environment's charge
+	private static final int ATOM_COLUMN = 1;
+	private static final int RESIDUE_COLUMN = 2;
+	private static final int AMBER95_COLUMN = 3;
+	private static final int[] ENVIRONMENT_COLUMNS = { 4, 6, 8, 10 };
+	
+	private static final ResidueType[] TYPES = ResidueType.values();
+	private static final int ATOMS = BioLookup.ATOM_CODES.length;
+	
+	//charge[residue type][atom][environment]
+	private static final double[][][] charge = new double[TYPES.length][ATOMS][ENVIRONMENTS];
+	//whether the table has a row for [residue type][atom]
+	private static final boolean[][] hasAtom = new boolean[TYPES.length][ATOMS];
+	//sum of the amber95 column over every row of a residue type, and the number of rows
+	private static final double[] amber95 = new double[TYPES.length];
+	private static final int[] amber95Rows = new int[TYPES.length];
+	
+	//whether a residue type with no rows in the table has been reported
+	private static final boolean[] reported = new boolean[TYPES.length];
+	
+	//the upper case database code of each residue type
+	private static final String[] codes = new String[TYPES.length];
+	
+	//set once the arrays are filled: lookups read them only after seeing this
+	private static volatile boolean loaded = false;
+	
+	/**
+	 * Read the whole charge table into memory, if it hasn't been already
+	 * Safe to call from any number of threads
+	 * If the table can't be read, every lookup finds nothing instead of retrying
+	 */
+	public static void load() {
+		if(loaded) { return; }
+		
+		synchronized(ChargeTable.class) {
+			if(loaded) { return; }
+			
+			for(ResidueType type: TYPES) { codes[type.ordinal()] = type.toCode().toUpperCase(); }
+			
+			Connection conn = null;
+			try {
+				Class.forName(myDriver);
+				conn = DriverManager.getConnection(jbioDBURL);
+				Statement st = conn.createStatement();
+				ResultSet results = st.executeQuery(LOAD_QUERY);
+				
+				while(results.next()) { storeRow(results); }
+				
+				results.close();
+				st.close();
+			} catch (ClassNotFoundException | SQLException e) {
+				qerr("Error in loading charge table: " + e.getMessage());
+			} finally {
+				try {
+					if(conn != null) { conn.close(); }
+				} catch (SQLException SQLE) {
+					SQLE.printStackTrace();
+				}
+			}
+			
+			loaded = true;
+		}
+	}
+	
+	/**
+	 * Store a row of the charge table
+	 * @param results: a ResultSet positioned on the row
+	 * @throws SQLException
+	 */
+	private static void storeRow(ResultSet results) throws SQLException {
+		String atomCode = results.getString(ATOM_COLUMN);
+		String residueCode = results.getString(RESIDUE_COLUMN);
+		if(atomCode == null || residueCode == null) { return; }
+		
+		int atom = atomIndex(atomCode.trim());
+		residueCode = residueCode.trim().toUpperCase();
+		
+		for(int index = 0; index < TYPES.length; ++index) {
+			if(codes[index].equals(residueCode)) {
+				amber95[index] += results.getDouble(AMBER95_COLUMN);
+				++amber95Rows[index];
+				
+				if(atom >= 0) {
+					for(int env = 0; env < ENVIRONMENTS; ++env) {
+						charge[index][atom][env] = results.getDouble(ENVIRONMENT_COLUMNS[env]);
+					}
+					hasAtom[index][atom] = true;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Make sure the table is in memory
+	 * @param type: the residue type
+	 * @return: the ordinal of the residue type
+	 */
+	private static int prepare(ResidueType type) {
+		load();
+		int index = type.ordinal();
+		if(amber95Rows[index] == 0 && !reported[index]) { reportMissing(type); }
+		return index;
+	}
+	
+	/**
+	 * Report a residue type the table has no rows for (only once per type)
+	 * @param type: the residue type
+	 */
+	private static synchronized void reportMissing(ResidueType type) {
+		int index = type.ordinal();
+		if(reported[index]) { return; }
+		reported[index] = true;
+		qerr("No partial charges for " + type + " (" + codes[index] + "): its charges are left unset");
+	}
+	
+	/**
+	 * @param atomCode: an atom code, such as "CA"
+	 * @return: the index of the atom code in BioLookup.ATOM_CODES, or -1 if it isn't there
+	 */
+	public static int atomIndex(String atomCode) {
+		for(int index = 0; index < ATOMS; ++index) {
+			if(BioLookup.ATOM_CODES[index].equals(atomCode)) { return index; }
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param secondary: the simplified secondary structure of a residue
+	 * @return: the environment to use for its charges, or -1 if there isn't one
+	 */
+	public static int environment(SecondarySimple secondary) {
+		switch(secondary) {
+		case Helix:			return HELIX;
+		case Sheet:			return SHEET;
+		case Other:			return FREE;
+		default:				return -1;
+		}
+	}
+	
+	/**
+	 * @param type: the residue type
+	 * @param atom: the index of the atom in BioLookup.ATOM_CODES
+	 * @return: true if the table has charges for the atom in the residue type
+	 */
+	public static boolean hasCharge(ResidueType type, int atom) {
+		return hasAtom[prepare(type)][atom];
+	}
+	
+	/**
+	 * @param type: the residue type
+	 * @param atom: the index of the atom in BioLookup.ATOM_CODES
+	 * @param environment: FREE, BURIED, HELIX or SHEET
+	 * @return: the partial charge of the atom, or NaN if the table doesn't have it
+	 */
+	public static double charge(ResidueType type, int atom, int environment) {
+		int index = prepare(type);
+		return hasAtom[index][atom] ? charge[index][atom][environment] : Double.NaN;
+	}
+	
+	/**
+	 * @param type: the residue type
+	 * @return: the sum of the amber95 charges of the residue type's backbone atoms,
+	 * 		or NaN if the table doesn't have the residue type
+	 */
+	public static double amber95(ResidueType type) {
+		int index = prepare(type);
+		return (amber95Rows[index] > 0) ? amber95[index] : Double.NaN;
+	}
+}
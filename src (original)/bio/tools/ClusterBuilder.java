@@ -0,0 +1,254 @@
+package bio.tools;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import bio.AlignedCluster;
+import bio.DataSource;
+import bio.ProteinChain;
+import bio.exceptions.DataRetrievalException;
+import bio.exceptions.ResidueAlignmentException;
+import bio.exceptions.ResidueAlignmentRuntimeException;
+import util.BaseTools;
+
+/**
+ * Builds AlignedClusters from the lines of a cluster file, several clusters at a time.
+ *
+ * Clusters are independent of each other, so each one is built (FASTAs verified and read,
+ * secondary structures and charges assigned, chains aligned to the dominant chain) as a task
+ * on a work-stealing pool.  Problems are collected for each cluster instead of being printed
+ * as they happen, and can be printed together with reportErrors() when the build is done.
+ * Anything else a cluster's task prints (such as BioLookup's progress lines) is held back the
+ * same way and printed, cluster by cluster, with reportMessages().
+ *
+ * Shared state:
+ * 		the FASTA source is read once, before any cluster is built
+ * 		FASTAs of the same protein are never verified (downloaded) by two clusters at once
+ * 		BioLookup only prompts the user from one thread at a time
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class ClusterBuilder extends BaseTools {
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+	
+	//one lock per protein, so two clusters never download the same FASTA at once
+	private static final ConcurrentHashMap<String, Object> verifyLocks = new ConcurrentHashMap<String, Object>();
+	
+	//the cluster file's lines: each row is a cluster, the dominant chain first
+	private final String[][] clusters;
+	//where FASTAs come from, read once before the build
+	private DataSource source;
+	
+	private AlignedCluster[] built;
+	//the problems found while building each cluster
+	private ArrayList<ArrayList<String>> errors;
+	//what was printed while building each cluster
+	private ArrayList<ArrayList<String>> messages;
+	
+	/**
+	 *
+	 * @param clusters: the names of the chains in each cluster (the dominant chain first)
+	 * 		this is either the RCSB-ID or the RCSB-ID and Uniprot ID together in a string
+	 */
+	public ClusterBuilder(String[][] clusters) {
+		this.clusters = clusters;
+	}
+	
+	/**
+	 * Build every cluster
+	 * @param threads: the maximum number of clusters to build at once
+	 * @return: the clusters, in the same order as the cluster file (null if a cluster's dominant chain could not be read)
+	 */
+	public AlignedCluster[] build(int threads) {
+		source = BioLookup.fastaType();
+		built = new AlignedCluster[clusters.length];
+		errors = new ArrayList<ArrayList<String>>(clusters.length);
+		messages = new ArrayList<ArrayList<String>>(clusters.length);
+		for(int index = 0; index < clusters.length; ++index) {
+			errors.add(new ArrayList<String>());
+			messages.add(new ArrayList<String>());
+		}
+		
+		if(threads < 1) { threads = 1; }
+		ForkJoinPool pool = new ForkJoinPool(min(threads, max(clusters.length, 1)));
+		ArrayList<Future<AlignedCluster>> futures = new ArrayList<Future<AlignedCluster>>(clusters.length);
+		
+		for(int index = 0; index < clusters.length; ++index) {
+			final int clusterIndex = index;
+			futures.add(pool.submit(new Callable<AlignedCluster>() {
+				public AlignedCluster call() {
+					holdOutput(messages.get(clusterIndex));
+					try {
+						return buildCluster(clusterIndex, errors.get(clusterIndex));
+					} finally {
+						releaseOutput();
+					}
+				}
+			}));
+		}
+		
+		try {
+			for(int index = 0; index < clusters.length; ++index) {
+				try {
+					built[index] = futures.get(index).get();
+				} catch (ExecutionException EE) {
+					errors.get(index).add("Clustering Error: " + EE.getCause());
+				}
+			}
+		} catch (InterruptedException IE) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			return built;
+		}
+		
+		pool.shutdown();
+		return built;
+	}
+	
+	/**
+	 * Build one cluster
+	 * @param i: the index of the cluster
+	 * @param problems: where to record problems
+	 * @return: the cluster, or null if its dominant chain could not be read
+	 */
+	private AlignedCluster buildCluster(int i, List<String> problems) {
+		//make sure there is no colon in the string
+		clusters[i][0] = clusters[i][0].replaceAll(":", "").toUpperCase();
+		
+		verify(clusters[i][0], problems);
+		
+		//read the dominant chain from it's FASTA
+		AlignedCluster cluster;
+		try {
+			cluster = new AlignedCluster(BioLookup.readChainFromFasta(clusters[i][0].substring(0, 4), clusters[i][0].charAt(4)));
+		} catch (FileNotFoundException e1) {
+			problems.add("Clustering Error: could not read FASTA for chain: " + clusters[i][0]);
+			return null;
+		}
+		
+		//assign the secondary structure to the dominant chain
+		try {
+			BioLookup.assignSecondary(cluster.getDominant());
+		} catch (ResidueAlignmentException e) {
+			problems.add("Clustering Error: Secondary structure match failed on index: " + i);
+		}
+		
+		//assign charge data to the dominant chain
+		cluster.getDominant().autoAssignCharges();
+		
+		//for the non-dominant chains in the cluster
+		for(int j = 1; j < clusters[i].length; ++j) {
+			verify(clusters[i][j], problems);
+			ProteinChain compareChain = null;
+			
+			//read all of the non-dominant chains from the fasta
+			try {
+				compareChain = BioLookup.readChainFromFasta(clusters[i][j].substring(0, 4), clusters[i][j].charAt(4));
+			} catch (FileNotFoundException e2) {
+				problems.add("Clustering Error: Could not read FASTA for chain: " + clusters[i][j]);
+				continue;
+			}
+			
+			///assign secondary structures to all of the non-dominant chains
+			try {
+				BioLookup.assignSecondary(compareChain);
+			} catch (ResidueAlignmentException e) {
+				problems.add("Secondary structure match failed on index: " + i + "," + j + " (" + clusters[i][j] + "): " + e.getMessage());
+			}
+			
+			//add all of the non-dominant chains to the cluster
+			try {
+				cluster.addChain(compareChain);
+			} catch (ResidueAlignmentRuntimeException RARE) {
+				problems.add("Need different UNIPROT ID for " + compareChain.fullID() + ": " + RARE.getMessage());
+			}
+		}
+		
+		cluster.markDominant(1);
+		return cluster;
+	}
+	
+	/**
+	 * Make sure a chain's FASTA is on disk, downloading it if needed
+	 * @param line: the chain's entry in the cluster file
+	 * @param problems: where to record problems
+	 */
+	private void verify(String line, List<String> problems) {
+		//extract the protein's name
+		String protName = line.substring(0, 4);
+		//extract the protein's chain
+		char chainName = line.charAt(4);
+		
+		Object lock = verifyLocks.computeIfAbsent(protName.toUpperCase(), new Function<String, Object>() {
+			public Object apply(String key) { return new Object(); }
+		});
+		
+		synchronized(lock) {
+			//if the length is 5 or it's NOT from uniprot which uses different ID numbers
+			if(line.length() == 5 || source != DataSource.UNIPROT) {
+				//do standard verify
+				FASTA.verify(protName, chainName);
+			} else {
+				//if it's from uniprot, get the uniprotID and then verify
+				String[] lineData = ClusterReader.parseCompositeLine(line);
+				try {
+					FASTA.verifyUniprot(lineData[0], lineData[1].charAt(0), lineData[2]);
+				} catch (DataRetrievalException e) {
+					problems.add("Could not verify Uniprot fasta for: " + protName + chainName + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param index: the index of a cluster
+	 * @return: the problems found while building the cluster
+	 */
+	public List<String> errors(int index) { return errors.get(index); }
+	
+	/**
+	 * @return: the number of clusters that had problems
+	 */
+	public int clustersWithErrors() {
+		int count = 0;
+		for(ArrayList<String> problems: errors) {
+			if(!problems.isEmpty()) { ++count; }
+		}
+		return count;
+	}
+	
+	/**
+	 * Print what each cluster's task printed while it was built, grouped by cluster
+	 */
+	public void reportMessages() {
+		for(int index = 0; index < messages.size(); ++index) {
+			if(messages.get(index).isEmpty()) { continue; }
+			
+			qp("Cluster " + index + " (" + clusters[index][0] + "):");
+			for(String message: messages.get(index)) { qp("\t" + message); }
+		}
+	}
+	
+	/**
+	 * Print the problems found in each cluster, grouped by cluster
+	 */
+	public void reportErrors() {
+		for(int index = 0; index < errors.size(); ++index) {
+			if(errors.get(index).isEmpty()) { continue; }
+			
+			qerr("Cluster " + index + " (" + clusters[index][0] + "):");
+			for(String problem: errors.get(index)) { qerr("\t" + problem); }
+		}
+	}
+	
+	public String toString() { return "ClusterBuilder (" + clusters.length + " clusters)"; }
+}
@@ -0,0 +1,292 @@
+package bio.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import util.BaseTools;
+
+/**
+ * The residue lines of a .dssp file, parsed once with the fixed column positions DSSP uses:
+ * 		0-4: DSSP number, 5-9: residue number, 11: chain, 13: amino acid ('!' for a break),
+ * 		16: secondary structure, 34-37: accessibility, 103-108: phi, 109-114: psi
+ *
+ * Every chain in the file is read in the same pass.  Parsed files are kept in a small
+ * least-recently-used cache keyed by PDB ID, so reading many chains of the same entry
+ * only reads the file once (the cache is refreshed if the file changes).
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class DSSPFile extends BaseTools {
+	private static final String DSSP = ".dssp";
+	private static final String DSSP_FOLDER = "files/DSSP/";
+	
+	//number of parsed files to keep in memory
+	private static final int CACHE_SIZE = 16;
+	private static final int DEFAULT_CAPACITY = 512;
+	
+	//fixed column positions
+	private static final int NUMBER_START = 5, NUMBER_END = 10;
+	private static final int CHAIN_COL = 11;
+	private static final int RESIDUE_COL = 13;
+	private static final int SECONDARY_COL = 16;
+	private static final int ACC_START = 34, ACC_END = 38;
+	private static final int PHI_START = 103, PHI_END = 109;
+	private static final int PSI_START = 109, PSI_END = 115;
+	
+	private static final char BREAK = '!';
+	
+	//parsed files by PDB ID, least recently used first
+	private static final LinkedHashMap<String, DSSPFile> cache = new LinkedHashMap<String, DSSPFile>(CACHE_SIZE, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		
+		protected boolean removeEldestEntry(Map.Entry<String, DSSPFile> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	
+	//the PDB ID (upper case)
+	private String proteinID;
+	//the time stamp of the file when it was read
+	private long modified;
+	
+	//one entry per residue line (breaks are not stored)
+	private char[] chain;
+	private int[] number;
+	private char[] residue;
+	private char[] secondary;
+	private int[] accessibility;
+	private double[] phi;
+	private double[] psi;
+	private int size;
+	
+	/**
+	 * Read a .dssp file
+	 * @param proteinID: the PDB ID
+	 * @param file: the file
+	 * @throws IOException: if the file can't be read
+	 */
+	private DSSPFile(String proteinID, File file) throws IOException {
+		this.proteinID = proteinID;
+		modified = file.lastModified();
+		
+		chain = new char[DEFAULT_CAPACITY];
+		number = new int[DEFAULT_CAPACITY];
+		residue = new char[DEFAULT_CAPACITY];
+		secondary = new char[DEFAULT_CAPACITY];
+		accessibility = new int[DEFAULT_CAPACITY];
+		phi = new double[DEFAULT_CAPACITY];
+		psi = new double[DEFAULT_CAPACITY];
+		
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			boolean started = false;
+			
+			for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if(!started) {
+					//the residue section starts after the "  #  RESIDUE AA STRUCTURE ..." header
+					started = (line.length() > 2 && line.charAt(2) == '#');
+				} else if(line.length() > SECONDARY_COL) {
+					if(line.charAt(RESIDUE_COL) != BREAK) { parseLine(line); }
+				} else if(line.trim().length() == 0) {
+					break;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Get a parsed .dssp file, reading it only if it isn't cached (or changed since)
+	 * @param protein: the PDB ID, or the path to the .dssp file
+	 * @return: the parsed file
+	 * @throws FileNotFoundException: if there is no .dssp file for the protein
+	 * @throws IOException: if the file can't be read
+	 */
+	public static DSSPFile get(String protein) throws IOException {
+		String proteinID = proteinID(protein);
+		File file = new File(fileName(protein));
+		if(!file.exists()) { file = new File(DSSP_FOLDER + proteinID.toLowerCase() + DSSP); }
+		if(!file.exists()) { file = new File(DSSP_FOLDER + proteinID + DSSP); }
+		if(!file.exists()) { throw new FileNotFoundException(fileName(protein)); }
+		
+		synchronized(cache) {
+			DSSPFile entry = cache.get(proteinID);
+			if(entry != null && entry.modified == file.lastModified()) { return entry; }
+		}
+		
+		DSSPFile entry = new DSSPFile(proteinID, file);
+		
+		synchronized(cache) {
+			cache.put(proteinID, entry);
+		}
+		
+		return entry;
+	}
+	
+	/**
+	 * Forget every parsed file
+	 */
+	public static void clearCache() {
+		synchronized(cache) { cache.clear(); }
+	}
+	
+	/**
+	 * @param protein: the PDB ID, or the path to the .dssp file
+	 * @return: the path to the .dssp file
+	 */
+	public static String fileName(String protein) {
+		if(!protein.endsWith(DSSP)) { protein += DSSP; }
+		if(!protein.startsWith(DSSP_FOLDER)) { protein = DSSP_FOLDER + protein; }
+		return protein;
+	}
+	
+	/**
+	 * @param protein: the PDB ID, or the path to the .dssp file
+	 * @return: the PDB ID, in upper case
+	 */
+	public static String proteinID(String protein) {
+		String proteinID = protein.toUpperCase();
+		//remove the prefix from the protein name
+		if(proteinID.startsWith(DSSP_FOLDER.toUpperCase())) {
+			proteinID = proteinID.substring(DSSP_FOLDER.length());
+		}
+		
+		//remove the suffix from the protein name
+		if(proteinID.endsWith(DSSP.toUpperCase())) {
+			proteinID = proteinID.substring(0, proteinID.length() - DSSP.length());
+		}
+		return proteinID;
+	}
+	
+	/**
+	 * Parse one residue line
+	 * @param line: the line
+	 */
+	private void parseLine(String line) {
+		if(size == chain.length) { resize(size * 2); }
+		
+		chain[size] = line.charAt(CHAIN_COL);
+		number[size] = parseInt(line, NUMBER_START, NUMBER_END);
+		residue[size] = line.charAt(RESIDUE_COL);
+		secondary[size] = line.charAt(SECONDARY_COL);
+		accessibility[size] = parseInt(line, ACC_START, ACC_END);
+		phi[size] = parseDouble(line, PHI_START, PHI_END);
+		psi[size] = parseDouble(line, PSI_START, PSI_END);
+		++size;
+	}
+	
+	/**
+	 * Change the capacity of the arrays
+	 * @param capacity: the new capacity
+	 */
+	private void resize(int capacity) {
+		chain = Arrays.copyOf(chain, capacity);
+		number = Arrays.copyOf(number, capacity);
+		residue = Arrays.copyOf(residue, capacity);
+		secondary = Arrays.copyOf(secondary, capacity);
+		accessibility = Arrays.copyOf(accessibility, capacity);
+		phi = Arrays.copyOf(phi, capacity);
+		psi = Arrays.copyOf(psi, capacity);
+	}
+	
+	/**
+	 * Parse an integer from a fixed range of columns
+	 * @param line: the line
+	 * @param start: the first column
+	 * @param end: one past the last column
+	 * @return: the integer, or 0 if the columns are blank or missing
+	 */
+	private static int parseInt(String line, int start, int end) {
+		end = Math.min(end, line.length());
+		int value = 0;
+		boolean negative = false;
+		
+		for(int index = start; index < end; ++index) {
+			char ch = line.charAt(index);
+			if(ch == '-') {
+				negative = true;
+			} else if(ch >= '0' && ch <= '9') {
+				value = value * 10 + (ch - '0');
+			}
+		}
+		
+		return negative ? -value : value;
+	}
+	
+	/**
+	 * Parse a double from a fixed range of columns
+	 * @param line: the line
+	 * @param start: the first column
+	 * @param end: one past the last column
+	 * @return: the value, or NaN if the columns are blank or missing
+	 */
+	private static double parseDouble(String line, int start, int end) {
+		if(start >= line.length()) { return Double.NaN; }
+		end = Math.min(end, line.length());
+		
+		try {
+			return Double.parseDouble(line.substring(start, end).trim());
+		} catch (NumberFormatException NFE) {
+			return Double.NaN;
+		}
+	}
+	
+	/**
+	 * Find the first run of lines belonging to a chain
+	 * @param chainID: the chain (not case sensitive)
+	 * @return: {first line, one past the last line}, or null if the chain isn't in the file
+	 */
+	public int[] range(char chainID) {
+		chainID = Character.toUpperCase(chainID);
+		
+		int start = 0;
+		while(start < size && Character.toUpperCase(chain[start]) != chainID) { ++start; }
+		if(start == size) { return null; }
+		
+		int end = start;
+		while(end < size && Character.toUpperCase(chain[end]) == chainID) { ++end; }
+		return new int[] { start, end };
+	}
+	
+	/**
+	 * @return: the chain IDs in the file, in the order they first appear
+	 */
+	public char[] chains() {
+		StringBuilder chains = new StringBuilder();
+		for(int index = 0; index < size; ++index) {
+			if(chains.indexOf(String.valueOf(chain[index])) == -1) { chains.append(chain[index]); }
+		}
+		return chains.toString().toCharArray();
+	}
+	
+	/** @return: the PDB ID of the file */
+	public String proteinID() { return proteinID; }
+	/** @return: the number of residue lines (not counting breaks) */
+	public int size() { return size; }
+	
+	/** @return: the chain of a line */
+	public char chain(int line) { return chain[line]; }
+	/** @return: the residue number of a line */
+	public int number(int line) { return number[line]; }
+	/** @return: the amino acid letter of a line (lower case letters are Cysteines in S-S bonds) */
+	public char residue(int line) { return residue[line]; }
+	/** @return: the DSSP secondary structure code of a line */
+	public char secondary(int line) { return secondary[line]; }
+	/** @return: the solvent accessibility of a line */
+	public int accessibility(int line) { return accessibility[line]; }
+	/** @return: the phi angle of a line */
+	public double phi(int line) { return phi[line]; }
+	/** @return: the psi angle of a line */
+	public double psi(int line) { return psi[line]; }
+	
+	public String toString() { return "DSSPFile: " + proteinID + " (" + size + " residues)"; }
+}
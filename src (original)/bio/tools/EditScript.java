@@ -0,0 +1,100 @@
+package bio.tools;
+
+import java.util.Arrays;
+
+import bio.ProteinChain;
+import util.BaseTools;
+
+/**
+ * The blank insertions needed to align two chains, in the order they were found.
+ * Each edit inserts some blanks into one of the two chains (the dominant chain or the other one)
+ * at a position that already includes the blanks of the edits before it.
+ *
+ * The SequenceAligner works out every edit on the chains' sequences first, and only then
+ * applies the whole script to the chains, copying each chain once.
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class EditScript extends BaseTools {
+	public static final int DOMINANT = 0;
+	public static final int OTHER = 1;
+	
+	//the chain, position and number of blanks of each edit
+	private int[] chain = new int[4];
+	private int[] position = new int[4];
+	private int[] blanks = new int[4];
+	private int size;
+	
+	/**
+	 * Add an edit to the end of the script
+	 * @param target: DOMINANT or OTHER
+	 * @param index: where to insert the blanks
+	 * @param count: the number of blanks to insert
+	 */
+	public void insert(int target, int index, int count) {
+		if(count == 0) { return; }
+		if(size == chain.length) {
+			chain = Arrays.copyOf(chain, size * 2);
+			position = Arrays.copyOf(position, size * 2);
+			blanks = Arrays.copyOf(blanks, size * 2);
+		}
+		
+		chain[size] = target;
+		position[size] = index;
+		blanks[size] = count;
+		++size;
+	}
+	
+	/**
+	 * Apply the script to a pair of chains
+	 * @param dominant: the dominant chain
+	 * @param other: the other chain
+	 */
+	public void apply(ProteinChain dominant, ProteinChain other) {
+		apply(dominant, DOMINANT);
+		apply(other, OTHER);
+	}
+	
+	/**
+	 * Apply the edits for one chain, copying the chain only once
+	 * @param target: the chain
+	 * @param which: DOMINANT or OTHER
+	 */
+	private void apply(ProteinChain target, int which) {
+		int[] positions = new int[size];
+		int[] counts = new int[size];
+		int edits = 0;
+		
+		for(int edit = 0; edit < size; ++edit) {
+			if(chain[edit] != which) { continue; }
+			positions[edits] = position[edit];
+			counts[edits] = blanks[edit];
+			++edits;
+		}
+		
+		target.insertBlanks(positions, counts, edits);
+	}
+	
+	/** @return: the number of edits */
+	public int size() { return size; }
+	/** @return: true if the script does nothing */
+	public boolean isEmpty() { return size == 0; }
+	/** @return: DOMINANT or OTHER: the chain an edit inserts blanks into */
+	public int chain(int edit) { return chain[edit]; }
+	/** @return: where an edit inserts its blanks */
+	public int position(int edit) { return position[edit]; }
+	/** @return: the number of blanks an edit inserts */
+	public int blanks(int edit) { return blanks[edit]; }
+	
+	public String toString() {
+		StringBuilder builder = new StringBuilder("EditScript [");
+		for(int edit = 0; edit < size; ++edit) {
+			if(edit > 0) { builder.append(", "); }
+			builder.append((chain[edit] == DOMINANT) ? "dominant" : "other");
+			builder.append('@').append(position[edit]).append('+').append(blanks[edit]);
+		}
+		return builder.append(']').toString();
+	}
+}
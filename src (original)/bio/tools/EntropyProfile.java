@@ -0,0 +1,280 @@
+package bio.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+
+import bio.AminoAcid;
+import bio.E6;
+import bio.ProteinChain;
+import bio.ResidueType;
+import util.BaseTools;
+
+/**
+ * Calculates the Shannon entropy (E20 and E6) of every residue of a query sequence from
+ * the hits in its BLAST file, without running a script.
+ *
+ * Each aligned hit (HSP) adds its residue at every query position it covers to that
+ * position's column, as does the query itself.  E20 is the entropy of the column over the
+ * 20 standard residue types; E6 is the entropy over the 6 classes of ResidueType.e6().
+ * Both are in bits, so E20 is at most log2(20) and E6 at most log2(6).
+ * Gaps and letters that are not one of the 20 standard residues are not counted.
+ *
+ * Counts are kept in one flat int array (20 per query position), so building the profile
+ * and computing the entropies are simple loops over primitive arrays.
+ * A profile belongs to one query, so profiles for different chains can be built on
+ * different threads at the same time.
+ *
+ * Both the text BLAST format (Query/Sbjct lines) and the XML format (Hsp_qseq/Hsp_hseq)
+ * are read.
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class EntropyProfile extends BaseTools {
+	public static final int E20_CLASSES = 20;
+	public static final int E6_CLASSES = 6;
+	
+	private static final char GAP = '-';
+	private static final String QUERY = "Query";
+	private static final String SUBJECT = "Sbjct";
+	private static final String XML_QUERY_FROM = "<Hsp_query-from>";
+	private static final String XML_QSEQ = "<Hsp_qseq>";
+	private static final String XML_HSEQ = "<Hsp_hseq>";
+	
+	private static final double LOG_2 = Math.log(2);
+	
+	//the column (0-19) of each residue letter, and its E6 class (0-5); -1 if it isn't counted
+	private static final byte[] E20_CLASS = new byte[128];
+	private static final byte[] E6_CLASS = new byte[E20_CLASSES];
+	
+	static {
+		for(int index = 0; index < E20_CLASS.length; ++index) { E20_CLASS[index] = -1; }
+		
+		int column = 0;
+		for(ResidueType type: ResidueType.values()) {
+			E6 e6 = type.e6();
+			char letter = Character.toUpperCase(type.toChar());
+			if(e6 == null || e6 == E6.UNACCOUNTED_FOR || letter >= 128 || E20_CLASS[letter] != -1) { continue; }
+			if(column == E20_CLASSES) { break; }
+			
+			E20_CLASS[letter] = (byte) column;
+			E20_CLASS[Character.toLowerCase(letter)] = (byte) column;
+			E6_CLASS[column] = (byte) e6.ordinal();
+			++column;
+		}
+	}
+	
+	//the query sequence
+	private final String query;
+	//counts[position * 20 + residue column]
+	private final int[] counts;
+	
+	/**
+	 * Make a profile for a query sequence: at first each column only holds the query's residue
+	 * @param query: the query sequence, as residue letters
+	 */
+	public EntropyProfile(String query) {
+		this.query = query;
+		counts = new int[query.length() * E20_CLASSES];
+		
+		for(int position = 0; position < query.length(); ++position) {
+			int column = column(query.charAt(position));
+			if(column >= 0) { ++counts[position * E20_CLASSES + column]; }
+		}
+	}
+	
+	/**
+	 * @param letter: a residue letter
+	 * @return: the residue's column (0-19), or -1 if it isn't counted
+	 */
+	private static int column(char letter) { return (letter < 128) ? E20_CLASS[letter] : -1; }
+	
+	/**
+	 * Add one aligned hit to the profile
+	 * @param queryStart: the query position (starting at 1) of the first residue of the alignment
+	 * @param querySeq: the aligned part of the query, with gaps
+	 * @param hitSeq: the aligned part of the hit, with gaps
+	 */
+	public void addAlignment(int queryStart, CharSequence querySeq, CharSequence hitSeq) {
+		int position = queryStart - 1;
+		int length = min(querySeq.length(), hitSeq.length());
+		
+		for(int index = 0; index < length; ++index) {
+			//an insertion in the hit has no query column
+			if(querySeq.charAt(index) == GAP) { continue; }
+			
+			if(position >= 0 && position < query.length()) {
+				int column = column(hitSeq.charAt(index));
+				if(column >= 0) { ++counts[position * E20_CLASSES + column]; }
+			}
+			++position;
+		}
+	}
+	
+	/**
+	 * Add every hit in a BLAST file to the profile
+	 * @param blastFile: the BLAST output (text or XML)
+	 * @return: the number of hits added
+	 * @throws FileNotFoundException: if there is no such file
+	 * @throws IOException: if the file can't be read
+	 */
+	public int readBlast(File blastFile) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(blastFile));
+		int hits = 0;
+		
+		try {
+			//text format: an HSP is a series of (Query, Sbjct) line pairs
+			StringBuilder querySeq = new StringBuilder();
+			StringBuilder hitSeq = new StringBuilder();
+			int queryStart = -1;
+			int queryEnd = -1;
+			
+			//XML format
+			int xmlQueryFrom = -1;
+			String xmlQuerySeq = null;
+			
+			for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+				line = line.trim();
+				
+				if(line.startsWith(QUERY) && line.length() > QUERY.length()) {
+					String[] fields = line.substring(QUERY.length()).replace(':', ' ').trim().split("\\s+");
+					if(fields.length < 3 || !isInteger(fields[0])) { continue; }
+					
+					int start = Integer.parseInt(fields[0]);
+					//a new HSP starts if this block doesn't carry on from the last one
+					if(queryStart != -1 && start != queryEnd + 1) {
+						addAlignment(queryStart, querySeq, hitSeq);
+						++hits;
+						queryStart = -1;
+					}
+					
+					if(queryStart == -1) {
+						queryStart = start;
+						querySeq.setLength(0);
+						hitSeq.setLength(0);
+					}
+					querySeq.append(fields[1]);
+					queryEnd = isInteger(fields[2]) ? Integer.parseInt(fields[2]) : queryEnd;
+				} else if(line.startsWith(SUBJECT) && queryStart != -1) {
+					String[] fields = line.substring(SUBJECT.length()).replace(':', ' ').trim().split("\\s+");
+					if(fields.length >= 2) { hitSeq.append(fields[1]); }
+				} else if(line.startsWith(">") || line.startsWith("Score")) {
+					//a new hit or a new HSP of the same hit
+					if(queryStart != -1) {
+						addAlignment(queryStart, querySeq, hitSeq);
+						++hits;
+						queryStart = -1;
+					}
+				} else if(line.startsWith(XML_QUERY_FROM)) {
+					xmlQueryFrom = Integer.parseInt(xmlValue(line, XML_QUERY_FROM));
+				} else if(line.startsWith(XML_QSEQ)) {
+					xmlQuerySeq = xmlValue(line, XML_QSEQ);
+				} else if(line.startsWith(XML_HSEQ) && xmlQuerySeq != null && xmlQueryFrom != -1) {
+					addAlignment(xmlQueryFrom, xmlQuerySeq, xmlValue(line, XML_HSEQ));
+					++hits;
+					xmlQuerySeq = null;
+					xmlQueryFrom = -1;
+				}
+			}
+			
+			if(queryStart != -1) {
+				addAlignment(queryStart, querySeq, hitSeq);
+				++hits;
+			}
+		} finally {
+			reader.close();
+		}
+		
+		return hits;
+	}
+	
+	/**
+	 * @param line: an XML line of the form <tag>value</tag>
+	 * @param tag: the opening tag
+	 * @return: the value
+	 */
+	private static String xmlValue(String line, String tag) {
+		int end = line.indexOf("</", tag.length());
+		return (end == -1) ? line.substring(tag.length()) : line.substring(tag.length(), end);
+	}
+	
+	/**
+	 * @param str: a String
+	 * @return: true if the String is a non-negative integer
+	 */
+	private static boolean isInteger(String str) {
+		if(str.length() == 0) { return false; }
+		for(int index = 0; index < str.length(); ++index) {
+			if(str.charAt(index) < '0' || str.charAt(index) > '9') { return false; }
+		}
+		return true;
+	}
+	
+	/** @return: the length of the query */
+	public int length() { return query.length(); }
+	
+	/**
+	 * @param position: a query position (starting at 0)
+	 * @return: the 20-residue Shannon entropy of the position, in bits
+	 */
+	public double e20(int position) {
+		int base = position * E20_CLASSES;
+		int total = 0;
+		for(int column = 0; column < E20_CLASSES; ++column) { total += counts[base + column]; }
+		if(total == 0) { return 0; }
+		
+		double entropy = 0;
+		for(int column = 0; column < E20_CLASSES; ++column) {
+			int count = counts[base + column];
+			if(count > 0) {
+				double p = (double) count / total;
+				entropy -= p * Math.log(p);
+			}
+		}
+		return entropy / LOG_2;
+	}
+	
+	/**
+	 * @param position: a query position (starting at 0)
+	 * @return: the 6-class (E6) Shannon entropy of the position, in bits
+	 */
+	public double e6(int position) {
+		int base = position * E20_CLASSES;
+		int[] classCounts = new int[E6_CLASSES];
+		int total = 0;
+		for(int column = 0; column < E20_CLASSES; ++column) {
+			classCounts[E6_CLASS[column]] += counts[base + column];
+			total += counts[base + column];
+		}
+		if(total == 0) { return 0; }
+		
+		double entropy = 0;
+		for(int e6 = 0; e6 < E6_CLASSES; ++e6) {
+			if(classCounts[e6] > 0) {
+				double p = (double) classCounts[e6] / total;
+				entropy -= p * Math.log(p);
+			}
+		}
+		return entropy / LOG_2;
+	}
+	
+	/**
+	 * Write E20 and E6 onto the residues of a chain with the same sequence as the query
+	 * @param chain: the chain
+	 */
+	public void assign(ProteinChain chain) {
+		int length = min(chain.length(), query.length());
+		for(int position = 0; position < length; ++position) {
+			AminoAcid aa = chain.getAmino(position);
+			if(aa == null) { continue; }
+			aa.setE20(e20(position));
+			aa.setE6(e6(position));
+		}
+	}
+	
+	public String toString() { return "EntropyProfile (" + query.length() + " residues)"; }
+}
@@ -0,0 +1,174 @@
+package bio.tools;
+
+import util.BaseTools;
+
+/**
+ * A hash index of every k-residue window (k-mer) of a sequence, built in one O(n) pass
+ * with a rolling hash.
+ *
+ * Once it is built, finding out whether a k-mer occurs in the sequence, and whether it
+ * occurs only once, takes O(1) expected time instead of the O(n) of String.indexOf() and
+ * String.lastIndexOf().  Windows are compared character by character whenever their hashes
+ * match, so the answers are exact.
+ *
+ * Only part of a sequence can be indexed (everything from a start position on), which
+ * lets the aligner index the unaligned end of a chain without making a substring.
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class KmerIndex extends BaseTools {
+	private static final long BASE = 0x100000001B3L;
+	private static final int NONE = -1;
+	
+	//the sequence, and where the indexed part starts
+	private final CharSequence sequence;
+	private final int from;
+	//the length of the windows
+	private final int k;
+	//the number of windows
+	private final int windows;
+	
+	//the hash of each window
+	private final long[] hash;
+	//open-addressed buckets: the first window in each bucket, and the next window in the same bucket
+	private final int[] bucket;
+	private final int[] next;
+	private final int mask;
+	
+	/**
+	 * Index every window of a sequence
+	 * @param sequence: the sequence
+	 * @param k: the length of the windows
+	 */
+	public KmerIndex(CharSequence sequence, int k) { this(sequence, 0, k); }
+	
+	/**
+	 * Index every window of a sequence that starts at or after a position
+	 * @param sequence: the sequence
+	 * @param from: the first position to index
+	 * @param k: the length of the windows
+	 */
+	public KmerIndex(CharSequence sequence, int from, int k) {
+		if(k < 1) { throw new IllegalArgumentException("k must be positive: " + k); }
+		this.sequence = sequence;
+		this.from = from;
+		this.k = k;
+		windows = max(0, sequence.length() - from - k + 1);
+		
+		hash = new long[windows];
+		next = new int[windows];
+		
+		int buckets = 1;
+		while(buckets < windows * 2) { buckets <<= 1; }
+		bucket = new int[buckets];
+		mask = buckets - 1;
+		for(int index = 0; index < buckets; ++index) { bucket[index] = NONE; }
+		
+		if(windows == 0) { return; }
+		
+		//BASE^(k-1), to remove the character leaving the window
+		long high = 1;
+		for(int index = 1; index < k; ++index) { high *= BASE; }
+		
+		long rolling = 0;
+		for(int index = 0; index < k; ++index) { rolling = rolling * BASE + sequence.charAt(from + index); }
+		
+		for(int window = 0; window < windows; ++window) {
+			if(window > 0) {
+				rolling = (rolling - sequence.charAt(from + window - 1) * high) * BASE + sequence.charAt(from + window + k - 1);
+			}
+			hash[window] = rolling;
+		}
+		
+		//add the windows last to first, so each bucket lists its windows in order
+		for(int window = windows - 1; window >= 0; --window) {
+			int slot = slot(hash[window]);
+			next[window] = bucket[slot];
+			bucket[slot] = window;
+		}
+	}
+	
+	/**
+	 * @param hashValue: the hash of a window
+	 * @return: the bucket for the hash
+	 */
+	private int slot(long hashValue) {
+		long mixed = hashValue ^ (hashValue >>> 29);
+		mixed *= 0xBF58476D1CE4E5B9L;
+		mixed ^= (mixed >>> 32);
+		return (int) mixed & mask;
+	}
+	
+	/** @return: the length of the windows */
+	public int k() { return k; }
+	/** @return: the number of windows in the index */
+	public int windows() { return windows; }
+	/** @return: the position in the sequence of the first indexed window */
+	public int from() { return from; }
+	
+	/**
+	 * @param window: a window (0 is the window at from())
+	 * @return: the hash of the window
+	 */
+	public long hash(int window) { return hash[window]; }
+	
+	/**
+	 * Find where a window of this (or another) index occurs in this sequence
+	 * @param source: the index the window belongs to
+	 * @param window: the window in source
+	 * @return: the first window of this index that matches it, or -1 if it doesn't occur;
+	 * 		if it occurs more than once, -2 - (the first window that matches)
+	 */
+	public int find(KmerIndex source, int window) {
+		if(source.k != k) { throw new IllegalArgumentException("Windows are of different lengths: " + source.k + " and " + k); }
+		long target = source.hash[window];
+		int sourceStart = source.from + window;
+		int first = NONE;
+		
+		for(int candidate = bucket[slot(target)]; candidate != NONE; candidate = next[candidate]) {
+			if(hash[candidate] != target) { continue; }
+			if(!regionMatches(sequence, from + candidate, source.sequence, sourceStart, k)) { continue; }
+			
+			if(first != NONE) { return -2 - first; }
+			first = candidate;
+		}
+		
+		return first;
+	}
+	
+	/**
+	 * Find a window's only occurrence in this sequence
+	 * @param source: the index the window belongs to
+	 * @param window: the window in source
+	 * @return: the window of this index that matches it, or -1 if it doesn't occur exactly once
+	 */
+	public int findUnique(KmerIndex source, int window) {
+		int found = find(source, window);
+		return (found >= 0) ? found : NONE;
+	}
+	
+	/**
+	 * @param window: a window of this index
+	 * @return: true if no other window of this index has the same residues
+	 */
+	public boolean isUnique(int window) { return find(this, window) == window; }
+	
+	/**
+	 * @param a: a sequence
+	 * @param aStart: a position in a
+	 * @param b: a sequence
+	 * @param bStart: a position in b
+	 * @param length: the number of characters to compare
+	 * @return: true if the characters are the same
+	 */
+	private static boolean regionMatches(CharSequence a, int aStart, CharSequence b, int bStart, int length) {
+		for(int index = 0; index < length; ++index) {
+			if(a.charAt(aStart + index) != b.charAt(bStart + index)) { return false; }
+		}
+		return true;
+	}
+	
+	public String toString() { return "KmerIndex (k=" + k + ", " + windows + " windows)"; }
+}
@@ -0,0 +1,232 @@
+package bio.tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import chem.AtomArena;
+import util.BaseTools;
+
+/**
+ * Reads the ATOM records of one chain of a .pdb file straight into an AtomArena.
+ *
+ * Every field is parsed in place from the file's bytes using the fixed PDB columns:
+ * 		6-10: serial, 12-15: atom name, 17-19: residue name, 21: chain, 22-25: residue number,
+ * 		30-37, 38-45, 46-53: x, y, z, 54-59: occupancy, 60-65: temperature factor, 76-77: element
+ * No line Strings, substrings or boxed numbers are made per atom; a String is only made the
+ * first time an atom name, element or residue name is seen.
+ *
+ * As before, reading stops at the first ATOM record of another chain after the chain has
+ * started, and only the first model of a multi-model file is read.
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class PDBReader extends BaseTools {
+	private static final int SERIAL_START = 6, SERIAL_END = 11;
+	private static final int NAME_START = 12, NAME_END = 16;
+	private static final int RESIDUE_START = 17, RESIDUE_END = 20;
+	private static final int CHAIN_COL = 21;
+	private static final int NUMBER_START = 22, NUMBER_END = 26;
+	private static final int X_START = 30, Y_START = 38, Z_START = 46, Z_END = 54;
+	private static final int OCC_START = 54, TEMP_START = 60, TEMP_END = 66;
+	private static final int ELEMENT_START = 76, ELEMENT_END = 78;
+	
+	private static final byte[] ATOM = "ATOM  ".getBytes(StandardCharsets.ISO_8859_1);
+	private static final byte[] ENDMDL = "ENDMDL".getBytes(StandardCharsets.ISO_8859_1);
+	
+	//rough number of bytes per ATOM record, used to size the arena
+	private static final int BYTES_PER_ATOM = 81;
+	
+	private static final float[] POWERS_OF_TEN = { 1f, 10f, 100f, 1000f, 10000f, 100000f, 1000000f };
+	
+	//the file being read
+	private byte[] buffer;
+	//the arena being filled
+	private AtomArena arena;
+	
+	//labels seen so far, packed into ints (up to 4 characters), and their codes in the arena
+	private int[] packedLabels = new int[64];
+	private short[] labelCodes = new short[64];
+	private int labelCount;
+	
+	/**
+	 * Read a chain from a .pdb file
+	 * @param fileName: the file
+	 * @param chain: the chain to read (not case sensitive)
+	 * @return: the atoms of the chain, grouped by residue
+	 * @throws IOException: if the file can't be read
+	 */
+	public static AtomArena readChain(String fileName, char chain) throws IOException {
+		return new PDBReader().read(fileName, chain);
+	}
+	
+	/**
+	 * Read a chain from a .pdb file
+	 * @param fileName: the file
+	 * @param chain: the chain to read (not case sensitive)
+	 * @return: the atoms of the chain, grouped by residue
+	 * @throws IOException: if the file can't be read
+	 */
+	public AtomArena read(String fileName, char chain) throws IOException {
+		buffer = Files.readAllBytes(Paths.get(fileName));
+		arena = new AtomArena(buffer.length / BYTES_PER_ATOM);
+		labelCount = 0;
+		chain = Character.toUpperCase(chain);
+		
+		boolean started = false;
+		int lastResidueNumber = 0;
+		
+		try {
+			for(int start = 0; start < buffer.length; ) {
+				int end = start;
+				while(end < buffer.length && buffer[end] != '\n') { ++end; }
+				int next = end + 1;
+				if(end > start && buffer[end-1] == '\r') { --end; }
+				
+				if(startsWith(start, end, ATOM) && end > CHAIN_COL + start) {
+					if(buffer[start+CHAIN_COL] != chain) {
+						//finished with the chain
+						if(started) { break; }
+					} else {
+						int residueNumber = parseInt(start+NUMBER_START, start+NUMBER_END, end);
+						
+						if(!started || residueNumber != lastResidueNumber) {
+							started = true;
+							lastResidueNumber = residueNumber;
+							arena.addResidue(residueNumber, label(start+RESIDUE_START, start+RESIDUE_END, end));
+						}
+						
+						arena.addAtom(parseInt(start+SERIAL_START, start+SERIAL_END, end),
+								label(start+NAME_START, start+NAME_END, end),
+								label(start+ELEMENT_START, start+ELEMENT_END, end),
+								parseFloat(start+X_START, start+Y_START, end),
+								parseFloat(start+Y_START, start+Z_START, end),
+								parseFloat(start+Z_START, start+Z_END, end),
+								parseFloat(start+OCC_START, start+TEMP_START, end),
+								parseFloat(start+TEMP_START, start+TEMP_END, end));
+					}
+				} else if(started && startsWith(start, end, ENDMDL)) {
+					break;
+				}
+				
+				start = next;
+			}
+		} finally {
+			buffer = null;
+		}
+		
+		arena.trim();
+		return arena;
+	}
+	
+	/**
+	 * @param start: the start of the line
+	 * @param end: the end of the line
+	 * @param prefix: the record name
+	 * @return: true if the line starts with the record name
+	 */
+	private boolean startsWith(int start, int end, byte[] prefix) {
+		if(end - start < prefix.length) { return false; }
+		for(int index = 0; index < prefix.length; ++index) {
+			if(buffer[start+index] != prefix[index]) { return false; }
+		}
+		return true;
+	}
+	
+	/**
+	 * Get the arena code for a (trimmed) field, only making a String for new labels
+	 * @param from: the first column of the field
+	 * @param to: one past the last column of the field
+	 * @param lineEnd: the end of the line
+	 * @return: the code of the label in the arena
+	 */
+	private short label(int from, int to, int lineEnd) {
+		to = Math.min(to, lineEnd);
+		while(from < to && buffer[from] == ' ') { ++from; }
+		while(to > from && buffer[to-1] == ' ') { --to; }
+		
+		int packed = 0;
+		for(int index = from; index < to; ++index) { packed = (packed << 8) | (buffer[index] & 0xFF); }
+		
+		for(int index = 0; index < labelCount; ++index) {
+			if(packedLabels[index] == packed) { return labelCodes[index]; }
+		}
+		
+		if(labelCount == packedLabels.length) {
+			packedLabels = Arrays.copyOf(packedLabels, labelCount * 2);
+			labelCodes = Arrays.copyOf(labelCodes, labelCount * 2);
+		}
+		
+		short code = arena.code(new String(buffer, from, to - from, StandardCharsets.ISO_8859_1));
+		packedLabels[labelCount] = packed;
+		labelCodes[labelCount] = code;
+		++labelCount;
+		return code;
+	}
+	
+	/**
+	 * Parse an integer field in place
+	 * @param from: the first column of the field
+	 * @param to: one past the last column of the field
+	 * @param lineEnd: the end of the line
+	 * @return: the value of the field (0 if it is blank)
+	 */
+	private int parseInt(int from, int to, int lineEnd) {
+		to = Math.min(to, lineEnd);
+		int value = 0;
+		boolean negative = false;
+		
+		for(int index = from; index < to; ++index) {
+			byte ch = buffer[index];
+			if(ch == '-') {
+				negative = true;
+			} else if(ch >= '0' && ch <= '9') {
+				value = value * 10 + (ch - '0');
+			} else if(ch != ' ') {
+				throw new NumberFormatException("Invalid integer in PDB field: " + new String(buffer, from, to-from, StandardCharsets.ISO_8859_1));
+			}
+		}
+		
+		return negative ? -value : value;
+	}
+	
+	/**
+	 * Parse a fixed point decimal field (such as "  -12.345") in place
+	 * @param from: the first column of the field
+	 * @param to: one past the last column of the field
+	 * @param lineEnd: the end of the line
+	 * @return: the value of the field (0 if it is blank)
+	 */
+	private float parseFloat(int from, int to, int lineEnd) {
+		to = Math.min(to, lineEnd);
+		long mantissa = 0;
+		int decimals = -1;
+		boolean negative = false;
+		
+		for(int index = from; index < to; ++index) {
+			byte ch = buffer[index];
+			if(ch >= '0' && ch <= '9') {
+				mantissa = mantissa * 10 + (ch - '0');
+				if(decimals >= 0) { ++decimals; }
+			} else if(ch == '.') {
+				decimals = 0;
+			} else if(ch == '-') {
+				negative = true;
+			} else if(ch != ' ' && ch != '+') {
+				//not plain fixed point: let Java handle it
+				return Float.parseFloat(new String(buffer, from, to-from, StandardCharsets.ISO_8859_1).trim());
+			}
+		}
+		
+		double value = mantissa;
+		if(decimals > 0) {
+			value = (decimals < POWERS_OF_TEN.length) ? value / POWERS_OF_TEN[decimals] : value / Math.pow(10, decimals);
+		}
+		
+		return (float) (negative ? -value : value);
+	}
+}
@@ -0,0 +1,201 @@
+package bio.tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import bio.AminoAcid;
+import bio.ChainBuilder;
+import bio.ProteinChain;
+import util.BaseTools;
+
+/**
+ * The secondary structure predictions of one chain (a secpred CSV), read in one pass over
+ * the file's bytes into a compact matrix: one row per residue and one byte per predictor.
+ *
+ * Each prediction is stored as its class: 0 for helix (H), 1 for strand (E) and 2 for
+ * anything else.  Rows can be of different lengths, since not every predictor gives a
+ * prediction for every residue.
+ *
+ * The file is read the same way VkabatReader read it: the first line is a header, then each
+ * line has two fields, the residue's letter, and then the predictions; every character of the
+ * predictions that is not a comma is one prediction.
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class SecpredMatrix extends BaseTools {
+	public static final byte HELIX = 0;
+	public static final byte STRAND = 1;
+	public static final byte OTHER = 2;
+	//a comma: not a prediction
+	private static final byte SEPARATOR = 3;
+	
+	//the class of each byte, and whether to keep it
+	private static final byte[] CLASS = new byte[0x100];
+	private static final int[] KEEP = { 1, 1, 1, 0 };
+	
+	static {
+		Arrays.fill(CLASS, OTHER);
+		CLASS['H'] = CLASS['h'] = HELIX;
+		CLASS['E'] = CLASS['e'] = STRAND;
+		CLASS[','] = SEPARATOR;
+	}
+	
+	//the letter of each residue
+	private final char[] residues;
+	//the predictions of residue r are calls[offsets[r]] to calls[offsets[r+1]-1]
+	private final byte[] calls;
+	private final int[] offsets;
+	
+	private SecpredMatrix(char[] residues, byte[] calls, int[] offsets) {
+		this.residues = residues;
+		this.calls = calls;
+		this.offsets = offsets;
+	}
+	
+	/**
+	 * Read a secpred file
+	 * @param fileName: the file
+	 * @return: the file's predictions
+	 * @throws IOException: if the file can't be read
+	 */
+	public static SecpredMatrix read(String fileName) throws IOException {
+		return parse(Files.readAllBytes(Paths.get(fileName)));
+	}
+	
+	/**
+	 * Read the predictions from the bytes of a secpred file
+	 * @param buffer: the file's contents
+	 * @return: the file's predictions
+	 */
+	public static SecpredMatrix parse(byte[] buffer) {
+		char[] residues = new char[64];
+		int[] offsets = new int[65];
+		byte[] calls = new byte[buffer.length];
+		int rows = 0, size = 0;
+		boolean header = true;
+		
+		for(int start = 0; start < buffer.length; ) {
+			//lines end with \n, \r or \r\n, as for BufferedReader.readLine()
+			int end = start;
+			while(end < buffer.length && buffer[end] != '\n' && buffer[end] != '\r') { ++end; }
+			int next = end + 1;
+			if(end < buffer.length && buffer[end] == '\r' && next < buffer.length && buffer[next] == '\n') { ++next; }
+			
+			if(header) {
+				header = false;
+			} else {
+				//clear out the first 2 fields, then the residue
+				int field = skipField(buffer, skipField(buffer, start, end), end);
+				
+				if(field < end) {
+					if(rows == residues.length) {
+						residues = Arrays.copyOf(residues, rows * 2);
+						offsets = Arrays.copyOf(offsets, rows * 2 + 1);
+					}
+					
+					residues[rows] = (char) (buffer[field] & 0xFF);
+					for(int index = skipField(buffer, field, end); index < end; ++index) {
+						byte call = CLASS[buffer[index] & 0xFF];
+						calls[size] = call;
+						size += KEEP[call];
+					}
+					offsets[++rows] = size;
+				}
+			}
+			
+			start = next;
+		}
+		
+		return new SecpredMatrix(Arrays.copyOf(residues, rows), Arrays.copyOf(calls, size), Arrays.copyOf(offsets, rows + 1));
+	}
+	
+	/**
+	 * Skip one comma separated field, as substring(indexOf(",")+1) did
+	 * @param buffer: the file's contents
+	 * @param from: the start of the field
+	 * @param end: the end of the line
+	 * @return: the start of the next field, or from if there is no comma
+	 */
+	private static int skipField(byte[] buffer, int from, int end) {
+		for(int index = from; index < end; ++index) {
+			if(buffer[index] == ',') { return index + 1; }
+		}
+		return from;
+	}
+	
+	/**
+	 * The Vkabat variability of a set of predictions: (k / n1) * N, where
+	 * k is the number of classes predicted, n1 is the size of the largest class and N is the number of predictions
+	 * @param helix: the number of helix predictions
+	 * @param strand: the number of strand predictions
+	 * @param other: the number of other predictions
+	 * @return: the Vkabat value
+	 */
+	public static double vkabat(int helix, int strand, int other) {
+		//the counts are never negative, so -count >>> 31 is 1 if the count is positive and 0 if it is 0
+		int k = ((-helix) >>> 31) + ((-strand) >>> 31) + ((-other) >>> 31);
+		int n1 = Math.max(helix, Math.max(strand, other));
+		return ((double) k / n1) * (helix + strand + other);
+	}
+	
+	/** @return: the number of residues */
+	public int length() { return residues.length; }
+	
+	/**
+	 * @param residue: the index of a residue
+	 * @return: the residue's letter
+	 */
+	public char residue(int residue) { return residues[residue]; }
+	
+	/**
+	 * @param residue: the index of a residue
+	 * @param predictor: the index of a prediction for it
+	 * @return: HELIX, STRAND or OTHER
+	 */
+	public byte call(int residue, int predictor) { return calls[offsets[residue] + predictor]; }
+	
+	/**
+	 * @param residue: the index of a residue
+	 * @return: how many predictions the residue's Vkabat is calculated from
+	 */
+	public int completion(int residue) { return offsets[residue+1] - offsets[residue]; }
+	
+	/**
+	 * @param residue: the index of a residue
+	 * @return: the residue's Vkabat value
+	 */
+	public double vkabat(int residue) {
+		int[] counts = new int[3];
+		for(int index = offsets[residue]; index < offsets[residue+1]; ++index) { ++counts[calls[index]]; }
+		return vkabat(counts[HELIX], counts[STRAND], counts[OTHER]);
+	}
+	
+	/**
+	 * Make a chain with the residues, Vkabat values and completions of the matrix
+	 * @param protein: the protein's name
+	 * @param chain: the chain's ID
+	 * @return: the chain
+	 */
+	public ProteinChain toChain(String protein, char chain) {
+		ChainBuilder builder = new ChainBuilder();
+		int[] counts = new int[3];
+		
+		for(int residue = 0; residue < residues.length; ++residue) {
+			counts[HELIX] = counts[STRAND] = counts[OTHER] = 0;
+			for(int index = offsets[residue]; index < offsets[residue+1]; ++index) { ++counts[calls[index]]; }
+			
+			AminoAcid aa = new AminoAcid(residues[residue]);
+			aa.setVkabat(vkabat(counts[HELIX], counts[STRAND], counts[OTHER]));
+			aa.setVkabatCompletion(completion(residue));
+			builder.append(aa);
+		}
+		
+		return builder.toChain(protein, chain, BioLookup.fastaType());
+	}
+	
+	public String toString() { return "SecpredMatrix (" + residues.length + " residues, " + calls.length + " predictions)"; }
+}
@@ -1,5 +1,7 @@
 package bio.tools;
 
+import java.util.Arrays;
+
 import bio.AminoAcid;
 import bio.DataSource;
 import bio.ProteinChain;
@@ -14,6 +16,10 @@ import util.BaseTools;
  * thus fixing the problems of different sources having different index numbers
  * for different residues
  * 
+ * Matching regions are found with a KmerIndex of each sequence, so each probe takes O(1)
+ * instead of an indexOf()/lastIndexOf() scan, and the gaps found by superAlign are worked
+ * out on the sequences first and applied to the chains as one EditScript.
+ * 
  * @author Benjy Strauss
  *
  */
@@ -89,26 +95,43 @@ public class SequenceAligner extends BaseTools {
 	 * @throws ResidueAlignmentException: if the chains could not be aligned using a sequence of the given length
 	 */
 	public static int alignSequence(String seq1, String seq2, int matchRegionLength) throws ResidueAlignmentException {
+		return alignSequence(seq1, 0, seq2, 0, matchRegionLength);
+	}
+	
+	/**
+	 * Determines an alignment value of the ends of 2 sequences
+	 * The alignment value is the index of seq2 (from from2 on) that seq1 (from from1 on) starts at
+	 * 
+	 * @param seq1: a sequence who's characters represent amino acid residues
+	 * @param from1: where the part of seq1 to align starts
+	 * @param seq2: a sequence who's characters represent amino acid residues
+	 * @param from2: where the part of seq2 to align starts
+	 * @param matchRegionLength: the length of the region that has to match
+	 * @return the index of the end of seq2 that the end of seq1 starts at
+	 * @throws ResidueAlignmentException: if the sequences could not be aligned using a region of the given length
+	 */
+	private static int alignSequence(CharSequence seq1, int from1, CharSequence seq2, int from2, int matchRegionLength)
+			throws ResidueAlignmentException {
+		int length1 = seq1.length() - from1;
 		
-		for(int offset = SEARCH_START; (offset+matchRegionLength) < seq1.length() ; offset += SEARCH_OFFSET) {
-			String tryAndMatch = seq1.substring(offset, offset+matchRegionLength);
-			
-			//if the sequence isn't unique, try again
-			if(seq1.indexOf(tryAndMatch) != seq1.lastIndexOf(tryAndMatch)) { continue; }
-			
-			int firstInSeq2 = seq2.indexOf(tryAndMatch);
-			int lastInSeq2 = seq2.lastIndexOf(tryAndMatch);
-			
-			//if it's not found in sequence 2
-			if(firstInSeq2 == -1) { continue; }
-			
-			//if it's not unique in sequence 2
-			if(firstInSeq2 != lastInSeq2) { continue; }
+		if(matchRegionLength < length1) {
+			KmerIndex index1 = new KmerIndex(seq1, from1, matchRegionLength);
+			KmerIndex index2 = new KmerIndex(seq2, from2, matchRegionLength);
 			
-			return firstInSeq2 - offset;
+			for(int offset = SEARCH_START; (offset+matchRegionLength) < length1; offset += SEARCH_OFFSET) {
+				//if the sequence isn't unique, try again
+				if(!index1.isUnique(offset)) { continue; }
+				
+				//if it's not found in sequence 2, or it's not unique in sequence 2
+				int inSeq2 = index2.findUnique(index1, offset);
+				if(inSeq2 == -1) { continue; }
+				
+				return inSeq2 - offset;
+			}
 		}
+		
 		throw new ResidueAlignmentException("Could not find a matching sequence of length="+matchRegionLength + " in " +
-				seq1 + " and " + seq2);
+				seq1.subSequence(from1, seq1.length()) + " and " + seq2.subSequence(from2, seq2.length()));
 	}
 	
 	/**
@@ -156,28 +179,10 @@ public class SequenceAligner extends BaseTools {
 	 */
 	private static int alignSequenceReverse(String seq1, String seq2)  throws ResidueAlignmentException {
 		
-		seq1 = new StringBuilder(seq1).reverse().toString();
-		seq2 = new StringBuilder(seq2).reverse().toString();
+		StringBuilder reversed1 = new StringBuilder(seq1).reverse();
+		StringBuilder reversed2 = new StringBuilder(seq2).reverse();
 		
-		for(int offset = SEARCH_START; (offset+DEFAULT_REGION_MATCH_LENGTH) < seq1.length() ; offset += SEARCH_OFFSET) {
-			String tryAndMatch = seq1.substring(offset, offset+DEFAULT_REGION_MATCH_LENGTH);
-			
-			//if the sequence isn't unique, try again
-			if(seq1.indexOf(tryAndMatch) != seq1.lastIndexOf(tryAndMatch)) { continue; }
-			
-			int firstInSeq2 = seq2.indexOf(tryAndMatch);
-			int lastInSeq2 = seq2.lastIndexOf(tryAndMatch);
-			
-			//if it's not found in sequence 2
-			if(firstInSeq2 == -1) { continue; }
-			
-			//if it's not unique in sequence 2
-			if(firstInSeq2 != lastInSeq2) { continue; }
-			
-			return firstInSeq2 - offset;
-		}
-		throw new ResidueAlignmentException("Could not find a matching sequence of length="+DEFAULT_REGION_MATCH_LENGTH + " in " +
-				seq1 + " and " + seq2);
+		return alignSequence(reversed1, 0, reversed2, 0, DEFAULT_REGION_MATCH_LENGTH);
 	}
 
 	/**
@@ -197,21 +202,27 @@ public class SequenceAligner extends BaseTools {
 		//This line added 2/13/19 to fix a bug if Uniprot started at 1 and DSSP at 0
 		dominant.setFirstIndex(alignmentValue);
 		
+		//every blank is worked out on the sequences, then the chains are each copied once
+		EditScript script = new EditScript();
+		StringBuilder dom = new StringBuilder(dominant.toSequence());
+		StringBuilder cha = new StringBuilder(chain.toSequence());
+		
 		if(alignmentValue > 0) {
-			dominant.insertBlanks(0, alignmentValue);
+			insertBlanks(script, EditScript.DOMINANT, dom, 0, alignmentValue);
 		} else {
-			chain.insertBlanks(0, alignmentValue*-1);
+			insertBlanks(script, EditScript.OTHER, cha, 0, alignmentValue*-1);
 		}
 		
-		superAlignHelper(dominant, chain, 0);
+		superAlignHelper(dom, cha, 0, script);
 		
 		if(reverseAlignmentValue < 0) {
-			dominant.insertBlanks(dominant.length(), reverseAlignmentValue*-1);
+			insertBlanks(script, EditScript.DOMINANT, dom, dom.length(), reverseAlignmentValue*-1);
 		} else {
-			chain.insertBlanks(chain.length(), reverseAlignmentValue);
+			insertBlanks(script, EditScript.OTHER, cha, cha.length(), reverseAlignmentValue);
 		}
 		
-		superAlignHelperReverse(dominant, chain, 0);
+		superAlignHelperReverse(dom.reverse(), cha.reverse(), 0, script);
+		script.apply(dominant, chain);
 		
 		int minStartValue = min(dominant.firstIndex(), chain.firstIndex());
 		dominant.setFirstIndex(minStartValue);
@@ -230,13 +241,18 @@ public class SequenceAligner extends BaseTools {
 		//first, verify that the chains are aligned
 		int alignmentValue = SequenceAligner.alignSequence(dominant, chain);
 		
+		EditScript script = new EditScript();
+		StringBuilder dom = new StringBuilder(dominant.toSequence());
+		StringBuilder cha = new StringBuilder(chain.toSequence());
+		
 		if(alignmentValue > 0) {
-			dominant.insertBlanks(0, alignmentValue);
+			insertBlanks(script, EditScript.DOMINANT, dom, 0, alignmentValue);
 		} else {
-			chain.insertBlanks(0, alignmentValue*-1);
+			insertBlanks(script, EditScript.OTHER, cha, 0, alignmentValue*-1);
 		}
 		
-		superAlignHelper(dominant, chain, 0);
+		superAlignHelper(dom, cha, 0, script);
+		script.apply(dominant, chain);
 		
 		int minStartValue = min(dominant.firstIndex(), chain.firstIndex());
 		dominant.setFirstIndex(minStartValue);
@@ -244,154 +260,165 @@ public class SequenceAligner extends BaseTools {
 	}
 	
 	/**
-	 * This gets called recursively
 	 * Used to align chains with gaps based on 50% residue-type difference
+	 * Each time a gap is found, the blanks are inserted into the sequences and
+	 * the search goes on from just before the gap, until there are no more gaps
 	 * 
-	 * @param dominant
-	 * @param chain
-	 * @throws ResidueAlignmentException 
+	 * @param dom: the dominant chain's sequence (blanks are inserted into it)
+	 * @param cha: the other chain's sequence (blanks are inserted into it)
+	 * @param startHere: where to start looking for gaps
+	 * @param script: where to add the blanks to insert into the chains, in order
 	 */
-	private static void superAlignHelper(ProteinChain dominant, ProteinChain chain, int startHere) {
-		int min_length = min(dominant.length(), chain.length());
-		
-		int incorrectRunStart = -1;
-		int incorrectRun = 0;
-		String dom = dominant.toSequence();
-		String cha = chain.toSequence();
-		
-		boolean edited = false;
-		
-		for(int index = startHere; index < min_length; ++index) {
-			//factor out places where blanks were inserted
-			if(dom.charAt(index) != INSERTED && cha.charAt(index) != INSERTED) {
-				if(dom.charAt(index) != cha.charAt(index)) {
-					++incorrectRun;
-				} else {
-					--incorrectRun;
-				}
-				
-				if(incorrectRun <= 0) { 
-					incorrectRunStart = index+1;
-					incorrectRun = 0;
-				}
-				
-				//qp("index       : " + index);
-				//qp("incorrectRun: " + incorrectRun);
-				
-				//we found something that we have to align
-				if(incorrectRun >= MIN_SIZE_FOR_ALIGNABLE_SEGMENT) {
-					String dd = dom.substring(incorrectRunStart);
-					String cc = cha.substring(incorrectRunStart);
-					
-					int miniAlignVal = 0;
-					
-					try {
-						miniAlignVal = SequenceAligner.alignSequence(dd, cc);
-					} catch (ResidueAlignmentException e) {
-						try {
-							miniAlignVal = SequenceAligner.alignSequence(dd, cc, SUPER_ALIGN_SUBSEQ_EXIT);
-						} catch (ResidueAlignmentException e2) {
-							//at this point, we can't find a string of 4 identical residues, so we give up!
-							return;
-						}
-					}
-					
-					if(miniAlignVal > 0) {
-						dominant.insertBlanks(incorrectRunStart, miniAlignVal);
+	private static void superAlignHelper(StringBuilder dom, StringBuilder cha, int startHere, EditScript script) {
+		while(true) {
+			int min_length = min(dom.length(), cha.length());
+			
+			int incorrectRunStart = -1;
+			int incorrectRun = 0;
+			
+			boolean edited = false;
+			
+			for(int index = startHere; index < min_length; ++index) {
+				//factor out places where blanks were inserted
+				if(dom.charAt(index) != INSERTED && cha.charAt(index) != INSERTED) {
+					if(dom.charAt(index) != cha.charAt(index)) {
+						++incorrectRun;
 					} else {
-						chain.insertBlanks(incorrectRunStart, miniAlignVal*-1);
+						--incorrectRun;
 					}
 					
-					if(miniAlignVal != 0) { edited = true; }
+					if(incorrectRun <= 0) { 
+						incorrectRunStart = index+1;
+						incorrectRun = 0;
+					}
 					
-					break;
+					//we found something that we have to align
+					if(incorrectRun >= MIN_SIZE_FOR_ALIGNABLE_SEGMENT && incorrectRunStart >= 0) {
+						int miniAlignVal = miniAlign(dom, cha, incorrectRunStart);
+						if(miniAlignVal == Integer.MIN_VALUE) { return; }
+						
+						if(miniAlignVal > 0) {
+							insertBlanks(script, EditScript.DOMINANT, dom, incorrectRunStart, miniAlignVal);
+						} else {
+							insertBlanks(script, EditScript.OTHER, cha, incorrectRunStart, miniAlignVal*-1);
+						}
+						
+						if(miniAlignVal != 0) { edited = true; }
+						
+						break;
+					}
 				}
 			}
-		}
-		
-		//if we've modified one or more sequence, recurse to make sure that there isn't more work to do...
-		if(edited) {
-			/*qp(dominant);
-			qp(dominant.length());
-			qp(chain);
-			qp(chain.length());
-			qp(incorrectRunStart);*/
-			superAlignHelper(dominant, chain, incorrectRunStart-1);
+			
+			//if we've modified one or more sequence, go on to make sure that there isn't more work to do...
+			if(!edited) { return; }
+			startHere = incorrectRunStart-1;
 		}
 	}
 	
 	/**
+	 * Used to align chains with gaps based on 50% residue-type difference, starting from the end
+	 * Works like superAlignHelper() on the reversed sequences; the script uses forward positions
 	 * 
-	 * This gets called recursively
-	 * Used to align chains with gaps based on 50% residue-type difference
-	 * 
-	 * @param dominant
-	 * @param chain
-	 * @throws ResidueAlignmentException 
+	 * @param dom: the dominant chain's sequence, reversed (blanks are inserted into it)
+	 * @param cha: the other chain's sequence, reversed (blanks are inserted into it)
+	 * @param startHere: where to start looking for gaps, counting from the end
+	 * @param script: where to add the blanks to insert into the chains, in order
 	 */
-	private static void superAlignHelperReverse(ProteinChain dominant, ProteinChain chain, int startHere) {
-		int min_length = min(dominant.length(), chain.length());
-		
-		int incorrectRunStart = -1;
-		int incorrectRun = 0;
-		String dom = new StringBuilder(dominant.toSequence()).reverse().toString();
-		String cha = new StringBuilder(chain.toSequence()).reverse().toString();
-		
-		boolean edited = false;
-		
-		for(int index = startHere; index < min_length; ++index) {
-			//factor out places where blanks were inserted
-			if(dom.charAt(index) != INSERTED && cha.charAt(index) != INSERTED) {
-				if(dom.charAt(index) != cha.charAt(index)) {
-					++incorrectRun;
-				} else {
-					--incorrectRun;
-				}
-				
-				if(incorrectRun <= 0) { 
-					incorrectRunStart = index+1;
-					incorrectRun = 0;
-				}
-				
-				//qp("index       : " + index);
-				//qp("incorrectRun: " + incorrectRun);
-				
-				//we found something that we have to align
-				if(incorrectRun >= MIN_SIZE_FOR_ALIGNABLE_SEGMENT && incorrectRunStart >= 0) {
-					String dd = dom.substring(incorrectRunStart);
-					String cc = cha.substring(incorrectRunStart);
-					
-					int miniAlignVal = 0;
-					
-					try {
-						miniAlignVal = SequenceAligner.alignSequence(dd, cc);
-					} catch (ResidueAlignmentException e) {
-						try {
-							miniAlignVal = SequenceAligner.alignSequence(dd, cc, SUPER_ALIGN_SUBSEQ_EXIT);
-						} catch (ResidueAlignmentException e2) {
-							//at this point, we can't find a string of 4 identical residues, so we give up!
-							return;
-						}
+	private static void superAlignHelperReverse(StringBuilder dom, StringBuilder cha, int startHere, EditScript script) {
+		while(true) {
+			int min_length = min(dom.length(), cha.length());
+			
+			int incorrectRunStart = -1;
+			int incorrectRun = 0;
+			
+			boolean edited = false;
+			
+			for(int index = startHere; index < min_length; ++index) {
+				//factor out places where blanks were inserted
+				if(dom.charAt(index) != INSERTED && cha.charAt(index) != INSERTED) {
+					if(dom.charAt(index) != cha.charAt(index)) {
+						++incorrectRun;
+					} else {
+						--incorrectRun;
 					}
 					
-					if(miniAlignVal > 0) {
-						dominant.insertBlanks(dominant.length()-incorrectRunStart, miniAlignVal);
-					} else {
-						chain.insertBlanks(chain.length()-incorrectRunStart, miniAlignVal*-1);
+					if(incorrectRun <= 0) { 
+						incorrectRunStart = index+1;
+						incorrectRun = 0;
 					}
 					
-					if(miniAlignVal != 0) { edited = true; }
-					break;
+					//we found something that we have to align
+					if(incorrectRun >= MIN_SIZE_FOR_ALIGNABLE_SEGMENT && incorrectRunStart >= 0) {
+						int miniAlignVal = miniAlign(dom, cha, incorrectRunStart);
+						if(miniAlignVal == Integer.MIN_VALUE) { return; }
+						
+						if(miniAlignVal > 0) {
+							script.insert(EditScript.DOMINANT, dom.length()-incorrectRunStart, miniAlignVal);
+							insertBlanks(dom, incorrectRunStart, miniAlignVal);
+						} else {
+							script.insert(EditScript.OTHER, cha.length()-incorrectRunStart, miniAlignVal*-1);
+							insertBlanks(cha, incorrectRunStart, miniAlignVal*-1);
+						}
+						
+						if(miniAlignVal != 0) { edited = true; }
+						break;
+					}
 				}
 			}
+			
+			//if we've modified one or more sequence, go on to make sure that there isn't more work to do...
+			if(!edited) { return; }
+			startHere = incorrectRunStart-1;
 		}
-		
-		//if we've modified one or more sequence, recurse to make sure that there isn't more work to do...
-		if(edited) {
-			superAlignHelperReverse(dominant, chain, incorrectRunStart-1);
+	}
+	
+	/**
+	 * Align the ends of two sequences, first with a region of the default length, then with a short one
+	 * @param dom: the dominant sequence
+	 * @param cha: the other sequence
+	 * @param start: where the ends start
+	 * @return: the alignment value, or Integer.MIN_VALUE if not even a short region matches
+	 */
+	private static int miniAlign(CharSequence dom, CharSequence cha, int start) {
+		try {
+			return SequenceAligner.alignSequence(dom, start, cha, start, DEFAULT_REGION_MATCH_LENGTH);
+		} catch (ResidueAlignmentException e) {
+			try {
+				return SequenceAligner.alignSequence(dom, start, cha, start, SUPER_ALIGN_SUBSEQ_EXIT);
+			} catch (ResidueAlignmentException e2) {
+				//at this point, we can't find a string of 4 identical residues, so we give up!
+				return Integer.MIN_VALUE;
+			}
 		}
 	}
 	
+	/**
+	 * Insert blanks into a chain's sequence the same way ProteinChain.insertBlanks() does into
+	 * the chain, and add the insertion to the script
+	 * @param script: the script
+	 * @param target: EditScript.DOMINANT or EditScript.OTHER
+	 * @param sequence: the chain's sequence
+	 * @param index: where to insert the blanks
+	 * @param blanks: the number of blanks
+	 */
+	private static void insertBlanks(EditScript script, int target, StringBuilder sequence, int index, int blanks) {
+		script.insert(target, index, blanks);
+		insertBlanks(sequence, index, blanks);
+	}
+	
+	/**
+	 * Insert blanks into a sequence the same way ProteinChain.insertBlanks() does into a chain
+	 * @param sequence: the sequence
+	 * @param index: where to insert the blanks
+	 * @param blanks: the number of blanks
+	 */
+	private static void insertBlanks(StringBuilder sequence, int index, int blanks) {
+		char[] inserted = new char[blanks];
+		Arrays.fill(inserted, INSERTED);
+		sequence.insert(min(index, sequence.length()), inserted);
+	}
+	
 	/**
 	 * Marks switch-like regions in the ProteinChain "chain"
 	 * Switch-like regions are regions of at least switchLen residues, where all residues in
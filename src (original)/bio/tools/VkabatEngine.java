@@ -0,0 +1,81 @@
+package bio.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import bio.ProteinChain;
+import util.BaseTools;
+
+/**
+ * Reads the secpred files of many chains at once, so Vkabat can be (re)computed for a whole
+ * data set without reading the files one line at a time, one chain after another.
+ *
+ * Each file is read into a SecpredMatrix by a task on a work-stealing pool.  Chains whose file
+ * is missing get no matrix, and can be left to BioLookup.getVkabat(), which downloads it.
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class VkabatEngine extends BaseTools {
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * Read the secpred file of every chain
+	 * @param chains: the chains
+	 * @param threads: the maximum number of files to read at once
+	 * @return: the matrix of each chain, in the same order (null if its file is missing or unreadable)
+	 */
+	public static SecpredMatrix[] read(List<ProteinChain> chains, int threads) {
+		SecpredMatrix[] matrices = new SecpredMatrix[chains.size()];
+		if(threads < 1) { threads = 1; }
+		
+		ForkJoinPool pool = new ForkJoinPool(min(threads, max(chains.size(), 1)));
+		ArrayList<Future<SecpredMatrix>> futures = new ArrayList<Future<SecpredMatrix>>(chains.size());
+		
+		for(ProteinChain chain: chains) {
+			final String path = VkabatReader.generatePath(chain.getProteinName(), chain.getID());
+			futures.add(pool.submit(new Callable<SecpredMatrix>() {
+				public SecpredMatrix call() throws IOException {
+					File file = new File(path);
+					if(!file.exists() || file.isDirectory()) { return null; }
+					return SecpredMatrix.read(path);
+				}
+			}));
+		}
+		
+		try {
+			for(int index = 0; index < matrices.length; ++index) {
+				try {
+					matrices[index] = futures.get(index).get();
+				} catch (ExecutionException EE) {
+					qerr("I/O Problem::Could not read Vkabat file for: " + chains.get(index).fullID() + ": " + EE.getCause().getMessage());
+				}
+			}
+		} catch (InterruptedException IE) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			return matrices;
+		}
+		
+		pool.shutdown();
+		return matrices;
+	}
+	
+	/**
+	 * Read a chain's secpred file and make a chain with its Vkabat values
+	 * @param protein: the protein's name
+	 * @param chain: the chain's ID
+	 * @return: the chain
+	 * @throws IOException: if the file can't be read
+	 */
+	public static ProteinChain getVkabat(String protein, char chain) throws IOException {
+		return SecpredMatrix.read(VkabatReader.generatePath(protein, chain)).toChain(protein, chain);
+	}
+}
@@ -7,10 +7,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.List;
 
-import bio.AminoAcid;
-import bio.ChainBuilder;
 import bio.ProteinChain;
-import util.BaseTools;
 
 /**
  * Specialized BufferedReader for reading Vkabat CSVs
@@ -50,25 +47,7 @@ public class VkabatReader extends BufferedReader {
 	 * @throws IOException 
 	 */
 	public ProteinChain getVkabat(String protein, char chain) throws IOException {
-		String input;
-		ChainBuilder builder = new ChainBuilder();
-		
-		for(input = readLine(); ready(); ) {
-			input = readLine();
-			//clears out the first 3 fields
-			input = input.substring(input.indexOf(",")+1);
-			input = input.substring(input.indexOf(",")+1);
-			char resType = input.charAt(0);
-			input = input.substring(input.indexOf(",")+1);
-			input = input.replaceAll(",", "");
-			
-			AminoAcid aa = new AminoAcid(resType);
-			aa.setVkabat(calcVkabat(input));
-			aa.setVkabatCompletion(input.length());
-			builder.append(aa);
-		}
-		
-		return builder.toChain(protein, chain, BioLookup.fastaType());
+		return SecpredMatrix.read(targetFile.getPath()).toChain(protein, chain);
 	}
 	
 	/**
@@ -88,16 +67,8 @@ public class VkabatReader extends BufferedReader {
 			}
 		}
 		
-		double k = 0; //max = 3
-		
-		if(H > 0) { ++k; }
-		if(E > 0) { ++k; }
-		if(O > 0) { ++k; }
-				
-		int n1 = BaseTools.max(H, BaseTools.max(E, O)); // min = 5
-		int N = input.length(); //max = 15
-		
-		double result = ( k / n1) * N; //max = 3/5*15 = 9
+		//k = classes present (max = 3), n1 = largest class (min = 5), N = length (max = 15): max = 3/5*15 = 9
+		double result = SecpredMatrix.vkabat(H, E, O);
 		
 		return result;
 	}
@@ -2,10 +2,20 @@ package bio.tools.isUnstruct;
 
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * .ius not working
+ * 
+ * predict() scores sequences in memory, without writing or reading any files:
+ * each thread keeps its own IsUnstruct (and so its own ScoringKernel buffers) and reuses it
+ * for every sequence it scores.
+ * 
  * @translator Benjy Strauss
  *
  */
@@ -18,6 +28,72 @@ public class IsUnstruct extends PredDel {
 	String use_pattern_info[] = { "Patterns not used", "Only H6 pattern was used", "All patterns were used"};
 	int long_disp=0, short_disp=0, file_save=1;
 	
+	//the scorer used by each thread for predict()
+	private static final ThreadLocal<IsUnstruct> SCORERS = new ThreadLocal<IsUnstruct>() {
+		protected IsUnstruct initialValue() { return new IsUnstruct(); }
+	};
+	
+	//flat scratch buffers, reused from one sequence to the next
+	private final ScoringKernel kernel = new ScoringKernel(this);
+	
+	public IsUnstruct() {
+		SetPoten(use_pattern, opt_type);
+	}
+	
+	/**
+	 * Score one sequence with the default parameters (all patterns used)
+	 * @param sequence: the residue letters; white space is skipped
+	 * @return: the probability that each residue is unstructured (the values of the .iul file, unrounded)
+	 */
+	public static double[] predict(CharSequence sequence) {
+		return SCORERS.get().score(sequence);
+	}
+	
+	/**
+	 * Score many sequences at once with the default parameters (all patterns used)
+	 * @param sequences: the sequences to score
+	 * @param threads: the maximum number of sequences to score at once
+	 * @return: the probabilities for each sequence, in the same order as the sequences
+	 */
+	public static double[][] predict(List<? extends CharSequence> sequences, int threads) {
+		double[][] retVal = new double[sequences.size()][];
+		if(threads < 1) { threads = 1; }
+		
+		ForkJoinPool pool = new ForkJoinPool(Math.min(threads, Math.max(sequences.size(), 1)));
+		ArrayList<Future<double[]>> futures = new ArrayList<Future<double[]>>(sequences.size());
+		
+		for(final CharSequence sequence: sequences) {
+			futures.add(pool.submit(new Callable<double[]>() {
+				public double[] call() { return predict(sequence); }
+			}));
+		}
+		
+		try {
+			for(int index = 0; index < retVal.length; ++index) {
+				retVal[index] = futures.get(index).get();
+			}
+		} catch (InterruptedException IE) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			return retVal;
+		} catch (ExecutionException EE) {
+			pool.shutdownNow();
+			throw new RuntimeException(EE.getCause());
+		}
+		
+		pool.shutdown();
+		return retVal;
+	}
+	
+	/**
+	 * Score one sequence using this object's parameters and buffers
+	 * @param sequence: the residue letters; white space is skipped
+	 * @return: the probability that each residue is unstructured
+	 */
+	public double[] score(CharSequence sequence) {
+		return kernel.score(sequence);
+	}
+	
 	private static final String replaceCharAtIndex(String str, int index, char newChar) {
 		if(str.equals("")) { return str; }
 		//qp(str.length());
@@ -75,7 +151,7 @@ public class IsUnstruct extends PredDel {
 		if(opt_type!=1) { out.printf("# opt_type=%d. The prediction can be incorrect!\n", opt_type); }
 		out.printf("# %s\n\n", sa.info);
 	
-		for(i=0; i < sa.ac.length; i++) {
+		for(i=0; i < sa.length(); i++) {
 			pt=' ';
 			if(sa.ac[i].ept > (PredDel.E_PATTERN/2)) { pt='P'; }
 			if(sa.ac[i].plp>0.5) { c='U'; }
@@ -111,10 +187,10 @@ public class IsUnstruct extends PredDel {
 		}
 		out.printf("# %s\n\n", sa.info);
 		
-		for(i0=0; i0 < sa.ac.length; i0 += 100) {
+		for(i0=0; i0 < sa.length(); i0 += 100) {
 			np=0;
-			for(i=i0; i<(i0+100) && i<sa.ac.length; i++) {
-				if(i < sa.ac.length) {
+			for(i=i0; i<(i0+100) && i<sa.length(); i++) {
+				if(i < sa.length()) {
 					cpt = ' ';
 					if(sa.ac[i].ept > (PredDel.E_PATTERN/2)) {
 						np++;
@@ -161,16 +237,16 @@ public class IsUnstruct extends PredDel {
 			}
 			//qp("#" + seq.length());
 			
-			if(i0+100 <= sa.ac.length) {
+			if(i0+100 <= sa.length()) {
 				out.printf("sequence   %5d %-109s %4d\n",   i0+1, seq, i0+100);
 				out.printf("state      %5d %-109s %4d\n",   i0+1, prd, i0+100);
 				if(np>0) { out.printf("pattern    %5d %-109s %4d\n", i0+1, pt,  i0+100); }
 				out.printf("probability%5d %-109s %4d\n\n", i0+1, qp,  i0+100);
 			} else {
-				out.printf("sequence   %5d %-109s %4d\n",   i0+1, seq, sa.ac.length);
-				out.printf("state      %5d %-109s %4d\n",   i0+1, prd, sa.ac.length);
-				if(np>0) { out.printf("pattern    %5d %-109s %4d\n", i0+1, pt, sa.ac.length); }
-				out.printf("probability%5d %-109s %4d\n\n", i0+1, qp,  sa.ac.length);
+				out.printf("sequence   %5d %-109s %4d\n",   i0+1, seq, sa.length());
+				out.printf("state      %5d %-109s %4d\n",   i0+1, prd, sa.length());
+				if(np>0) { out.printf("pattern    %5d %-109s %4d\n", i0+1, pt, sa.length()); }
+				out.printf("probability%5d %-109s %4d\n\n", i0+1, qp,  sa.length());
 			}
 			
 			pt = ""; prd = ""; seq = ""; qp = "";
@@ -185,7 +261,7 @@ public class IsUnstruct extends PredDel {
 		System.out.printf("# %s\n", use_pattern_info[use_pattern]);
 		if(opt_type!=1) { System.out.printf("# opt_type=%d. The prediction can be incorrect!\n", opt_type); }
 		System.out.printf("# %s\n\n", sa.info);
-		for(i=0; i < sa.ac.length; i++) {
+		for(i=0; i < sa.length(); i++) {
 			pt=' ';
 			if(sa.ac[i].ept > (PredDel.E_PATTERN/2)) pt='P';
 			if(sa.ac[i].plp>0.5) { c='U'; }
@@ -203,10 +279,10 @@ public class IsUnstruct extends PredDel {
 		if(opt_type!=1) { System.out.printf("# opt_type=%d. The prediction can be incorrect!\n", opt_type); }
 		System.out.printf("# %s\n\n", sa.info);
 	
-		for(i0=0; i0 < sa.ac.length; i0+=100) {
+		for(i0=0; i0 < sa.length(); i0+=100) {
 			np=0;
 			for(i=i0, j=0; i<(i0+100); i++) {
-				if(i < sa.ac.length) {
+				if(i < sa.length()) {
 					cpt = ' ';
 					if(sa.ac[i].ept > (E_PATTERN/2)) {
 						np++;
@@ -249,16 +325,16 @@ public class IsUnstruct extends PredDel {
 				replaceCharAtIndex(qp, j+1, '-');
 				j++;
 		    }
-			if(i0+100 <= sa.ac.length) {
+			if(i0+100 <= sa.length()) {
 				System.out.printf("sequence   %5d %-109s %4d\n",   i0+1, seq, i0+100);
 				System.out.printf("state      %5d %-109s %4d\n",   i0+1, prd, i0+100);
 				if(np>0) { System.out.printf("pattern    %5d %-109s %4d\n", i0+1, pt,  i0+100); }
 				System.out.printf("probability%5d %-109s %4d\n\n", i0+1, qp,  i0+100);
 		    } else{
-		    	System.out.printf("sequence   %5d %-109s %4d\n",   i0+1, seq, sa.ac.length);
-		    	System.out.printf("state      %5d %-109s %4d\n",   i0+1, prd, sa.ac.length);
-		    	if(np>0) { System.out.printf("pattern    %5d %-109s %4d\n", i0+1, pt, sa.ac.length); }
-		    	System.out.printf("probability%5d %-109s %4d\n\n", i0+1, qp,  sa.ac.length);
+		    	System.out.printf("sequence   %5d %-109s %4d\n",   i0+1, seq, sa.length());
+		    	System.out.printf("state      %5d %-109s %4d\n",   i0+1, prd, sa.length());
+		    	if(np>0) { System.out.printf("pattern    %5d %-109s %4d\n", i0+1, pt, sa.length()); }
+		    	System.out.printf("probability%5d %-109s %4d\n\n", i0+1, qp,  sa.length());
 		    }
 		}
 	}
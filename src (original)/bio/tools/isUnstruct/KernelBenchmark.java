@@ -0,0 +1,95 @@
+package bio.tools.isUnstruct;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times the object based IsUnstruct scoring (SEQ_AC + PredDel.Predict) against the flat
+ * ScoringKernel on random sequences of 100, 1,000 and 30,000 residues, and checks that both
+ * give exactly the same probabilities.
+ *
+ * Usage: KernelBenchmark [iterations]
+ *
+ * @translator Benjy Strauss
+ *
+ */
+
+public class KernelBenchmark {
+	private static final int[] LENGTHS = { 100, 1000, 30000 };
+	private static final String RESIDUES = "ACDEFGHIKLMNPQRSTVWY";
+	//roughly 1 residue in this many starts a tag
+	private static final int TAG_RATE = 200;
+	private static final int WARMUP = 5;
+	
+	public static void main(String[] args) {
+		int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+		Random random = new Random(2019);
+		IsUnstruct reference = new IsUnstruct();
+		ScoringKernel kernel = new ScoringKernel(reference);
+		SEQ_AC sa = new SEQ_AC();
+		
+		System.out.printf("%8s %16s %16s %8s\n", "residues", "objects (us/seq)", "kernel (us/seq)", "speedup");
+		for(int length: LENGTHS) {
+			String sequence = randomSequence(random, length);
+			int reps = Math.max(1, iterations * 1000 / length);
+			
+			//the two have to agree before their times mean anything
+			if(!Arrays.equals(objects(reference, sa, sequence), kernel.score(sequence))) {
+				System.out.printf("%8d: the kernel's probabilities differ from PredDel's!\n", length);
+				continue;
+			}
+			
+			double objectTime = 0, kernelTime = 0;
+			for(int round = 0; round < WARMUP + iterations; round++) {
+				long start = System.nanoTime();
+				for(int rep = 0; rep < reps; rep++) { objects(reference, sa, sequence); }
+				long middle = System.nanoTime();
+				for(int rep = 0; rep < reps; rep++) { kernel.score(sequence); }
+				long end = System.nanoTime();
+				
+				if(round >= WARMUP) {
+					objectTime += (middle - start) / 1000.0 / reps;
+					kernelTime += (end - middle) / 1000.0 / reps;
+				}
+			}
+			
+			objectTime /= iterations;
+			kernelTime /= iterations;
+			System.out.printf("%8d %16.2f %16.2f %7.2fx\n", length, objectTime, kernelTime, objectTime / kernelTime);
+		}
+	}
+	
+	/**
+	 * Score a sequence the old way
+	 * @param poten: the predictor
+	 * @param sa: the residue objects
+	 * @param sequence: the sequence
+	 * @return: the probabilities
+	 */
+	private static double[] objects(PredDel poten, SEQ_AC sa, String sequence) {
+		sa.Load(sequence);
+		poten.Predict(sa);
+		
+		double[] plp = new double[sa.length()];
+		for(int i = 0; i < plp.length; i++) { plp[i] = sa.ac[i].plp; }
+		return plp;
+	}
+	
+	/**
+	 * @param random: the random number generator
+	 * @param length: the length of the sequence
+	 * @return: a random sequence with a few tags in it
+	 */
+	private static String randomSequence(Random random, int length) {
+		StringBuilder builder = new StringBuilder(length);
+		while(builder.length() < length) {
+			if(random.nextInt(TAG_RATE) == 0) {
+				builder.append(PredDel.pt_all[random.nextInt(PredDel.pt_all.length)]);
+			} else {
+				builder.append(RESIDUES.charAt(random.nextInt(RESIDUES.length())));
+			}
+		}
+		builder.setLength(length);
+		return builder.toString();
+	}
+}
@@ -17,7 +17,7 @@ public class SEQ_AC {
 	
 	public String info;
 	public int calc_pattern;
-	int length() { return ac.length; }
+	int length() { return num; }
 	
 	SEQ_AC() {
 		ac = null; num=size=0; info = null; calc_pattern=0;
@@ -41,31 +41,41 @@ public class SEQ_AC {
   	}
   	
   	void LoadFasta(String seq_fasta) {
-  		int i, n;
-  		
-  		calc_pattern=0;
-  		info = "(no_name)";
+  		String name = "(no_name)";
   	
   		//if the fasta is raw
   		if(seq_fasta.charAt(0) == '>') {
-  			info = seq_fasta.substring(1, seq_fasta.indexOf('\n'));
+  			name = seq_fasta.substring(1, seq_fasta.indexOf('\n'));
   	  		seq_fasta = seq_fasta.substring(seq_fasta.indexOf('\n'));
   		}
   		
-  		seq_fasta = seq_fasta.replace("\n", "");
+  		Load(seq_fasta);
+  		info = name;
+  	}
+  	
+  	/**
+  	 * Load a bare sequence (no header line), reusing the residues from the last load
+  	 * when there are enough of them
+  	 * @param sequence: the residue letters; white space is skipped
+  	 */
+  	void Load(CharSequence sequence) {
+  		int i;
+  		char c;
   		
-  		if(seq_fasta.length() > size) { Init(seq_fasta.length()); }
-  		num = seq_fasta.length();
+  		calc_pattern=0;
+  		info = "(no_name)";
   		
-  		for(i=0,n=0; i < seq_fasta.length(); i++) {
-  			if(seq_fasta.charAt(i) <= 0x20) { continue; }
+  		if(sequence.length() > size) { Init(sequence.length()); }
+  		
+  		for(i=0,num=0; i < sequence.length(); i++) {
+  			c = sequence.charAt(i);
+  			if(c <= 0x20) { continue; }
   			
-  			ac[n].reinit();
-  			ac[n].ac = seq_fasta.charAt(i);
-  			ac[n].ind_ac = Num_Ac(seq_fasta.charAt(i));
-  			n++;
+  			ac[num].reinit();
+  			ac[num].ac = c;
+  			ac[num].ind_ac = (c < 0x100) ? Num_Ac(c) : 20;
+  			num++;
   		}
-  		
   	}
   	
   	int Num_Ac(char c) {
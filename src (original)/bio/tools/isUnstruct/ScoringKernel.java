@@ -0,0 +1,167 @@
+package bio.tools.isUnstruct;
+
+import java.util.Arrays;
+
+/**
+ * The IsUnstruct scoring (PredDel.Predict) over flat arrays instead of ACIDP objects.
+ *
+ * The residues are kept as a char[] and their potential codes as a byte[], and each of the
+ * energies of the forward (N to C) and backward (C to N) passes has its own double[].
+ * The buffers grow to the longest sequence scored so far and are reused after that, so
+ * a kernel should be used by only one thread at a time.
+ *
+ * Every value is worked out with the same operations in the same order as PredDel, so the
+ * probabilities are bit-for-bit the same.
+ *
+ * @translator Benjy Strauss
+ *
+ */
+
+public class ScoringKernel {
+	//the potential code (0-20) of each character
+	private static final byte[] CODE = new byte[0x100];
+	
+	static {
+		Arrays.fill(CODE, (byte) 20);
+		//   C   M   F   I   L   V   W   Y   A   G   T   S   Q   N   E   D   H   R   K   P
+		String letters = "CMFILVWYAGTSQNEDHRKP";
+		for(int i = 0; i < letters.length(); i++) {
+			CODE[letters.charAt(i)] = (byte) i;
+			CODE[Character.toLowerCase(letters.charAt(i))] = (byte) i;
+		}
+	}
+	
+	//the predictor whose potentials are used
+	private final PredDel poten;
+	
+	private int size;
+	private char[] residues = new char[0];
+	private byte[] code = new byte[0];
+	private double[] ept = new double[0];
+	private double[] e3d_n = new double[0], elp_n = new double[0];
+	private double[] e3d_c = new double[0], elp_c = new double[0];
+	private int[] cover = new int[1];
+	
+	/**
+	 * @param poten: the predictor whose potentials (set by SetPoten()) to use
+	 */
+	ScoringKernel(PredDel poten) {
+		this.poten = poten;
+	}
+	
+	/**
+	 * Load a sequence into the buffers
+	 * @param sequence: the residue letters; white space is skipped
+	 * @return: the number of residues
+	 */
+	private int load(CharSequence sequence) {
+		if(sequence.length() > residues.length) {
+			int capacity = sequence.length();
+			residues = new char[capacity];
+			code = new byte[capacity];
+			ept = new double[capacity];
+			e3d_n = new double[capacity];
+			elp_n = new double[capacity];
+			e3d_c = new double[capacity];
+			elp_c = new double[capacity];
+			cover = new int[capacity + 1];
+		}
+		
+		int n = 0;
+		for(int i = 0; i < sequence.length(); i++) {
+			char c = sequence.charAt(i);
+			if(c <= 0x20) { continue; }
+			residues[n] = c;
+			code[n] = (c < 0x100) ? CODE[c] : 20;
+			n++;
+		}
+		return n;
+	}
+	
+	/**
+	 * Score a sequence
+	 * @param sequence: the residue letters; white space is skipped
+	 * @return: the probability that each residue is unstructured
+	 */
+	public double[] score(CharSequence sequence) {
+		size = load(sequence);
+		double[] plp = new double[size];
+		if(size == 0) { return plp; }
+		
+		patterns();
+		forward();
+		backward();
+		
+		for(int i = 0; i < size; i++) {
+			double p3d = 1.;
+			double p = Math.exp(-(elp_n[i] + elp_c[i]) + (e3d_n[i] + e3d_c[i]));
+			plp[i] = p / (p3d + p);
+		}
+		return plp;
+	}
+	
+	/**
+	 * Set the pattern energy of every residue (PredDel.Pred_Pattern)
+	 */
+	private void patterns() {
+		if(poten.PATTERN_T == 0 || poten.gpt == 0) {
+			Arrays.fill(ept, 0, size, 0);
+		} else {
+			poten.scanner().mark(residues, size, ept, cover, PredDel.E_PATTERN);
+		}
+	}
+	
+	/**
+	 * The N to C pass (PredDel.PredictNC)
+	 */
+	private void forward() {
+		final double[] ac_elong = poten.ac_elong;
+		final double unt = poten.unt;
+		final double init = unt * poten.a_init;
+		
+		e3d_n[0] = ept[0];
+		elp_n[0] = unt * (ac_elong[code[0]] + poten.fs_n);
+		for(int i = 1; i < size; i++) {
+			double e3d = e3d_n[i-1], elp = elp_n[i-1];
+			e3d_n[i] = eAdd(e3d, elp + init) + ept[i];
+			elp_n[i] = eAdd(elp, e3d + init) + unt * ac_elong[code[i]];
+		}
+	}
+	
+	/**
+	 * The C to N pass (PredDel.PredictCN)
+	 */
+	private void backward() {
+		final double[] ac_elong = poten.ac_elong;
+		final double unt = poten.unt;
+		final double a_init = poten.a_init;
+		
+		e3d_c[size-1] = 0;
+		elp_c[size-1] = unt * poten.fs_c;
+		for(int i = size-2; i >= 0; i--) {
+			double e3d = e3d_c[i+1], elp = elp_c[i+1], pt = ept[i+1];
+			double elong = ac_elong[code[i+1]];
+			e3d_c[i] = eAdd(e3d + pt, elp + unt*(a_init + elong));
+			elp_c[i] = eAdd(elp + unt * elong, e3d + unt*a_init + pt);
+		}
+	}
+	
+	/**
+	 * Add two energies (PredDel.E_Add)
+	 * @param a: an energy
+	 * @param b: an energy
+	 * @return: -log(exp(-a) + exp(-b))
+	 */
+	private static double eAdd(double a, double b) {
+		if(b < a) {
+			double swap = a;
+			a = b;
+			b = swap;
+		}
+		b -= a;
+		if(b > 100) { return a; }
+		return a - Math.log(1. + Math.exp(-b));
+	}
+	
+	public String toString() { return "ScoringKernel (" + residues.length + " residue buffers)"; }
+}
@@ -0,0 +1,240 @@
+package bio.tools.isUnstruct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Finds the tag patterns of PredDel (His-tags, cleavage sites, linkers...) in a sequence
+ * with one Aho-Corasick scan, instead of trying every pattern at every position.
+ *
+ * A pattern occurs at a position when its first two and last two residues match exactly
+ * and (matches - CH_PATTERN * mismatches) is positive, so a pattern of length L can have up
+ * to (L-1)/5 mismatches.  Each pattern is cut into (mismatches + 1) pieces, and at least
+ * one of them has to match exactly wherever the pattern occurs.  The automaton finds every
+ * exact occurrence of every piece, and each one is checked against the full rule.
+ *
+ * The automaton is built once and never changed, so one scanner can be used by any
+ * number of threads at once.
+ *
+ * @translator Benjy Strauss
+ *
+ */
+
+public class TagScanner {
+	private static final int ROOT = 0;
+	
+	//the patterns
+	private final String[] patterns;
+	
+	//the alphabet index of each character (0 for characters that are in no pattern)
+	private final int[] letter = new int[0x100];
+	private final int letters;
+	
+	//goto function of the finished automaton: next[state * letters + letter]
+	private final int[] next;
+	
+	//the pieces ending at each state: piece[outStart[state]] to piece[outStart[state+1]-1]
+	private final int[] outStart;
+	private final int[] outPiece;
+	
+	//the pattern of each piece and where the piece ends in it
+	private final int[] piecePattern;
+	private final int[] pieceEnd;
+	
+	/**
+	 * Build the automaton for the first few patterns of a list
+	 * @param allPatterns: the patterns
+	 * @param count: how many of them to use
+	 */
+	public TagScanner(String[] allPatterns, int count) {
+		patterns = Arrays.copyOf(allPatterns, count);
+		
+		//the alphabet
+		int alphabet = 1;
+		for(String pattern: patterns) {
+			for(int i = 0; i < pattern.length(); i++) {
+				char c = pattern.charAt(i);
+				if(letter[c] == 0) { letter[c] = alphabet++; }
+			}
+		}
+		letters = alphabet;
+		
+		//cut the patterns into pieces
+		ArrayList<int[]> pieces = new ArrayList<int[]>();
+		for(int p = 0; p < patterns.length; p++) {
+			String pattern = patterns[p];
+			
+			if(pattern.indexOf('X') != -1) {
+				//'X' matches anything, so only the first two residues have to match exactly
+				pieces.add(new int[] { p, 0, Math.min(2, pattern.length()) });
+				continue;
+			}
+			
+			int parts = (pattern.length() - 1) / (PredDel.CH_PATTERN + 1) + 1;
+			for(int part = 0; part < parts; part++) {
+				pieces.add(new int[] { p, pattern.length() * part / parts, pattern.length() * (part+1) / parts });
+			}
+		}
+		
+		piecePattern = new int[pieces.size()];
+		pieceEnd = new int[pieces.size()];
+		
+		//the trie of the pieces
+		int[] trie = new int[16 * letters];
+		Arrays.fill(trie, -1);
+		ArrayList<ArrayList<Integer>> ending = new ArrayList<ArrayList<Integer>>();
+		ending.add(new ArrayList<Integer>());
+		int states = 1;
+		
+		for(int index = 0; index < pieces.size(); index++) {
+			int[] piece = pieces.get(index);
+			String pattern = patterns[piece[0]];
+			piecePattern[index] = piece[0];
+			pieceEnd[index] = piece[2];
+			
+			int state = ROOT;
+			for(int i = piece[1]; i < piece[2]; i++) {
+				int edge = state * letters + letter[pattern.charAt(i)];
+				if(trie[edge] == -1) {
+					if((states+1) * letters > trie.length) {
+						int oldLength = trie.length;
+						trie = Arrays.copyOf(trie, oldLength * 2);
+						Arrays.fill(trie, oldLength, trie.length, -1);
+					}
+					trie[edge] = states++;
+					ending.add(new ArrayList<Integer>());
+				}
+				state = trie[edge];
+			}
+			ending.get(state).add(index);
+		}
+		
+		//breadth first: failure links, the goto function and the output of each state
+		next = new int[states * letters];
+		int[] fail = new int[states];
+		int[] queue = new int[states];
+		int head = 0, tail = 0;
+		
+		for(int c = 0; c < letters; c++) {
+			int child = trie[ROOT * letters + c];
+			if(child > 0) {
+				next[c] = child;
+				fail[child] = ROOT;
+				queue[tail++] = child;
+			} else {
+				next[c] = ROOT;
+			}
+		}
+		
+		while(head < tail) {
+			int state = queue[head++];
+			//a state's output includes the output of its failure state, which is earlier in the queue
+			ending.get(state).addAll(ending.get(fail[state]));
+			
+			for(int c = 0; c < letters; c++) {
+				int child = trie[state * letters + c];
+				if(child > 0) {
+					next[state * letters + c] = child;
+					fail[child] = next[fail[state] * letters + c];
+					queue[tail++] = child;
+				} else {
+					next[state * letters + c] = next[fail[state] * letters + c];
+				}
+			}
+		}
+		
+		outStart = new int[states + 1];
+		for(int state = 0; state < states; state++) { outStart[state+1] = outStart[state] + ending.get(state).size(); }
+		outPiece = new int[outStart[states]];
+		for(int state = 0; state < states; state++) {
+			for(int i = 0; i < ending.get(state).size(); i++) { outPiece[outStart[state] + i] = ending.get(state).get(i); }
+		}
+	}
+	
+	/**
+	 * Set the pattern energy (ept) of every residue of a sequence:
+	 * value where a pattern (or the end of the sequence near one) covers the residue, 0 elsewhere
+	 * @param sa: the sequence
+	 * @param value: the energy of a residue covered by a pattern
+	 */
+	void mark(SEQ_AC sa, double value) {
+		int im = sa.length();
+		char[] residues = new char[im];
+		double[] ept = new double[im];
+		for(int i = 0; i < im; i++) { residues[i] = sa.ac[i].ac; }
+		
+		mark(residues, im, ept, new int[im + 1], value);
+		for(int i = 0; i < im; i++) { sa.ac[i].ept = ept[i]; }
+	}
+	
+	/**
+	 * Set the pattern energy of every residue of a sequence:
+	 * value where a pattern (or the end of the sequence near one) covers the residue, 0 elsewhere
+	 * @param residues: the sequence
+	 * @param im: the length of the sequence
+	 * @param ept: where to write the energies
+	 * @param cover: scratch space for at least im+1 ints
+	 * @param value: the energy of a residue covered by a pattern
+	 */
+	void mark(char[] residues, int im, double[] ept, int[] cover, double value) {
+		//+1 where a covered range starts, -1 where it ends
+		Arrays.fill(cover, 0, im + 1, 0);
+		int state = ROOT;
+		
+		for(int i = 0; i < im; i++) {
+			char c = residues[i];
+			state = next[state * letters + ((c < 0x100) ? letter[c] : 0)];
+			
+			for(int out = outStart[state]; out < outStart[state+1]; out++) {
+				int piece = outPiece[out];
+				String pattern = patterns[piecePattern[piece]];
+				int i0 = i + 1 - pieceEnd[piece];
+				
+				if(i0 < 0 || im - i0 < pattern.length()) { continue; }
+				if(!matches(residues, i0, pattern)) { continue; }
+				
+				//a pattern within 40 residues of an end covers everything up to that end
+				int from = (i0 < 40) ? 0 : i0;
+				int to = (im - (i0 + pattern.length()) < 40) ? im : i0 + pattern.length();
+				cover[from]++;
+				cover[to]--;
+			}
+		}
+		
+		int depth = 0;
+		for(int i = 0; i < im; i++) {
+			depth += cover[i];
+			ept[i] = (depth > 0) ? value : 0;
+		}
+	}
+	
+	/**
+	 * @param residues: the sequence
+	 * @param i0: where the pattern would start
+	 * @param pt: the pattern
+	 * @return: true if the pattern occurs at i0
+	 */
+	static boolean matches(char[] residues, int i0, String pt) {
+		int i, j, k;
+		if(residues[i0] != pt.charAt(0)) { return false; }
+		if(residues[i0+1] != pt.charAt(1)) { return false; }
+		if(residues[i0+pt.length()-1] != pt.charAt(pt.length()-1)) { return false; }
+		if(residues[i0+pt.length()-2] != pt.charAt(pt.length()-2)) { return false; }
+		
+		for(k=0,i=i0,j=0; j<pt.length(); i++,j++) {
+			if(pt.charAt(j) == 'X') continue;
+			if(residues[i] == pt.charAt(j)) {
+				k++;
+			} else {
+				k-=PredDel.CH_PATTERN;
+			}
+			if(k<-pt.length()) { return false; }
+		}
+		return k > 0;
+	}
+	
+	/** @return: the number of patterns */
+	public int size() { return patterns.length; }
+	
+	public String toString() { return "TagScanner (" + patterns.length + " patterns, " + (outStart.length-1) + " states)"; }
+}
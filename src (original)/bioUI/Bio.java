@@ -1,5 +1,6 @@
 package bioUI;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
@@ -14,12 +15,14 @@ import bio.exceptions.DataRetrievalException;
 import bio.exceptions.DataValueOutOfRangeException;
 import bio.exceptions.PythonException;
 import bio.exceptions.ResidueAlignmentException;
-import bio.exceptions.ResidueAlignmentRuntimeException;
-import bio.tools.BioIOStream;
 import bio.tools.BioLookup;
 import bio.tools.CSVWriter;
+import bio.tools.ChainStore;
+import bio.tools.ClusterBuilder;
 import bio.tools.ClusterReader;
 import bio.tools.FASTA;
+import bio.tools.SecpredMatrix;
+import bio.tools.VkabatEngine;
 
 /**
  * 
@@ -28,6 +31,12 @@ import bio.tools.FASTA;
  */
 
 public class Bio extends JBioMain {
+	//the save file "myChains" was last read from or written to, and its time stamp and size then
+	private static String syncedName;
+	private static long syncedModified;
+	private static long syncedLength;
+	//the store of the save file, kept so it knows where its log ends without reading it again
+	private static ChainStore store;
 	
 	/**
 	 * Set the source to download FASTA files from
@@ -146,7 +155,7 @@ public class Bio extends JBioMain {
 					qpl("Could not read FASTA for chain: " + clusters[i][j]);
 					continue;
 				}
-					
+				
 				try {
 					BioLookup.assignSecondary(compareChain);
 				} catch (ResidueAlignmentException e) {
@@ -231,99 +240,11 @@ public class Bio extends JBioMain {
 	 */
 	static AlignedCluster[] cluster(String[][] clusters) {
 		qpl("Making Clusters");
-		//Create the chain clusters
-		AlignedCluster[] chainClusters = new AlignedCluster[clusters.length];
-		
-		for(int i = 0; i < clusters.length; ++i) {
-			//make sure there is no colon in the string
-			clusters[i][0] = clusters[i][0].replaceAll(":", "").toUpperCase();
-			//extract the protein's name
-			String protName = clusters[i][0].substring(0, 4);
-			//extract the protein's chain
-			char chainName = clusters[i][0].charAt(4);
-			
-			//if the length is 5 or it's NOT from uniprot which uses different ID numbers
-			if(clusters[i][0].length() == 5 || (BioLookup.fastaType() != DataSource.UNIPROT)) {
-				//do standard verify
-				FASTA.verify(protName, chainName);
-			} else {
-				//if it's from uniprot, get the uniprotID and then verify
-				String[] lineData = ClusterReader.parseCompositeLine(clusters[i][0]);
-				try {
-					FASTA.verifyUniprot(lineData[0], lineData[1].charAt(0), lineData[2]);
-				} catch (DataRetrievalException e) {
-					qpl("Could not verify Uniprot fasta for: " + protName + chainName);
-					e.printStackTrace();
-				}
-			}
-			
-			//read the dominant chain from it's FASTA
-			try {
-				chainClusters[i] = new AlignedCluster(BioLookup.readChainFromFasta(clusters[i][0].substring(0, 4), clusters[i][0].charAt(4)));
-			} catch (FileNotFoundException e1) {
-				qpl("Clustering Error: could not read FASTA for chain: " + clusters[i][0]);
-				continue;
-			}
-			
-			//assign the secondary structure to the dominant chain
-			try {
-				BioLookup.assignSecondary(chainClusters[i].getDominant());
-			} catch (ResidueAlignmentException e) {
-				qpl("Clustering Error: Secondary structure match failed on index: " + i);
-			}
-			
-			//assign charge data to the dominant chain
-			chainClusters[i].getDominant().autoAssignCharges();
-			
-			//for the non-dominant chains in the cluster
-			for(int j = 1; j < clusters[i].length; ++j) {
-				//extract the protein's name
-				protName = clusters[i][j].substring(0, 4);
-				//extract the protein's chain
-				chainName = clusters[i][j].charAt(4);
-				ProteinChain compareChain = null;
-				
-				//if the length is 5 or it's NOT from uniprot which uses different ID numbers
-				if(clusters[i][j].length() == 5 || (BioLookup.fastaType() != DataSource.UNIPROT)) {
-					FASTA.verify(protName, chainName);
-				} else {
-					String[] lineData = ClusterReader.parseCompositeLine(clusters[i][j]);
-					try {
-						FASTA.verifyUniprot(lineData[0], lineData[1].charAt(0), lineData[2]);
-					} catch (DataRetrievalException e) {
-						qp("Could not verify Uniprot fasta for: " + protName + chainName);
-						e.printStackTrace();
-					}
-				}
-				
-				//read all of the non-dominant chains from the fasta
-				try {
-					compareChain = BioLookup.readChainFromFasta(clusters[i][j].substring(0, 4), clusters[i][j].charAt(4));
-				} catch (FileNotFoundException e2) {
-					qpl("Clustering Error: Could not read FASTA for chain: " + clusters[i][j]);
-					continue;
-				}
-				
-				///assign secondary structures to all of the non-dominant chains
-				try {
-					qpl("Assigning secondary structures to non-dominant chain: " + clusters[i][j]);
-					BioLookup.assignSecondary(compareChain);
-				} catch (ResidueAlignmentException e) {
-					qpl("Secondary structure match failed on index: " + i + "," + j + " (" + clusters[i][j] + ")");
-					e.printStackTrace();
-				}
-				
-				//add all of the non-dominant chains to the cluster
-				try {
-					chainClusters[i].addChain(compareChain);
-				} catch (ResidueAlignmentRuntimeException RARE) {
-					qpl("Need different UNIPROT ID for " + compareChain.fullID());
-					qpl(RARE.getMessage());
-				}
-				
-			}
-			chainClusters[i].markDominant(1);
-		}
+		//Create the chain clusters: independent clusters are built in parallel
+		ClusterBuilder builder = new ClusterBuilder(clusters);
+		AlignedCluster[] chainClusters = builder.build(ClusterBuilder.DEFAULT_THREADS);
+		builder.reportMessages();
+		builder.reportErrors();
 		return chainClusters;
 	}
 	
@@ -340,17 +261,15 @@ public class Bio extends JBioMain {
 			qpl("Error: could not assign isUnstruct data for: " + chain.getProteinName() + chain.getID());
 		}
 		
-		//always collect garbage here, otherwise risk out-of-memory error
+		//charges come from the in-memory ChargeTable: no connections or garbage per residue
 		for(int amino = 0; amino < chain.length(); ++amino) {
 			AminoAcid aa = chain.getAmino(amino);
 			
 			if(aa != null) {
 				if(aa.secondary() != null) {
-					BioLookup.assignChargeValues(chain.getAmino(amino));
+					BioLookup.assignChargeValues(aa);
 				}
 			}
-			
-			if(amino % 256 == 0) { System.gc(); }
 		}
 		
 		
@@ -368,7 +287,7 @@ public class Bio extends JBioMain {
 			if(!chain.entropy_init) {
 				try {
 					BioLookup.assignEntropy(chain);
-					BioIOStream.saveObject(myChains, saveFileName);
+					saveChain(index);
 				} catch (ResidueAlignmentException e) {
 					qpl("Error: could not assign data for: " + chain.getProteinName() + chain.getID());
 				} catch (PythonException pe) {
@@ -379,37 +298,109 @@ public class Bio extends JBioMain {
 	}
 	
 	/**
-	 * Loads an object file of saved protein chains into memory
-	 * @return: 
+	 * Loads the saved protein chains into memory
+	 * @return: the saved chains
 	 * @throws FileNotFoundException: if the file to read cannot be found
 	 */
-	@SuppressWarnings("unchecked")
 	static ArrayList<ProteinChain> loadSaved() throws FileNotFoundException {
-		return (ArrayList<ProteinChain>) BioIOStream.readObject(BioIOStream.SAVE_PATH + saveFileName);
+		ChainStore store = store();
+		ArrayList<ProteinChain> chains = store.load();
+		markSynced(store);
+		return chains;
+	}
+	
+	/**
+	 * Reload "myChains" from the save file, but only if the save file is not the one
+	 * that was last read or written by this program (another name, or changed on disk since)
+	 */
+	static void refreshSaved() {
+		ChainStore store = store();
+		File file = store.current();
+		if(file == null) { return; }
+		
+		if(saveFileName.equals(syncedName) && file.lastModified() == syncedModified && file.length() == syncedLength) {
+			return;
+		}
+		
+		try {
+			myChains = loadSaved();
+		} catch (FileNotFoundException e) { }
+	}
+	
+	/**
+	 * Write one chain of "myChains" to the save file
+	 * @param index: the index of the chain that changed
+	 */
+	static void saveChain(int index) {
+		ChainStore store = store();
+		store.save(myChains, index);
+		markSynced(store);
+	}
+	
+	/**
+	 * Write all of "myChains" to the save file
+	 */
+	static void writeSaved() {
+		ChainStore store = store();
+		store.saveAll(myChains);
+		markSynced(store);
+	}
+	
+	/**
+	 * @return: the store of the current save file
+	 */
+	private static ChainStore store() {
+		if(store == null || !store.name().equals(saveFileName)) { store = new ChainStore(saveFileName); }
+		return store;
+	}
+	
+	/**
+	 * Record that "myChains" matches the save file as it is now
+	 * @param store: the save file
+	 */
+	private static void markSynced(ChainStore store) {
+		File file = store.current();
+		if(file == null) { return; }
+		syncedName = saveFileName;
+		syncedModified = file.lastModified();
+		syncedLength = file.length();
 	}
 	
 	/**
 	 * Assigns vkabat to all chains in "myChains"
+	 * The secpred files that are already on disk are all read in parallel first
 	 */
 	static void assignVkabat() {
 		qpl("Assigning Vkabat");
-		for(int index = 0; index < myChains.size(); ++index) {
+		ArrayList<ProteinChain> pending = new ArrayList<ProteinChain>();
+		for(ProteinChain chain: myChains) {
+			if(!chain.vkabat_init) { pending.add(chain); }
+		}
+		
+		SecpredMatrix[] matrices = VkabatEngine.read(pending, VkabatEngine.DEFAULT_THREADS);
+		
+		for(int index = 0, next = 0; index < myChains.size(); ++index) {
 			ProteinChain chain = myChains.get(index);
 			
 			if(!chain.vkabat_init) {
+				SecpredMatrix matrix = matrices[next++];
 				qpl("Assigning Vkabat for " + chain.fullID());
 				try {
-					BioLookup.assignVkabat(chain);
+					if(matrix != null) {
+						BioLookup.assignVkabat(chain, matrix);
+					} else {
+						BioLookup.assignVkabat(chain);
+					}
 				} catch (ResidueAlignmentException e) {
 					qpl("Error: could not assign data for: " + chain.fullID());
 				} catch (DataValueOutOfRangeException e) {
 					qpl("Error: could not assign data for: " + chain.fullID());
 				}
-				BioIOStream.saveObject(myChains, saveFileName);
+				saveChain(index);
 			} else {
 				qpl("Already Assigned for " + chain.fullID());
 			}
-			
+		
 		}
 	}
 	
@@ -417,7 +408,7 @@ public class Bio extends JBioMain {
 	 * TODO (always todo)
 	 */
 	static void debug() {
-		
+	
 	}
 	
 	/**
@@ -488,7 +479,7 @@ public class Bio extends JBioMain {
 					
 					qpl("Added all " + chains.length + " chains of: " + params[i]);
 				}
-				
+			
 			//given the name of an individual chain
 			} else if(params[i].length() == 5) {
 				params[i] = params[i].toUpperCase();
@@ -513,7 +504,7 @@ public class Bio extends JBioMain {
 				} else {
 					qpl("Error: Unable to find chain: " + params[i]);
 				}
-				
+			
 			} else {
 				qpl("Error: " + params[i] + " is not a valid protein chain");
 			}
@@ -544,7 +535,7 @@ public class Bio extends JBioMain {
 					qpl("Error: Unable to find protein: " + params[i]);
 				}
 			}
-			
+		
 		}
 	}
 	
@@ -1,15 +1,13 @@
 package bioUI;
 
-import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 import analysis.CSVParser;
-import analysis.Prediction;
+import analysis.PredictionTable;
 import analysis.RegressionManager;
 import analysis.visualization.OverlayWriter;
 import bio.*;
-import bio.tools.BioIOStream;
 import bio.tools.BioLookup;
 import bio.tools.CSVWriter;
 import bio.tools.DataWriter;
@@ -57,7 +55,7 @@ public class JBioMain extends BaseTools {
 	
 	private static final String EMPTY[] = { "" }; 
 	
-	static Prediction[][] data;
+	static PredictionTable data;
 	
 	public static final void main(String args[]) {
 		log("Starting Program:");
@@ -95,9 +93,8 @@ public class JBioMain extends BaseTools {
 			
 			log("User Entered: \"" + line + "\"\nInterpreted as: \"" + toStringFromArray(params) + "\"");
 			
-			try {
-				myChains = Bio.loadSaved();
-			} catch (FileNotFoundException e) { }
+			//only reads the save file if it changed outside of this program
+			Bio.refreshSaved();
 			
 			switch(params[0]) {
 			case "help":					showHelpMenu();												break;
@@ -169,8 +166,11 @@ public class JBioMain extends BaseTools {
 			//case "load-i":				Stats.loadData(TEST_FILE);									break;
 			case "scan":					if(data != null) { Stats.scan(); } else { Stats.nullErr(); }	break;
 			//case "roc":					Stats.rocStats(params, null);							break;
+			case "auc":					if(data != null) { Stats.aucReport(params); } else { Stats.nullErr(); }	break;
 			case "fit-roc":
 			case "roc-fit":				Stats.rocFit(params);										break;
+			case "batch-roc":
+			case "roc-batch":			Stats.rocBatch(params);										break;
 			case "load":					disambiguateLoad(params);									break;
 			
 			case "overlay":	for(ProteinChain chain: myChains) { OverlayWriter.writeOverlay(chain); }	break;
@@ -186,11 +186,13 @@ public class JBioMain extends BaseTools {
 			case "log-reg":				RegressionManager.logistic_regression(params, input);			break;
 			case "logreg3":	
 			case "log-reg3":				RegressionManager.logistic_regression(params, input, 3);		break;
+			case "cv":
+			case "cross-validate":		RegressionManager.cross_validation(params);						break;
 			case "":																					break;
 			default:						qp("Instruction not recognized.");
 			}
 			
-			if(save) { BioIOStream.saveObject(myChains, saveFileName); }
+			if(save) { Bio.writeSaved(); }
 		}
 	}
 	
@@ -3,21 +3,20 @@ package bioUI;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
 
 import analysis.CSVParser;
 import analysis.Descriptor;
-import analysis.Prediction;
+import analysis.ROCBatchModule;
 import analysis.PropensityRecord;
 import analysis.ResultsFusionModule;
-import analysis.stats.ROCRecord;
-import analysis.visualization.ROCVisualizer;
+import analysis.SwitchReport;
+import analysis.stats.AUCAnalysis;
+import analysis.stats.PropensityHistogram;
 import bio.exceptions.InvalidResolutionException;
 import bio.exceptions.MissingDataException;
 
@@ -30,8 +29,7 @@ import bio.exceptions.MissingDataException;
 
 public class Stats extends JBioMain {
 	private static final int DEFAULT_PROPENSITY_INTERVALS = 20; 
-	
-	private static DecimalFormat thresholdFormatter;
+	private static final int DEFAULT_BOOTSTRAP_REPLICATES = 2000;
 	
 	//the last file that data was read from
 	protected static String lastLoadedFileName;
@@ -72,7 +70,11 @@ public class Stats extends JBioMain {
 	
 	/**
 	 * Generates a file with the ROC data for the predictions in memory
+	 * The predictions are sorted once by ROCEngine, so each threshold costs a binary search
+	 * per descriptor combination instead of a rescan of all of the data.
 	 * @param args
+	 * 		"print" prints every record to the console
+	 * 		"exact" writes one point per distinct propensity instead of using fixed thresholds
 	 * @param thresholdIncrement
 	 */
 	static void rocFit(String[] args, double thresholdIncrement) {
@@ -81,172 +83,127 @@ public class Stats extends JBioMain {
 		}
 		
 		String logName = makeLogFileName();
-		ROCVisualizer visualizer = new ROCVisualizer(logName);
 		qpl("Computing ROC Stats for: " + logName);
 		
-		File rocLog = new File(logName);
-		if(rocLog.exists()) { rocLog.delete(); }
+		boolean print = false, exact = false;
+		if(args != null) {
+			print = stringArrayContains(args, "print");
+			exact = stringArrayContains(args, "exact");
+		}
 		
-		PrintWriter rocWriter = null;
 		try {
-			rocWriter = new PrintWriter(new FileOutputStream(new File(logName),true));
-			rocWriter.write(ROCRecord.fullROCLogHeader() + "\n");
-			rocWriter.close();
+			ROCBatchModule.rocFit(data, lastLoadedFileName, thresholdIncrement, exact, print);
 		} catch (FileNotFoundException e) {
 			qp("Error writing ROC log.");
 			e.printStackTrace();
-			return;
-		}
-		
-		setThresholdFormatterToProperlyFormat(thresholdIncrement);
-		
-		for(double threshold = 0.0; threshold < 1.0; threshold += thresholdIncrement) {
-			String arguments[] = { "log", ""+threshold, "" };
-			if(args != null) {
-				if(stringArrayContains(args, "print")) { arguments[2] = "print"; }
-			}
-			rocStats(arguments, visualizer);
 		}
-		
-		visualizer.makePlot(thresholdIncrement);
 	}
-
+	
 	/**
-	 * Print out the ROC stats for a given threshold
-	 * @param visualizer 
-	 * @param args: arguments to modify the function's behavior
-	 * 		args[1] is the threshold: if no threshold is specified, the user will be asked for one
-	 * 		"log" tells the function to append the printed to a log file
-	 * 		no other arguments are valid at this time
-	 * 
-	 * @return an array containing the ratios
+	 * Fits ROC curves to every fused prediction file in a directory or manifest, several at a time,
+	 * and writes a summary table of AUC, best Youden threshold and accuracy.
+	 * This does not use or change the prediction data in memory.
+	 * @param args:
+	 * 		args[1] = directory or manifest file
+	 * 		a number sets the maximum number of files to process at once
+	 * 		"exact" writes one point per distinct propensity instead of using fixed thresholds
 	 */
-	private static double[] rocStats(String[] args, ROCVisualizer visualizer) {
-		dqp("rocStats(): " + args[1]);
-		//do we write the results to a file
-		boolean log = stringArrayContains(args, "log");
-		//the threshold to evaluate at
-		//the default value of -1 triggers the program to prompt the user for a valid threshold
-		double threshold = -1;
+	static void rocBatch(String[] args) {
+		String source = "";
 		
-		boolean print = stringArrayContains(args, "print");
-		
-		if(args != null) {
-			if(args.length >= 2) {
-				if(args[1] != null) {
-					try {
-						threshold = Double.parseDouble(args[1].trim());
-					} catch (NumberFormatException NFE) { }
-				}
-			}
+		if(args.length < 2) {
+			qp("Enter: directory or manifest of fused prediction files");
+			try {
+				source = input.nextLine().trim();
+			} catch (NoSuchElementException NSEE) { return; }
+		} else {
+			source = args[1];
 		}
 		
-		//if the threshold is invalid
-		while(threshold < 0 || threshold > 1) {
-			String line = "";
-			
-			qp("Enter threshold: between 0 and 1");
-			try {
-				line = input.nextLine();
-			} catch (NoSuchElementException NSEE) { }
-			
-			try {
-				threshold = Double.parseDouble(line.trim());
-			} catch (NumberFormatException NFE) {
-				qp("Could not parse threshold");
-			}
+		int threads = Runtime.getRuntime().availableProcessors();
+		for(int index = 2; index < args.length; ++index) {
+			try { threads = Integer.parseInt(args[index]); } catch (NumberFormatException NFE) { }
 		}
 		
-		double[] retval = new double[SET_SIZE+1];
-		ROCRecord records[] = new ROCRecord[SET_SIZE+1];
+		boolean exact = stringArrayContains(args, "exact");
 		
-		//initialize the ROCRecords in the array with the descriptors they are using
-		for (int index = 0; index < SET_SIZE; index++) {
-			records[index] = new ROCRecord(Descriptor.label(CSVParser.DESCRIPTOR_LIST[index]));
+		String[] files;
+		try {
+			files = ROCBatchModule.listFiles(source);
+		} catch (MissingDataException MDE) {
+			qp(MDE.getMessage());
+			return;
 		}
 		
-		//the last ROCRecord is the total
-		records[SET_SIZE] = new ROCRecord(TOTAL);
-		
-		for(Prediction[] set: data) {
-			//this is the sum of all of the propensities, which gets used as a kind of average
-			double totalPropensity = 0;
-			
-			for(int index = 0; index < set.length; ++index) {
-				totalPropensity += set[index].propensity();
-				if(set[index].isSwitch()) {
-					if(set[index].propensity() >= threshold) {
-						++records[index].truePos;
-					} else {
-						++records[index].falseNeg;
-					}
-				} else {
-					if(set[index].propensity() >= threshold) {
-						++records[index].falsePos;
-					} else {
-						++records[index].trueNeg;
-					}
+		qpl("Computing ROC Stats for " + files.length + " file(s) from: " + source);
+		ROCBatchModule.runBatch(files, threads, ROCBatchModule.DEFAULT_INCREMENT, exact, ROCBatchModule.DEFAULT_SUMMARY_FILE);
+		qpl("Wrote ROC summary to: " + ROCBatchModule.DEFAULT_SUMMARY_FILE);
+	}
+	
+	/**
+	 * Prints the exact AUC of every descriptor combination with its DeLong 95% confidence interval,
+	 * and writes the p-values of DeLong's test between every pair of combinations to a csv.
+	 * @param args:
+	 * 		"boot" also computes 95% bootstrap confidence intervals
+	 * 		a number after "boot" sets the number of bootstrap replicates
+	 * 		"seed" followed by a number sets the seed of the bootstrap (printed, so a run can be repeated)
+	 */
+	static void aucReport(String[] args) {
+		AUCAnalysis analysis = AUCAnalysis.fromTable(data);
+		double[][] bootstrap = null;
+		
+		boolean boot = false;
+		int replicates = DEFAULT_BOOTSTRAP_REPLICATES;
+		long seed = System.nanoTime();
+		for(int index = 1; args != null && index < args.length; ++index) {
+			if(args[index].equals("boot")) {
+				boot = true;
+				if(index+1 < args.length) {
+					try { replicates = Integer.parseInt(args[index+1]); ++index; } catch (NumberFormatException NFE) { }
 				}
+			} else if(args[index].equals("seed") && index+1 < args.length) {
+				try { seed = Long.parseLong(args[++index]); } catch (NumberFormatException NFE) { qp("Could not parse seed: " + args[index]); }
 			}
-			
-			if(set[0].isSwitch()) {
-				if(totalPropensity >= (threshold*SET_SIZE)) {
-					++records[SET_SIZE].truePos;
-				} else {
-					++records[SET_SIZE].falseNeg;
-				}
-			} else {
-				if(totalPropensity >= (threshold*SET_SIZE)) {
-					++records[SET_SIZE].falsePos;
-				} else {
-					++records[SET_SIZE].trueNeg;
-				}
-			}	
 		}
 		
-		//start writing the results
-		PrintWriter rocWriter = null;
-		boolean opened = false;
-		if(log) {
-			try {
-				rocWriter = new PrintWriter(new FileOutputStream(new File(makeLogFileName()),true));
-				opened = true;
-			} catch (FileNotFoundException e) {
-				e.printStackTrace();
-			}
+		if(boot) {
+			qpl("Bootstrapping AUC with " + replicates + " replicates (seed: " + seed + ")");
+			bootstrap = analysis.bootstrap(replicates, seed);
 		}
 		
-		for(int index = 0; index < SET_SIZE+1; ++index) {
-			if(print) {
-				qp(records[index]);
-				qp("True  Positive: " + records[index].truePos);
-				qp("False Positive: " + records[index].falsePos);
-				qp("True  Negative: " + records[index].trueNeg);
-				qp("False Negative: " + records[index].falseNeg);
-			}
-			
-			if(records[index].falsePos == 0) {
-				retval[index] = 0;
-			} else {
-				retval[index] = (double) records[index].truePos / (double) records[index].falsePos;
-			}
+		qp(DIVIDER);
+		for(int col = 0; col < analysis.columns(); ++col) {
+			double[] ci = analysis.confidenceInterval(col, AUCAnalysis.Z_95);
+			StringBuilder lineBuilder = new StringBuilder();
+			lineBuilder.append(analysis.label(col) + ": " + analysis.auc(col));
+			lineBuilder.append(" DeLong 95% CI [" + ci[0] + ", " + ci[1] + "]");
 			
-			if(opened) {
-				String logRow = thresholdFormatter.format(threshold) + "," + records[index].toCSVRow();
-				if(print) { qp(logRow); }
-				rocWriter.write(logRow + "\n");
+			if(bootstrap != null) {
+				double[] bootCI = AUCAnalysis.percentileInterval(bootstrap[col], 0.95);
+				lineBuilder.append(" Bootstrap 95% CI [" + bootCI[0] + ", " + bootCI[1] + "]");
 			}
 			
-			if(print) { qp(">T/F Pos Ratio: " + retval[index] + "\n"); }
+			qp(lineBuilder.toString());
 		}
+		qp(DIVIDER);
+		
+		String logName = makeLogFileName("-delong.csv");
+		double[][] pValues = analysis.deLongMatrix();
+		String lines[] = new String[analysis.columns()+1];
 		
-		if(opened) { rocWriter.close(); }
+		StringBuilder headerBuilder = new StringBuilder("Description,AUC,Variance");
+		for(int col = 0; col < analysis.columns(); ++col) { headerBuilder.append("," + analysis.label(col)); }
+		lines[0] = headerBuilder.toString();
 		
-		if(visualizer != null) {
-			visualizer.addRecords(records);
+		for(int row = 0; row < analysis.columns(); ++row) {
+			StringBuilder lineBuilder = new StringBuilder();
+			lineBuilder.append(analysis.label(row) + "," + analysis.auc(row) + "," + analysis.variance(row));
+			for(int col = 0; col < analysis.columns(); ++col) { lineBuilder.append("," + pValues[row][col]); }
+			lines[row+1] = lineBuilder.toString();
 		}
 		
-		return retval;
+		writeFileLines(logName, lines);
+		qpl("Wrote DeLong p-values to: " + logName);
 	}
 	
 	/**
@@ -277,20 +234,18 @@ public class Stats extends JBioMain {
 			try { propensity_intervals = Integer.parseInt(args[1]); } catch (NumberFormatException NFE) { }
 		}
 		
-		PropensityRecord records[] = new PropensityRecord[SET_SIZE+1];
+		if(data == null) { throw new MissingDataException("No prediction data has been loaded!"); }
 		
-		for (int index = 0; index < SET_SIZE; index++) {
-			records[index] = new PropensityRecord(Descriptor.label(CSVParser.DESCRIPTOR_LIST[index]), propensity_intervals);
-		}
-		
-		records[SET_SIZE] = new PropensityRecord(TOTAL, propensity_intervals);
+		PropensityHistogram histogram = PropensityHistogram.fromTable(data, propensity_intervals, Runtime.getRuntime().availableProcessors());
 		
-		for(Prediction[] set: data) {
-			for(int index = 0; index < set.length; ++index) {
-				records[index].processPrediction(set[index]);
-				records[SET_SIZE].processPrediction(set[index]);
+		PropensityRecord records[] = new PropensityRecord[histogram.columns()+1];
+		for(int index = 0; index < histogram.columns(); ++index) {
+			records[index] = histogram.record(index);
+			if(histogram.skipped(index) > 0) {
+				qerr(histogram.label(index) + ": skipped " + histogram.skipped(index) + " propensities that are missing or outside [0,1]");
 			}
 		}
+		records[histogram.columns()] = histogram.totalRecord(TOTAL);
 		
 		qp(DIVIDER);
 		for(PropensityRecord r: records) { 
@@ -352,24 +307,24 @@ public class Stats extends JBioMain {
 		
 		for(int index = 0; index < minimums.length; ++index) { minimums[index] = 1; }
 		
-		for(Prediction[] set: data) {
-			for(int index = 0; index < set.length; ++index) {
-				if(set[index].propensity() < minimums[index]) {
-					minimums[index] = set[index].propensity();
-				}
-				
-				if(set[index].propensity() > maximums[index]) {
-					maximums[index] = set[index].propensity();
+		for(int index = 0; index < data.columns(); ++index) {
+			for(double propensity: data.column(index)) {
+				if(propensity < minimums[index]) {
+					minimums[index] = propensity;
 				}
 				
-				if(set[index].propensity() < minimums[SET_SIZE]) {
-					minimums[SET_SIZE] = set[index].propensity();
-				}
-				
-				if(set[index].propensity() > maximums[SET_SIZE]) {
-					maximums[SET_SIZE] = set[index].propensity();
+				if(propensity > maximums[index]) {
+					maximums[index] = propensity;
 				}
 			}
+			
+			if(minimums[index] < minimums[SET_SIZE]) {
+				minimums[SET_SIZE] = minimums[index];
+			}
+			
+			if(maximums[index] > maximums[SET_SIZE]) {
+				maximums[SET_SIZE] = maximums[index];
+			}
 		}
 		
 		for(int index = 0; index < SET_SIZE; ++index) {
@@ -398,9 +353,11 @@ public class Stats extends JBioMain {
 	static void getAvgError() {
 		double errors[] = new double[CSVParser.descriptors()];
 		
-		for(Prediction[] set: data) {
-			for(int i = 0; i < CSVParser.descriptors(); ++i) {
-				errors[i] += set[i].error();
+		boolean[] switches = data.switches();
+		for(int i = 0; i < CSVParser.descriptors(); ++i) {
+			double[] column = data.column(i);
+			for(int row = 0; row < column.length; ++row) {
+				errors[i] += (switches[row]) ? 1 - column[row] : column[row];
 			}
 		}
 		
@@ -414,7 +371,7 @@ public class Stats extends JBioMain {
 		
 		for(int i = 0; i < CSVParser.descriptors(); ++i) {
 			while(errorStr[i].length() < maxStrLen) { errorStr[i] += " "; }
-			errors[i] /= data.length;
+			errors[i] /= data.size();
 			qp(errorStr[i] + ": " + errors[i]);
 		}
 	}
@@ -426,12 +383,13 @@ public class Stats extends JBioMain {
 		double errors[] = new double[CSVParser.descriptors()];
 		int switches = 0;
 		
-		for(Prediction[] set: data) {
-			if(set[0].isSwitch()) {
-				for(int i = 0; i < CSVParser.descriptors(); ++i) {
-					errors[i] += set[i].error();
-				}
-				++switches;
+		boolean[] isSwitch = data.switches();
+		for(boolean b: isSwitch) { if(b) { ++switches; } }
+		
+		for(int i = 0; i < CSVParser.descriptors(); ++i) {
+			double[] column = data.column(i);
+			for(int row = 0; row < column.length; ++row) {
+				if(isSwitch[row]) { errors[i] += 1 - column[row]; }
 			}
 		}
 		
@@ -459,29 +417,35 @@ public class Stats extends JBioMain {
 			return;
 		}
 		
-		for(Prediction[] set: data) {
-			for(Prediction pred: set) {
-				qp(pred);
+		for(int row = 0; row < data.size(); ++row) {
+			for(int col = 0; col < data.columns(); ++col) {
+				qp(data.prediction(row, col));
 			}
 		}
 	}
 	
 	/**
-	 * 
+	 * List the residues in a (patched) data file with a propensity above one or more thresholds
+	 * 		args[1] = file to read
+	 * 		args[2] = file to write
+	 * 		args[3...] = thresholds: with more than one, one list is written per column and threshold
 	 */
 	public static void generateCSVReport(String[] args) {
 		String line = "";
 		String inFile = "", outFile = "";
-		double threshold = 0.5;
+		double thresholds[] = { 0.5 };
 		
 		if(args.length > 3) {
 			inFile = args[1];
 			outFile = args[2];
-			try {
-				threshold = Double.parseDouble(args[3]);
-			} catch (NumberFormatException NFE) {
-				qp("Could not parse threhhold");
-				threshold = getDoubleFromUser("Please enter threshold:");
+			thresholds = new double[args.length-3];
+			for(int index = 0; index < thresholds.length; ++index) {
+				try {
+					thresholds[index] = Double.parseDouble(args[index+3]);
+				} catch (NumberFormatException NFE) {
+					qp("Could not parse threhhold: " + args[index+3]);
+					thresholds[index] = getDoubleFromUser("Please enter threshold:");
+				}
 			}
 		} else {
 			qp("Enter: [file-to-read] [file-to-write] [threshold]: (without brackets)");
@@ -495,7 +459,7 @@ public class Stats extends JBioMain {
 				line = line.substring(line.indexOf(DELIMITER)+1);
 				outFile = line.substring(0, line.indexOf(DELIMITER));
 				line = line.substring(line.indexOf(DELIMITER)+1);
-				threshold = Double.parseDouble(line.trim());
+				thresholds[0] = Double.parseDouble(line.trim());
 			} catch (RuntimeException re) {
 				qp("Could not parse input.");
 				re.printStackTrace();
@@ -503,7 +467,11 @@ public class Stats extends JBioMain {
 			}
 		}
 		
-		generateCSVReport(inFile, outFile, threshold);
+		if(thresholds.length == 1) {
+			generateCSVReport(inFile, outFile, thresholds[0]);
+		} else {
+			generateCSVReport(inFile, outFile, thresholds);
+		}
 	}
 	
 	/**
@@ -532,63 +500,41 @@ public class Stats extends JBioMain {
 	}
 	
 	/**
-	 * 
-	 * @param fileName
-	 * @param threshold
-	 * @return
-	 * @throws IOException
+	 * List the residues in a (patched) data file with a propensity above each of the given thresholds.
+	 * The file is read once; one list is written per column and threshold (outFile-column-threshold.txt)
+	 * @param inFile: the file to read from
+	 * @param outFile: the start of the names of the files to write
+	 * @param thresholds: the propensity thresholds
 	 */
-	public static ArrayList<String> analyze(String fileName, double threshold) throws IOException {
-		if(!fileName.endsWith(ResultsFusionModule.CSV)) { fileName += ResultsFusionModule.CSV; }
-		
-		BufferedReader reader = new BufferedReader(new FileReader(fileName));
-		
-		String header = reader.readLine();
-		
-		header = header.replaceAll("Predicted Values Model:isSwitch ~", "");
-		header = header.replaceAll("[()]", "");
-		header = header.replaceAll("[\"]", "");
-		header = header.replaceAll("CResidue, levels=SideChainIDs", "Residue Type");
-		
-		String columns[] = header.split(",");
-		
-		//qp(columns);
-		//qp(columns.length);
-		//qp("");
-		
-		ArrayList<String[]> dataList = new ArrayList<String[]>();
-		ArrayList<String> switchList = new ArrayList<String>();
+	public static void generateCSVReport(String inFile, String outFile, double[] thresholds) {
+		inFile = determineTrueFileName(inFile);
 		
-		for(String dataLine = reader.readLine(); reader.ready(); dataLine = reader.readLine()) {
-			String data[] = dataLine.split(",");
-			//qp(data.length);
-			dataList.add(data);
+		if(!outFile.contains("/")) {
+			outFile = OUTPUT + outFile;
 		}
-		
-		reader.close();
-		
-		for(int index = 0; index < dataList.size(); ++index) {
-			
-			for(int row_index = 3; row_index < columns.length-1; ++row_index) {
-				
-				double val = Double.parseDouble(dataList.get(index)[row_index]);
-				if(val >= threshold) {
-					StringBuilder entryBuilder = new StringBuilder();
-					entryBuilder.append(dataList.get(index)[1]);
-					entryBuilder.append(" [");
-					entryBuilder.append(formatInt3(dataList.get(index)[0]));
-					entryBuilder.append("] (");
-					entryBuilder.append(dataList.get(index)[2]);
-					entryBuilder.append(") ");
-					entryBuilder.append(columns[row_index]);
-					entryBuilder.append(": ");
-					entryBuilder.append(dataList.get(index)[row_index]);
-					switchList.add(entryBuilder.toString());
-				}
-			}
+		if(outFile.endsWith(".csv") || outFile.endsWith(".txt")) {
+			outFile = outFile.substring(0, outFile.length()-4);
 		}
 		
-		return switchList;
+		try {
+			SwitchReport report = SwitchReport.read(inFile);
+			report.writeReports(outFile, thresholds, SwitchReport.DEFAULT_THREADS);
+			qp("Wrote " + (report.columns() * thresholds.length) + " switch lists for " + inFile);
+		} catch (IOException e) {
+			qpl("Unable to Generate CSV Report for " + inFile);
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * List the propensities in a (patched) data file that are at or above the threshold
+	 * @param fileName: the file to read from
+	 * @param threshold: the propensity threshold
+	 * @return: one entry per propensity, row by row: "chain [number] (letter) column: propensity"
+	 * @throws IOException: if the file can't be read
+	 */
+	public static ArrayList<String> analyze(String fileName, double threshold) throws IOException {
+		return SwitchReport.read(fileName).entries(threshold);
 	}
 	
 	/**
@@ -613,24 +559,16 @@ public class Stats extends JBioMain {
 	 * @return name of the roc-log file
 	 */
 	private static String makeLogFileName() {
-		if(lastLoadedFileName == null) {
-			throw new MissingDataException("No prediction data has been loaded!");
-		}
-		
-		String logFileName;
-		if(lastLoadedFileName.endsWith(CSV)) {
-			logFileName = lastLoadedFileName.substring(0, lastLoadedFileName.indexOf(CSV));
-		} else {
-			logFileName = lastLoadedFileName;
-		}
-		
-		if(logFileName.contains("/")) {
-			logFileName.substring(logFileName.indexOf("/")+1);
-		}
-		
-		logFileName = logFileName + "-roc-log.csv";
-		
-		return logFileName;
+		return makeLogFileName(ROCBatchModule.ROC_LOG_SUFFIX);
+	}
+	
+	/**
+	 * Determine the name of a log file for the last loaded data
+	 * @param suffix: the end of the file name, such as "-roc-log.csv"
+	 * @return name of the log file
+	 */
+	private static String makeLogFileName(String suffix) {
+		return ROCBatchModule.logFileName(lastLoadedFileName, suffix);
 	}
 	
 	/**
@@ -698,27 +636,4 @@ public class Stats extends JBioMain {
 		
 		return dataList;
 	}
-	
-	/**
-	 * Properly set the decimal formatter
-	 * @param decimal
-	 */
-	private static void setThresholdFormatterToProperlyFormat(double decimal) {
-		double thresholdLog = Math.log10(decimal);
-		int thresholdFormat = (int) thresholdLog;
-		
-		if(thresholdFormat > thresholdLog) {
-			thresholdLog -= 1;
-		}
-		 
-		thresholdFormat *= -1;
-		
-		StringBuilder thresholdFormatBuilder = new StringBuilder();
-		thresholdFormatBuilder.append(".");
-		for(int i = 0; i < thresholdFormat; ++i) {
-			thresholdFormatBuilder.append("#");
-		}
-		
-		thresholdFormatter = new DecimalFormat(thresholdFormatBuilder.toString());
-	}
 }
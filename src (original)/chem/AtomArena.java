@@ -0,0 +1,228 @@
+package chem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+
+import util.Coordinate;
+
+/**
+ * Stores the atoms of a protein chain as parallel primitive arrays (one entry per atom)
+ * instead of one Atom, Coordinate and Hashtable entry per atom.
+ *
+ * Atoms are grouped by residue: residue r owns atoms firstAtom(r) up to (not including) endAtom(r).
+ * Atom names, element symbols and residue names are stored as codes into a small table of labels.
+ *
+ * Atom objects are only made on demand, by atom(index).
+ *
+ * @author Benjy Strauss
+ *
+ */
+
+public class AtomArena extends ChemObject {
+	private static final long serialVersionUID = 1L;
+	private static final int DEFAULT_CAPACITY = 1024;
+	
+	//per atom
+	private float[] x, y, z;
+	private float[] occupancy;
+	private float[] tempFactor;
+	private int[] serial;
+	private short[] name;
+	private short[] symbol;
+	private int atoms;
+	
+	//per residue: the index of its first atom, its number in the chain, and its name
+	private int[] residueStart;
+	private int[] residueNumber;
+	private short[] residueName;
+	private int residues;
+	
+	//atom names, element symbols and residue names, by code
+	private ArrayList<String> labels;
+	private Hashtable<String, Short> labelLookup;
+	
+	/**
+	 * Make an empty AtomArena
+	 */
+	public AtomArena() { this(DEFAULT_CAPACITY); }
+	
+	/**
+	 * Make an empty AtomArena
+	 * @param capacity: the expected number of atoms
+	 */
+	public AtomArena(int capacity) {
+		if(capacity < 1) { capacity = 1; }
+		x = new float[capacity];
+		y = new float[capacity];
+		z = new float[capacity];
+		occupancy = new float[capacity];
+		tempFactor = new float[capacity];
+		serial = new int[capacity];
+		name = new short[capacity];
+		symbol = new short[capacity];
+		
+		int residueCapacity = max(1, capacity / 8);
+		residueStart = new int[residueCapacity];
+		residueNumber = new int[residueCapacity];
+		residueName = new short[residueCapacity];
+		
+		labels = new ArrayList<String>();
+		labelLookup = new Hashtable<String, Short>();
+	}
+	
+	/**
+	 * Get the code for a label, adding it to the table if needed
+	 * @param label: an atom name, element symbol or residue name
+	 * @return: the code for the label
+	 */
+	public short code(String label) {
+		Short code = labelLookup.get(label);
+		if(code == null) {
+			if(labels.size() > Short.MAX_VALUE) { throw new ArrayIndexOutOfBoundsException("Too many labels"); }
+			code = (short) labels.size();
+			labels.add(label);
+			labelLookup.put(label, code);
+		}
+		return code;
+	}
+	
+	/**
+	 * @param code: a code from code()
+	 * @return: the label with that code
+	 */
+	public String label(short code) { return labels.get(code); }
+	
+	/**
+	 * Start a new residue: atoms added after this belong to it
+	 * @param number: the residue number in the chain
+	 * @param nameCode: the code of the residue's name
+	 * @return: the index of the new residue
+	 */
+	public int addResidue(int number, short nameCode) {
+		if(residues == residueStart.length) {
+			int capacity = residues * 2;
+			residueStart = Arrays.copyOf(residueStart, capacity);
+			residueNumber = Arrays.copyOf(residueNumber, capacity);
+			residueName = Arrays.copyOf(residueName, capacity);
+		}
+		
+		residueStart[residues] = atoms;
+		residueNumber[residues] = number;
+		residueName[residues] = nameCode;
+		return residues++;
+	}
+	
+	/**
+	 * Add an atom to the last residue
+	 * @param serialNo: the atom's serial number
+	 * @param nameCode: the code of the atom's name
+	 * @param symbolCode: the code of the atom's element symbol
+	 * @param x, y, z: the atom's position
+	 * @param occ: the atom's occupancy
+	 * @param temp: the atom's temperature factor
+	 * @return: the index of the new atom
+	 */
+	public int addAtom(int serialNo, short nameCode, short symbolCode, float x, float y, float z, float occ, float temp) {
+		if(atoms == serial.length) { resize(atoms * 2); }
+		
+		serial[atoms] = serialNo;
+		name[atoms] = nameCode;
+		symbol[atoms] = symbolCode;
+		this.x[atoms] = x;
+		this.y[atoms] = y;
+		this.z[atoms] = z;
+		occupancy[atoms] = occ;
+		tempFactor[atoms] = temp;
+		return atoms++;
+	}
+	
+	/**
+	 * Release any unused capacity
+	 */
+	public void trim() {
+		if(atoms != serial.length) { resize(atoms); }
+		if(residues != residueStart.length) {
+			residueStart = Arrays.copyOf(residueStart, residues);
+			residueNumber = Arrays.copyOf(residueNumber, residues);
+			residueName = Arrays.copyOf(residueName, residues);
+		}
+	}
+	
+	/**
+	 * Change the atom capacity of the arena
+	 * @param capacity: the new capacity
+	 */
+	private void resize(int capacity) {
+		capacity = max(1, capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		z = Arrays.copyOf(z, capacity);
+		occupancy = Arrays.copyOf(occupancy, capacity);
+		tempFactor = Arrays.copyOf(tempFactor, capacity);
+		serial = Arrays.copyOf(serial, capacity);
+		name = Arrays.copyOf(name, capacity);
+		symbol = Arrays.copyOf(symbol, capacity);
+	}
+	
+	/** @return: the number of atoms in the arena */
+	public int atomCount() { return atoms; }
+	/** @return: the number of residues in the arena */
+	public int residueCount() { return residues; }
+	
+	/** @return: the residue number of residue r in the chain */
+	public int residueNumber(int r) { return residueNumber[r]; }
+	/** @return: the name of residue r, such as "ALA" */
+	public String residueName(int r) { return labels.get(residueName[r]); }
+	/** @return: the index of the first atom of residue r */
+	public int firstAtom(int r) { return residueStart[r]; }
+	/** @return: one past the index of the last atom of residue r */
+	public int endAtom(int r) { return (r+1 < residues) ? residueStart[r+1] : atoms; }
+	
+	public float x(int atom) { return x[atom]; }
+	public float y(int atom) { return y[atom]; }
+	public float z(int atom) { return z[atom]; }
+	public float occupancy(int atom) { return occupancy[atom]; }
+	public float tempFactor(int atom) { return tempFactor[atom]; }
+	public int serialNo(int atom) { return serial[atom]; }
+	public String name(int atom) { return labels.get(name[atom]); }
+	public String symbol(int atom) { return labels.get(symbol[atom]); }
+	
+	/**
+	 * Find an atom of a residue by name
+	 * @param r: the residue
+	 * @param atomName: the name of the atom, such as "CA"
+	 * @return: the index of the atom, or -1 if the residue doesn't have it
+	 */
+	public int find(int r, String atomName) {
+		Short code = labelLookup.get(atomName);
+		if(code == null) { return -1; }
+		
+		for(int atom = firstAtom(r), end = endAtom(r); atom < end; ++atom) {
+			if(name[atom] == code) { return atom; }
+		}
+		return -1;
+	}
+	
+	/**
+	 * Make an Atom object for an atom in the arena
+	 * The Atom is a copy: changing it does not change the arena
+	 * @param atom: the index of the atom
+	 * @return: a new Atom
+	 */
+	public Atom atom(int atom) {
+		Atom retVal = new Atom(symbol(atom), name(atom));
+		retVal.setPos(new Coordinate(x[atom], y[atom], z[atom]));
+		retVal.setOccupancy(occupancy[atom]);
+		retVal.setTempFactor(tempFactor[atom]);
+		retVal.setSerialNo(serial[atom]);
+		return retVal;
+	}
+	
+	@Override
+	public String impliedFileName() { return toString(); }
+	
+	public String toString() {
+		return "AtomArena (" + residues + " residues, " + atoms + " atoms)";
+	}
+}
@@ -36,6 +36,9 @@ public abstract class BaseTools {
 	
 	private static boolean system_debug_mode = false;
 	
+	//where a thread's console output goes while it is held back (see holdOutput())
+	private static final ThreadLocal<List<String>> heldOutput = new ThreadLocal<List<String>>();
+	
 	/*
 	 * Currently unused
 	 * This string is supposed to be a string that the user would never enter via the terminal.
@@ -302,7 +305,7 @@ public abstract class BaseTools {
 		qp(arg0);
 	}
 	
-	protected static final void log(String arg0) {
+	protected static final synchronized void log(String arg0) {
 		FileWriter logWriter;
 		LocalDateTime now = LocalDateTime.now();
 		
@@ -391,6 +394,47 @@ public abstract class BaseTools {
 		return resultBuilder.toString();
 	}
 	
+	/**
+	 * Hold back everything the current thread prints (with qp, qpl, qps, dqp or qerr), so that
+	 * work running on several threads at once doesn't interleave its lines on the console
+	 * The lines are added to the list instead, to be printed once the work is done
+	 * qpl still writes to the log as it happens
+	 * @param messages: where to put the lines
+	 */
+	protected static final void holdOutput(List<String> messages) {
+		heldOutput.set(messages);
+	}
+	
+	/**
+	 * Print to the console again, after holdOutput()
+	 * @return: the list the thread's output was going to, or null if it wasn't held back
+	 */
+	protected static final List<String> releaseOutput() {
+		List<String> messages = heldOutput.get();
+		heldOutput.remove();
+		return messages;
+	}
+	
+	/**
+	 * @param arg0: the object to print
+	 * @param prefix: what to put before each line
+	 * @param suffix: what to put after each line
+	 * @return: true if the current thread's output is held back (the lines have been added to its list)
+	 */
+	private static boolean held(Object arg0, String prefix, String suffix) {
+		List<String> messages = heldOutput.get();
+		if(messages == null) { return false; }
+		
+		if(arg0 != null && arg0.getClass().isArray()) {
+			for(Object o: (Object[]) arg0) { messages.add(prefix + o + suffix); }
+		} else if(arg0 instanceof List) {
+			for(Object o: (List<?>) arg0) { messages.add(prefix + o + suffix); }
+		} else {
+			messages.add(prefix + arg0 + suffix);
+		}
+		return true;
+	}
+	
 	protected static final void dqp(Object arg0) {
 		if(system_debug_mode) { qp(arg0); }
 	}
@@ -400,6 +444,7 @@ public abstract class BaseTools {
 	 * @param arg0: the object to print
 	 */
 	protected static final void qp(Object arg0) {
+		if(held(arg0, "", "")) { return; }
 		if(arg0 != null && arg0.getClass().isArray()) {
 			Object[] i_arg0 = (Object[]) arg0;
 			for(Object o: i_arg0) {
@@ -420,6 +465,7 @@ public abstract class BaseTools {
 	 * @param arg0: the object to print
 	 */
 	protected static final void qps(Object arg0) {
+		if(held(arg0, "*", "*")) { return; }
 		if(arg0 != null && arg0.getClass().isArray()) {
 			Object[] i_arg0 = (Object[]) arg0;
 			for(Object o: i_arg0) {
@@ -440,6 +486,7 @@ public abstract class BaseTools {
 	 * @param arg0: the object to print to System.err
 	 */
 	protected static final void qerr(Object arg0) {
+		if(held(arg0, "", "")) { return; }
 		if(arg0 != null && arg0.getClass().isArray()) {
 			Object[] i_arg0 = (Object[]) arg0;
 			for(Object o: i_arg0) {